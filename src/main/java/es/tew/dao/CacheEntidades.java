@@ -0,0 +1,195 @@
+package es.tew.dao;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Caché de lectura de entidades por clave, acotada en tamaño (se desaloja la usada hace
+ * más tiempo) y en tiempo (cada entrada caduca a los ttl milisegundos de cargarse).
+ *
+ * Los DTO son mutables y las vistas JSF escriben en ellos, así que se guarda una copia
+ * de lo cargado y cada acierto devuelve otra copia: lo que haga el llamante con su
+ * objeto nunca llega a la caché.
+ *
+ * Para no guardar datos viejos:
+ * <ul>
+ *   <li>Los decoradores de los DAO invalidan la clave en cada escritura y otra vez al
+ *       confirmarse la UnidadDeTrabajo en la que se hizo.</li>
+ *   <li>Una carga que empezó antes de una invalidación no se guarda al terminar.</li>
+ *   <li>Lo leído dentro de una UnidadDeTrabajo no se guarda, porque puede incluir
+ *       cambios que aún no están confirmados.</li>
+ * </ul>
+ */
+public class CacheEntidades<K, V> {
+
+    private final String nombre;
+    private final int maximo;
+    private final long ttlNanos;
+    private final UnaryOperator<V> copiar;
+
+    // Protegidos por this. En orden de acceso: la primera es la usada hace más tiempo.
+    private final LinkedHashMap<K, Entrada<V>> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    private long invalidaciones;
+
+    // Estadísticas
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder caducadas = new LongAdder();
+    private final LongAdder desalojadas = new LongAdder();
+
+    /**
+     * @param nombre Nombre para las estadísticas y el log.
+     * @param maximo Entradas como máximo.
+     * @param ttlMs Vida de cada entrada desde que se carga.
+     * @param copiar Copia profunda de un valor.
+     */
+    public CacheEntidades(String nombre, int maximo, long ttlMs, UnaryOperator<V> copiar) {
+        if (maximo < 1 || ttlMs < 1) {
+            throw new IllegalArgumentException("Tamaño o caducidad no válidos: " + maximo + ", " + ttlMs);
+        }
+        this.nombre = nombre;
+        this.maximo = maximo;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.copiar = copiar;
+    }
+
+    /**
+     * Devuelve una copia del valor de la clave, cargándolo con la función si no está
+     * o ha caducado. Los null no se guardan.
+     */
+    public V obtener(K clave, Function<K, V> cargar) {
+        long version;
+        synchronized (this) {
+            Entrada<V> entrada = entradas.get(clave);
+            if (entrada != null) {
+                if (System.nanoTime() - entrada.caduca < 0) {
+                    aciertos.increment();
+                    return copiar.apply(entrada.valor);
+                }
+                entradas.remove(clave);
+                caducadas.increment();
+            }
+            version = invalidaciones;
+        }
+
+        fallos.increment();
+        V valor = cargar.apply(clave);
+        if (valor == null || UnidadDeTrabajo.actual() != null) {
+            return valor;
+        }
+
+        V guardado = copiar.apply(valor);
+        synchronized (this) {
+            // Si se invalidó algo durante la carga, puede que lo leído ya no valga
+            if (version == invalidaciones) {
+                entradas.put(clave, new Entrada<>(guardado, System.nanoTime() + ttlNanos));
+                Iterator<Entrada<V>> it = entradas.values().iterator();
+                while (entradas.size() > maximo) {
+                    it.next();
+                    it.remove();
+                    desalojadas.increment();
+                }
+            }
+        }
+        return valor;
+    }
+
+    /**
+     * Quita la clave de la caché.
+     */
+    public synchronized void invalidar(K clave) {
+        invalidaciones++;
+        entradas.remove(clave);
+    }
+
+    /**
+     * Quita todas las entradas.
+     */
+    public synchronized void vaciar() {
+        invalidaciones++;
+        entradas.clear();
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public Stats getStats() {
+        int tamano;
+        long totalInvalidaciones;
+        synchronized (this) {
+            tamano = entradas.size();
+            totalInvalidaciones = invalidaciones;
+        }
+        return new Stats(nombre, tamano, maximo, aciertos.sum(), fallos.sum(),
+                caducadas.sum(), desalojadas.sum(), totalInvalidaciones);
+    }
+
+    private static final class Entrada<V> {
+        final V valor;
+        final long caduca; // System.nanoTime()
+
+        Entrada(V valor, long caduca) {
+            this.valor = valor;
+            this.caduca = caduca;
+        }
+    }
+
+    /**
+     * Fotografía inmutable de las estadísticas de una caché.
+     */
+    public static final class Stats {
+        private final String nombre;
+        private final int tamano;
+        private final int maximo;
+        private final long aciertos;
+        private final long fallos;
+        private final long caducadas;
+        private final long desalojadas;
+        private final long invalidaciones;
+
+        private Stats(String nombre, int tamano, int maximo, long aciertos, long fallos,
+                      long caducadas, long desalojadas, long invalidaciones) {
+            this.nombre = nombre;
+            this.tamano = tamano;
+            this.maximo = maximo;
+            this.aciertos = aciertos;
+            this.fallos = fallos;
+            this.caducadas = caducadas;
+            this.desalojadas = desalojadas;
+            this.invalidaciones = invalidaciones;
+        }
+
+        public String getNombre() { return nombre; }
+        public int getTamano() { return tamano; }
+        public int getMaximo() { return maximo; }
+        public long getAciertos() { return aciertos; }
+
+        /** Lecturas que fueron a la BDD (incluye las de entradas caducadas). */
+        public long getFallos() { return fallos; }
+        public long getCaducadas() { return caducadas; }
+
+        /** Entradas quitadas por falta de sitio. */
+        public long getDesalojadas() { return desalojadas; }
+        public long getInvalidaciones() { return invalidaciones; }
+
+        public double getRatioAciertos() {
+            long total = aciertos + fallos;
+            return total == 0 ? 0.0 : (double) aciertos / total;
+        }
+
+        @Override
+        public String toString() {
+            return "CacheEntidades{" + nombre + ": tamano=" + tamano + "/" + maximo +
+                    ", aciertos=" + aciertos + ", fallos=" + fallos +
+                    ", ratio=" + String.format("%.2f", getRatioAciertos()) +
+                    ", caducadas=" + caducadas + ", desalojadas=" + desalojadas +
+                    ", invalidaciones=" + invalidaciones + '}';
+        }
+    }
+}
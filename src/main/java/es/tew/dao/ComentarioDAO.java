@@ -1,7 +1,10 @@
 package es.tew.dao;
 
 import java.util.List;
+import java.util.stream.Stream;
+
 import es.tew.dto.ComentarioDTO;
+import es.tew.dto.IncidenciaDTO;
 
 /**
  * Interfaz de Acceso a Datos (DAO) para la entidad Comentario.
@@ -21,6 +24,24 @@ public interface ComentarioDAO {
      */
     List<ComentarioDTO> findByIncidenciaId(Long idIncidencia);
 
+    /**
+     * Recupera los comentarios de una incidencia ya cargada por el llamante.
+     * Los comentarios devueltos referencian esa misma instancia, sin volver a consultarla.
+     * @param incidencia Incidencia (con ID) cuyos comentarios se buscan.
+     * @return Lista de ComentarioDTO, ordenados por fecha ascendente.
+     */
+    List<ComentarioDTO> findByIncidencia(IncidenciaDTO incidencia);
+
+    /**
+     * Recorre los comentarios de las incidencias que cumplen el filtro, agrupados por
+     * incidencia (ID_INCIDENCIA, FECHA), sobre un cursor abierto y sin cargarlos en una lista.
+     * De la incidencia de cada comentario solo se rellena el ID. El stream tiene prestada una
+     * conexión hasta que se cierra o se recorre entero: hay que abrirlo en un try-with-resources.
+     * @param filtro Criterios sobre la incidencia (los vacíos no filtran).
+     * @return Stream de ComentarioDTO, vacío si la consulta falla.
+     */
+    Stream<ComentarioDTO> stream(FiltroIncidencias filtro);
+
     // **********************************************
     // Operaciones CRUD Básicas
     // **********************************************
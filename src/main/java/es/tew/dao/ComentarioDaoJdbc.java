@@ -9,16 +9,17 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Implementación de ComentarioDAO utilizando JDBC.
  */
 public class ComentarioDaoJdbc implements ComentarioDAO {
 
-    private final DAOFactory factory = DAOFactory.getFactory();
-    private final IncidenciaDAO incidenciaDAO = factory.getIncidenciaDAO();
-    private final UsuarioDAO usuarioDAO = factory.getUsuarioDAO();
+    private final IncidenciaDAO incidenciaDAO;
 
     // Nombres de columnas de la tabla COMENTARIO
     private static final String ID = "ID";
@@ -27,37 +28,68 @@ public class ComentarioDaoJdbc implements ComentarioDAO {
     private static final String TEXTO = "TEXTO";
     private static final String FECHA = "FECHA";
 
+    // Columnas del autor, traídas con el JOIN sobre USUARIO
+    private static final String NOMBRE = "NOMBRE";
+    private static final String APELLIDOS = "APELLIDOS";
+    private static final String ROL = "ROL";
+
+    /**
+     * SELECT común: el comentario junto con los datos de su autor.
+     */
+    private static final String SELECT_COMENTARIO =
+            "SELECT c.*, u.NOMBRE, u.APELLIDOS, u.ROL FROM COMENTARIO c JOIN USUARIO u ON c.DNI_AUTOR = u.DNI ";
+
+    // Sentencias SQL del DAO
+    private static final String SQL_FIND_BY_INCIDENCIA =
+            SELECT_COMENTARIO + "WHERE c.ID_INCIDENCIA = ? ORDER BY c.FECHA ASC";
+    private static final String SQL_FIND_BY_ID =
+            SELECT_COMENTARIO + "WHERE c.ID = ?";
+    // Para stream: el JOIN sobre INCIDENCIA i es para aplicar el filtro (IncidenciaDaoJdbc.where)
+    private static final String SELECT_STREAM =
+            SELECT_COMENTARIO + "JOIN INCIDENCIA i ON c.ID_INCIDENCIA = i.ID ";
+    private static final String ORDER_BY_STREAM =
+            "ORDER BY c.ID_INCIDENCIA, c.FECHA";
+    private static final String SQL_FIND_ALL =
+            SELECT_COMENTARIO + "ORDER BY c.FECHA DESC";
+    private static final String SQL_INSERT =
+            "INSERT INTO COMENTARIO (TEXTO, FECHA, ID_INCIDENCIA, DNI_AUTOR) VALUES (?, ?, ?, ?)";
+    // Solo se permite actualizar el texto del comentario
+    private static final String SQL_UPDATE =
+            "UPDATE COMENTARIO SET TEXTO = ? WHERE ID = ?";
+    private static final String SQL_DELETE =
+            "DELETE FROM COMENTARIO WHERE ID = ?";
+
+    /**
+     * @param incidenciaDAO DAO de incidencias, compartido con el resto de la factoría.
+     */
+    public ComentarioDaoJdbc(IncidenciaDAO incidenciaDAO) {
+        this.incidenciaDAO = incidenciaDAO;
+    }
+
     // ******************************************************
     // UTILERÍA: Método para mapear un ResultSet a un ComentarioDTO
     // ******************************************************
-    
+
     /**
-     * Convierte una fila de la tabla COMENTARIO en un objeto ComentarioDTO,
-     * resolviendo las relaciones con IncidenciaDTO y UsuarioDTO.
+     * Convierte una fila de SELECT_COMENTARIO en un objeto ComentarioDTO.
+     * El autor se construye con las columnas del JOIN y la incidencia no se vuelve
+     * a consultar: se asocia la que ya tiene el llamante.
      * @param rs El ResultSet posicionado en una fila.
+     * @param incidencia Incidencia a la que pertenece el comentario.
      * @return Un ComentarioDTO completo.
      * @throws SQLException Si ocurre un error al acceder a la columna.
      */
-    private ComentarioDTO mapRowToDTO(ResultSet rs) throws SQLException {
+    private ComentarioDTO mapRowToDTO(ResultSet rs, IncidenciaDTO incidencia) throws SQLException {
         ComentarioDTO com = new ComentarioDTO();
         com.setId(rs.getLong(ID));
         com.setTexto(rs.getString(TEXTO));
         com.setFecha(rs.getTimestamp(FECHA));
+        com.setIncidencia(incidencia);
 
-        // 1. Resolver relación con Incidencia
-        Long idIncidencia = rs.getLong(ID_INCIDENCIA);
-        if (idIncidencia != 0) { // El ID siempre será > 0 si existe
-            // Reutilizamos el IncidenciaDAO
-            IncidenciaDTO incidencia = incidenciaDAO.findById(idIncidencia);
-            com.setIncidencia(incidencia);
-        }
-
-        // 2. Resolver relación con Autor
         String dniAutor = rs.getString(DNI_AUTOR);
         if (dniAutor != null) {
-            // Reutilizamos el UsuarioDAO
-            UsuarioDTO autor = usuarioDAO.findByDni(dniAutor);
-            com.setAutor(autor);
+            com.setAutor(new UsuarioDTO(dniAutor,
+                    rs.getString(NOMBRE), rs.getString(APELLIDOS), null, rs.getString(ROL)));
         }
 
         return com;
@@ -69,17 +101,23 @@ public class ComentarioDaoJdbc implements ComentarioDAO {
 
     @Override
     public List<ComentarioDTO> findByIncidenciaId(Long idIncidencia) {
+        IncidenciaDTO incidencia = incidenciaDAO.findById(idIncidencia);
+        if (incidencia == null) {
+            return new ArrayList<>();
+        }
+        return findByIncidencia(incidencia);
+    }
+
+    @Override
+    public List<ComentarioDTO> findByIncidencia(IncidenciaDTO incidencia) {
         List<ComentarioDTO> comentarios = new ArrayList<>();
-        String sql = "SELECT c.*, u.NOMBRE, u.APELLIDOS, u.ROL FROM COMENTARIO c JOIN USUARIO u ON c.DNI_AUTOR = u.DNI WHERE c.ID_INCIDENCIA = ? ORDER BY c.FECHA ASC";
 
-        // CORRECCIÓN: La conexión NO se incluye en el try-with-resources.
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql)) {
-            ps.setLong(1, idIncidencia);
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_BY_INCIDENCIA)) {
+            ps.setLong(1, incidencia.getId());
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    ComentarioDTO comentario = new ComentarioDTO();
-                    // ... (código para mapear el ResultSet a DTO)
-                    comentarios.add(comentario);
+                    comentarios.add(mapRowToDTO(rs, incidencia));
                 }
             }
         } catch (SQLException e) {
@@ -89,54 +127,81 @@ public class ComentarioDaoJdbc implements ComentarioDAO {
         return comentarios;
     }
 
+    @Override
+    public Stream<ComentarioDTO> stream(FiltroIncidencias filtro) {
+        List<Object> parametros = new ArrayList<>();
+        String sql = SELECT_STREAM + IncidenciaDaoJdbc.where(filtro, parametros) + ORDER_BY_STREAM;
+        return CursorJdbc.abrir("stream (Comentario)", sql, parametros,
+                rs -> mapRowToDTO(rs, soloId(rs.getLong(ID_INCIDENCIA))));
+    }
+
+    private static IncidenciaDTO soloId(long id) {
+        IncidenciaDTO incidencia = new IncidenciaDTO();
+        incidencia.setId(id);
+        return incidencia;
+    }
+
     // ******************************************************
     // 2. OPERACIONES CRUD BÁSICAS
     // ******************************************************
 
     @Override
     public ComentarioDTO findById(Long id) {
-        String sql = "SELECT * FROM COMENTARIO WHERE ID = ?";
+        ComentarioDTO comentario = null;
+        long idIncidencia = 0;
 
         try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_BY_ID)) {
 
             ps.setLong(1, id);
 
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    return mapRowToDTO(rs);
+                    comentario = mapRowToDTO(rs, null);
+                    idIncidencia = rs.getLong(ID_INCIDENCIA);
                 }
             }
         } catch (SQLException e) {
             System.err.println("Error en findById (Comentario): " + e.getMessage());
         }
-        return null;
+
+        // La incidencia se busca después de devolver la conexión al pool
+        if (comentario != null) {
+            comentario.setIncidencia(incidenciaDAO.findById(idIncidencia));
+        }
+        return comentario;
     }
 
     @Override
     public List<ComentarioDTO> findAll() {
         List<ComentarioDTO> comentarios = new ArrayList<>();
-        String sql = "SELECT * FROM COMENTARIO ORDER BY FECHA DESC";
+        List<Long> idsIncidencia = new ArrayList<>();
 
         try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql);
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_ALL);
              ResultSet rs = ps.executeQuery()) {
 
             while (rs.next()) {
-                comentarios.add(mapRowToDTO(rs));
+                comentarios.add(mapRowToDTO(rs, null));
+                idsIncidencia.add(rs.getLong(ID_INCIDENCIA));
             }
         } catch (SQLException e) {
             System.err.println("Error en findAll (Comentario): " + e.getMessage());
         }
+
+        // Cada incidencia distinta se carga una sola vez, aunque tenga muchos comentarios
+        Map<Long, IncidenciaDTO> incidencias = new HashMap<>();
+        for (int i = 0; i < comentarios.size(); i++) {
+            comentarios.get(i).setIncidencia(
+                    incidencias.computeIfAbsent(idsIncidencia.get(i), incidenciaDAO::findById));
+        }
         return comentarios;
     }
 
     @Override
     public void save(ComentarioDTO comentario) {
-        String sql = "INSERT INTO COMENTARIO (TEXTO, FECHA, ID_INCIDENCIA, DNI_AUTOR) VALUES (?, ?, ?, ?)";
-        
-        // CORRECCIÓN: La conexión NO se incluye en el try-with-resources.
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql)) {
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_INSERT)) {
             ps.setString(1, comentario.getTexto());
             ps.setTimestamp(2, new java.sql.Timestamp(System.currentTimeMillis()));
             ps.setLong(3, comentario.getIncidencia().getId());
@@ -144,40 +209,38 @@ public class ComentarioDaoJdbc implements ComentarioDAO {
             ps.executeUpdate();
         } catch (SQLException e) {
             System.err.println("Error al guardar comentario: " + e.getMessage());
+            UnidadDeTrabajo.registrarError(e);
             e.printStackTrace();
         }
     }
 
     @Override
     public void update(ComentarioDTO comentario) {
-        // Solo permitimos la actualización del texto del comentario
-        String sql = "UPDATE COMENTARIO SET TEXTO = ? WHERE ID = ?";
-
         try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+             PreparedStatement ps = con.prepareStatement(SQL_UPDATE)) {
 
             ps.setString(1, comentario.getTexto());
-            ps.setLong(2, comentario.getId()); 
+            ps.setLong(2, comentario.getId());
 
             ps.executeUpdate();
 
         } catch (SQLException e) {
             System.err.println("Error al actualizar comentario: " + e.getMessage());
+            UnidadDeTrabajo.registrarError(e);
         }
     }
 
     @Override
     public void delete(Long id) {
-        String sql = "DELETE FROM COMENTARIO WHERE ID = ?";
-
         try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+             PreparedStatement ps = con.prepareStatement(SQL_DELETE)) {
 
             ps.setLong(1, id);
             ps.executeUpdate();
-            
+
         } catch (SQLException e) {
             System.err.println("Error al eliminar comentario: " + e.getMessage());
+            UnidadDeTrabajo.registrarError(e);
         }
     }
-}
\ No newline at end of file
+}
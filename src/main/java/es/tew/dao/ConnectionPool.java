@@ -0,0 +1,651 @@
+package es.tew.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool acotado de conexiones JDBC.
+ * Mantiene entre {@code minSize} y {@code maxSize} conexiones físicas; cada préstamo
+ * devuelve un proxy cuyo {@code close()} devuelve la conexión al pool en lugar de cerrarla,
+ * por lo que los DAOs deben usarlas siempre dentro de un try-with-resources.
+ *
+ * Cada conexión física guarda además sus sentencias preparadas en una caché LRU por
+ * texto SQL (como mucho {@code statementCacheSize}): el {@code close()} de la sentencia
+ * prestada la deja en la caché en lugar de cerrarla, y el siguiente
+ * {@code prepareStatement} con el mismo SQL en esa conexión la reutiliza sin que HSQLDB
+ * tenga que volver a analizarla y planificarla.
+ */
+public class ConnectionPool {
+
+    // Segundos que se concede a Connection.isValid() al validar una conexión
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final long leakThresholdMillis;
+    private final boolean leakStackTraces;
+    private final int statementCacheSize;
+
+    // Conexiones libres; se usa como pila (LIFO) para reutilizar siempre las más recientes
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    // Conexiones prestadas en este momento (para la detección de fugas)
+    private final Map<PooledConnection, Boolean> borrowed = new ConcurrentHashMap<>();
+    // Un permiso por cada conexión que aún se puede prestar
+    private final Semaphore permits;
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean closed;
+
+    // Estadísticas
+    private final AtomicInteger physicalConnections = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long acquireTimeoutMillis, long validationIntervalMillis, long leakThresholdMillis,
+                          boolean leakStackTraces, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Tamaño de pool no válido: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.leakStackTraces = leakStackTraces;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-mantenimiento");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodo = Math.max(1000L, leakThresholdMillis / 2);
+        maintenance.scheduleWithFixedDelay(this::mantenimiento, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abre las conexiones mínimas. Se llama una sola vez al arrancar la aplicación.
+     * @throws SQLException Si no se puede abrir alguna conexión.
+     */
+    public void start() throws SQLException {
+        rellenarHastaMinimo();
+    }
+
+    // ******************************************************
+    // PRÉSTAMO Y DEVOLUCIÓN
+    // ******************************************************
+
+    /**
+     * Presta una conexión del pool, esperando como máximo {@code acquireTimeoutMillis}.
+     * @return Conexión que vuelve al pool al llamar a close().
+     * @throws SQLTimeoutException Si no queda ninguna conexión libre dentro del plazo.
+     * @throws SQLException Si el pool está cerrado o no se puede abrir una conexión nueva.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("El pool de conexiones está cerrado.");
+        }
+
+        long inicio = System.nanoTime();
+        boolean concedido;
+        try {
+            concedido = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido mientras se esperaba una conexión.", e);
+        }
+        waitNanos.add(System.nanoTime() - inicio);
+
+        if (!concedido) {
+            timeouts.increment();
+            throw new SQLTimeoutException("No hay conexiones libres tras " + acquireTimeoutMillis + " ms. " + getStats());
+        }
+
+        try {
+            PooledConnection pc = obtenerValida();
+            pc.prestar();
+            borrowed.put(pc, Boolean.TRUE);
+            borrows.increment();
+            return pc.crearProxy();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection obtenerValida() throws SQLException {
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            if (esValida(pc)) {
+                return pc;
+            }
+            descartar(pc);
+        }
+        return crear();
+    }
+
+    private boolean esValida(PooledConnection pc) {
+        // Solo se valida si lleva un rato sin usarse, para no pagar un round trip en cada préstamo
+        if (System.currentTimeMillis() - pc.ultimoUso < validationIntervalMillis) {
+            return true;
+        }
+        try {
+            return pc.fisica.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection crear() throws SQLException {
+        Connection fisica = DriverManager.getConnection(url, user, password);
+        physicalConnections.incrementAndGet();
+        created.increment();
+        return new PooledConnection(fisica);
+    }
+
+    private void descartar(PooledConnection pc) {
+        pc.cerrarSentencias();
+        try {
+            pc.fisica.close();
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar una conexión descartada: " + e.getMessage());
+        }
+        physicalConnections.decrementAndGet();
+        discarded.increment();
+    }
+
+    /**
+     * Devuelve una conexión al pool dejándola en su estado por defecto.
+     */
+    private void devolver(PooledConnection pc) {
+        borrowed.remove(pc);
+        try {
+            pc.recuperarSentencias();
+            if (closed) {
+                descartar(pc);
+                return;
+            }
+            try {
+                if (!pc.fisica.getAutoCommit()) {
+                    pc.fisica.rollback();
+                    pc.fisica.setAutoCommit(true);
+                }
+                pc.fisica.clearWarnings();
+                pc.ultimoUso = System.currentTimeMillis();
+                idle.offerFirst(pc);
+            } catch (SQLException e) {
+                System.err.println("Conexión descartada al devolverla al pool: " + e.getMessage());
+                descartar(pc);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // ******************************************************
+    // MANTENIMIENTO (fugas y tamaño mínimo)
+    // ******************************************************
+
+    private void mantenimiento() {
+        try {
+            detectarFugas();
+            rellenarHastaMinimo();
+        } catch (Exception e) {
+            System.err.println("Error en el mantenimiento del pool: " + e.getMessage());
+        }
+    }
+
+    private void detectarFugas() {
+        if (leakThresholdMillis <= 0) {
+            return;
+        }
+        long ahora = System.currentTimeMillis();
+        for (PooledConnection pc : borrowed.keySet()) {
+            if (!pc.fugaNotificada && ahora - pc.prestadaEn > leakThresholdMillis) {
+                pc.fugaNotificada = true;
+                leaks.increment();
+                System.err.println("AVISO: posible fuga de conexión; prestada hace " + (ahora - pc.prestadaEn)
+                        + " ms al hilo " + pc.hiloPrestamo + " y no devuelta.");
+                if (pc.origen != null) {
+                    pc.origen.printStackTrace();
+                } else {
+                    System.err.println("       Para ver dónde se prestó: -Dincidencias.pool.leakStackTraces=true");
+                }
+            }
+        }
+    }
+
+    private void rellenarHastaMinimo() throws SQLException {
+        while (!closed && physicalConnections.get() < minSize) {
+            idle.offerLast(crear());
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones libres. Las prestadas se cierran al devolverse.
+     */
+    public void close() {
+        closed = true;
+        maintenance.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            descartar(pc);
+        }
+        if (!borrowed.isEmpty()) {
+            System.err.println("AVISO: se cierra el pool con " + borrowed.size() + " conexiones aún prestadas.");
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(borrowed.size(), idle.size(), physicalConnections.get(), maxSize,
+                borrows.sum(), timeouts.sum(), created.sum(), discarded.sum(), leaks.sum(), waitNanos.sum(),
+                statements.sum(), statementCacheHits.sum(), statementCacheMisses.sum());
+    }
+
+    // ******************************************************
+    // CONEXIÓN DEL POOL
+    // ******************************************************
+
+    /**
+     * Conexión física gestionada por el pool, junto con los datos de su préstamo actual.
+     */
+    private final class PooledConnection {
+        private final Connection fisica;
+        private volatile long ultimoUso = System.currentTimeMillis();
+        private volatile long prestadaEn;
+        private volatile String hiloPrestamo;
+        private volatile Exception origen;
+        private volatile boolean fugaNotificada;
+
+        // Sentencias preparadas de esta conexión, de la menos a la más reciente.
+        // Solo la usa el hilo que tiene la conexión prestada.
+        private final Map<String, SentenciaCacheada> sentencias = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SentenciaCacheada> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                eldest.getValue().expulsar();
+                return true;
+            }
+        };
+
+        private PooledConnection(Connection fisica) {
+            this.fisica = fisica;
+        }
+
+        /**
+         * Sentencia preparada para el SQL, sacada de la caché si está libre.
+         * @param clave SQL (y opciones) que identifica la sentencia.
+         * @param preparar Crea la sentencia física si no está en la caché.
+         */
+        private PreparedStatement preparar(Connection proxy, String clave, Preparador preparar) throws SQLException {
+            if (statementCacheSize <= 0) {
+                return preparar.preparar();
+            }
+            SentenciaCacheada cacheada = sentencias.get(clave);
+            if (cacheada != null && cacheada.expulsada && !cacheada.enUso) {
+                // Se cerró al devolverla (lote sin enviar, error al limpiarla): se prepara otra
+                sentencias.remove(clave);
+                cacheada = null;
+            }
+            if (cacheada != null && !cacheada.enUso) {
+                statementCacheHits.increment();
+            } else {
+                statementCacheMisses.increment();
+                if (cacheada != null) {
+                    // Ya está abierta en otro punto de este préstamo: se usa una sin caché
+                    return preparar.preparar();
+                }
+                cacheada = new SentenciaCacheada(preparar.preparar());
+                sentencias.put(clave, cacheada);
+            }
+            return cacheada.prestar(proxy);
+        }
+
+        private void cerrarSentencias() {
+            for (SentenciaCacheada cacheada : sentencias.values()) {
+                cacheada.expulsar();
+            }
+            sentencias.clear();
+        }
+
+        /**
+         * Recupera las sentencias que siguen prestadas al devolver la conexión (un
+         * PreparedStatement que no se cerró); si no, quedarían en uso para siempre y su
+         * SQL ya no pasaría por la caché en esta conexión.
+         */
+        private void recuperarSentencias() {
+            for (SentenciaCacheada cacheada : sentencias.values()) {
+                cacheada.recuperar();
+            }
+        }
+
+        private void prestar() {
+            prestadaEn = System.currentTimeMillis();
+            hiloPrestamo = Thread.currentThread().getName();
+            // Capturar la traza cuesta en cada préstamo: solo para depurar una fuga ya detectada
+            origen = leakStackTraces && leakThresholdMillis > 0
+                    ? new Exception("Origen del préstamo de la conexión") : null;
+            fugaNotificada = false;
+        }
+
+        private Connection crearProxy() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new ConexionPrestada(this));
+        }
+    }
+
+    /**
+     * Intercepta close()/isClosed() de la conexión prestada y delega todo lo demás.
+     * Una vez devuelta, la conexión prestada deja de ser utilizable.
+     */
+    private final class ConexionPrestada implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean devuelta;
+
+        private ConexionPrestada(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!devuelta) {
+                        devuelta = true;
+                        devolver(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return devuelta || pc.fisica.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "prepareStatement":
+                    statements.increment();
+                    return prepararStatement(proxy, method, args);
+                case "prepareCall":
+                case "createStatement":
+                    statements.increment();
+                    return delegar(method, args);
+                case "toString":
+                    return "ConexionPrestada[" + pc.fisica + (devuelta ? ", devuelta" : "") + "]";
+                default:
+                    return delegar(method, args);
+            }
+        }
+
+        /**
+         * prepareStatement(sql) y prepareStatement(sql, autoGeneratedKeys) pasan por la caché
+         * de la conexión; el resto de variantes se preparan sin caché.
+         */
+        private Object prepararStatement(Object proxy, Method method, Object[] args) throws Throwable {
+            if (devuelta) {
+                throw new SQLException("La conexión ya se ha devuelto al pool.");
+            }
+            String sql = (String) args[0];
+            if (args.length == 1) {
+                return pc.preparar((Connection) proxy, sql, () -> pc.fisica.prepareStatement(sql));
+            }
+            if (args.length == 2 && args[1] instanceof Integer) {
+                int claves = (Integer) args[1];
+                return pc.preparar((Connection) proxy, claves + "|" + sql, () -> pc.fisica.prepareStatement(sql, claves));
+            }
+            return delegar(method, args);
+        }
+
+        private Object delegar(Method method, Object[] args) throws Throwable {
+            if (devuelta) {
+                throw new SQLException("La conexión ya se ha devuelto al pool.");
+            }
+            try {
+                return method.invoke(pc.fisica, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Preparador {
+        PreparedStatement preparar() throws SQLException;
+    }
+
+    /**
+     * Sentencia física guardada en la caché de una conexión. Se presta envuelta en un
+     * proxy cuyo close() la devuelve a la caché (limpiando sus parámetros) en lugar de
+     * cerrarla; si mientras estaba prestada salió de la caché, se cierra al devolverla.
+     * También se cierra si se devuelve con un lote sin enviar: HSQLDB la deja en modo
+     * lote hasta el siguiente executeBatch (clearBatch no basta) y el siguiente
+     * executeUpdate con ese SQL fallaría.
+     */
+    private static final class SentenciaCacheada {
+        private final PreparedStatement fisica;
+        private SentenciaPrestada prestada;   // Préstamo actual (null si está libre)
+        private boolean enUso;
+        private boolean expulsada;
+        private boolean loteSinEnviar;
+
+        private SentenciaCacheada(PreparedStatement fisica) {
+            this.fisica = fisica;
+        }
+
+        private PreparedStatement prestar(Connection conexion) {
+            enUso = true;
+            prestada = new SentenciaPrestada(this, conexion);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    prestada);
+        }
+
+        /**
+         * Si sigue prestada, cierra el proxy olvidado (para que no toque la sentencia
+         * cuando la use el siguiente préstamo) y la devuelve como si se hubiera cerrado.
+         */
+        private void recuperar() {
+            if (enUso) {
+                prestada.devuelta = true;
+                devolver();
+            }
+        }
+
+        private void devolver() {
+            enUso = false;
+            prestada = null;
+            if (loteSinEnviar) {
+                expulsada = true;
+            }
+            if (expulsada) {
+                cerrar();
+                return;
+            }
+            try {
+                fisica.clearParameters();
+                fisica.clearBatch();
+            } catch (SQLException e) {
+                // No se puede reutilizar: se cierra y la siguiente vez se prepara de nuevo
+                expulsada = true;
+                cerrar();
+            }
+        }
+
+        private void expulsar() {
+            expulsada = true;
+            if (!enUso) {
+                cerrar();
+            }
+        }
+
+        private void cerrar() {
+            try {
+                fisica.close();
+            } catch (SQLException e) {
+                System.err.println("Error al cerrar una sentencia de la caché: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Intercepta close()/isClosed()/getConnection() de la sentencia prestada y delega el resto.
+     */
+    private static final class SentenciaPrestada implements InvocationHandler {
+        private final SentenciaCacheada sentencia;
+        private final Connection conexion;
+        private boolean devuelta;
+
+        private SentenciaPrestada(SentenciaCacheada sentencia, Connection conexion) {
+            this.sentencia = sentencia;
+            this.conexion = conexion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!devuelta) {
+                        devuelta = true;
+                        sentencia.devolver();
+                    }
+                    return null;
+                case "isClosed":
+                    return devuelta || sentencia.fisica.isClosed();
+                case "getConnection":
+                    return conexion;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (devuelta) {
+                        throw new SQLException("La sentencia ya se ha cerrado.");
+                    }
+                    Object resultado;
+                    try {
+                        resultado = method.invoke(sentencia.fisica, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (method.getName().equals("addBatch")) {
+                        sentencia.loteSinEnviar = true;
+                    } else if (method.getName().equals("executeBatch")) {
+                        sentencia.loteSinEnviar = false;
+                    }
+                    return resultado;
+            }
+        }
+    }
+
+    /**
+     * Fotografía inmutable del estado del pool.
+     */
+    public static final class Stats {
+        private final int active;
+        private final int idle;
+        private final int total;
+        private final int max;
+        private final long borrows;
+        private final long timeouts;
+        private final long created;
+        private final long discarded;
+        private final long leaks;
+        private final long waitNanos;
+        private final long statements;
+        private final long statementCacheHits;
+        private final long statementCacheMisses;
+
+        private Stats(int active, int idle, int total, int max, long borrows, long timeouts,
+                      long created, long discarded, long leaks, long waitNanos, long statements,
+                      long statementCacheHits, long statementCacheMisses) {
+            this.active = active;
+            this.idle = idle;
+            this.total = total;
+            this.max = max;
+            this.borrows = borrows;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.discarded = discarded;
+            this.leaks = leaks;
+            this.waitNanos = waitNanos;
+            this.statements = statements;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+        }
+
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public int getTotal() { return total; }
+        public int getMax() { return max; }
+        public long getBorrows() { return borrows; }
+        public long getTimeouts() { return timeouts; }
+        public long getCreated() { return created; }
+        public long getDiscarded() { return discarded; }
+        public long getLeaks() { return leaks; }
+
+        /** Sentencias preparadas o creadas a través de conexiones del pool (una por consulta). */
+        public long getStatements() { return statements; }
+
+        /** prepareStatement servidos desde la caché de sentencias de la conexión. */
+        public long getStatementCacheHits() { return statementCacheHits; }
+
+        /** prepareStatement que tuvieron que preparar una sentencia nueva. */
+        public long getStatementCacheMisses() { return statementCacheMisses; }
+
+        /** Proporción de aciertos de la caché de sentencias (0 si no se ha usado). */
+        public double getStatementCacheHitRatio() {
+            long total = statementCacheHits + statementCacheMisses;
+            return total == 0 ? 0.0 : (double) statementCacheHits / total;
+        }
+
+        /** Tiempo medio de espera por préstamo, en milisegundos. */
+        public double getAverageWaitMillis() {
+            return borrows == 0 ? 0.0 : waitNanos / 1_000_000.0 / borrows;
+        }
+
+        @Override
+        public String toString() {
+            return "Pool{activas=" + active + ", libres=" + idle + ", total=" + total + "/" + max +
+                    ", prestamos=" + borrows + ", esperasAgotadas=" + timeouts +
+                    ", creadas=" + created + ", descartadas=" + discarded + ", fugas=" + leaks + ", sentencias=" + statements +
+                    ", cacheSentencias=" + statementCacheHits + "/" + (statementCacheHits + statementCacheMisses) +
+                    ", esperaMediaMs=" + String.format("%.3f", getAverageWaitMillis()) + '}';
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package es.tew.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Stream sobre un cursor JDBC abierto, para los métodos stream de los DAO: cada fila se
+ * convierte en DTO cuando el stream la pide, sin llenar antes una lista.
+ *
+ * La conexión se presta al abrir el stream y se devuelve al pool al cerrarlo o al leer la
+ * última fila, lo que ocurra antes. Si el stream no se recorre entero (findFirst, limit,
+ * una excepción a medias) solo se devuelve al cerrarlo, así que hay que abrirlo siempre
+ * en un try-with-resources. No es seguro entre hilos ni admite parallel().
+ *
+ * La sentencia es de solo avance y no pasa por la caché de sentencias del pool, para que
+ * el fetch size (-Dincidencias.cursor.fetchSize) no se quede en una sentencia compartida.
+ * El fetch size solo cuenta con un servidor remoto: el HSQLDB embebido carga entero el
+ * ResultSet, pero aun así se ahorran los DTO de las filas ya recorridas.
+ */
+final class CursorJdbc<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private static final int FETCH_SIZE = Integer.getInteger("incidencias.cursor.fetchSize", 500);
+
+    /**
+     * Convierte la fila actual del ResultSet en un objeto.
+     */
+    @FunctionalInterface
+    interface Fila<T> {
+        T mapear(ResultSet rs) throws SQLException;
+    }
+
+    private final String operacion;
+    private final Connection con;
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+    private final Fila<T> fila;
+    private boolean cerrado;
+
+    private CursorJdbc(String operacion, Connection con, PreparedStatement ps, ResultSet rs, Fila<T> fila) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.operacion = operacion;
+        this.con = con;
+        this.ps = ps;
+        this.rs = rs;
+        this.fila = fila;
+    }
+
+    /**
+     * Ejecuta la consulta y devuelve sus filas como stream.
+     * @param operacion Nombre para los mensajes de error (ej. "stream (Comentario)").
+     * @param parametros Valores de los ? de la consulta, en orden.
+     * @return El stream, que debe cerrarse; vacío si la consulta falla (como los find, que
+     *         devuelven una lista vacía). Si falla a mitad de recorrido lanza una
+     *         RuntimeException con la SQLException como causa, en lugar de acabar antes.
+     */
+    static <T> Stream<T> abrir(String operacion, String sql, List<Object> parametros, Fila<T> fila) {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = DAOFactory.getConnection();
+            ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < parametros.size(); i++) {
+                ps.setObject(i + 1, parametros.get(i));
+            }
+            CursorJdbc<T> cursor = new CursorJdbc<>(operacion, con, ps, ps.executeQuery(), fila);
+            return StreamSupport.stream(cursor, false).onClose(cursor::cerrar);
+        } catch (SQLException e) {
+            System.err.println("Error en " + operacion + ": " + e.getMessage());
+            cerrar(operacion, ps);
+            cerrar(operacion, con);
+            return Stream.empty();
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> accion) {
+        if (cerrado) {
+            return false;
+        }
+        T siguiente;
+        try {
+            if (!rs.next()) {
+                // Recorrido entero: la conexión vuelve al pool sin esperar al close
+                cerrar();
+                return false;
+            }
+            siguiente = fila.mapear(rs);
+        } catch (SQLException e) {
+            System.err.println("Error en " + operacion + " al leer el cursor: " + e.getMessage());
+            cerrar();
+            throw new RuntimeException("Error al leer el cursor de " + operacion + ": " + e.getMessage(), e);
+        }
+        accion.accept(siguiente);
+        return true;
+    }
+
+    /**
+     * Cierra el ResultSet, la sentencia y la conexión. Se puede llamar más de una vez.
+     */
+    private void cerrar() {
+        if (cerrado) {
+            return;
+        }
+        cerrado = true;
+        cerrar(operacion, rs);
+        cerrar(operacion, ps);
+        cerrar(operacion, con);
+    }
+
+    private static void cerrar(String operacion, AutoCloseable recurso) {
+        if (recurso == null) {
+            return;
+        }
+        try {
+            recurso.close();
+        } catch (Exception e) {
+            System.err.println("Error al cerrar el cursor de " + operacion + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,20 +1,37 @@
 package es.tew.dao;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 public abstract class DAOFactory {
 
     private static final String DRIVER = "org.hsqldb.jdbcDriver";
-    private static final String URL = "jdbc:hsqldb:mem:incidenciasDB;sql.syntax_ora=true";
+    // Por defecto en memoria. Para conservar los datos entre despliegues, un catálogo en fichero:
+    // -Dincidencias.db.url=jdbc:hsqldb:file:/ruta/incidenciasDB;sql.syntax_ora=true
+    private static final String URL = System.getProperty("incidencias.db.url",
+            "jdbc:hsqldb:mem:incidenciasDB;sql.syntax_ora=true");
     private static final String USER = "SA";
     private static final String PASSWORD = "";
-    private static Connection connection = null;
+
+    // Parámetros del pool (se pueden sobrescribir con propiedades de sistema)
+    private static final int POOL_MIN = Integer.getInteger("incidencias.pool.min", 2);
+    private static final int POOL_MAX = Integer.getInteger("incidencias.pool.max", 10);
+    private static final long POOL_ACQUIRE_TIMEOUT_MS = Long.getLong("incidencias.pool.acquireTimeoutMs", 5000L);
+    private static final long POOL_VALIDATION_INTERVAL_MS = Long.getLong("incidencias.pool.validationIntervalMs", 30000L);
+    private static final long POOL_LEAK_THRESHOLD_MS = Long.getLong("incidencias.pool.leakThresholdMs", 60000L);
+    // Guarda la traza de cada préstamo para mostrarla si hay fuga; solo para depurar, cuesta en cada préstamo
+    private static final boolean POOL_LEAK_STACK_TRACES = Boolean.getBoolean("incidencias.pool.leakStackTraces");
+    // Sentencias preparadas que guarda cada conexión (0 desactiva la caché)
+    private static final int POOL_STATEMENT_CACHE_SIZE = Integer.getInteger("incidencias.pool.statementCacheSize", 64);
+
+    private static volatile ConnectionPool pool = null;
+
+    // Espera máxima al vaciar la cola del historial al replegar
+    private static final long ESPERA_CIERRE_HISTORIAL_MS = 30000L;
 
     static {
         try {
@@ -25,51 +42,145 @@ public abstract class DAOFactory {
         }
     }
 
+    /**
+     * Presta una conexión del pool. Debe cerrarse (try-with-resources) para devolverla.
+     * Dentro de una UnidadDeTrabajo devuelve la conexión de la unidad, y cerrarla no hace nada.
+     */
     public static Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
+        UnidadDeTrabajo uow = UnidadDeTrabajo.actual();
+        if (uow != null) {
+            return uow.conexion();
+        }
+        ConnectionPool p = pool;
+        if (p == null) {
+            p = start();
+        }
+        return p.getConnection();
+    }
+
+    /**
+     * Inicializa la base de datos y arranca el pool de conexiones.
+     * Lo invoca DatabaseInitializerListener al desplegar; llamadas posteriores no tienen efecto.
+     */
+    public static synchronized ConnectionPool start() {
+        if (pool == null) {
             initializeDatabase();
+            ConnectionPool nuevo = new ConnectionPool(URL, USER, PASSWORD, POOL_MIN, POOL_MAX,
+                    POOL_ACQUIRE_TIMEOUT_MS, POOL_VALIDATION_INTERVAL_MS, POOL_LEAK_THRESHOLD_MS,
+                    POOL_LEAK_STACK_TRACES, POOL_STATEMENT_CACHE_SIZE);
+            try {
+                nuevo.start();
+            } catch (SQLException e) {
+                nuevo.close();
+                throw new RuntimeException("No se pudo arrancar el pool de conexiones.", e);
+            }
+            pool = nuevo;
+        }
+        return pool;
+    }
+
+    /**
+     * Cierra el pool de conexiones. Lo invoca DatabaseInitializerListener al replegar.
+     * Con un catálogo en fichero, además cierra la BDD para que quede escrita en disco.
+     */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            // Antes de cerrar el pool, el historial pendiente de escribir
+            EscritorHistorial escritor = getFactory().getEscritorHistorial();
+            if (escritor != null) {
+                escritor.cerrar(ESPERA_CIERRE_HISTORIAL_MS);
+                System.out.println("INFO: Historial pendiente escrito: " + escritor.getStats());
+            }
+            for (CacheEntidades<?, ?> cache : getFactory().getCaches()) {
+                System.out.println("INFO: " + cache.getStats());
+            }
+            pool.close();
+            pool = null;
+            if (!URL.contains(":mem:")) {
+                try (Connection connection = DriverManager.getConnection(URL, USER, PASSWORD);
+                     Statement stmt = connection.createStatement()) {
+                    stmt.execute("SHUTDOWN");
+                } catch (SQLException e) {
+                    System.err.println("Error al cerrar la BDD: " + e.getMessage());
+                }
+            }
         }
-        return connection;
     }
 
+    /**
+     * Estadísticas del pool, o null si todavía no se ha arrancado.
+     */
+    public static ConnectionPool.Stats getPoolStats() {
+        ConnectionPool p = pool;
+        return p != null ? p.getStats() : null;
+    }
+
+    /**
+     * Aplica las migraciones de esquema pendientes (ver Migrador). Con una BDD ya al día
+     * solo lee SCHEMA_VERSION.
+     */
     private static void initializeDatabase() {
-        try {
-            connection = DriverManager.getConnection(URL, USER, PASSWORD);
-            executeScript("data/LocalDB.script");
+        // La BDD en memoria sobrevive al cierre de esta conexión hasta un SHUTDOWN explícito
+        try (Connection connection = DriverManager.getConnection(URL, USER, PASSWORD)) {
+            long inicio = System.currentTimeMillis();
+            int aplicadas = Migrador.migrar(connection);
+            System.out.println("INFO: Esquema de BDD al día (" + aplicadas + " migraciones aplicadas, "
+                    + (System.currentTimeMillis() - inicio) + " ms).");
         } catch (Exception e) {
             System.err.println("ERROR FATAL al inicializar la BDD: " + e.getMessage());
-            connection = null;
             throw new RuntimeException(e);
         }
     }
 
-    private static void executeScript(String scriptPath) throws SQLException, IOException {
-        try (InputStream is = DAOFactory.class.getClassLoader().getResourceAsStream(scriptPath)) {
-            if (is == null) {
-                throw new IOException("No se encontró el script de BDD en: " + scriptPath);
-            }
-            String sqlScript = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-            // Dividimos el script en sentencias individuales usando el punto y coma como delimitador
-            String[] statements = sqlScript.split(";");
-            try (Statement stmt = connection.createStatement()) {
-                // Ejecutamos cada sentencia una por una
-                for (String statement : statements) {
-                    String trimmedStatement = statement.trim();
-                    if (!trimmedStatement.isEmpty()) {
-                        stmt.execute(trimmedStatement);
-                    }
-                }
-            }
+    /**
+     * Estadísticas de la escritura diferida del historial, o null si está desactivada.
+     */
+    public static EscritorHistorial.Stats getEscritorHistorialStats() {
+        EscritorHistorial escritor = getFactory().getEscritorHistorial();
+        return escritor != null ? escritor.getStats() : null;
+    }
+
+    /**
+     * Escritor diferido del historial, si la factoría usa uno.
+     */
+    protected EscritorHistorial getEscritorHistorial() {
+        return null;
+    }
+
+    /**
+     * Estadísticas de las cachés de lectura de los DAO (vacía si están desactivadas).
+     */
+    public static List<CacheEntidades.Stats> getCacheStats() {
+        List<CacheEntidades.Stats> stats = new ArrayList<>();
+        for (CacheEntidades<?, ?> cache : getFactory().getCaches()) {
+            stats.add(cache.getStats());
         }
+        return stats;
+    }
+
+    /**
+     * Cachés de lectura que usan los DAO de la factoría, si las hay.
+     */
+    protected List<CacheEntidades<?, ?>> getCaches() {
+        return List.of();
     }
-    
+
     // --- Métodos abstractos para obtener los DAOs ---
     public abstract UsuarioDAO getUsuarioDAO();
     public abstract IncidenciaDAO getIncidenciaDAO();
     public abstract ComentarioDAO getComentarioDAO();
     public abstract HistorialEstadoDAO getHistorialEstadoDAO();
 
+    /**
+     * Devuelve la factoría compartida por toda la aplicación. Sus DAOs no tienen estado
+     * mutable, así que una única instancia de cada uno sirve a todos los hilos.
+     */
     public static DAOFactory getFactory() {
-        return new JdbcDAOFactory();
+        return FactoryHolder.INSTANCE;
+    }
+
+    // Inicialización perezosa y segura entre hilos (la JVM garantiza una sola carga de la clase)
+    private static final class FactoryHolder {
+        private static final DAOFactory INSTANCE = new JdbcDAOFactory();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,37 @@
+package es.tew.dao;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+
+/**
+ * Productor CDI de los DAOs.
+ * Expone como beans @ApplicationScoped las instancias únicas de la factoría,
+ * para que la capa de lógica las reciba por inyección en lugar de construirlas.
+ */
+@ApplicationScoped
+public class DAOProducer {
+
+    @Produces
+    @ApplicationScoped
+    public UsuarioDAO produceUsuarioDAO() {
+        return DAOFactory.getFactory().getUsuarioDAO();
+    }
+
+    @Produces
+    @ApplicationScoped
+    public IncidenciaDAO produceIncidenciaDAO() {
+        return DAOFactory.getFactory().getIncidenciaDAO();
+    }
+
+    @Produces
+    @ApplicationScoped
+    public ComentarioDAO produceComentarioDAO() {
+        return DAOFactory.getFactory().getComentarioDAO();
+    }
+
+    @Produces
+    @ApplicationScoped
+    public HistorialEstadoDAO produceHistorialEstadoDAO() {
+        return DAOFactory.getFactory().getHistorialEstadoDAO();
+    }
+}
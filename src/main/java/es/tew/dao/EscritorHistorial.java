@@ -0,0 +1,303 @@
+package es.tew.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+
+/**
+ * Escritura diferida del historial de estados: las entradas se dejan en una cola acotada
+ * sin bloqueos y un hilo de fondo las guarda por lotes con HistorialEstadoDAO.saveLote.
+ *
+ * Si la cola está llena, {@link #encolar} devuelve false y el llamante debe guardar la
+ * entrada él mismo (así la presión vuelve a las peticiones en lugar de perder entradas).
+ * {@link #cerrar} deja de aceptar entradas y guarda las pendientes antes de terminar.
+ * Un lote que falla se reintenta y, si sigue fallando, se escribe entrada a entrada para
+ * que una sola entrada errónea no arrastre a las demás; las que no se pueden guardar se
+ * escriben en el log de errores y se cuentan como perdidas.
+ */
+public class EscritorHistorial {
+
+    private static final int REINTENTOS = 3;
+    private static final long ESPERA_REINTENTO_MS = 200;
+
+    private final HistorialEstadoDAO destino;
+    private final int capacidad;
+    private final int tamanoLote;
+    private final long intervaloNanos;
+
+    private final ConcurrentLinkedQueue<HistorialEstadoDTO> cola = new ConcurrentLinkedQueue<>();
+    // Entradas reservadas en la cola; se reserva antes de insertar para no pasar de la capacidad
+    private final AtomicInteger tamano = new AtomicInteger();
+    private final Thread hilo;
+    private volatile boolean cerrando;
+
+    // Estadísticas
+    private final AtomicLong encoladas = new AtomicLong();
+    private final AtomicLong procesadas = new AtomicLong(); // escritas + perdidas
+    private final LongAdder escritas = new LongAdder();
+    private final LongAdder perdidas = new LongAdder();
+    private final LongAdder rechazadas = new LongAdder();
+    private final LongAdder lotes = new LongAdder();
+    private final AtomicInteger profundidadMaxima = new AtomicInteger();
+    private final AtomicInteger loteMaximo = new AtomicInteger();
+
+    // Solo para despertar a quien espera en esperarPendientes
+    private final Object progreso = new Object();
+
+    /**
+     * @param destino DAO que hace la escritura real (síncrono).
+     * @param capacidad Entradas como máximo en la cola.
+     * @param tamanoLote Entradas como máximo por executeBatch.
+     * @param intervaloMs Espera máxima del hilo de fondo antes de escribir un lote incompleto.
+     */
+    public EscritorHistorial(HistorialEstadoDAO destino, int capacidad, int tamanoLote, long intervaloMs) {
+        if (capacidad < 1 || tamanoLote < 1) {
+            throw new IllegalArgumentException("Capacidad o tamaño de lote no válidos: " + capacidad + ", " + tamanoLote);
+        }
+        this.destino = destino;
+        this.capacidad = capacidad;
+        this.tamanoLote = tamanoLote;
+        this.intervaloNanos = TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+        this.hilo = new Thread(this::bucle, "historial-escritor");
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Deja una entrada para escribirla en segundo plano.
+     * @return false si la cola está llena o el escritor está cerrado: la entrada no se ha
+     *         aceptado y el llamante debe guardarla de forma síncrona.
+     */
+    public boolean encolar(HistorialEstadoDTO historial) {
+        if (cerrando || historial.getIncidencia() == null || historial.getIncidencia().getId() == null) {
+            rechazadas.increment();
+            return false;
+        }
+        int n;
+        do {
+            n = tamano.get();
+            if (n >= capacidad) {
+                rechazadas.increment();
+                return false;
+            }
+        } while (!tamano.compareAndSet(n, n + 1));
+        // Si se cerró mientras tanto, puede que el hilo de fondo ya no vuelva a mirar la cola
+        if (cerrando) {
+            tamano.decrementAndGet();
+            rechazadas.increment();
+            return false;
+        }
+
+        cola.offer(copia(historial));
+        encoladas.incrementAndGet();
+        profundidadMaxima.accumulateAndGet(n + 1, Math::max);
+        if (n + 1 >= tamanoLote) {
+            LockSupport.unpark(hilo);
+        }
+        return true;
+    }
+
+    /**
+     * Espera a que se hayan procesado todas las entradas encoladas hasta ahora, para que
+     * una lectura posterior del historial las vea.
+     * @param timeoutMs Espera máxima.
+     * @return true si se procesaron dentro del plazo.
+     */
+    public boolean esperarPendientes(long timeoutMs) {
+        long objetivo = encoladas.get();
+        if (procesadas.get() >= objetivo) {
+            return true;
+        }
+        LockSupport.unpark(hilo);
+        long limite = System.currentTimeMillis() + timeoutMs;
+        synchronized (progreso) {
+            while (procesadas.get() < objetivo) {
+                long resto = limite - System.currentTimeMillis();
+                if (resto <= 0) {
+                    return false;
+                }
+                try {
+                    progreso.wait(resto);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deja de aceptar entradas, escribe las pendientes y para el hilo de fondo.
+     * @param timeoutMs Espera máxima a que se vacíe la cola.
+     * @return true si no quedó nada por escribir.
+     */
+    public boolean cerrar(long timeoutMs) {
+        cerrando = true;
+        LockSupport.unpark(hilo);
+        try {
+            hilo.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (hilo.isAlive()) {
+            System.err.println("AVISO: se cierra el escritor del historial con " + tamano.get() + " entradas sin escribir.");
+            return false;
+        }
+        return true;
+    }
+
+    // ******************************************************
+    // HILO DE FONDO
+    // ******************************************************
+
+    private void bucle() {
+        List<HistorialEstadoDTO> lote = new ArrayList<>(tamanoLote);
+        while (true) {
+            HistorialEstadoDTO entrada;
+            while (lote.size() < tamanoLote && (entrada = cola.poll()) != null) {
+                lote.add(entrada);
+            }
+            if (!lote.isEmpty()) {
+                tamano.addAndGet(-lote.size());
+                escribir(lote);
+                lote.clear();
+                continue;
+            }
+            if (cerrando) {
+                // Sin reservas pendientes ya no puede llegar nada más (ver encolar)
+                if (tamano.get() == 0) {
+                    return;
+                }
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, intervaloNanos);
+            }
+        }
+    }
+
+    /**
+     * Copia de lo que se va a escribir: el llamante puede seguir modificando sus DTO
+     * (o reutilizarlos) mientras la entrada espera en la cola.
+     */
+    private static HistorialEstadoDTO copia(HistorialEstadoDTO historial) {
+        HistorialEstadoDTO copia = new HistorialEstadoDTO();
+        IncidenciaDTO incidencia = new IncidenciaDTO();
+        incidencia.setId(historial.getIncidencia().getId());
+        copia.setIncidencia(incidencia);
+        copia.setFechaCambio(historial.getFechaCambio());
+        copia.setEstadoAnterior(historial.getEstadoAnterior());
+        copia.setEstadoNuevo(historial.getEstadoNuevo());
+        UsuarioDTO usuario = historial.getUsuario();
+        if (usuario != null) {
+            copia.setUsuario(new UsuarioDTO(usuario.getDni(), usuario.getNombre(), usuario.getApellidos(), null, usuario.getRol()));
+        }
+        return copia;
+    }
+
+    private void escribir(List<HistorialEstadoDTO> lote) {
+        boolean escrito = false;
+        for (int intento = 1; intento <= REINTENTOS && !escrito; intento++) {
+            escrito = guardar(lote);
+            if (!escrito && intento < REINTENTOS) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ESPERA_REINTENTO_MS * intento));
+            }
+        }
+
+        if (escrito) {
+            escritas.add(lote.size());
+            lotes.increment();
+            loteMaximo.accumulateAndGet(lote.size(), Math::max);
+        } else {
+            // Una a una, para no perder las buenas por culpa de una errónea
+            for (HistorialEstadoDTO h : lote) {
+                if (guardar(List.of(h))) {
+                    escritas.increment();
+                } else {
+                    perdidas.increment();
+                    System.err.println("ERROR: Entrada de historial no guardada: incidencia=" + h.getIncidencia().getId()
+                            + ", " + h.getEstadoAnterior() + " -> " + h.getEstadoNuevo() + ", fecha=" + h.getFechaCambio());
+                }
+            }
+        }
+
+        procesadas.addAndGet(lote.size());
+        synchronized (progreso) {
+            progreso.notifyAll();
+        }
+    }
+
+    private boolean guardar(List<HistorialEstadoDTO> lote) {
+        try {
+            return destino.saveLote(lote) > 0;
+        } catch (RuntimeException e) {
+            // El hilo de fondo no puede morir: sin él, la cola no se vacía nunca
+            System.err.println("Error al guardar el historial diferido: " + e);
+            return false;
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(tamano.get(), profundidadMaxima.get(), encoladas.get(), escritas.sum(),
+                perdidas.sum(), rechazadas.sum(), lotes.sum(), loteMaximo.get());
+    }
+
+    /**
+     * Fotografía inmutable de las estadísticas del escritor.
+     */
+    public static final class Stats {
+        private final int profundidad;
+        private final int profundidadMaxima;
+        private final long encoladas;
+        private final long escritas;
+        private final long perdidas;
+        private final long rechazadas;
+        private final long lotes;
+        private final int loteMaximo;
+
+        private Stats(int profundidad, int profundidadMaxima, long encoladas, long escritas,
+                      long perdidas, long rechazadas, long lotes, int loteMaximo) {
+            this.profundidad = profundidad;
+            this.profundidadMaxima = profundidadMaxima;
+            this.encoladas = encoladas;
+            this.escritas = escritas;
+            this.perdidas = perdidas;
+            this.rechazadas = rechazadas;
+            this.lotes = lotes;
+            this.loteMaximo = loteMaximo;
+        }
+
+        /** Entradas en la cola en este momento. */
+        public int getProfundidad() { return profundidad; }
+        public int getProfundidadMaxima() { return profundidadMaxima; }
+        public long getEncoladas() { return encoladas; }
+        public long getEscritas() { return escritas; }
+        public long getPerdidas() { return perdidas; }
+
+        /** Entradas no aceptadas (cola llena o escritor cerrado), que guardó el llamante. */
+        public long getRechazadas() { return rechazadas; }
+        public long getLotes() { return lotes; }
+        public int getLoteMaximo() { return loteMaximo; }
+
+        public double getTamanoMedioLote() {
+            return lotes == 0 ? 0.0 : (double) escritas / lotes;
+        }
+
+        @Override
+        public String toString() {
+            return "EscritorHistorial{cola=" + profundidad + ", colaMaxima=" + profundidadMaxima +
+                    ", encoladas=" + encoladas + ", escritas=" + escritas + ", perdidas=" + perdidas +
+                    ", rechazadas=" + rechazadas + ", lotes=" + lotes +
+                    ", loteMedio=" + String.format("%.1f", getTamanoMedioLote()) + ", loteMaximo=" + loteMaximo + '}';
+        }
+    }
+}
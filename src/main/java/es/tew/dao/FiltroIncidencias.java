@@ -0,0 +1,141 @@
+package es.tew.dao;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Criterios de búsqueda de incidencias. Los criterios vacíos (null o cadena vacía)
+ * no filtran; los demás se combinan con AND en una única consulta parametrizada.
+ */
+public class FiltroIncidencias implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String dniSolicitante;
+    private String dniTecnico;
+    private String estado;
+    private String categoria;
+    private Date fechaDesde;
+    private Date fechaHasta;
+    // Texto libre buscado en el título y la descripción
+    private String texto;
+
+    /**
+     * Filtro de las incidencias de un solicitante.
+     */
+    public static FiltroIncidencias porSolicitante(String dni) {
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        filtro.setDniSolicitante(dni);
+        return filtro;
+    }
+
+    /**
+     * Filtro de las incidencias asignadas a un técnico.
+     */
+    public static FiltroIncidencias porTecnico(String dni) {
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        filtro.setDniTecnico(dni);
+        return filtro;
+    }
+
+    /**
+     * Deja el filtro sin ningún criterio.
+     */
+    public void limpiar() {
+        dniSolicitante = null;
+        dniTecnico = null;
+        estado = null;
+        categoria = null;
+        fechaDesde = null;
+        fechaHasta = null;
+        texto = null;
+    }
+
+    /**
+     * Comienzo del día de fechaDesde (inclusive), o null si no se filtra.
+     */
+    Timestamp getDesde() {
+        if (fechaDesde == null) {
+            return null;
+        }
+        LocalDate dia = fechaDesde.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        return Timestamp.valueOf(dia.atStartOfDay());
+    }
+
+    /**
+     * Primer instante posterior al día de fechaHasta, o null si no se filtra.
+     * Se compara con {@code <} para que el día indicado se incluya completo.
+     */
+    Timestamp getHastaExclusivo() {
+        if (fechaHasta == null) {
+            return null;
+        }
+        LocalDate dia = fechaHasta.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        return Timestamp.valueOf(dia.plusDays(1).atStartOfDay());
+    }
+
+    static boolean informado(String valor) {
+        return valor != null && !valor.isBlank();
+    }
+
+    // --- GETTERS Y SETTERS ---
+
+    public String getDniSolicitante() {
+        return dniSolicitante;
+    }
+
+    public void setDniSolicitante(String dniSolicitante) {
+        this.dniSolicitante = dniSolicitante;
+    }
+
+    public String getDniTecnico() {
+        return dniTecnico;
+    }
+
+    public void setDniTecnico(String dniTecnico) {
+        this.dniTecnico = dniTecnico;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public void setEstado(String estado) {
+        this.estado = estado;
+    }
+
+    public String getCategoria() {
+        return categoria;
+    }
+
+    public void setCategoria(String categoria) {
+        this.categoria = categoria;
+    }
+
+    public Date getFechaDesde() {
+        return fechaDesde;
+    }
+
+    public void setFechaDesde(Date fechaDesde) {
+        this.fechaDesde = fechaDesde;
+    }
+
+    public Date getFechaHasta() {
+        return fechaHasta;
+    }
+
+    public void setFechaHasta(Date fechaHasta) {
+        this.fechaHasta = fechaHasta;
+    }
+
+    public String getTexto() {
+        return texto;
+    }
+
+    public void setTexto(String texto) {
+        this.texto = texto;
+    }
+}
@@ -1,7 +1,10 @@
 package es.tew.dao;
 
 import java.util.List;
+import java.util.stream.Stream;
+
 import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
 
 /**
  * Interfaz de Acceso a Datos (DAO) para la entidad HistorialEstado.
@@ -17,10 +20,29 @@ public interface HistorialEstadoDAO {
     /**
      * Recupera el historial de estados de una incidencia específica.
      * @param idIncidencia ID de la incidencia.
-     * @return Lista de HistorialEstadoDTO, ordenados por fecha ascendente.
+     * @return Lista de HistorialEstadoDTO, ordenados por fecha descendente.
      */
     List<HistorialEstadoDTO> findByIncidenciaId(Long idIncidencia);
 
+    /**
+     * Recupera el historial de una incidencia ya cargada por el llamante.
+     * Las entradas devueltas referencian esa misma instancia, sin volver a consultarla.
+     * @param incidencia Incidencia (con ID) cuyo historial se busca.
+     * @return Lista de HistorialEstadoDTO, ordenados por fecha descendente.
+     */
+    List<HistorialEstadoDTO> findByIncidencia(IncidenciaDTO incidencia);
+
+    /**
+     * Recorre el historial de las incidencias que cumplen el filtro, agrupado por incidencia
+     * y en orden de fecha ascendente (ID_INCIDENCIA, FECHA_CAMBIO), sobre un cursor abierto y
+     * sin cargarlo en una lista. De la incidencia de cada entrada solo se rellena el ID.
+     * El stream tiene prestada una conexión hasta que se cierra o se recorre entero: hay que
+     * abrirlo en un try-with-resources.
+     * @param filtro Criterios sobre la incidencia (los vacíos no filtran).
+     * @return Stream de HistorialEstadoDTO, vacío si la consulta falla.
+     */
+    Stream<HistorialEstadoDTO> stream(FiltroIncidencias filtro);
+
     // **********************************************
     // Operación de Escritura
     // **********************************************
@@ -31,6 +53,15 @@ public interface HistorialEstadoDAO {
      */
     void save(HistorialEstadoDTO historial);
 
-    // NOTA: No se incluyen métodos update, delete ni findById/findAll, 
-    // ya que no se deben permitir la modificación ni la consulta masiva.
+    /**
+     * Registra varios cambios de estado con un executeBatch, en una única transacción.
+     * Dentro de una UnidadDeTrabajo va en la transacción de la unidad: si falla, deshace
+     * solo el lote (hasta un punto de guardado) y la unidad se puede seguir confirmando.
+     * @param lote Entradas a guardar.
+     * @return Número de entradas guardadas: el tamaño del lote, o 0 si falló y se deshizo.
+     */
+    int saveLote(List<HistorialEstadoDTO> lote);
+
+    // NOTA: No se incluyen métodos update, delete ni findById/findAll, ya que no se deben
+    // permitir la modificación ni la consulta masiva en una lista (para eso está stream).
 }
\ No newline at end of file
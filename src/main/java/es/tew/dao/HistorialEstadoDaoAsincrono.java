@@ -0,0 +1,72 @@
+package es.tew.dao;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
+
+/**
+ * HistorialEstadoDAO que escribe en segundo plano a través de un EscritorHistorial.
+ * Se activa con -Dincidencias.historial.asincrono=true (ver JdbcDAOFactory).
+ *
+ * Dentro de una UnidadDeTrabajo la entrada se entrega al escritor solo cuando la
+ * transacción se confirma, así que nunca queda historial de un cambio deshecho. A cambio,
+ * el historial ya no se guarda en la misma transacción que el cambio: si el servidor cae
+ * antes de vaciar la cola, esas entradas se pierden. Las lecturas esperan a que se haya
+ * escrito lo encolado antes, para que una página vea sus propios cambios.
+ *
+ * Si el escritor no acepta la entrada (cola llena o cerrado) se guarda en el hilo que
+ * confirmó, ya fuera de la transacción: las acciones tras confirmar se ejecutan cuando la
+ * unidad ya no está activa, así que destino.save usa su propia conexión.
+ */
+public class HistorialEstadoDaoAsincrono implements HistorialEstadoDAO {
+
+    // Espera máxima de una lectura a que se escriba lo pendiente
+    private static final long ESPERA_LECTURA_MS = 2000;
+
+    private final HistorialEstadoDAO destino;
+    private final EscritorHistorial escritor;
+
+    public HistorialEstadoDaoAsincrono(HistorialEstadoDAO destino, EscritorHistorial escritor) {
+        this.destino = destino;
+        this.escritor = escritor;
+    }
+
+    EscritorHistorial getEscritor() {
+        return escritor;
+    }
+
+    @Override
+    public List<HistorialEstadoDTO> findByIncidenciaId(Long idIncidencia) {
+        escritor.esperarPendientes(ESPERA_LECTURA_MS);
+        return destino.findByIncidenciaId(idIncidencia);
+    }
+
+    @Override
+    public List<HistorialEstadoDTO> findByIncidencia(IncidenciaDTO incidencia) {
+        escritor.esperarPendientes(ESPERA_LECTURA_MS);
+        return destino.findByIncidencia(incidencia);
+    }
+
+    @Override
+    public Stream<HistorialEstadoDTO> stream(FiltroIncidencias filtro) {
+        escritor.esperarPendientes(ESPERA_LECTURA_MS);
+        return destino.stream(filtro);
+    }
+
+    @Override
+    public void save(HistorialEstadoDTO historial) {
+        UnidadDeTrabajo.alConfirmar(() -> {
+            if (!escritor.encolar(historial)) {
+                // Cola llena o escritor cerrado: se guarda en este hilo
+                destino.save(historial);
+            }
+        });
+    }
+
+    @Override
+    public int saveLote(List<HistorialEstadoDTO> lote) {
+        return destino.saveLote(lote);
+    }
+}
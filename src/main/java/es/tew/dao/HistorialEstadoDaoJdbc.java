@@ -3,21 +3,22 @@ package es.tew.dao;
 import es.tew.dto.HistorialEstadoDTO;
 import es.tew.dto.IncidenciaDTO;
 import es.tew.dto.UsuarioDTO;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Implementación de HistorialEstadoDAO utilizando JDBC.
- * Solo implementa la lectura (findByIncidenciaId) y la escritura (save).
+ * Solo implementa la lectura (findByIncidencia/findByIncidenciaId y stream) y la escritura (save).
  */
 public class HistorialEstadoDaoJdbc implements HistorialEstadoDAO {
 
-    private final DAOFactory factory = DAOFactory.getFactory();
-    private final IncidenciaDAO incidenciaDAO = factory.getIncidenciaDAO();
-    private final UsuarioDAO usuarioDAO = factory.getUsuarioDAO();
+    private final IncidenciaDAO incidenciaDAO;
 
     // Nombres de columnas de la tabla HISTORIAL_ESTADO
     private static final String ID = "ID";
@@ -27,38 +28,56 @@ public class HistorialEstadoDaoJdbc implements HistorialEstadoDAO {
     private static final String ESTADO_NUEVO = "ESTADO_NUEVO";
     private static final String DNI_USUARIO = "DNI_USUARIO";
 
+    // Columnas del usuario que hizo el cambio, traídas con el LEFT JOIN sobre USUARIO
+    private static final String NOMBRE = "NOMBRE";
+    private static final String APELLIDOS = "APELLIDOS";
+    private static final String ROL = "ROL";
+
+    // Sentencias SQL del DAO
+    private static final String SQL_FIND_BY_INCIDENCIA =
+            "SELECT h.*, u.NOMBRE, u.APELLIDOS, u.ROL FROM HISTORIAL_ESTADO h LEFT JOIN USUARIO u ON h.DNI_USUARIO = u.DNI WHERE h.ID_INCIDENCIA = ? ORDER BY h.FECHA_CAMBIO DESC";
+    // Para stream: el JOIN sobre INCIDENCIA i es para aplicar el filtro (IncidenciaDaoJdbc.where)
+    private static final String SELECT_STREAM =
+            "SELECT h.*, u.NOMBRE, u.APELLIDOS, u.ROL FROM HISTORIAL_ESTADO h LEFT JOIN USUARIO u ON h.DNI_USUARIO = u.DNI " +
+            "JOIN INCIDENCIA i ON h.ID_INCIDENCIA = i.ID ";
+    private static final String ORDER_BY_STREAM =
+            "ORDER BY h.ID_INCIDENCIA, h.FECHA_CAMBIO";
+    private static final String SQL_INSERT =
+            "INSERT INTO HISTORIAL_ESTADO (ID_INCIDENCIA, FECHA_CAMBIO, ESTADO_ANTERIOR, ESTADO_NUEVO, DNI_USUARIO) VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * @param incidenciaDAO DAO de incidencias, compartido con el resto de la factoría.
+     */
+    public HistorialEstadoDaoJdbc(IncidenciaDAO incidenciaDAO) {
+        this.incidenciaDAO = incidenciaDAO;
+    }
+
     // ******************************************************
     // UTILERÍA: Método para mapear un ResultSet a un HistorialEstadoDTO
     // ******************************************************
     
     /**
-     * Convierte una fila de la tabla HISTORIAL_ESTADO en un objeto HistorialEstadoDTO,
-     * resolviendo las relaciones con IncidenciaDTO y UsuarioDTO.
+     * Convierte una fila de HISTORIAL_ESTADO (con el LEFT JOIN sobre USUARIO) en un
+     * HistorialEstadoDTO. El usuario se construye con las columnas del JOIN y la
+     * incidencia no se vuelve a consultar: se asocia la que ya tiene el llamante.
      * @param rs El ResultSet posicionado en una fila.
+     * @param incidencia Incidencia a la que pertenece el cambio de estado.
      * @return Un HistorialEstadoDTO completo.
      * @throws SQLException Si ocurre un error al acceder a la columna.
      */
-    private HistorialEstadoDTO mapRowToDTO(ResultSet rs) throws SQLException {
+    private HistorialEstadoDTO mapRowToDTO(ResultSet rs, IncidenciaDTO incidencia) throws SQLException {
         HistorialEstadoDTO hist = new HistorialEstadoDTO();
         hist.setId(rs.getLong(ID));
         hist.setFechaCambio(rs.getTimestamp(FECHA_CAMBIO));
         hist.setEstadoAnterior(rs.getString(ESTADO_ANTERIOR));
         hist.setEstadoNuevo(rs.getString(ESTADO_NUEVO));
+        hist.setIncidencia(incidencia);
 
-        // 1. Resolver relación con Incidencia
-        Long idIncidencia = rs.getLong(ID_INCIDENCIA);
-        if (idIncidencia != 0) {
-            // Reutilizamos el IncidenciaDAO para obtener solo el DTO de la incidencia (sin comentarios, etc.)
-            IncidenciaDTO incidencia = incidenciaDAO.findById(idIncidencia);
-            hist.setIncidencia(incidencia);
-        }
-
-        // 2. Resolver relación con Usuario (puede ser NULL si lo hace el sistema, aunque aquí siempre lo asociamos)
+        // El usuario puede ser NULL si el cambio lo hizo el sistema
         String dniUsuario = rs.getString(DNI_USUARIO);
         if (dniUsuario != null) {
-            // Reutilizamos el UsuarioDAO
-            UsuarioDTO usuario = usuarioDAO.findByDni(dniUsuario);
-            hist.setUsuario(usuario);
+            hist.setUsuario(new UsuarioDTO(dniUsuario,
+                    rs.getString(NOMBRE), rs.getString(APELLIDOS), null, rs.getString(ROL)));
         }
 
         return hist;
@@ -70,19 +89,23 @@ public class HistorialEstadoDaoJdbc implements HistorialEstadoDAO {
 
     @Override
     public List<HistorialEstadoDTO> findByIncidenciaId(Long idIncidencia) {
+        IncidenciaDTO incidencia = incidenciaDAO.findById(idIncidencia);
+        if (incidencia == null) {
+            return new ArrayList<>();
+        }
+        return findByIncidencia(incidencia);
+    }
+
+    @Override
+    public List<HistorialEstadoDTO> findByIncidencia(IncidenciaDTO incidencia) {
         List<HistorialEstadoDTO> historiales = new ArrayList<>();
-        String sql = "SELECT h.*, u.NOMBRE, u.APELLIDOS, u.ROL FROM HISTORIAL_ESTADO h LEFT JOIN USUARIO u ON h.DNI_USUARIO = u.DNI WHERE h.ID_INCIDENCIA = ? ORDER BY h.FECHA_CAMBIO DESC";
 
-        // CORRECCIÓN: La conexión NO se incluye en el try-with-resources.
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql)) {
-            ps.setLong(1, idIncidencia);
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_BY_INCIDENCIA)) {
+            ps.setLong(1, incidencia.getId());
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    HistorialEstadoDTO historial = new HistorialEstadoDTO();
-                    historial.setId(rs.getLong("ID"));
-                    // Rellenar el resto de datos...
-                    // (código para mapear el ResultSet a DTO)
-                    historiales.add(historial);
+                    historiales.add(mapRowToDTO(rs, incidencia));
                 }
             }
         } catch (SQLException e) {
@@ -92,29 +115,90 @@ public class HistorialEstadoDaoJdbc implements HistorialEstadoDAO {
         return historiales;
     }
 
+    @Override
+    public Stream<HistorialEstadoDTO> stream(FiltroIncidencias filtro) {
+        List<Object> parametros = new ArrayList<>();
+        String sql = SELECT_STREAM + IncidenciaDaoJdbc.where(filtro, parametros) + ORDER_BY_STREAM;
+        return CursorJdbc.abrir("stream (Historial)", sql, parametros,
+                rs -> mapRowToDTO(rs, soloId(rs.getLong(ID_INCIDENCIA))));
+    }
+
+    private static IncidenciaDTO soloId(long id) {
+        IncidenciaDTO incidencia = new IncidenciaDTO();
+        incidencia.setId(id);
+        return incidencia;
+    }
+
     // ******************************************************
     // 2. OPERACIÓN DE ESCRITURA
     // ******************************************************
 
+    /**
+     * Dentro de una UnidadDeTrabajo la inserción se encola y se envía por lotes.
+     */
     @Override
     public void save(HistorialEstadoDTO historial) {
-        String sql = "INSERT INTO HISTORIAL_ESTADO (ID_INCIDENCIA, FECHA_CAMBIO, ESTADO_ANTERIOR, ESTADO_NUEVO, DNI_USUARIO) VALUES (?, ?, ?, ?, ?)";
-
-        // CORRECCIÓN: La conexión NO se incluye en el try-with-resources para evitar que se cierre.
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql)) {
-            ps.setLong(1, historial.getIncidencia().getId());
-            ps.setTimestamp(2, new java.sql.Timestamp(historial.getFechaCambio().getTime()));
-            ps.setString(3, historial.getEstadoAnterior());
-            ps.setString(4, historial.getEstadoNuevo());
-            if (historial.getUsuario() != null) {
-                ps.setString(5, historial.getUsuario().getDni());
-            } else {
-                ps.setNull(5, java.sql.Types.VARCHAR);
-            }
-            ps.executeUpdate();
+        try {
+            UnidadDeTrabajo.encolar(SQL_INSERT,
+                    historial.getIncidencia().getId(),
+                    new java.sql.Timestamp(historial.getFechaCambio().getTime()),
+                    historial.getEstadoAnterior(),
+                    historial.getEstadoNuevo(),
+                    historial.getUsuario() != null ? historial.getUsuario().getDni() : null);
         } catch (SQLException e) {
             System.err.println("Error al guardar el historial: " + e.getMessage());
+            UnidadDeTrabajo.registrarError(e);
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public int saveLote(List<HistorialEstadoDTO> lote) {
+        if (lote.isEmpty()) {
+            return 0;
+        }
+        boolean deshecho = false;
+        try (Connection con = DAOFactory.getConnection()) {
+            // Dentro de una UnidadDeTrabajo la transacción es suya: el lote solo se deshace a sí mismo
+            Savepoint inicio = null;
+            if (UnidadDeTrabajo.actual() == null) {
+                con.setAutoCommit(false);
+            } else {
+                inicio = con.setSavepoint();
+            }
+            try (PreparedStatement ps = con.prepareStatement(SQL_INSERT)) {
+                for (HistorialEstadoDTO historial : lote) {
+                    ps.setLong(1, historial.getIncidencia().getId());
+                    ps.setTimestamp(2, new java.sql.Timestamp(historial.getFechaCambio().getTime()));
+                    ps.setString(3, historial.getEstadoAnterior());
+                    ps.setString(4, historial.getEstadoNuevo());
+                    if (historial.getUsuario() != null) {
+                        ps.setString(5, historial.getUsuario().getDni());
+                    } else {
+                        ps.setNull(5, java.sql.Types.VARCHAR);
+                    }
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                if (inicio == null) {
+                    con.commit();
+                }
+                return lote.size();
+            } catch (SQLException e) {
+                if (inicio == null) {
+                    con.rollback();
+                } else {
+                    con.rollback(inicio);
+                }
+                deshecho = true;
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al guardar el lote de historial: " + e.getMessage());
+            if (!deshecho) {
+                UnidadDeTrabajo.registrarError(e);
+            }
+            return 0;
+        }
+    }
+}
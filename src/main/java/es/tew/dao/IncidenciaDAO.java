@@ -1,8 +1,13 @@
 package es.tew.dao;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.IncidenciaResumen;
+import es.tew.dto.TiempoResolucionDTO;
 import es.tew.dto.UsuarioDTO;
 
 /**
@@ -37,6 +42,94 @@ public interface IncidenciaDAO {
      */
     List<IncidenciaDTO> findByEstado(String estado);
 
+    /**
+     * Recupera una sola página de incidencias, ordenada y paginada en la base de datos.
+     * Con el orden por defecto (FECHA_CREACION, ID) y un cursor en la página, se lee por
+     * keyset a partir del cursor; en otro caso se usa OFFSET/FETCH.
+     * @param filtro Criterios de búsqueda (los vacíos no filtran).
+     * @param pagina Desplazamiento, tamaño, orden y cursor de la página.
+     * @return Lista de IncidenciaDTO con, como mucho, pagina.getTamano() elementos.
+     */
+    List<IncidenciaDTO> findPagina(FiltroIncidencias filtro, PaginaIncidencias pagina);
+
+    /**
+     * Igual que findPagina, pero lee solo las columnas que muestran los listados (sin la
+     * descripción ni los datos completos de los usuarios).
+     * Además de los campos de findPagina, admite ordenar por "apellidosSolicitante" y
+     * "apellidosTecnico", las propiedades de IncidenciaResumen.
+     * @param filtro Criterios de búsqueda (los vacíos no filtran).
+     * @param pagina Desplazamiento, tamaño, orden y cursor de la página.
+     * @return Lista de IncidenciaResumen con, como mucho, pagina.getTamano() elementos.
+     */
+    List<IncidenciaResumen> findResumenPagina(FiltroIncidencias filtro, PaginaIncidencias pagina);
+
+    /**
+     * Recorre las incidencias que cumplen el filtro, por orden de creación (FECHA_CREACION,
+     * ID), sobre un cursor abierto: cada fila se convierte en IncidenciaDTO cuando se pide,
+     * sin cargar antes la lista, así que sirve para los recorridos de toda la tabla.
+     * El stream tiene prestada una conexión del pool hasta que se cierra o se recorre entero:
+     * hay que abrirlo en un try-with-resources.
+     * @param filtro Criterios de búsqueda (los vacíos no filtran).
+     * @return Stream de IncidenciaDTO, vacío si la consulta falla.
+     */
+    Stream<IncidenciaDTO> stream(FiltroIncidencias filtro);
+
+    /**
+     * Cuenta las incidencias que devolvería findPagina con los mismos filtros.
+     * @param filtro Criterios de búsqueda (los vacíos no filtran).
+     * @return Número total de incidencias.
+     */
+    long count(FiltroIncidencias filtro);
+
+    /**
+     * Cuenta las incidencias agrupadas por estado (una sola consulta GROUP BY).
+     * @return Mapa estado -> número de incidencias. Los estados sin incidencias no aparecen.
+     */
+    Map<String, Long> countByEstado();
+
+    /**
+     * Cuenta las incidencias agrupadas por categoría.
+     * @return Mapa categoría -> número de incidencias.
+     */
+    Map<String, Long> countByCategoria();
+
+    /**
+     * Cuenta las incidencias asignadas a cada técnico.
+     * @return Mapa DNI del técnico -> número de incidencias (sin las que no tienen técnico).
+     */
+    Map<String, Long> countByTecnico();
+
+    /**
+     * Cuenta las incidencias no cerradas asignadas a cada técnico.
+     * @return Mapa DNI del técnico -> número de incidencias abiertas.
+     */
+    Map<String, Long> countAbiertasByTecnico();
+
+    /**
+     * Tiempo de resolución de cada incidencia CERRADA, calculado en una sola consulta:
+     * desde FECHA_CREACION hasta su último paso a CERRADA en el historial.
+     * @return Lista de TiempoResolucionDTO (una por incidencia cerrada con historial).
+     */
+    List<TiempoResolucionDTO> findTiemposResolucion();
+
+    /**
+     * Busca la incidencia no cerrada con la fecha de creación más antigua, sin cargar
+     * las demás: lee la primera de cada estado abierto en el índice por estado y fecha.
+     * @return IncidenciaDTO o null si todas están cerradas.
+     */
+    IncidenciaDTO findMasAntiguaAbierta();
+
+    /**
+     * Recorre las incidencias con ID entre desdeId y hastaId (ambos incluidos), en orden
+     * de ID, con sus comentarios y su historial, y se las pasa al receptor según las lee:
+     * no se guardan en memoria, así que sirve para volcar la tabla entera.
+     * Para reanudar una exportación cortada basta con repetirla desde el último ID recibido + 1.
+     * @return Número de incidencias exportadas.
+     * @throws IOException Si falla el receptor o la BDD (con la SQLException como causa):
+     *         la exportación se corta y no debe darse por completa.
+     */
+    long exportar(long desdeId, long hastaId, ReceptorExportacion receptor) throws IOException;
+
     // **********************************************
     // Operaciones CRUD Básicas
     // **********************************************
@@ -60,6 +153,18 @@ public interface IncidenciaDAO {
      */
     IncidenciaDTO save(IncidenciaDTO incidencia);
 
+    /**
+     * Guarda un lote de incidencias nuevas junto con la entrada inicial del historial de
+     * cada una (estado anterior NULL, estado de la incidencia, fecha de creación y
+     * solicitante), con dos executeBatch en una única transacción.
+     * A diferencia de save, respeta la fecha de creación de cada incidencia.
+     * Dentro de una UnidadDeTrabajo va en la transacción de la unidad: si falla, deshace
+     * solo el lote (hasta un punto de guardado) y la unidad se puede seguir confirmando.
+     * @param lote Incidencias a guardar; se les asigna el ID generado.
+     * @return Número de incidencias guardadas: el tamaño del lote, o 0 si falló y se deshizo.
+     */
+    int saveLote(List<IncidenciaDTO> lote);
+
     /**
      * Actualiza una incidencia existente.
      * @param incidencia IncidenciaDTO con los datos actualizados.
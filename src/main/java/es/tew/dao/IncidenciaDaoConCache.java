@@ -0,0 +1,147 @@
+package es.tew.dao;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.IncidenciaResumen;
+import es.tew.dto.TiempoResolucionDTO;
+import es.tew.dto.UsuarioDTO;
+
+/**
+ * IncidenciaDAO que guarda en una CacheEntidades las búsquedas por ID (la página de
+ * detalle, el historial y los comentarios la vuelven a leer). Se desactiva con
+ * -Dincidencias.cache.activa=false (ver JdbcDAOFactory).
+ *
+ * Las consultas de listados, paginación, recuentos y stream van siempre a la BDD. update y
+ * delete invalidan el ID; save y saveLote no, porque solo crean incidencias nuevas.
+ */
+class IncidenciaDaoConCache implements IncidenciaDAO {
+
+    private final IncidenciaDAO destino;
+    private final CacheEntidades<Long, IncidenciaDTO> cache;
+
+    IncidenciaDaoConCache(IncidenciaDAO destino, CacheEntidades<Long, IncidenciaDTO> cache) {
+        this.destino = destino;
+        this.cache = cache;
+    }
+
+    @Override
+    public IncidenciaDTO findById(Long id) {
+        if (id == null) {
+            return destino.findById(null);
+        }
+        return cache.obtener(id, destino::findById);
+    }
+
+    @Override
+    public List<IncidenciaDTO> findBySolicitanteDni(String dniSolicitante) {
+        return destino.findBySolicitanteDni(dniSolicitante);
+    }
+
+    @Override
+    public List<IncidenciaDTO> findByTecnicoDni(String dniTecnico) {
+        return destino.findByTecnicoDni(dniTecnico);
+    }
+
+    @Override
+    public List<IncidenciaDTO> findByEstado(String estado) {
+        return destino.findByEstado(estado);
+    }
+
+    @Override
+    public List<IncidenciaDTO> findPagina(FiltroIncidencias filtro, PaginaIncidencias pagina) {
+        return destino.findPagina(filtro, pagina);
+    }
+
+    @Override
+    public List<IncidenciaResumen> findResumenPagina(FiltroIncidencias filtro, PaginaIncidencias pagina) {
+        return destino.findResumenPagina(filtro, pagina);
+    }
+
+    @Override
+    public long count(FiltroIncidencias filtro) {
+        return destino.count(filtro);
+    }
+
+    @Override
+    public Map<String, Long> countByEstado() {
+        return destino.countByEstado();
+    }
+
+    @Override
+    public Map<String, Long> countByCategoria() {
+        return destino.countByCategoria();
+    }
+
+    @Override
+    public Map<String, Long> countByTecnico() {
+        return destino.countByTecnico();
+    }
+
+    @Override
+    public Map<String, Long> countAbiertasByTecnico() {
+        return destino.countAbiertasByTecnico();
+    }
+
+    @Override
+    public List<TiempoResolucionDTO> findTiemposResolucion() {
+        return destino.findTiemposResolucion();
+    }
+
+    @Override
+    public IncidenciaDTO findMasAntiguaAbierta() {
+        return destino.findMasAntiguaAbierta();
+    }
+
+    @Override
+    public Stream<IncidenciaDTO> stream(FiltroIncidencias filtro) {
+        return destino.stream(filtro);
+    }
+
+    @Override
+    public long exportar(long desdeId, long hastaId, ReceptorExportacion receptor) throws IOException {
+        return destino.exportar(desdeId, hastaId, receptor);
+    }
+
+    @Override
+    public List<IncidenciaDTO> findAll() {
+        return destino.findAll();
+    }
+
+    @Override
+    public IncidenciaDTO save(IncidenciaDTO incidencia) {
+        // Los null no se guardan en la caché, así que un ID nuevo no puede estar en ella
+        return destino.save(incidencia);
+    }
+
+    @Override
+    public int saveLote(List<IncidenciaDTO> lote) {
+        return destino.saveLote(lote);
+    }
+
+    @Override
+    public void update(IncidenciaDTO incidencia) {
+        destino.update(incidencia);
+        invalidar(incidencia.getId());
+    }
+
+    @Override
+    public void delete(Long id) {
+        destino.delete(id);
+        invalidar(id);
+    }
+
+    @Override
+    public List<UsuarioDTO> findByRol(String rol) {
+        return destino.findByRol(rol);
+    }
+
+    private void invalidar(Long id) {
+        cache.invalidar(id);
+        // Otra vez al confirmar: entre medias otro hilo pudo leer el valor anterior
+        UnidadDeTrabajo.alConfirmar(() -> cache.invalidar(id));
+    }
+}
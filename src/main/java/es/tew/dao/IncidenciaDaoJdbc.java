@@ -1,23 +1,33 @@
 package es.tew.dao;
 
+import es.tew.dto.ComentarioDTO;
+import es.tew.dto.HistorialEstadoDTO;
 import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.IncidenciaResumen;
+import es.tew.dto.TiempoResolucionDTO;
 import es.tew.dto.UsuarioDTO;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Implementación de IncidenciaDAO utilizando JDBC.
  */
 public class IncidenciaDaoJdbc implements IncidenciaDAO {
 
-    private final DAOFactory factory = DAOFactory.getFactory();
-    private final UsuarioDAO usuarioDAO = factory.getUsuarioDAO();
+    private final UsuarioDAO usuarioDAO;
 
     // Nombres de columnas de la tabla INCIDENCIA
     private static final String ID = "ID";
@@ -29,13 +39,110 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
     private static final String DNI_SOLICITANTE = "DNI_SOLICITANTE";
     private static final String DNI_TECNICO = "DNI_TECNICO";
 
+    // Columnas de los usuarios relacionados, con alias para no chocar con las de INCIDENCIA
+    private static final String SOL_NOMBRE = "SOL_NOMBRE";
+    private static final String SOL_APELLIDOS = "SOL_APELLIDOS";
+    private static final String SOL_ROL = "SOL_ROL";
+    private static final String TEC_NOMBRE = "TEC_NOMBRE";
+    private static final String TEC_APELLIDOS = "TEC_APELLIDOS";
+    private static final String TEC_ROL = "TEC_ROL";
+
+    /**
+     * SELECT común a todos los buscadores: trae la incidencia junto con su solicitante
+     * y su técnico en una sola consulta, en lugar de buscar cada usuario por separado.
+     */
+    private static final String SELECT_INCIDENCIA =
+            "SELECT i.*, " +
+            "s.NOMBRE AS SOL_NOMBRE, s.APELLIDOS AS SOL_APELLIDOS, s.ROL AS SOL_ROL, " +
+            "t.NOMBRE AS TEC_NOMBRE, t.APELLIDOS AS TEC_APELLIDOS, t.ROL AS TEC_ROL " +
+            "FROM INCIDENCIA i " +
+            "JOIN USUARIO s ON i.DNI_SOLICITANTE = s.DNI " +
+            "LEFT JOIN USUARIO t ON i.DNI_TECNICO = t.DNI ";
+
+    /**
+     * SELECT de los listados (findResumenPagina): solo las columnas que muestran las tablas.
+     * Mismas tablas y alias que SELECT_INCIDENCIA, para compartir el WHERE y el ORDER BY.
+     */
+    private static final String SELECT_RESUMEN =
+            "SELECT i.ID, i.TITULO, i.ESTADO, i.CATEGORIA, i.FECHA_CREACION, " +
+            "s.NOMBRE AS SOL_NOMBRE, s.APELLIDOS AS SOL_APELLIDOS, " +
+            "t.NOMBRE AS TEC_NOMBRE, t.APELLIDOS AS TEC_APELLIDOS " +
+            "FROM INCIDENCIA i " +
+            "JOIN USUARIO s ON i.DNI_SOLICITANTE = s.DNI " +
+            "LEFT JOIN USUARIO t ON i.DNI_TECNICO = t.DNI ";
+
+    // Sentencias SQL del DAO
+    private static final String SQL_FIND_BY_ID =
+            SELECT_INCIDENCIA + "WHERE i.ID = ?";
+    private static final String SQL_FIND_ALL =
+            SELECT_INCIDENCIA + "ORDER BY i.FECHA_CREACION DESC";
+    private static final String SQL_INSERT =
+            "INSERT INTO INCIDENCIA (TITULO, DESCRIPCION, ESTADO, CATEGORIA, FECHA_CREACION, DNI_SOLICITANTE, DNI_TECNICO) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_INSERT_HISTORIAL_INICIAL =
+            "INSERT INTO HISTORIAL_ESTADO (ID_INCIDENCIA, FECHA_CAMBIO, ESTADO_ANTERIOR, ESTADO_NUEVO, DNI_USUARIO) VALUES (?, ?, NULL, ?, ?)";
+    private static final String SQL_UPDATE =
+            "UPDATE INCIDENCIA SET TITULO = ?, DESCRIPCION = ?, ESTADO = ?, CATEGORIA = ?, DNI_TECNICO = ? WHERE ID = ?";
+    private static final String SQL_DELETE =
+            "DELETE FROM INCIDENCIA WHERE ID = ?";
+    private static final String SQL_FIND_BY_SOLICITANTE =
+            SELECT_INCIDENCIA + "WHERE i.DNI_SOLICITANTE = ? ORDER BY i.FECHA_CREACION DESC";
+    private static final String SQL_FIND_BY_TECNICO =
+            SELECT_INCIDENCIA + "WHERE i.DNI_TECNICO = ? ORDER BY i.FECHA_CREACION DESC";
+    private static final String SQL_FIND_BY_ESTADO =
+            SELECT_INCIDENCIA + "WHERE i.ESTADO = ? ORDER BY i.FECHA_CREACION DESC";
+    private static final String SQL_COUNT_BY_ESTADO =
+            "SELECT ESTADO, COUNT(*) FROM INCIDENCIA GROUP BY ESTADO";
+    private static final String SQL_COUNT_BY_CATEGORIA =
+            "SELECT CATEGORIA, COUNT(*) FROM INCIDENCIA GROUP BY CATEGORIA";
+    private static final String SQL_COUNT_BY_TECNICO =
+            "SELECT DNI_TECNICO, COUNT(*) FROM INCIDENCIA GROUP BY DNI_TECNICO";
+    private static final String SQL_COUNT_ABIERTAS_BY_TECNICO =
+            "SELECT DNI_TECNICO, COUNT(*) FROM INCIDENCIA " +
+            "WHERE DNI_TECNICO IS NOT NULL AND ESTADO <> 'CERRADA' GROUP BY DNI_TECNICO";
+    // Si una incidencia se reabrió, cuenta hasta su último cierre. Las entradas iniciales
+    // (ESTADO_ANTERIOR NULL) no son cierres: las de incidencias importadas ya cerradas no tienen duración
+    private static final String SQL_TIEMPOS_RESOLUCION =
+            "SELECT i.CATEGORIA, i.DNI_TECNICO, i.FECHA_CREACION, MAX(h.FECHA_CAMBIO) AS FECHA_CIERRE " +
+            "FROM INCIDENCIA i JOIN HISTORIAL_ESTADO h ON h.ID_INCIDENCIA = i.ID " +
+            "WHERE i.ESTADO = 'CERRADA' AND h.ESTADO_NUEVO = 'CERRADA' AND h.ESTADO_ANTERIOR IS NOT NULL " +
+            "GROUP BY i.ID, i.CATEGORIA, i.DNI_TECNICO, i.FECHA_CREACION";
+    // ORDER BY con las columnas del índice, tal cual: si no, HSQLDB ordena todas las del estado
+    private static final String SQL_FIND_MAS_ANTIGUA_BY_ESTADO =
+            SELECT_INCIDENCIA + "WHERE i.ESTADO = ? ORDER BY i.ESTADO, i.FECHA_CREACION FETCH FIRST 1 ROWS ONLY";
+    // Estados no cerrados que admite el CHECK de la tabla
+    private static final List<String> ESTADOS_ABIERTOS = IncidenciaDTO.ESTADOS.stream()
+            .filter(estado -> !IncidenciaDTO.ESTADO_CERRADA.equals(estado))
+            .collect(Collectors.toList());
+
+    // Exportación (ver exportar): un bloque de incidencias por vuelta, con sus comentarios
+    // e historial leídos en el orden de sus índices para recorrerlos a la par
+    private static final String SQL_EXPORTAR_FIN_BLOQUE =
+            "SELECT ID FROM INCIDENCIA WHERE ID BETWEEN ? AND ? ORDER BY ID OFFSET ? ROWS FETCH NEXT 1 ROWS ONLY";
+    private static final String SQL_EXPORTAR_INCIDENCIAS =
+            SELECT_INCIDENCIA + "WHERE i.ID BETWEEN ? AND ? ORDER BY i.ID";
+    private static final String SQL_EXPORTAR_COMENTARIOS =
+            "SELECT ID, ID_INCIDENCIA, DNI_AUTOR, TEXTO, FECHA FROM COMENTARIO " +
+            "WHERE ID_INCIDENCIA BETWEEN ? AND ? ORDER BY ID_INCIDENCIA, FECHA";
+    private static final String SQL_EXPORTAR_HISTORIAL =
+            "SELECT ID, ID_INCIDENCIA, DNI_USUARIO, ESTADO_ANTERIOR, ESTADO_NUEVO, FECHA_CAMBIO FROM HISTORIAL_ESTADO " +
+            "WHERE ID_INCIDENCIA BETWEEN ? AND ? ORDER BY ID_INCIDENCIA, FECHA_CAMBIO";
+    private static final int EXPORTACION_BLOQUE = Integer.getInteger("incidencias.exportacion.bloque", 1000);
+    private static final int EXPORTACION_FETCH_SIZE = Integer.getInteger("incidencias.exportacion.fetchSize", 500);
+
+    /**
+     * @param usuarioDAO DAO de usuarios, compartido con el resto de la factoría.
+     */
+    public IncidenciaDaoJdbc(UsuarioDAO usuarioDAO) {
+        this.usuarioDAO = usuarioDAO;
+    }
+
     // ******************************************************
     // UTILERÍA: Método para mapear un ResultSet a un IncidenciaDTO
     // ******************************************************
 
     /**
-     * Convierte una fila de la tabla INCIDENCIA en un objeto IncidenciaDTO,
-     * resolviendo las relaciones con UsuarioDTO.
+     * Convierte una fila de SELECT_INCIDENCIA en un objeto IncidenciaDTO,
+     * construyendo el solicitante y el técnico con las columnas de la propia fila.
      * @param rs El ResultSet posicionado en una fila.
      * @return Un IncidenciaDTO completo.
      * @throws SQLException Si ocurre un error al acceder a la columna.
@@ -49,20 +156,18 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
         inc.setEstado(rs.getString(ESTADO));
         inc.setCategoria(rs.getString(CATEGORIA));
 
-        // 1. Resolver relación con Solicitante
+        // 1. Solicitante (siempre presente por el JOIN)
         String dniSolicitante = rs.getString(DNI_SOLICITANTE);
         if (dniSolicitante != null) {
-            // Reutilizamos el UsuarioDAO para obtener el DTO completo del solicitante
-            UsuarioDTO solicitante = usuarioDAO.findByDni(dniSolicitante);
-            inc.setSolicitante(solicitante);
+            inc.setSolicitante(new UsuarioDTO(dniSolicitante,
+                    rs.getString(SOL_NOMBRE), rs.getString(SOL_APELLIDOS), null, rs.getString(SOL_ROL)));
         }
 
-        // 2. Resolver relación con Técnico (puede ser NULL)
+        // 2. Técnico (puede ser NULL, de ahí el LEFT JOIN)
         String dniTecnico = rs.getString(DNI_TECNICO);
         if (dniTecnico != null) {
-            // Reutilizamos el UsuarioDAO para obtener el DTO completo del técnico
-            UsuarioDTO tecnico = usuarioDAO.findByDni(dniTecnico);
-            inc.setTecnico(tecnico);
+            inc.setTecnico(new UsuarioDTO(dniTecnico,
+                    rs.getString(TEC_NOMBRE), rs.getString(TEC_APELLIDOS), null, rs.getString(TEC_ROL)));
         }
 
         return inc;
@@ -74,10 +179,8 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
 
     @Override
     public IncidenciaDTO findById(Long id) {
-        String sql = "SELECT * FROM INCIDENCIA WHERE ID = ?";
-
         try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_BY_ID)) {
 
             ps.setLong(1, id);
 
@@ -95,10 +198,9 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
     @Override
     public List<IncidenciaDTO> findAll() {
         List<IncidenciaDTO> incidencias = new ArrayList<>();
-        String sql = "SELECT * FROM INCIDENCIA ORDER BY FECHA_CREACION DESC";
 
         try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql);
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_ALL);
              ResultSet rs = ps.executeQuery()) {
 
             while (rs.next()) {
@@ -113,9 +215,9 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
     @Override
     public IncidenciaDTO save(IncidenciaDTO incidencia) {
         // CORRECCIÓN: Se ha corregido el nombre de la columna "DNI_SOLICITANTER" a "DNI_SOLICITANTE"
-        String sql = "INSERT INTO INCIDENCIA (TITULO, DESCRIPCION, ESTADO, CATEGORIA, FECHA_CREACION, DNI_SOLICITANTE, DNI_TECNICO) VALUES (?, ?, ?, ?, ?, ?, ?)";
         
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_INSERT, Statement.RETURN_GENERATED_KEYS)) {
             
             ps.setString(1, incidencia.getTitulo());
             ps.setString(2, incidencia.getDescripcion());
@@ -142,6 +244,7 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
 
         } catch (SQLException e) {
             System.err.println("Error al guardar la incidencia: " + e.getMessage());
+            UnidadDeTrabajo.registrarError(e);
             e.printStackTrace();
         }
         
@@ -151,46 +254,118 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
 
 
     @Override
-    public void update(IncidenciaDTO incidencia) {
-        // Se puede actualizar todo menos ID, Fecha de Creación y Solicitante.
-        String sql = "UPDATE INCIDENCIA SET TITULO = ?, DESCRIPCION = ?, ESTADO = ?, CATEGORIA = ?, DNI_TECNICO = ? WHERE ID = ?";
-
-        try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-
-            ps.setString(1, incidencia.getTitulo());
-            ps.setString(2, incidencia.getDescripcion());
-            ps.setString(3, incidencia.getEstado());
-            ps.setString(4, incidencia.getCategoria());
-            
-            // DNI_TECNICO puede ser NULL
-            if (incidencia.getTecnico() != null) {
-                ps.setString(5, incidencia.getTecnico().getDni());
+    public int saveLote(List<IncidenciaDTO> lote) {
+        if (lote.isEmpty()) {
+            return 0;
+        }
+        boolean deshecho = false;
+        try (Connection con = DAOFactory.getConnection()) {
+            // Dentro de una UnidadDeTrabajo la transacción es suya: el lote solo se deshace a sí mismo
+            Savepoint inicio = null;
+            if (UnidadDeTrabajo.actual() == null) {
+                con.setAutoCommit(false);
             } else {
-                ps.setNull(5, java.sql.Types.VARCHAR);
+                inicio = con.setSavepoint();
             }
-            
-            ps.setLong(6, incidencia.getId()); // Condición WHERE
+            try (PreparedStatement ps = con.prepareStatement(SQL_INSERT, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement psHist = con.prepareStatement(SQL_INSERT_HISTORIAL_INICIAL)) {
+
+                // 1. Incidencias
+                for (IncidenciaDTO incidencia : lote) {
+                    if (incidencia.getFechaCreacion() == null) {
+                        incidencia.setFechaCreacion(new Timestamp(System.currentTimeMillis()));
+                    }
+                    ps.setString(1, incidencia.getTitulo());
+                    ps.setString(2, incidencia.getDescripcion());
+                    ps.setString(3, incidencia.getEstado());
+                    ps.setString(4, incidencia.getCategoria());
+                    ps.setTimestamp(5, incidencia.getFechaCreacion());
+                    ps.setString(6, incidencia.getSolicitante().getDni());
+                    if (incidencia.getTecnico() != null) {
+                        ps.setString(7, incidencia.getTecnico().getDni());
+                    } else {
+                        ps.setNull(7, java.sql.Types.VARCHAR);
+                    }
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                // Las claves generadas llegan en el mismo orden que las filas del lote
+                try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                    for (IncidenciaDTO incidencia : lote) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Error al guardar el lote, faltan IDs generados.");
+                        }
+                        incidencia.setId(generatedKeys.getLong(1));
+                    }
+                }
 
-            ps.executeUpdate();
+                // 2. Entrada inicial del historial de cada incidencia
+                for (IncidenciaDTO incidencia : lote) {
+                    psHist.setLong(1, incidencia.getId());
+                    psHist.setTimestamp(2, incidencia.getFechaCreacion());
+                    psHist.setString(3, incidencia.getEstado());
+                    psHist.setString(4, incidencia.getSolicitante().getDni());
+                    psHist.addBatch();
+                }
+                psHist.executeBatch();
 
+                if (inicio == null) {
+                    con.commit();
+                }
+                return lote.size();
+            } catch (SQLException e) {
+                for (IncidenciaDTO incidencia : lote) {
+                    incidencia.setId(null);
+                }
+                if (inicio == null) {
+                    con.rollback();
+                } else {
+                    con.rollback(inicio);
+                }
+                deshecho = true;
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al guardar el lote de incidencias: " + e.getMessage());
+            if (!deshecho) {
+                UnidadDeTrabajo.registrarError(e);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Dentro de una UnidadDeTrabajo la sentencia se encola y se envía por lotes.
+     */
+    @Override
+    public void update(IncidenciaDTO incidencia) {
+        // Se puede actualizar todo menos ID, Fecha de Creación y Solicitante.
+        try {
+            UnidadDeTrabajo.encolar(SQL_UPDATE,
+                    incidencia.getTitulo(),
+                    incidencia.getDescripcion(),
+                    incidencia.getEstado(),
+                    incidencia.getCategoria(),
+                    incidencia.getTecnico() != null ? incidencia.getTecnico().getDni() : null, // DNI_TECNICO puede ser NULL
+                    incidencia.getId()); // Condición WHERE
         } catch (SQLException e) {
             System.err.println("Error al actualizar incidencia: " + e.getMessage());
+            UnidadDeTrabajo.registrarError(e);
         }
     }
 
     @Override
     public void delete(Long id) {
-        String sql = "DELETE FROM INCIDENCIA WHERE ID = ?";
-
         try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+             PreparedStatement ps = con.prepareStatement(SQL_DELETE)) {
 
             ps.setLong(1, id);
             ps.executeUpdate();
             
         } catch (SQLException e) {
             System.err.println("Error al eliminar incidencia: " + e.getMessage());
+            UnidadDeTrabajo.registrarError(e);
             // NOTA: Una incidencia no podrá eliminarse si tiene COMENTARIOS o HISTORIAL asociados
             // debido a las claves foráneas. Deberías eliminar esos registros primero.
         }
@@ -203,10 +378,9 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
     @Override
     public List<IncidenciaDTO> findBySolicitanteDni(String dniSolicitante) {
         List<IncidenciaDTO> incidencias = new ArrayList<>();
-        String sql = "SELECT * FROM INCIDENCIA WHERE DNI_SOLICITANTE = ? ORDER BY FECHA_CREACION DESC";
 
         try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_BY_SOLICITANTE)) {
 
             ps.setString(1, dniSolicitante);
             
@@ -225,10 +399,9 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
     public List<IncidenciaDTO> findByTecnicoDni(String dniTecnico) {
         List<IncidenciaDTO> incidencias = new ArrayList<>();
         // Un técnico puede ver las que tiene asignadas y las que ya cerró
-        String sql = "SELECT * FROM INCIDENCIA WHERE DNI_TECNICO = ? ORDER BY FECHA_CREACION DESC";
 
         try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_BY_TECNICO)) {
 
             ps.setString(1, dniTecnico);
             
@@ -246,10 +419,9 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
     @Override
     public List<IncidenciaDTO> findByEstado(String estado) {
         List<IncidenciaDTO> incidencias = new ArrayList<>();
-        String sql = "SELECT * FROM INCIDENCIA WHERE ESTADO = ? ORDER BY FECHA_CREACION DESC";
 
         try (Connection con = DAOFactory.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_BY_ESTADO)) {
 
             ps.setString(1, estado);
             
@@ -263,4 +435,426 @@ public class IncidenciaDaoJdbc implements IncidenciaDAO {
         }
         return incidencias;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Stream<IncidenciaDTO> stream(FiltroIncidencias filtro) {
+        List<Object> parametros = new ArrayList<>();
+        String sql = SELECT_INCIDENCIA + where(filtro, parametros) + "ORDER BY i.FECHA_CREACION, i.ID";
+        return CursorJdbc.abrir("stream", sql, parametros, this::mapRowToDTO);
+    }
+
+    // ******************************************************
+    // 3. RECUENTOS AGRUPADOS
+    // ******************************************************
+
+    @Override
+    public Map<String, Long> countByEstado() {
+        return contarAgrupado(SQL_COUNT_BY_ESTADO);
+    }
+
+    @Override
+    public Map<String, Long> countByCategoria() {
+        return contarAgrupado(SQL_COUNT_BY_CATEGORIA);
+    }
+
+    @Override
+    public Map<String, Long> countByTecnico() {
+        return contarAgrupado(SQL_COUNT_BY_TECNICO);
+    }
+
+    @Override
+    public Map<String, Long> countAbiertasByTecnico() {
+        return contarAgrupado(SQL_COUNT_ABIERTAS_BY_TECNICO);
+    }
+
+    @Override
+    public List<TiempoResolucionDTO> findTiemposResolucion() {
+        List<TiempoResolucionDTO> tiempos = new ArrayList<>();
+
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_TIEMPOS_RESOLUCION);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                long milis = rs.getTimestamp("FECHA_CIERRE").getTime() - rs.getTimestamp(FECHA_CREACION).getTime();
+                tiempos.add(new TiempoResolucionDTO(rs.getString(CATEGORIA), rs.getString(DNI_TECNICO),
+                        Math.max(0, milis / 1000)));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error en findTiemposResolucion: " + e.getMessage());
+        }
+        return tiempos;
+    }
+
+    @Override
+    public IncidenciaDTO findMasAntiguaAbierta() {
+        // La primera de cada estado abierto es una búsqueda en el índice (ESTADO, FECHA_CREACION).
+        // Con un solo WHERE ESTADO <> 'CERRADA' habría que recorrer todas las cerradas más antiguas
+        IncidenciaDTO masAntigua = null;
+
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_MAS_ANTIGUA_BY_ESTADO)) {
+
+            for (String estado : ESTADOS_ABIERTOS) {
+                ps.setString(1, estado);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        IncidenciaDTO inc = mapRowToDTO(rs);
+                        if (masAntigua == null || inc.getFechaCreacion().before(masAntigua.getFechaCreacion())) {
+                            masAntigua = inc;
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error en findMasAntiguaAbierta: " + e.getMessage());
+        }
+        return masAntigua;
+    }
+
+    // ******************************************************
+    // 4. EXPORTACIÓN
+    // ******************************************************
+
+    /**
+     * Lee las incidencias por bloques de EXPORTACION_BLOQUE IDs consecutivos, cada uno con
+     * una conexión del pool: la exportación no retiene una conexión durante toda la descarga
+     * y, aunque el driver cargue entero cada ResultSet (el HSQLDB embebido lo hace), en
+     * memoria nunca hay más de un bloque. Dentro del bloque, incidencias, comentarios e
+     * historial son tres cursores de solo avance ordenados por incidencia que se recorren
+     * a la par, sin consultas por fila.
+     */
+    @Override
+    public long exportar(long desdeId, long hastaId, ReceptorExportacion receptor) throws IOException {
+        long exportadas = 0;
+        long desde = desdeId;
+        // Los ID son INTEGER: un rango abierto (hasta Long.MAX_VALUE) se recorta
+        hastaId = Math.min(hastaId, Integer.MAX_VALUE);
+
+        try {
+            while (desde <= hastaId) {
+                try (Connection con = DAOFactory.getConnection()) {
+                    long fin = finDeBloque(con, desde, hastaId);
+                    exportadas += exportarBloque(con, desde, fin, receptor);
+                    if (fin >= hastaId) {
+                        break;
+                    }
+                    desde = fin + 1;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error en exportar (desde el ID " + desde + "): " + e.getMessage());
+            throw new IOException("Error de BDD al exportar desde el ID " + desde, e);
+        }
+        return exportadas;
+    }
+
+    /**
+     * ID de la última incidencia del bloque que empieza en desde, o hastaId si quedan menos
+     * de EXPORTACION_BLOQUE.
+     */
+    private long finDeBloque(Connection con, long desde, long hastaId) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(SQL_EXPORTAR_FIN_BLOQUE)) {
+            ps.setLong(1, desde);
+            ps.setLong(2, hastaId);
+            ps.setInt(3, EXPORTACION_BLOQUE - 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : hastaId;
+            }
+        }
+    }
+
+    private long exportarBloque(Connection con, long desde, long fin, ReceptorExportacion receptor)
+            throws SQLException, IOException {
+        long exportadas = 0;
+
+        try (PreparedStatement psInc = cursor(con, SQL_EXPORTAR_INCIDENCIAS, desde, fin);
+             PreparedStatement psCom = cursor(con, SQL_EXPORTAR_COMENTARIOS, desde, fin);
+             PreparedStatement psHis = cursor(con, SQL_EXPORTAR_HISTORIAL, desde, fin);
+             ResultSet incidencias = psInc.executeQuery();
+             ResultSet comentarios = psCom.executeQuery();
+             ResultSet historial = psHis.executeQuery()) {
+
+            boolean hayComentario = comentarios.next();
+            boolean hayCambio = historial.next();
+
+            while (incidencias.next()) {
+                IncidenciaDTO inc = mapRowToDTO(incidencias);
+                long id = inc.getId();
+                receptor.incidencia(inc);
+
+                // Se saltan las filas de una incidencia que no ha salido (creada mientras se leía el bloque)
+                while (hayComentario && comentarios.getLong("ID_INCIDENCIA") < id) {
+                    hayComentario = comentarios.next();
+                }
+                while (hayCambio && historial.getLong("ID_INCIDENCIA") < id) {
+                    hayCambio = historial.next();
+                }
+                while (hayComentario && comentarios.getLong("ID_INCIDENCIA") == id) {
+                    ComentarioDTO c = new ComentarioDTO();
+                    c.setId(comentarios.getLong("ID"));
+                    c.setTexto(comentarios.getString("TEXTO"));
+                    c.setFecha(comentarios.getTimestamp("FECHA"));
+                    c.setAutor(soloDni(comentarios.getString("DNI_AUTOR")));
+                    c.setIncidencia(inc);
+                    receptor.comentario(c);
+                    hayComentario = comentarios.next();
+                }
+                while (hayCambio && historial.getLong("ID_INCIDENCIA") == id) {
+                    HistorialEstadoDTO h = new HistorialEstadoDTO();
+                    h.setId(historial.getLong("ID"));
+                    h.setFechaCambio(historial.getTimestamp("FECHA_CAMBIO"));
+                    h.setEstadoAnterior(historial.getString("ESTADO_ANTERIOR"));
+                    h.setEstadoNuevo(historial.getString("ESTADO_NUEVO"));
+                    h.setUsuario(soloDni(historial.getString("DNI_USUARIO")));
+                    h.setIncidencia(inc);
+                    receptor.cambioEstado(h);
+                    hayCambio = historial.next();
+                }
+
+                receptor.finIncidencia(inc);
+                exportadas++;
+            }
+        }
+        return exportadas;
+    }
+
+    /**
+     * Sentencia de solo avance para un rango de IDs. No pasa por la caché de sentencias del
+     * pool, así que el fetch size no se queda en una sentencia compartida.
+     */
+    private static PreparedStatement cursor(Connection con, String sql, long desde, long fin) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(EXPORTACION_FETCH_SIZE);
+        ps.setLong(1, desde);
+        ps.setLong(2, fin);
+        return ps;
+    }
+
+    private static UsuarioDTO soloDni(String dni) {
+        return dni != null ? new UsuarioDTO(dni, null, null, null, null) : null;
+    }
+
+    /**
+     * Ejecuta un SELECT clave, COUNT(*) ... GROUP BY clave y lo devuelve como mapa.
+     * Las filas con clave NULL se descartan.
+     */
+    private Map<String, Long> contarAgrupado(String sql) {
+        Map<String, Long> conteo = new HashMap<>();
+
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                String clave = rs.getString(1);
+                if (clave != null) {
+                    conteo.put(clave, rs.getLong(2));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error en recuento agrupado: " + e.getMessage());
+        }
+        return conteo;
+    }
+
+    // ******************************************************
+    // 5. PAGINACIÓN EN BASE DE DATOS
+    // ******************************************************
+
+    /**
+     * Columnas por las que se permite ordenar, indexadas por la propiedad de IncidenciaDTO
+     * que usa la vista. Cualquier otro campo se ignora (nunca se concatena al SQL).
+     */
+    private static final Map<String, String> COLUMNAS_ORDEN = Map.of(
+            "id", "i.ID",
+            "titulo", "i.TITULO",
+            "estado", "i.ESTADO",
+            "categoria", "i.CATEGORIA",
+            "solicitante.apellidos", "s.APELLIDOS",
+            "tecnico.apellidos", "t.APELLIDOS",
+            // Las mismas columnas con los nombres de IncidenciaResumen
+            "apellidosSolicitante", "s.APELLIDOS",
+            "apellidosTecnico", "t.APELLIDOS",
+            PaginaIncidencias.ORDEN_FECHA_CREACION, "i.FECHA_CREACION");
+
+    @Override
+    public List<IncidenciaDTO> findPagina(FiltroIncidencias filtro, PaginaIncidencias pagina) {
+        List<IncidenciaDTO> incidencias = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        String sql = sqlPagina(filtro, pagina, parametros);
+
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            for (int i = 0; i < parametros.size(); i++) {
+                ps.setObject(i + 1, parametros.get(i));
+            }
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    incidencias.add(mapRowToDTO(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error en findPagina: " + e.getMessage());
+        }
+        return incidencias;
+    }
+
+    @Override
+    public List<IncidenciaResumen> findResumenPagina(FiltroIncidencias filtro, PaginaIncidencias pagina) {
+        List<IncidenciaResumen> resumenes = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        String sql = sqlPagina(SELECT_RESUMEN, filtro, pagina, parametros);
+
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            for (int i = 0; i < parametros.size(); i++) {
+                ps.setObject(i + 1, parametros.get(i));
+            }
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    resumenes.add(new IncidenciaResumen(rs.getLong(ID), rs.getString(TITULO),
+                            rs.getString(ESTADO), rs.getString(CATEGORIA), rs.getTimestamp(FECHA_CREACION),
+                            rs.getString(SOL_NOMBRE), rs.getString(SOL_APELLIDOS),
+                            rs.getString(TEC_NOMBRE), rs.getString(TEC_APELLIDOS)));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error en findResumenPagina: " + e.getMessage());
+        }
+        return resumenes;
+    }
+
+    @Override
+    public long count(FiltroIncidencias filtro) {
+        List<Object> parametros = new ArrayList<>();
+        String sql = sqlCount(filtro, parametros);
+
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            for (int i = 0; i < parametros.size(); i++) {
+                ps.setObject(i + 1, parametros.get(i));
+            }
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error en count: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * SQL de findPagina para el filtro y la página dados; añade a parametros sus valores en orden.
+     */
+    static String sqlPagina(FiltroIncidencias filtro, PaginaIncidencias pagina, List<Object> parametros) {
+        return sqlPagina(SELECT_INCIDENCIA, filtro, pagina, parametros);
+    }
+
+    /**
+     * SQL de una página con el SELECT dado (SELECT_INCIDENCIA o SELECT_RESUMEN).
+     */
+    private static String sqlPagina(String select, FiltroIncidencias filtro, PaginaIncidencias pagina,
+            List<Object> parametros) {
+        StringBuilder sql = new StringBuilder(select);
+        sql.append(where(filtro, parametros));
+
+        String sentido = pagina.isAscendente() ? "ASC" : "DESC";
+        if (pagina.tieneCursor()) {
+            // Keyset: continuar justo después de la última fila de la página anterior.
+            // El rango sobre FECHA_CREACION va aparte del OR para que pueda usar el índice.
+            String comparador = pagina.isAscendente() ? ">" : "<";
+            sql.append(parametros.isEmpty() ? "WHERE " : "AND ")
+               .append("i.FECHA_CREACION ").append(comparador).append("= ? ")
+               .append("AND (i.FECHA_CREACION ").append(comparador).append(" ? OR i.ID ")
+               .append(comparador).append(" ?) ");
+            parametros.add(pagina.getCursorFecha());
+            parametros.add(pagina.getCursorFecha());
+            parametros.add(pagina.getCursorId());
+        }
+
+        String columna = COLUMNAS_ORDEN.getOrDefault(pagina.getCampoOrden(), "i.FECHA_CREACION");
+        // El ID desempata filas con el mismo valor para que el orden sea estable entre páginas
+        sql.append("ORDER BY ").append(columna).append(' ').append(sentido)
+           .append(", i.ID ").append(sentido).append(' ');
+
+        if (!pagina.tieneCursor()) {
+            sql.append("OFFSET ? ROWS ");
+            parametros.add(pagina.getDesplazamiento());
+        }
+        sql.append("FETCH NEXT ? ROWS ONLY");
+        parametros.add(pagina.getTamano());
+        return sql.toString();
+    }
+
+    /**
+     * SQL de count para el filtro dado; añade a parametros sus valores en orden.
+     */
+    static String sqlCount(FiltroIncidencias filtro, List<Object> parametros) {
+        return "SELECT COUNT(*) FROM INCIDENCIA i " + where(filtro, parametros);
+    }
+
+    /**
+     * Construye la cláusula WHERE del filtro y añade sus parámetros en el mismo orden.
+     * Solo se concatenan nombres de columna fijos; los valores van siempre como parámetros.
+     * Las columnas llevan el alias i de INCIDENCIA: los stream de comentarios e historial
+     * la usan también, con un JOIN sobre INCIDENCIA i.
+     * @return Cláusula WHERE (con espacio final) o cadena vacía si no hay criterios.
+     */
+    static String where(FiltroIncidencias filtro, List<Object> parametros) {
+        List<String> condiciones = new ArrayList<>();
+        if (filtro != null) {
+            if (FiltroIncidencias.informado(filtro.getDniSolicitante())) {
+                condiciones.add("i.DNI_SOLICITANTE = ?");
+                parametros.add(filtro.getDniSolicitante());
+            }
+            if (FiltroIncidencias.informado(filtro.getDniTecnico())) {
+                condiciones.add("i.DNI_TECNICO = ?");
+                parametros.add(filtro.getDniTecnico());
+            }
+            if (FiltroIncidencias.informado(filtro.getEstado())) {
+                condiciones.add("i.ESTADO = ?");
+                parametros.add(filtro.getEstado());
+            }
+            if (FiltroIncidencias.informado(filtro.getCategoria())) {
+                condiciones.add("i.CATEGORIA = ?");
+                parametros.add(filtro.getCategoria());
+            }
+            if (filtro.getDesde() != null) {
+                condiciones.add("i.FECHA_CREACION >= ?");
+                parametros.add(filtro.getDesde());
+            }
+            if (filtro.getHastaExclusivo() != null) {
+                condiciones.add("i.FECHA_CREACION < ?");
+                parametros.add(filtro.getHastaExclusivo());
+            }
+            if (FiltroIncidencias.informado(filtro.getTexto())) {
+                condiciones.add("(LOWER(i.TITULO) LIKE ? ESCAPE '\\' OR LOWER(i.DESCRIPCION) LIKE ? ESCAPE '\\')");
+                String patron = "%" + escaparLike(filtro.getTexto().trim().toLowerCase()) + "%";
+                parametros.add(patron);
+                parametros.add(patron);
+            }
+        }
+        return condiciones.isEmpty() ? "" : "WHERE " + String.join(" AND ", condiciones) + " ";
+    }
+
+    /**
+     * Escapa los comodines de LIKE para que el texto del usuario se busque literalmente.
+     */
+    private static String escaparLike(String texto) {
+        return texto.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    @Override
+    public List<UsuarioDTO> findByRol(String rol) {
+        return usuarioDAO.findByRol(rol);
+    }
+}
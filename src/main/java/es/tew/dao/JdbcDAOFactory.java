@@ -1,35 +1,90 @@
 package es.tew.dao;
 
+import java.util.List;
+
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+
 /**
  * Implementación concreta de DAOFactory utilizando JDBC.
+ * Construye cada DAO una sola vez y le pasa explícitamente los DAOs de los que depende.
  */
 public class JdbcDAOFactory extends DAOFactory {
 
+    // Escritura diferida del historial (desactivada por defecto)
+    private static final boolean HISTORIAL_ASINCRONO = Boolean.getBoolean("incidencias.historial.asincrono");
+    private static final int HISTORIAL_CAPACIDAD = Integer.getInteger("incidencias.historial.capacidad", 10000);
+    private static final int HISTORIAL_LOTE = Integer.getInteger("incidencias.historial.lote", 200);
+    private static final long HISTORIAL_INTERVALO_MS = Long.getLong("incidencias.historial.intervaloMs", 100L);
+
+    // Caché de lectura de usuarios por DNI e incidencias por ID (activada por defecto)
+    private static final boolean CACHE_ACTIVA =
+            Boolean.parseBoolean(System.getProperty("incidencias.cache.activa", "true"));
+    private static final int CACHE_USUARIOS_MAX = Integer.getInteger("incidencias.cache.usuarios.max", 1000);
+    private static final int CACHE_INCIDENCIAS_MAX = Integer.getInteger("incidencias.cache.incidencias.max", 5000);
+    private static final long CACHE_TTL_MS = Long.getLong("incidencias.cache.ttlMs", 300000L);
+
+    private final UsuarioDAO usuarioDAO;
+    private final IncidenciaDAO incidenciaDAO;
+    private final ComentarioDAO comentarioDAO;
+    private final HistorialEstadoDAO historialEstadoDAO;
+    private final EscritorHistorial escritorHistorial;
+    private final List<CacheEntidades<?, ?>> caches;
+
+    public JdbcDAOFactory() {
+        if (CACHE_ACTIVA) {
+            CacheEntidades<String, UsuarioDTO> usuarios = new CacheEntidades<>("usuarios",
+                    CACHE_USUARIOS_MAX, CACHE_TTL_MS, UsuarioDTO::new);
+            CacheEntidades<Long, IncidenciaDTO> incidencias = new CacheEntidades<>("incidencias",
+                    CACHE_INCIDENCIAS_MAX, CACHE_TTL_MS, IncidenciaDTO::new);
+            // Las incidencias cacheadas llevan copia de su solicitante y su técnico
+            this.usuarioDAO = new UsuarioDaoConCache(new UsuarioDaoJdbc(), usuarios, incidencias::vaciar);
+            this.incidenciaDAO = new IncidenciaDaoConCache(new IncidenciaDaoJdbc(usuarioDAO), incidencias);
+            this.caches = List.of(usuarios, incidencias);
+        } else {
+            this.usuarioDAO = new UsuarioDaoJdbc();
+            this.incidenciaDAO = new IncidenciaDaoJdbc(usuarioDAO);
+            this.caches = List.of();
+        }
+        this.comentarioDAO = new ComentarioDaoJdbc(incidenciaDAO);
+        HistorialEstadoDAO historialJdbc = new HistorialEstadoDaoJdbc(incidenciaDAO);
+        if (HISTORIAL_ASINCRONO) {
+            this.escritorHistorial = new EscritorHistorial(historialJdbc,
+                    HISTORIAL_CAPACIDAD, HISTORIAL_LOTE, HISTORIAL_INTERVALO_MS);
+            this.historialEstadoDAO = new HistorialEstadoDaoAsincrono(historialJdbc, escritorHistorial);
+        } else {
+            this.escritorHistorial = null;
+            this.historialEstadoDAO = historialJdbc;
+        }
+    }
+
     @Override
     public UsuarioDAO getUsuarioDAO() {
-        // Devolverá la implementación concreta del DAO de Usuario
-        return new UsuarioDaoJdbc();
+        return usuarioDAO;
     }
 
-    @Override  
+    @Override
     public IncidenciaDAO getIncidenciaDAO() {
-        // Devuelve la implementación concreta del DAO de Incidencia
-        return new IncidenciaDaoJdbc(); 
+        return incidenciaDAO;
     }
-    // Aquí irían las implementaciones de los demás DAOs:
-    // @Override
-    // public IncidenciaDAO getIncidenciaDAO() {
-    //     return new IncidenciaDaoJdbc();
-    // }
 
     @Override
     public ComentarioDAO getComentarioDAO() {
-        // TODO Auto-generated method stub
-        return new ComentarioDaoJdbc();
+        return comentarioDAO;
     }
-    @Override 
+
+    @Override
     public HistorialEstadoDAO getHistorialEstadoDAO() {
-        // Devuelve la implementación concreta del DAO de HistorialEstado
-        return new HistorialEstadoDaoJdbc(); 
+        return historialEstadoDAO;
+    }
+
+    @Override
+    protected EscritorHistorial getEscritorHistorial() {
+        return escritorHistorial;
+    }
+
+    @Override
+    protected List<CacheEntidades<?, ?>> getCaches() {
+        return caches;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,192 @@
+package es.tew.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Migraciones versionadas del esquema de la BDD.
+ *
+ * Cada migración es un script de data/migraciones con nombre V&lt;n&gt;__&lt;descripción&gt;.script.
+ * Las aplicadas se anotan en SCHEMA_VERSION con el SHA-256 de su contenido, así que al
+ * arrancar solo se ejecutan las pendientes: con una BDD en fichero ya migrada, el arranque
+ * se reduce a leer esa tabla. Si el contenido de una migración aplicada ha cambiado, el
+ * arranque falla en lugar de dejar la BDD en un estado desconocido.
+ *
+ * Cada migración se ejecuta en una transacción junto con su fila de SCHEMA_VERSION: o se
+ * anota y se confirma entera, o se deshace y el arranque se detiene indicando la sentencia
+ * que falló. HSQLDB confirma cada sentencia de esquema (CREATE, ALTER, DROP) al ejecutarla,
+ * así que lo que se deshace son los datos; los cambios de esquema anteriores al fallo se
+ * quedan y hay que quitarlos a mano (o restaurar la copia de la BDD) antes de arrancar de
+ * nuevo. Por eso conviene que cada migración tenga una sola clase de cambio.
+ */
+public final class Migrador {
+
+    private static final String CARPETA = "data/migraciones/";
+
+    // En orden de versión. Para cambiar el esquema se añade una nueva al final.
+    private static final String[] MIGRACIONES = {
+        "V1__esquema_inicial.script",
+        "V2__indices.script"
+    };
+
+    private static final String SQL_CREAR_TABLA =
+            "CREATE TABLE IF NOT EXISTS SCHEMA_VERSION (" +
+            "VERSION INTEGER PRIMARY KEY, " +
+            "DESCRIPCION VARCHAR(200) NOT NULL, " +
+            "CHECKSUM VARCHAR(64) NOT NULL, " +
+            "APLICADA TIMESTAMP NOT NULL, " +
+            "DURACION_MS BIGINT NOT NULL)";
+    private static final String SQL_APLICADAS =
+            "SELECT VERSION, CHECKSUM FROM SCHEMA_VERSION";
+    private static final String SQL_REGISTRAR =
+            "INSERT INTO SCHEMA_VERSION (VERSION, DESCRIPCION, CHECKSUM, APLICADA, DURACION_MS) VALUES (?, ?, ?, ?, ?)";
+
+    private Migrador() {
+    }
+
+    /**
+     * Aplica las migraciones pendientes, en orden.
+     * @param con Conexión directa a la BDD (fuera del pool).
+     * @return Número de migraciones aplicadas.
+     * @throws SQLException Si falla una migración (no se anota y se deshacen sus datos) o no
+     *         coincide el checksum de una ya aplicada.
+     */
+    public static int migrar(Connection con) throws SQLException, IOException {
+        try (Statement st = con.createStatement()) {
+            st.execute(SQL_CREAR_TABLA);
+        }
+
+        Map<Integer, String> aplicadas = new HashMap<>();
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery(SQL_APLICADAS)) {
+            while (rs.next()) {
+                aplicadas.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+
+        int nuevas = 0;
+        for (String fichero : MIGRACIONES) {
+            int version = version(fichero);
+            String script = leer(CARPETA + fichero);
+            String checksum = checksum(script);
+
+            String anterior = aplicadas.get(version);
+            if (anterior != null) {
+                if (!anterior.equals(checksum)) {
+                    throw new SQLException("La migración " + fichero + " ha cambiado después de aplicarse "
+                            + "(checksum " + anterior + " en la BDD, " + checksum + " en el fichero).");
+                }
+                continue;
+            }
+
+            long duracion = aplicar(con, fichero, version, script, checksum);
+            System.out.println("INFO: Migración aplicada: " + fichero + " (" + duracion + " ms)");
+            nuevas++;
+        }
+        return nuevas;
+    }
+
+    /**
+     * Ejecuta el script y lo anota en SCHEMA_VERSION en una misma transacción.
+     * @return Duración del script en milisegundos.
+     */
+    private static long aplicar(Connection con, String fichero, int version, String script, String checksum)
+            throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try {
+            long inicio = System.currentTimeMillis();
+            ejecutar(con, fichero, script);
+            long duracion = System.currentTimeMillis() - inicio;
+
+            try (PreparedStatement ps = con.prepareStatement(SQL_REGISTRAR)) {
+                ps.setInt(1, version);
+                ps.setString(2, fichero);
+                ps.setString(3, checksum);
+                ps.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+                ps.setLong(5, duracion);
+                ps.executeUpdate();
+            }
+            con.commit();
+            return duracion;
+        } catch (SQLException e) {
+            try {
+                con.rollback();
+            } catch (SQLException r) {
+                e.addSuppressed(r);
+            }
+            System.err.println("ERROR: La migración " + fichero + " no se ha aplicado: " + e.getMessage());
+            System.err.println("       Los cambios de esquema anteriores al fallo ya están en la BDD (HSQLDB los "
+                    + "confirma al ejecutarlos): hay que deshacerlos o restaurar la copia antes de volver a arrancar.");
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Número de versión de "V&lt;n&gt;__descripcion.script".
+     */
+    static int version(String fichero) {
+        int fin = fichero.indexOf("__");
+        if (!fichero.startsWith("V") || fin < 2) {
+            throw new IllegalArgumentException("Nombre de migración no válido: " + fichero);
+        }
+        return Integer.parseInt(fichero.substring(1, fin));
+    }
+
+    /**
+     * SHA-256 del script, sin tener en cuenta los finales de línea (CRLF o LF).
+     */
+    static String checksum(String script) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            byte[] hash = sha.digest(script.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private static String leer(String ruta) throws IOException {
+        try (InputStream is = Migrador.class.getClassLoader().getResourceAsStream(ruta)) {
+            if (is == null) {
+                throw new IOException("No se encontró el script de BDD en: " + ruta);
+            }
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void ejecutar(Connection con, String fichero, String script) throws SQLException {
+        // Dividimos el script en sentencias individuales usando el punto y coma como delimitador
+        String[] statements = script.split(";");
+        try (Statement stmt = con.createStatement()) {
+            // Ejecutamos cada sentencia una por una
+            int numero = 0;
+            for (String statement : statements) {
+                String trimmedStatement = statement.trim();
+                if (!trimmedStatement.isEmpty()) {
+                    numero++;
+                    try {
+                        stmt.execute(trimmedStatement);
+                    } catch (SQLException e) {
+                        throw new SQLException("Falló la sentencia " + numero + " de " + fichero + " ("
+                                + e.getMessage() + "):\n" + trimmedStatement, e.getSQLState(), e.getErrorCode(), e);
+                    }
+                }
+            }
+        }
+    }
+}
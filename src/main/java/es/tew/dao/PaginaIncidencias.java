@@ -0,0 +1,79 @@
+package es.tew.dao;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * Petición de una página de incidencias: desplazamiento, tamaño, orden y,
+ * opcionalmente, el cursor (FECHA_CREACION, ID) de la última fila de la página anterior.
+ * Con cursor, el DAO continúa justo después de esa fila (keyset) en lugar de saltar
+ * {@code desplazamiento} filas con OFFSET.
+ */
+public class PaginaIncidencias implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Campo de ordenación por defecto, y el único que admite paginación por cursor. */
+    public static final String ORDEN_FECHA_CREACION = "fechaCreacion";
+
+    private final int desplazamiento;
+    private final int tamano;
+    private final String campoOrden;
+    private final boolean ascendente;
+
+    // Cursor: última fila de la página anterior (null si no se pagina por keyset)
+    private Timestamp cursorFecha;
+    private Long cursorId;
+
+    /**
+     * @param desplazamiento Índice de la primera fila de la página (0..n).
+     * @param tamano Número máximo de filas de la página.
+     * @param campoOrden Propiedad de IncidenciaDTO por la que se ordena, o null para el orden por defecto.
+     * @param ascendente Sentido de la ordenación.
+     */
+    public PaginaIncidencias(int desplazamiento, int tamano, String campoOrden, boolean ascendente) {
+        this.desplazamiento = Math.max(0, desplazamiento);
+        this.tamano = Math.max(1, tamano);
+        this.campoOrden = campoOrden != null ? campoOrden : ORDEN_FECHA_CREACION;
+        this.ascendente = campoOrden != null && ascendente;
+    }
+
+    /**
+     * Indica que la página empieza justo después de la fila (fecha, id).
+     */
+    public void setCursor(Timestamp fecha, Long id) {
+        this.cursorFecha = fecha;
+        this.cursorId = id;
+    }
+
+    /**
+     * True si la página se puede leer por keyset en lugar de con OFFSET.
+     */
+    public boolean tieneCursor() {
+        return cursorFecha != null && cursorId != null && ORDEN_FECHA_CREACION.equals(campoOrden);
+    }
+
+    public int getDesplazamiento() {
+        return desplazamiento;
+    }
+
+    public int getTamano() {
+        return tamano;
+    }
+
+    public String getCampoOrden() {
+        return campoOrden;
+    }
+
+    public boolean isAscendente() {
+        return ascendente;
+    }
+
+    public Timestamp getCursorFecha() {
+        return cursorFecha;
+    }
+
+    public Long getCursorId() {
+        return cursorId;
+    }
+}
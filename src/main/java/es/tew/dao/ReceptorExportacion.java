@@ -0,0 +1,27 @@
+package es.tew.dao;
+
+import java.io.IOException;
+
+import es.tew.dto.ComentarioDTO;
+import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
+
+/**
+ * Recibe las filas de IncidenciaDAO.exportar según se leen de la BDD, sin que se
+ * guarden en ninguna lista. Para cada incidencia, en orden de ID, se llama a
+ * incidencia(), luego a comentario() por cada comentario (del más antiguo al más
+ * reciente), a cambioEstado() por cada entrada del historial (también en orden de
+ * fecha) y por último a finIncidencia().
+ *
+ * Los objetos solo son válidos durante la llamada: no deben guardarse.
+ */
+public interface ReceptorExportacion {
+
+    void incidencia(IncidenciaDTO incidencia) throws IOException;
+
+    void comentario(ComentarioDTO comentario) throws IOException;
+
+    void cambioEstado(HistorialEstadoDTO cambio) throws IOException;
+
+    void finIncidencia(IncidenciaDTO incidencia) throws IOException;
+}
@@ -0,0 +1,289 @@
+package es.tew.dao;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unidad de trabajo: una sola conexión y una sola transacción para todas las llamadas
+ * a los DAO que se hagan en el hilo actual hasta cerrarla.
+ *
+ * <pre>
+ * try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+ *     incidenciaDAO.save(...);
+ *     historialEstadoDAO.save(...);
+ *     uow.confirmar();
+ * }
+ * </pre>
+ *
+ * Mientras está activa, DAOFactory.getConnection devuelve su conexión (con close, commit
+ * y setAutoCommit anulados, y rollback marcando la unidad para deshacer), de modo que los
+ * DAO no cambian. Los que necesitan deshacer solo su parte usan un punto de guardado. Las escrituras que no
+ * necesitan respuesta (historial, UPDATE) se encolan con {@link #encolar} y se envían
+ * juntas con executeBatch, agrupando las consecutivas de la misma sentencia, antes de
+ * la siguiente consulta o al confirmar.
+ *
+ * Si se cierra sin confirmar, o algún DAO ha informado de un error, se deshace todo.
+ * Una unidad iniciada dentro de otra participa en la exterior: su confirmar no hace
+ * nada y, si se cierra sin confirmar, la exterior solo podrá deshacerse.
+ */
+public final class UnidadDeTrabajo implements AutoCloseable {
+
+    private static final ThreadLocal<UnidadDeTrabajo> ACTUAL = new ThreadLocal<>();
+
+    private final UnidadDeTrabajo raiz;   // Unidad exterior; ella misma si es la más externa
+    private final Connection conexion;    // Conexión del pool (solo en la raíz)
+    private final Connection compartida;  // Lo que reciben los DAO (solo en la raíz)
+    private final List<Pendiente> pendientes = new ArrayList<>();
+    private final List<Runnable> trasConfirmar = new ArrayList<>();
+    private SQLException error;
+    private boolean soloDeshacer;
+    private boolean confirmada;
+    private boolean cerrada;
+
+    private UnidadDeTrabajo(Connection conexion) {
+        this.raiz = this;
+        this.conexion = conexion;
+        this.compartida = (Connection) Proxy.newProxyInstance(
+                UnidadDeTrabajo.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                        case "commit":
+                        case "setAutoCommit":
+                            // La transacción es de la unidad, no del DAO
+                            return null;
+                        case "rollback":
+                            if (args == null) {
+                                soloDeshacer = true;
+                                return null;
+                            }
+                            // Deshacer hasta un punto de guardado no afecta al resto de la unidad
+                            break;
+                        case "isClosed":
+                            return cerrada;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    try {
+                        return method.invoke(conexion, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private UnidadDeTrabajo(UnidadDeTrabajo raiz) {
+        this.raiz = raiz;
+        this.conexion = null;
+        this.compartida = null;
+    }
+
+    /**
+     * Inicia una unidad de trabajo en el hilo actual, o se une a la que ya haya.
+     * @throws RuntimeException Si no se puede obtener una conexión del pool.
+     */
+    public static UnidadDeTrabajo iniciar() {
+        UnidadDeTrabajo actual = ACTUAL.get();
+        if (actual != null) {
+            return new UnidadDeTrabajo(actual);
+        }
+        try {
+            Connection conexion = DAOFactory.getConnection();
+            try {
+                conexion.setAutoCommit(false);
+            } catch (SQLException e) {
+                conexion.close();
+                throw e;
+            }
+            UnidadDeTrabajo nueva = new UnidadDeTrabajo(conexion);
+            ACTUAL.set(nueva);
+            return nueva;
+        } catch (SQLException e) {
+            throw new RuntimeException("No se pudo iniciar la transacción: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Unidad activa en el hilo actual, o null si no hay ninguna.
+     */
+    static UnidadDeTrabajo actual() {
+        return ACTUAL.get();
+    }
+
+    /**
+     * Conexión para un DAO dentro de la unidad. Antes envía las escrituras encoladas,
+     * para que la consulta las vea.
+     */
+    Connection conexion() throws SQLException {
+        vaciar();
+        return compartida;
+    }
+
+    /**
+     * Encola una escritura para enviarla por lotes. Los parámetros null se envían como NULL.
+     * Si no hay una unidad activa, la ejecuta en el momento con su propia conexión.
+     */
+    static void encolar(String sql, Object... parametros) throws SQLException {
+        UnidadDeTrabajo uow = ACTUAL.get();
+        if (uow != null) {
+            uow.pendientes.add(new Pendiente(sql, parametros));
+            return;
+        }
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            asignar(ps, parametros);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Ejecuta la acción cuando se confirme la unidad activa (o ahora mismo, si no hay
+     * ninguna). Si la unidad se deshace, no se ejecuta.
+     */
+    static void alConfirmar(Runnable accion) {
+        UnidadDeTrabajo uow = ACTUAL.get();
+        if (uow == null) {
+            accion.run();
+        } else {
+            uow.trasConfirmar.add(accion);
+        }
+    }
+
+    /**
+     * Anota el error de un DAO para que la unidad activa (si la hay) no se confirme.
+     * Los DAO capturan sus SQLException, así que es la forma de que la unidad se entere.
+     */
+    static void registrarError(SQLException e) {
+        UnidadDeTrabajo uow = ACTUAL.get();
+        if (uow != null && uow.error == null) {
+            uow.error = e;
+        }
+    }
+
+    /**
+     * Envía lo encolado y confirma la transacción. En una unidad anidada no hace nada:
+     * confirma la exterior. Las acciones de {@link #alConfirmar} se ejecutan después, ya
+     * sin la unidad activa.
+     * @throws RuntimeException Si algún DAO falló o el commit no se pudo hacer; la transacción se deshace.
+     */
+    public void confirmar() {
+        if (raiz != this) {
+            confirmada = true;
+            return;
+        }
+        try {
+            vaciar();
+            if (error != null) {
+                throw error;
+            }
+            if (soloDeshacer) {
+                throw new SQLException("La transacción se marcó para deshacer.");
+            }
+            conexion.commit();
+            confirmada = true;
+        } catch (SQLException e) {
+            throw new RuntimeException("No se pudo confirmar la transacción: " + e.getMessage(), e);
+        }
+        // Ya confirmada, deja de ser la unidad del hilo: lo que escriban las acciones (o el
+        // código que siga antes del close) va con su propia conexión y no se queda en
+        // los pendientes de una transacción que ya no se va a enviar.
+        ACTUAL.remove();
+        for (Runnable accion : trasConfirmar) {
+            try {
+                accion.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error en una acción tras confirmar la transacción: " + e.getMessage());
+            }
+        }
+        trasConfirmar.clear();
+    }
+
+    /**
+     * Deshace la transacción si no se ha confirmado y devuelve la conexión al pool.
+     */
+    @Override
+    public void close() {
+        if (cerrada) {
+            return;
+        }
+        cerrada = true;
+        if (raiz != this) {
+            if (!confirmada) {
+                raiz.soloDeshacer = true;
+            }
+            return;
+        }
+        ACTUAL.remove();
+        try {
+            if (!confirmada) {
+                pendientes.clear();
+                conexion.rollback();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al deshacer la transacción: " + e.getMessage());
+        } finally {
+            try {
+                conexion.close();
+            } catch (SQLException e) {
+                System.err.println("Error al devolver la conexión de la transacción: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ejecuta las escrituras encoladas, con un executeBatch por cada racha de la misma sentencia.
+     */
+    private void vaciar() throws SQLException {
+        int i = 0;
+        try {
+            while (i < pendientes.size()) {
+                String sql = pendientes.get(i).sql;
+                try (PreparedStatement ps = conexion.prepareStatement(sql)) {
+                    while (i < pendientes.size() && pendientes.get(i).sql.equals(sql)) {
+                        asignar(ps, pendientes.get(i).parametros);
+                        ps.addBatch();
+                        i++;
+                    }
+                    ps.executeBatch();
+                }
+            }
+        } catch (SQLException e) {
+            if (error == null) {
+                error = e;
+            }
+            throw e;
+        } finally {
+            pendientes.clear();
+        }
+    }
+
+    private static void asignar(PreparedStatement ps, Object[] parametros) throws SQLException {
+        for (int i = 0; i < parametros.length; i++) {
+            if (parametros[i] == null) {
+                ps.setNull(i + 1, java.sql.Types.NULL);
+            } else {
+                ps.setObject(i + 1, parametros[i]);
+            }
+        }
+    }
+
+    private static final class Pendiente {
+        final String sql;
+        final Object[] parametros;
+
+        Pendiente(String sql, Object[] parametros) {
+            this.sql = sql;
+            this.parametros = parametros;
+        }
+    }
+}
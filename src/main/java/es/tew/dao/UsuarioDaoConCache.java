@@ -0,0 +1,78 @@
+package es.tew.dao;
+
+import java.util.List;
+
+import es.tew.dto.UsuarioDTO;
+
+/**
+ * UsuarioDAO que guarda en una CacheEntidades las búsquedas por DNI (UsuarioConverter
+ * las repite en cada petición). Se desactiva con -Dincidencias.cache.activa=false
+ * (ver JdbcDAOFactory).
+ *
+ * El login (findByDniAndPassword) y los listados van siempre a la BDD. Cada escritura
+ * invalida el DNI y avisa a quien guarde copias del usuario dentro de otras entidades
+ * (las incidencias cacheadas llevan el nombre del solicitante y del técnico).
+ */
+class UsuarioDaoConCache implements UsuarioDAO {
+
+    private final UsuarioDAO destino;
+    private final CacheEntidades<String, UsuarioDTO> cache;
+    private final Runnable alCambiarUsuario;
+
+    UsuarioDaoConCache(UsuarioDAO destino, CacheEntidades<String, UsuarioDTO> cache, Runnable alCambiarUsuario) {
+        this.destino = destino;
+        this.cache = cache;
+        this.alCambiarUsuario = alCambiarUsuario;
+    }
+
+    @Override
+    public UsuarioDTO findByDniAndPassword(String dni, String password) {
+        return destino.findByDniAndPassword(dni, password);
+    }
+
+    @Override
+    public UsuarioDTO findByDni(String dni) {
+        if (dni == null) {
+            return destino.findByDni(null);
+        }
+        return cache.obtener(dni, destino::findByDni);
+    }
+
+    @Override
+    public List<UsuarioDTO> findByRol(String rol) {
+        return destino.findByRol(rol);
+    }
+
+    @Override
+    public List<UsuarioDTO> findAll() {
+        return destino.findAll();
+    }
+
+    @Override
+    public void save(UsuarioDTO usuario) {
+        destino.save(usuario);
+        invalidar(usuario.getDni());
+    }
+
+    @Override
+    public void update(UsuarioDTO usuario) {
+        destino.update(usuario);
+        invalidar(usuario.getDni());
+    }
+
+    @Override
+    public void delete(String dni) {
+        destino.delete(dni);
+        invalidar(dni);
+    }
+
+    private void invalidar(String dni) {
+        Runnable accion = () -> {
+            cache.invalidar(dni);
+            alCambiarUsuario.run();
+        };
+        accion.run();
+        // Otra vez al confirmar: entre medias otro hilo pudo leer el valor anterior
+        UnidadDeTrabajo.alConfirmar(accion);
+    }
+}
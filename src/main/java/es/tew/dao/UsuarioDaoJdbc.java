@@ -2,6 +2,7 @@ package es.tew.dao;
 
 import es.tew.dto.UsuarioDTO;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -20,6 +21,22 @@ public class UsuarioDaoJdbc implements UsuarioDAO {
     private static final String PASSWD = "PASSWD";
     private static final String ROL = "ROL";
 
+    // Sentencias SQL del DAO
+    private static final String SQL_FIND_BY_DNI_AND_PASSWORD =
+            "SELECT * FROM USUARIO WHERE DNI = ? AND PASSWD = ?";
+    private static final String SQL_FIND_BY_DNI =
+            "SELECT * FROM USUARIO WHERE DNI = ?";
+    private static final String SQL_FIND_ALL =
+            "SELECT * FROM USUARIO";
+    private static final String SQL_INSERT =
+            "INSERT INTO USUARIO (DNI, NOMBRE, APELLIDOS, PASSWD, ROL) VALUES (?, ?, ?, ?, ?)";
+    private static final String SQL_UPDATE =
+            "UPDATE USUARIO SET NOMBRE = ?, APELLIDOS = ?, PASSWD = ?, ROL = ? WHERE DNI = ?";
+    private static final String SQL_DELETE =
+            "DELETE FROM USUARIO WHERE DNI = ?";
+    private static final String SQL_FIND_BY_ROL =
+            "SELECT * FROM USUARIO WHERE ROL = ?";
+
     private UsuarioDTO mapRowToDTO(ResultSet rs) throws SQLException {
         UsuarioDTO user = new UsuarioDTO();
         user.setDni(rs.getString(DNI));
@@ -31,10 +48,8 @@ public class UsuarioDaoJdbc implements UsuarioDAO {
 
     @Override
     public UsuarioDTO findByDniAndPassword(String dni, String password) {
-        String sql = "SELECT * FROM USUARIO WHERE DNI = ? AND PASSWD = ?";
-        
-        // CORREGIDO: La conexión NO se incluye en el try-with-resources
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql)) {
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_BY_DNI_AND_PASSWORD)) {
             ps.setString(1, dni);
             ps.setString(2, password);
             
@@ -52,10 +67,8 @@ public class UsuarioDaoJdbc implements UsuarioDAO {
 
     @Override
     public UsuarioDTO findByDni(String dni) {
-        String sql = "SELECT * FROM USUARIO WHERE DNI = ?";
-
-        // CORREGIDO: La conexión NO se incluye en el try-with-resources
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql)) {
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_BY_DNI)) {
             ps.setString(1, dni);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -73,10 +86,9 @@ public class UsuarioDaoJdbc implements UsuarioDAO {
     @Override
     public List<UsuarioDTO> findAll() {
         List<UsuarioDTO> usuarios = new ArrayList<>();
-        String sql = "SELECT * FROM USUARIO";
 
-        // CORREGIDO: La conexión NO se incluye en el try-with-resources
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql);
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_ALL);
              ResultSet rs = ps.executeQuery()) {
 
             while (rs.next()) {
@@ -91,10 +103,8 @@ public class UsuarioDaoJdbc implements UsuarioDAO {
 
     @Override
     public void save(UsuarioDTO usuario) {
-        String sql = "INSERT INTO USUARIO (DNI, NOMBRE, APELLIDOS, PASSWD, ROL) VALUES (?, ?, ?, ?, ?)";
-
-        // CORREGIDO: La conexión NO se incluye en el try-with-resources
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql)) {
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_INSERT)) {
             ps.setString(1, usuario.getDni());
             ps.setString(2, usuario.getNombre());
             ps.setString(3, usuario.getApellidos());
@@ -105,16 +115,15 @@ public class UsuarioDaoJdbc implements UsuarioDAO {
             
         } catch (SQLException e) {
             System.err.println("Error al guardar usuario: " + e.getMessage());
+            UnidadDeTrabajo.registrarError(e);
             e.printStackTrace();
         }
     }
 
     @Override
     public void update(UsuarioDTO usuario) {
-        String sql = "UPDATE USUARIO SET NOMBRE = ?, APELLIDOS = ?, PASSWD = ?, ROL = ? WHERE DNI = ?";
-
-        // CORREGIDO: La conexión NO se incluye en el try-with-resources
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql)) {
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_UPDATE)) {
             ps.setString(1, usuario.getNombre());
             ps.setString(2, usuario.getApellidos());
             ps.setString(3, usuario.getPassword()); 
@@ -125,21 +134,21 @@ public class UsuarioDaoJdbc implements UsuarioDAO {
 
         } catch (SQLException e) {
             System.err.println("Error al actualizar usuario: " + e.getMessage());
+            UnidadDeTrabajo.registrarError(e);
             e.printStackTrace();
         }
     }
 
     @Override
     public void delete(String dni) {
-        String sql = "DELETE FROM USUARIO WHERE DNI = ?";
-
-        // CORREGIDO: La conexión NO se incluye en el try-with-resources
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql)) {
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_DELETE)) {
             ps.setString(1, dni);
             ps.executeUpdate();
             
         } catch (SQLException e) {
             System.err.println("Error al eliminar usuario: " + e.getMessage());
+            UnidadDeTrabajo.registrarError(e);
             e.printStackTrace();
         }
     }
@@ -147,9 +156,9 @@ public class UsuarioDaoJdbc implements UsuarioDAO {
     @Override
     public List<UsuarioDTO> findByRol(String rol) {
         List<UsuarioDTO> usuarios = new ArrayList<>();
-        String sql = "SELECT * FROM USUARIO WHERE ROL = ?";
     
-        try (PreparedStatement ps = DAOFactory.getConnection().prepareStatement(sql)) {
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(SQL_FIND_BY_ROL)) {
             ps.setString(1, rol);
     
             try (ResultSet rs = ps.executeQuery()) {
@@ -2,6 +2,7 @@ package es.tew.dto;
 
 import java.io.Serializable;
 import java.sql.Timestamp; // Usaremos java.sql.Timestamp para coincidir con el campo de la BDD
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -13,6 +14,13 @@ public class IncidenciaDTO implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    // Estados que admite el CHECK de INCIDENCIA.ESTADO (migración V1), en el orden del ciclo
+    // de vida. Es la única copia en Java: si cambia el CHECK, se cambia aquí.
+    public static final List<String> ESTADOS =
+            List.of("ABIERTA", "ASIGNADA", "EN_PROCESO", "PENDIENTE_USUARIO", "RESUELTA", "CERRADA");
+    // El único estado que no cuenta como abierta
+    public static final String ESTADO_CERRADA = "CERRADA";
+
     // Campos simples (columnas directas de la tabla INCIDENCIA)
     private Long id;
     private String titulo;
@@ -31,6 +39,18 @@ public class IncidenciaDTO implements Serializable {
         this.fechaCreacion = new Timestamp(System.currentTimeMillis());
     }
 
+    // Constructor de copia (también copia el solicitante y el técnico)
+    public IncidenciaDTO(IncidenciaDTO otra) {
+        this.id = otra.id;
+        this.titulo = otra.titulo;
+        this.descripcion = otra.descripcion;
+        this.fechaCreacion = otra.fechaCreacion != null ? (Timestamp) otra.fechaCreacion.clone() : null;
+        this.estado = otra.estado;
+        this.categoria = otra.categoria;
+        this.solicitante = otra.solicitante != null ? new UsuarioDTO(otra.solicitante) : null;
+        this.tecnico = otra.tecnico != null ? new UsuarioDTO(otra.tecnico) : null;
+    }
+
     // **********************************************
     // Getters y Setters
     // **********************************************
@@ -0,0 +1,107 @@
+package es.tew.dto;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * Fila de solo lectura de los listados de incidencias (listado.xhtml y
+ * admin/todasIncidencias.xhtml): solo las columnas que muestran las tablas.
+ * No lleva la descripción ni los UsuarioDTO del solicitante y del técnico, solo sus
+ * nombres, así que cada página pesa menos en la consulta y en el estado de la vista.
+ * Para ver o modificar la incidencia completa se busca por ID (IncidenciaDAO.findById).
+ */
+public class IncidenciaResumen implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+    private final String titulo;
+    private final String estado;
+    private final String categoria;
+    private final Timestamp fechaCreacion;
+    private final String nombreSolicitante;
+    private final String apellidosSolicitante;
+    private final String nombreTecnico;     // NULL si todavía no tiene técnico
+    private final String apellidosTecnico;  // Solo para ordenar por técnico
+
+    public IncidenciaResumen(Long id, String titulo, String estado, String categoria, Timestamp fechaCreacion,
+            String nombreSolicitante, String apellidosSolicitante, String nombreTecnico, String apellidosTecnico) {
+        this.id = id;
+        this.titulo = titulo;
+        this.estado = estado;
+        this.categoria = categoria;
+        this.fechaCreacion = fechaCreacion;
+        this.nombreSolicitante = nombreSolicitante;
+        this.apellidosSolicitante = apellidosSolicitante;
+        this.nombreTecnico = nombreTecnico;
+        this.apellidosTecnico = apellidosTecnico;
+    }
+
+    // **********************************************
+    // Getters
+    // **********************************************
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTitulo() {
+        return titulo;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public String getCategoria() {
+        return categoria;
+    }
+
+    public Timestamp getFechaCreacion() {
+        return fechaCreacion;
+    }
+
+    public String getNombreSolicitante() {
+        return nombreSolicitante;
+    }
+
+    public String getApellidosSolicitante() {
+        return apellidosSolicitante;
+    }
+
+    public String getNombreTecnico() {
+        return nombreTecnico;
+    }
+
+    public String getApellidosTecnico() {
+        return apellidosTecnico;
+    }
+
+    // **********************************************
+    // Métodos de utilidad (hashCode, equals, toString)
+    // **********************************************
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IncidenciaResumen that = (IncidenciaResumen) o;
+        // Como en IncidenciaDTO, la igualdad se basa en la clave primaria (ID)
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "IncidenciaResumen{" +
+                "id=" + id +
+                ", titulo='" + titulo + '\'' +
+                ", estado='" + estado + '\'' +
+                '}';
+    }
+}
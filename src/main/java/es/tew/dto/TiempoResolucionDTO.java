@@ -0,0 +1,68 @@
+package es.tew.dto;
+
+import java.io.Serializable;
+
+/**
+ * Data Transfer Object con el tiempo de resolución de una incidencia cerrada:
+ * desde su creación hasta su último paso a CERRADA en HISTORIAL_ESTADO.
+ * No corresponde a una tabla, sino al resultado de una consulta agregada.
+ */
+public class TiempoResolucionDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String categoria;
+    private String dniTecnico;  // Puede ser NULL si la incidencia no tenía técnico
+    private long segundos;
+
+    // Constructor por defecto
+    public TiempoResolucionDTO() {
+    }
+
+    public TiempoResolucionDTO(String categoria, String dniTecnico, long segundos) {
+        this.categoria = categoria;
+        this.dniTecnico = dniTecnico;
+        this.segundos = segundos;
+    }
+
+    // **********************************************
+    // Getters y Setters
+    // **********************************************
+
+    public String getCategoria() {
+        return categoria;
+    }
+
+    public void setCategoria(String categoria) {
+        this.categoria = categoria;
+    }
+
+    public String getDniTecnico() {
+        return dniTecnico;
+    }
+
+    public void setDniTecnico(String dniTecnico) {
+        this.dniTecnico = dniTecnico;
+    }
+
+    public long getSegundos() {
+        return segundos;
+    }
+
+    public void setSegundos(long segundos) {
+        this.segundos = segundos;
+    }
+
+    // **********************************************
+    // Métodos de utilidad (toString)
+    // **********************************************
+
+    @Override
+    public String toString() {
+        return "TiempoResolucionDTO{" +
+                "categoria='" + categoria + '\'' +
+                ", dniTecnico='" + dniTecnico + '\'' +
+                ", segundos=" + segundos +
+                '}';
+    }
+}
@@ -31,6 +31,11 @@ public class UsuarioDTO implements Serializable {
         this.rol = rol;
     }
 
+    // Constructor de copia
+    public UsuarioDTO(UsuarioDTO otro) {
+        this(otro.dni, otro.nombre, otro.apellidos, otro.password, otro.rol);
+    }
+
     // **********************************************
     // Getters y Setters
     // **********************************************
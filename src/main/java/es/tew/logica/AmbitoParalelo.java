@@ -0,0 +1,175 @@
+package es.tew.logica;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Grupo de cargas independientes que se lanzan a la vez y se esperan juntas, con un
+ * plazo común. Si una falla o se acaba el plazo, se cancelan las demás y
+ * {@link #esperar()} lanza la excepción sin esperarlas.
+ *
+ * La cancelación no interrumpe los hilos: las cargas que no han empezado ya no se
+ * ejecutan y las que están en marcha terminan por su cuenta y su resultado se descarta.
+ * Interrumpir un hilo a mitad de una lectura JDBC no es seguro: con HSQLDB en fichero,
+ * la interrupción cierra el canal NIO del fichero de la BDD. Una carga larga (un bucle)
+ * puede consultar {@link #cancelada()} para dejarlo antes.
+ *
+ * <pre>
+ * try (AmbitoParalelo ambito = new AmbitoParalelo(ejecutor, 5000)) {
+ *     Supplier&lt;List&lt;ComentarioDTO&gt;&gt; comentarios = ambito.lanzar(() -&gt; ...);
+ *     Supplier&lt;List&lt;HistorialEstadoDTO&gt;&gt; historial = ambito.lanzar(() -&gt; ...);
+ *     ambito.esperar();
+ *     ... comentarios.get(), historial.get() ...
+ * }
+ * </pre>
+ *
+ * Las tareas se ejecutan en otros hilos, así que no participan en la UnidadDeTrabajo
+ * del llamante: solo sirve para lecturas.
+ */
+public final class AmbitoParalelo implements AutoCloseable {
+
+    // Tarea que se está ejecutando en cada hilo, para cancelada()
+    private static final ThreadLocal<AmbitoParalelo.Tarea<?>> EN_CURSO = new ThreadLocal<>();
+
+    private final Executor ejecutor;
+    private final long limiteNanos;
+    private final List<Tarea<?>> tareas = new ArrayList<>();
+
+    // Protegidos por this
+    private int terminadas;
+    private Throwable error;
+
+    /**
+     * @param ejecutor Hilos en los que se ejecutan las tareas.
+     * @param timeoutMs Plazo para todas las tareas, contado desde ahora.
+     */
+    public AmbitoParalelo(Executor ejecutor, long timeoutMs) {
+        this.ejecutor = ejecutor;
+        this.limiteNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    /**
+     * Lanza una tarea. Su resultado se lee con el Supplier devuelto, después de {@link #esperar()}.
+     */
+    public <T> Supplier<T> lanzar(Callable<T> carga) {
+        Tarea<T> tarea = new Tarea<>(carga);
+        synchronized (this) {
+            tareas.add(tarea);
+        }
+        ejecutor.execute(tarea);
+        return tarea::resultado;
+    }
+
+    /**
+     * Espera a que terminen todas las tareas.
+     * @throws RuntimeException Si alguna falló (con su excepción como causa) o se acabó el plazo.
+     */
+    public void esperar() {
+        synchronized (this) {
+            while (terminadas < tareas.size() && error == null) {
+                long resto = limiteNanos - System.nanoTime();
+                if (resto <= 0) {
+                    error = new TimeoutException("Plazo agotado con " + (tareas.size() - terminadas)
+                            + " de " + tareas.size() + " cargas sin terminar");
+                    break;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, resto);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            cancelar();
+            throw new RuntimeException("Falló una carga en paralelo: " + error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Indica si se ha cancelado la carga que ejecuta el hilo actual (false fuera de un
+     * AmbitoParalelo). Sustituye a la interrupción, que no se usa.
+     */
+    public static boolean cancelada() {
+        AmbitoParalelo.Tarea<?> tarea = EN_CURSO.get();
+        return tarea != null && tarea.isCancelled();
+    }
+
+    /**
+     * Cancela lo que quede en marcha (por si no se llegó a esperar).
+     */
+    @Override
+    public void close() {
+        cancelar();
+    }
+
+    private void cancelar() {
+        List<Tarea<?>> copia;
+        synchronized (this) {
+            copia = new ArrayList<>(tareas);
+        }
+        for (Tarea<?> tarea : copia) {
+            // Sin interrumpir: ver la descripción de la clase
+            tarea.cancel(false);
+        }
+    }
+
+    private synchronized void terminada(Throwable fallo) {
+        terminadas++;
+        if (fallo != null && error == null) {
+            error = fallo;
+        }
+        notifyAll();
+    }
+
+    private final class Tarea<T> extends FutureTask<T> {
+
+        Tarea(Callable<T> carga) {
+            super(carga);
+        }
+
+        @Override
+        public void run() {
+            EN_CURSO.set(this);
+            try {
+                super.run();
+            } finally {
+                EN_CURSO.remove();
+            }
+        }
+
+        @Override
+        protected void done() {
+            Throwable fallo = null;
+            if (!isCancelled()) {
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    fallo = e.getCause();
+                } catch (InterruptedException e) {
+                    fallo = e;
+                }
+            }
+            terminada(fallo);
+        }
+
+        T resultado() {
+            if (!isDone() || isCancelled()) {
+                throw new IllegalStateException("La carga no ha terminado: hay que llamar antes a esperar()");
+            }
+            try {
+                return get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
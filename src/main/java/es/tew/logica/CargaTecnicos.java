@@ -0,0 +1,200 @@
+package es.tew.logica;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.UsuarioDAO;
+import es.tew.dto.UsuarioDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Carga de trabajo de cada técnico (incidencias asignadas que no están cerradas),
+ * para la asignación automática de FUNCIONALIDAD 3 sin consultar la BDD en cada alta.
+ *
+ * Los técnicos se guardan en un conjunto ordenado por (carga, DNI), así que el menos
+ * cargado es siempre el primero. Elegirlo y sumarle la nueva incidencia se hace bajo
+ * el mismo cerrojo: dos altas simultáneas nunca se llevan el mismo hueco.
+ */
+@ApplicationScoped
+public class CargaTecnicos {
+
+    @Inject
+    private UsuarioDAO usuarioDAO;
+    @Inject
+    private IncidenciaDAO incidenciaDAO;
+
+    private final ReentrantLock cerrojo = new ReentrantLock();
+
+    // Protegidos por cerrojo
+    private final Map<String, Carga> porDni = new HashMap<>();
+    private final TreeSet<Carga> ordenadas = new TreeSet<>(
+            Comparator.comparingInt((Carga c) -> c.abiertas).thenComparing(c -> c.tecnico.getDni()));
+
+    // Constructor para CDI
+    public CargaTecnicos() {
+    }
+
+    /**
+     * Constructor para usar la clase fuera del contenedor (pruebas).
+     * Hay que llamar a {@link #reconstruir()} antes de asignar.
+     */
+    public CargaTecnicos(UsuarioDAO usuarioDAO, IncidenciaDAO incidenciaDAO) {
+        this.usuarioDAO = usuarioDAO;
+        this.incidenciaDAO = incidenciaDAO;
+    }
+
+    /**
+     * Carga los técnicos y sus incidencias abiertas desde la BDD.
+     */
+    @PostConstruct
+    public void reconstruir() {
+        Map<String, Long> abiertas = incidenciaDAO.countAbiertasByTecnico();
+        cerrojo.lock();
+        try {
+            porDni.clear();
+            ordenadas.clear();
+            for (UsuarioDTO tecnico : usuarioDAO.findByRol("TECNICO")) {
+                Carga carga = new Carga(tecnico, abiertas.getOrDefault(tecnico.getDni(), 0L).intValue());
+                porDni.put(tecnico.getDni(), carga);
+                ordenadas.add(carga);
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Elige el técnico con menos incidencias abiertas (a igualdad, el de menor DNI)
+     * y le suma una. Si la incidencia no llega a guardarse, hay que llamar a {@link #liberar}.
+     * @return El técnico asignado, o null si no hay ninguno.
+     */
+    public UsuarioDTO asignar() {
+        cerrojo.lock();
+        try {
+            if (ordenadas.isEmpty()) {
+                return null;
+            }
+            Carga carga = ordenadas.pollFirst();
+            carga.abiertas++;
+            ordenadas.add(carga);
+            UsuarioDTO t = carga.tecnico;
+            return new UsuarioDTO(t.getDni(), t.getNombre(), t.getApellidos(), null, t.getRol());
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Reparte varias incidencias de una vez, con una sola toma del cerrojo
+     * (importaciones masivas). Equivale a llamar a {@link #asignar()} cuantas veces.
+     * @return Los técnicos asignados, en orden; vacía si no hay técnicos.
+     */
+    public List<UsuarioDTO> asignar(int cuantas) {
+        List<UsuarioDTO> asignados = new ArrayList<>(cuantas);
+        cerrojo.lock();
+        try {
+            for (int i = 0; i < cuantas && !ordenadas.isEmpty(); i++) {
+                asignados.add(asignar());
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+        return asignados;
+    }
+
+    /**
+     * Resta una incidencia abierta al técnico (cierre o alta fallida).
+     */
+    public void liberar(String dniTecnico) {
+        sumar(dniTecnico, -1);
+    }
+
+    /**
+     * Pasa una incidencia abierta de un técnico a otro. Cualquiera de los dos puede ser null.
+     */
+    public void reasignar(String dniAnterior, String dniNuevo) {
+        if (dniAnterior == null ? dniNuevo == null : dniAnterior.equals(dniNuevo)) {
+            return;
+        }
+        cerrojo.lock();
+        try {
+            sumar(dniAnterior, -1);
+            sumar(dniNuevo, 1);
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Suma una incidencia abierta al técnico (reapertura de una incidencia cerrada).
+     */
+    public void ocupar(String dniTecnico) {
+        sumar(dniTecnico, 1);
+    }
+
+    /**
+     * Da de alta un técnico nuevo, sin incidencias.
+     */
+    public void registrarTecnico(UsuarioDTO tecnico) {
+        cerrojo.lock();
+        try {
+            if (!porDni.containsKey(tecnico.getDni())) {
+                Carga carga = new Carga(tecnico, 0);
+                porDni.put(tecnico.getDni(), carga);
+                ordenadas.add(carga);
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Incidencias abiertas de cada técnico, indexadas por DNI.
+     */
+    public Map<String, Integer> getCargas() {
+        cerrojo.lock();
+        try {
+            Map<String, Integer> cargas = new HashMap<>();
+            porDni.forEach((dni, carga) -> cargas.put(dni, carga.abiertas));
+            return cargas;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private void sumar(String dniTecnico, int delta) {
+        if (dniTecnico == null) {
+            return;
+        }
+        cerrojo.lock();
+        try {
+            Carga carga = porDni.get(dniTecnico);
+            if (carga != null) {
+                // Se saca y se vuelve a meter para que el TreeSet mantenga el orden
+                ordenadas.remove(carga);
+                carga.abiertas = Math.max(0, carga.abiertas + delta);
+                ordenadas.add(carga);
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private static final class Carga {
+        final UsuarioDTO tecnico;
+        int abiertas;
+
+        Carga(UsuarioDTO tecnico, int abiertas) {
+            this.tecnico = tecnico;
+            this.abiertas = abiertas;
+        }
+    }
+}
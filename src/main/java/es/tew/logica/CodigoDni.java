@@ -0,0 +1,72 @@
+package es.tew.logica;
+
+/**
+ * Codificación de un DNI (8 cifras y una letra) en un int, sin pérdida.
+ *
+ * El código es número * 26 + (letra - 'A'). Como mucho vale 2.599.999.999, que no cabe
+ * en un int con signo pero sí sin signo: se guarda tal cual (puede salir negativo) y
+ * {@link #NO_CODIFICABLE} (-1, es decir 4.294.967.295) nunca es un código válido.
+ * Se guarda la letra aunque no sea la de control: en los datos hay DNI con la letra
+ * mal y tienen que seguir encontrándose. Lo que no tenga la forma de un DNI (un NIE,
+ * por ejemplo) no se codifica y quien use la clase debe tratarlo aparte.
+ */
+public final class CodigoDni {
+
+    public static final int NO_CODIFICABLE = -1;
+
+    private static final String LETRAS_CONTROL = "TRWAGMYFPDXBNJZSQVHLCKE";
+
+    private CodigoDni() {
+    }
+
+    /**
+     * @return El código del DNI, o {@link #NO_CODIFICABLE} si no son 8 cifras y una
+     *         letra mayúscula.
+     */
+    public static int codificar(String dni) {
+        if (dni == null || dni.length() != 9) {
+            return NO_CODIFICABLE;
+        }
+        int numero = 0;
+        for (int i = 0; i < 8; i++) {
+            char c = dni.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_CODIFICABLE;
+            }
+            numero = numero * 10 + (c - '0');
+        }
+        char letra = dni.charAt(8);
+        if (letra < 'A' || letra > 'Z') {
+            return NO_CODIFICABLE;
+        }
+        // Desborda a propósito por encima de Integer.MAX_VALUE (ver la clase)
+        return numero * 26 + (letra - 'A');
+    }
+
+    /**
+     * DNI de un código obtenido con {@link #codificar}.
+     */
+    public static String decodificar(int codigo) {
+        long valor = Integer.toUnsignedLong(codigo);
+        char[] dni = new char[9];
+        dni[8] = (char) ('A' + valor % 26);
+        long numero = valor / 26;
+        for (int i = 7; i >= 0; i--) {
+            dni[i] = (char) ('0' + numero % 10);
+            numero /= 10;
+        }
+        return new String(dni);
+    }
+
+    /**
+     * Si la letra del DNI es la que corresponde a su número.
+     */
+    public static boolean letraCorrecta(String dni) {
+        int codigo = codificar(dni);
+        if (codigo == NO_CODIFICABLE) {
+            return false;
+        }
+        long valor = Integer.toUnsignedLong(codigo);
+        return LETRAS_CONTROL.charAt((int) (valor / 26 % 23)) == dni.charAt(8);
+    }
+}
@@ -0,0 +1,143 @@
+package es.tew.logica;
+
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import es.tew.dao.CacheEntidades;
+import es.tew.dao.ComentarioDAO;
+import es.tew.dao.HistorialEstadoDAO;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dto.ComentarioDTO;
+import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Caché de IncidenciaDetalle por ID de incidencia: una incidencia que consultan muchos
+ * usuarios cuesta una búsqueda en memoria por visita en lugar de tres consultas.
+ *
+ * ServicioIncidencias invalida el detalle cuando se confirma un cambio de la incidencia
+ * o un comentario nuevo; la siguiente visita lo vuelve a cargar entero. Usa los mismos
+ * parámetros que las cachés de los DAO (incidencias.cache.activa, incidencias.cache.ttlMs)
+ * y su propio tamaño máximo, incidencias.cache.detalles.max.
+ *
+ * Con incidencias.detalle.hilos &gt; 0, al cargar un detalle que no está en caché los
+ * comentarios y el historial se leen a la vez (ver AmbitoParalelo), en un grupo de ese
+ * número de hilos; si están todos ocupados, la petición hace las lecturas ella misma en
+ * lugar de esperar en una cola. incidencias.detalle.timeoutMs es el plazo de las dos; al
+ * agotarlo la petición falla sin esperar, pero la consulta en marcha no se interrumpe y
+ * sigue ocupando su hilo hasta que termina.
+ * Solo compensa con la BDD en otra máquina: con la embebida cada consulta cuesta menos
+ * que pasarla a otro hilo, así que por defecto se carga en secuencia.
+ */
+@ApplicationScoped
+public class DetallesIncidencia {
+
+    private static final boolean CACHE_ACTIVA =
+            Boolean.parseBoolean(System.getProperty("incidencias.cache.activa", "true"));
+    private static final int CACHE_MAX = Integer.getInteger("incidencias.cache.detalles.max", 500);
+    private static final long CACHE_TTL_MS = Long.getLong("incidencias.cache.ttlMs", 300000L);
+    private static final int HILOS = Integer.getInteger("incidencias.detalle.hilos", 0);
+    private static final long TIMEOUT_MS = Long.getLong("incidencias.detalle.timeoutMs", 5000L);
+
+    @Inject
+    private IncidenciaDAO incidenciaDAO;
+    @Inject
+    private ComentarioDAO comentarioDAO;
+    @Inject
+    private HistorialEstadoDAO historialEstadoDAO;
+
+    private boolean cacheActiva = CACHE_ACTIVA;
+    private CacheEntidades<Long, IncidenciaDetalle> cache;
+    private ThreadPoolExecutor cargadores;
+
+    public DetallesIncidencia() {
+    }
+
+    /**
+     * Para usarlo fuera del contenedor (pruebas). Hay que llamar a init().
+     * @param cacheActiva Si se guardan los detalles, sin mirar incidencias.cache.activa (que
+     *        las pruebas de los DAO desactivan para contar sentencias).
+     */
+    public DetallesIncidencia(IncidenciaDAO incidenciaDAO, ComentarioDAO comentarioDAO,
+            HistorialEstadoDAO historialEstadoDAO, boolean cacheActiva) {
+        this.cacheActiva = cacheActiva;
+        this.incidenciaDAO = incidenciaDAO;
+        this.comentarioDAO = comentarioDAO;
+        this.historialEstadoDAO = historialEstadoDAO;
+    }
+
+    @PostConstruct
+    public void init() {
+        cache = cacheActiva ? new CacheEntidades<>("detalles", CACHE_MAX, CACHE_TTL_MS, IncidenciaDetalle::copia) : null;
+        if (HILOS > 0) {
+            AtomicInteger contador = new AtomicInteger();
+            // Sin cola: si no hay un hilo libre la tarea se ejecuta en el hilo que la lanza
+            cargadores = new ThreadPoolExecutor(0, HILOS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                Thread t = new Thread(r, "detalle-carga-" + contador.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (cargadores != null) {
+            cargadores.shutdownNow();
+        }
+    }
+
+    /**
+     * Detalle de la incidencia, o null si no existe.
+     */
+    public IncidenciaDetalle obtener(Long id) {
+        if (id == null) {
+            return null;
+        }
+        return cache != null ? cache.obtener(id, this::cargar) : cargar(id);
+    }
+
+    /**
+     * Descarta el detalle guardado; se llama después de confirmar el cambio.
+     */
+    public void invalidar(Long id) {
+        if (cache != null && id != null) {
+            cache.invalidar(id);
+        }
+    }
+
+    /**
+     * Estadísticas de la caché, o null si está desactivada.
+     */
+    public CacheEntidades.Stats getStats() {
+        return cache != null ? cache.getStats() : null;
+    }
+
+    private IncidenciaDetalle cargar(Long id) {
+        IncidenciaDTO incidencia = incidenciaDAO.findById(id);
+        if (incidencia == null) {
+            return null;
+        }
+        // Los comentarios y el historial apuntan a esta instancia, que no sale de aquí:
+        // la incidencia que se entrega es siempre una copia que el llamante puede editar
+        if (cargadores == null) {
+            List<ComentarioDTO> comentarios = comentarioDAO.findByIncidencia(incidencia);
+            List<HistorialEstadoDTO> historial = historialEstadoDAO.findByIncidencia(incidencia);
+            return new IncidenciaDetalle(new IncidenciaDTO(incidencia), comentarios, historial);
+        }
+        try (AmbitoParalelo ambito = new AmbitoParalelo(cargadores, TIMEOUT_MS)) {
+            Supplier<List<ComentarioDTO>> comentarios = ambito.lanzar(() -> comentarioDAO.findByIncidencia(incidencia));
+            Supplier<List<HistorialEstadoDTO>> historial = ambito.lanzar(() -> historialEstadoDAO.findByIncidencia(incidencia));
+            ambito.esperar();
+            return new IncidenciaDetalle(new IncidenciaDTO(incidencia), comentarios.get(), historial.get());
+        }
+    }
+}
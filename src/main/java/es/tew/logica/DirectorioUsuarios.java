@@ -0,0 +1,149 @@
+package es.tew.logica;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.tew.dao.UsuarioDAO;
+import es.tew.dto.UsuarioDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Directorio en memoria de los usuarios, indexado por DNI y por rol, para los
+ * conversores y desplegables: después de la carga inicial no consultan la BDD.
+ * Por DNI se busca en un IndiceUsuariosDni (claves int); para el autocompletado, cada
+ * rol tiene además un IndicePrefijos.
+ *
+ * Se guarda como una fotografía inmutable que se sustituye entera en cada alta, cambio
+ * o baja (pocas y solo del administrador), así que las lecturas no toman cerrojos.
+ * Las contraseñas no se guardan: el login sigue yendo a la BDD.
+ */
+@ApplicationScoped
+public class DirectorioUsuarios {
+
+    private static final Comparator<UsuarioDTO> POR_DNI = Comparator.comparing(UsuarioDTO::getDni);
+
+    @Inject
+    private UsuarioDAO usuarioDAO;
+
+    private volatile Fotografia actual = new Fotografia(List.of());
+
+    // Constructor para CDI
+    public DirectorioUsuarios() {
+    }
+
+    /**
+     * Constructor para usar la clase fuera del contenedor (pruebas).
+     * Hay que llamar a {@link #recargar()} antes de usarla.
+     */
+    public DirectorioUsuarios(UsuarioDAO usuarioDAO) {
+        this.usuarioDAO = usuarioDAO;
+    }
+
+    /**
+     * Carga todos los usuarios desde la BDD.
+     */
+    @PostConstruct
+    public synchronized void recargar() {
+        actual = new Fotografia(usuarioDAO.findAll());
+    }
+
+    /**
+     * Añade el usuario o sustituye sus datos. Se llama después de guardarlo.
+     */
+    public synchronized void registrar(UsuarioDTO usuario) {
+        List<UsuarioDTO> usuarios = new ArrayList<>(actual.todos);
+        usuarios.removeIf(u -> u.getDni().equals(usuario.getDni()));
+        usuarios.add(usuario);
+        actual = new Fotografia(usuarios);
+    }
+
+    /**
+     * Quita el usuario. Se llama después de borrarlo.
+     */
+    public synchronized void eliminar(String dni) {
+        List<UsuarioDTO> usuarios = new ArrayList<>(actual.todos);
+        if (usuarios.removeIf(u -> u.getDni().equals(dni))) {
+            actual = new Fotografia(usuarios);
+        }
+    }
+
+    /**
+     * Copia del usuario con ese DNI, o null si no existe.
+     */
+    public UsuarioDTO buscar(String dni) {
+        return actual.porDni.buscar(dni);
+    }
+
+    /**
+     * Todos los usuarios, ordenados por DNI. La lista es de solo lectura y sus
+     * elementos no deben modificarse.
+     */
+    public List<UsuarioDTO> getTodos() {
+        return actual.todos;
+    }
+
+    /**
+     * Usuarios con ese rol, ordenados por DNI (de solo lectura, como {@link #getTodos()}).
+     */
+    public List<UsuarioDTO> getPorRol(String rol) {
+        return actual.porRol.getOrDefault(rol, List.of());
+    }
+
+    /**
+     * Usuarios de los roles indicados con un DNI, nombre o apellido que empieza por el
+     * texto, ordenados por nombre completo (de solo lectura, como {@link #getTodos()}).
+     * @param maximo Resultados como máximo.
+     */
+    public List<UsuarioDTO> buscarPorPrefijo(String texto, int maximo, String... roles) {
+        Fotografia f = actual;
+        List<Map.Entry<String, UsuarioDTO>> candidatos = new ArrayList<>();
+        for (String rol : roles) {
+            IndicePrefijos indice = f.prefijosPorRol.get(rol);
+            if (indice != null) {
+                for (UsuarioDTO u : indice.buscar(texto, maximo)) {
+                    candidatos.add(Map.entry(indice.ordenPorNombre(u), u));
+                }
+            }
+        }
+        candidatos.sort(Map.Entry.comparingByKey());
+        List<UsuarioDTO> resultado = new ArrayList<>(Math.min(maximo, candidatos.size()));
+        for (int i = 0; i < candidatos.size() && i < maximo; i++) {
+            resultado.add(candidatos.get(i).getValue());
+        }
+        return resultado;
+    }
+
+    /**
+     * Índices de un momento dado; nunca cambian una vez construidos.
+     */
+    private static final class Fotografia {
+        final List<UsuarioDTO> todos;
+        final IndiceUsuariosDni porDni;
+        final Map<String, List<UsuarioDTO>> porRol = new HashMap<>();
+        final Map<String, IndicePrefijos> prefijosPorRol = new HashMap<>();
+
+        Fotografia(List<UsuarioDTO> usuarios) {
+            List<UsuarioDTO> copias = new ArrayList<>(usuarios.size());
+            Map<String, List<UsuarioDTO>> grupos = new HashMap<>();
+            for (UsuarioDTO u : usuarios) {
+                UsuarioDTO copia = new UsuarioDTO(u.getDni(), u.getNombre(), u.getApellidos(), null, u.getRol());
+                copias.add(copia);
+                grupos.computeIfAbsent(copia.getRol(), k -> new ArrayList<>()).add(copia);
+            }
+            copias.sort(POR_DNI);
+            todos = Collections.unmodifiableList(copias);
+            porDni = new IndiceUsuariosDni(copias);
+            grupos.forEach((rol, lista) -> {
+                lista.sort(POR_DNI);
+                porRol.put(rol, Collections.unmodifiableList(lista));
+                prefijosPorRol.put(rol, new IndicePrefijos(lista));
+            });
+        }
+    }
+}
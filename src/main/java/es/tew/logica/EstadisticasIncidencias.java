@@ -0,0 +1,215 @@
+package es.tew.logica;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dto.IncidenciaDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Contadores en memoria de incidencias por estado, por categoría y por técnico,
+ * para que el panel del administrador no tenga que recorrer la tabla en cada visita.
+ *
+ * Se reconstruyen desde la BDD al arrancar y ServicioIncidencias los actualiza en cada
+ * alta o modificación. Son contadores sin bloqueo (LongAdder): si una actualización se
+ * cruza con una reconstrucción puede perderse, por eso una tarea periódica los compara
+ * con un GROUP BY de la BDD y los rehace si no coinciden.
+ */
+@ApplicationScoped
+public class EstadisticasIncidencias {
+
+    // Estados que el panel muestra siempre, aunque no haya incidencias en ellos
+    private static final List<String> ESTADOS = List.of("ABIERTA", "EN_PROCESO", "PENDIENTE_USUARIO", "CERRADA");
+
+    private static final long RECONCILIACION_MS = Long.getLong("incidencias.estadisticas.reconciliacionMs", 600000L);
+
+    @Inject
+    private IncidenciaDAO incidenciaDAO;
+
+    private volatile Contadores contadores = new Contadores();
+    private ScheduledExecutorService reconciliador;
+
+    // Constructor para CDI
+    public EstadisticasIncidencias() {
+    }
+
+    /**
+     * Constructor para usar la clase fuera del contenedor (pruebas), sin la reconciliación
+     * periódica. Hay que llamar a {@link #reconstruir()} antes de consultar los contadores.
+     */
+    public EstadisticasIncidencias(IncidenciaDAO incidenciaDAO) {
+        this.incidenciaDAO = incidenciaDAO;
+    }
+
+    /**
+     * Fuerza la creación del bean (y la carga de los contadores) al desplegar,
+     * en lugar de en la primera visita al panel.
+     */
+    void alArrancar(@Observes @Initialized(ApplicationScoped.class) Object contexto) {
+        System.out.println("INFO: Estadísticas de incidencias cargadas: " + getPorEstado());
+    }
+
+    @PostConstruct
+    void init() {
+        reconstruir();
+        reconciliador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "estadisticas-reconciliacion");
+            t.setDaemon(true);
+            return t;
+        });
+        reconciliador.scheduleWithFixedDelay(this::reconciliar,
+                RECONCILIACION_MS, RECONCILIACION_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void detener() {
+        if (reconciliador != null) {
+            reconciliador.shutdownNow();
+        }
+    }
+
+    // ******************************************************
+    // ACTUALIZACIÓN INCREMENTAL
+    // ******************************************************
+
+    /**
+     * Cuenta una incidencia recién creada.
+     */
+    public void registrarAlta(IncidenciaDTO incidencia) {
+        Contadores c = contadores;
+        c.sumar(c.porEstado, incidencia.getEstado(), 1);
+        c.sumar(c.porCategoria, incidencia.getCategoria(), 1);
+        c.sumar(c.porTecnico, dniTecnico(incidencia), 1);
+    }
+
+    /**
+     * Mueve los contadores de una incidencia modificada: resta sus valores anteriores
+     * y suma los nuevos (solo de los campos que han cambiado).
+     */
+    public void registrarCambio(IncidenciaDTO antes, IncidenciaDTO despues) {
+        Contadores c = contadores;
+        c.mover(c.porEstado, antes.getEstado(), despues.getEstado());
+        c.mover(c.porCategoria, antes.getCategoria(), despues.getCategoria());
+        c.mover(c.porTecnico, dniTecnico(antes), dniTecnico(despues));
+    }
+
+    private static String dniTecnico(IncidenciaDTO incidencia) {
+        return incidencia.getTecnico() != null ? incidencia.getTecnico().getDni() : null;
+    }
+
+    // ******************************************************
+    // CONSULTA
+    // ******************************************************
+
+    /**
+     * Número de incidencias por estado; siempre incluye los estados de ESTADOS.
+     */
+    public Map<String, Long> getPorEstado() {
+        Map<String, Long> resultado = new HashMap<>();
+        for (String estado : ESTADOS) {
+            resultado.put(estado, 0L);
+        }
+        resultado.putAll(contadores.copia(contadores.porEstado));
+        return resultado;
+    }
+
+    public Map<String, Long> getPorCategoria() {
+        return contadores.copia(contadores.porCategoria);
+    }
+
+    /**
+     * Número de incidencias asignadas a cada técnico, indexado por DNI.
+     */
+    public Map<String, Long> getPorTecnico() {
+        return contadores.copia(contadores.porTecnico);
+    }
+
+    // ******************************************************
+    // RECONSTRUCCIÓN Y RECONCILIACIÓN
+    // ******************************************************
+
+    /**
+     * Rehace todos los contadores con tres GROUP BY sobre la BDD.
+     */
+    public synchronized void reconstruir() {
+        Contadores nuevos = new Contadores();
+        nuevos.cargar(nuevos.porEstado, incidenciaDAO.countByEstado());
+        nuevos.cargar(nuevos.porCategoria, incidenciaDAO.countByCategoria());
+        nuevos.cargar(nuevos.porTecnico, incidenciaDAO.countByTecnico());
+        contadores = nuevos;
+    }
+
+    /**
+     * Compara los contadores con la BDD y, si alguno no coincide, los reconstruye.
+     * @return true si ya coincidían.
+     */
+    public synchronized boolean reconciliar() {
+        try {
+            Contadores c = contadores;
+            boolean coinciden = c.copia(c.porEstado).equals(incidenciaDAO.countByEstado())
+                    && c.copia(c.porCategoria).equals(incidenciaDAO.countByCategoria())
+                    && c.copia(c.porTecnico).equals(incidenciaDAO.countByTecnico());
+            if (!coinciden) {
+                System.err.println("AVISO: Las estadísticas en memoria no coinciden con la BDD, se reconstruyen.");
+                reconstruir();
+            }
+            return coinciden;
+        } catch (RuntimeException e) {
+            System.err.println("Error al reconciliar las estadísticas: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Juego de contadores. Se sustituye entero al reconstruir, de modo que los lectores
+     * nunca ven un estado a medio cargar.
+     */
+    private static final class Contadores {
+        final Map<String, LongAdder> porEstado = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> porCategoria = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> porTecnico = new ConcurrentHashMap<>();
+
+        void sumar(Map<String, LongAdder> mapa, String clave, long delta) {
+            if (clave != null) {
+                mapa.computeIfAbsent(clave, k -> new LongAdder()).add(delta);
+            }
+        }
+
+        void mover(Map<String, LongAdder> mapa, String antes, String despues) {
+            if (antes == null ? despues != null : !antes.equals(despues)) {
+                sumar(mapa, antes, -1);
+                sumar(mapa, despues, 1);
+            }
+        }
+
+        void cargar(Map<String, LongAdder> mapa, Map<String, Long> valores) {
+            valores.forEach((clave, valor) -> sumar(mapa, clave, valor));
+        }
+
+        /**
+         * Copia de los valores, sin las claves que han quedado a cero.
+         */
+        Map<String, Long> copia(Map<String, LongAdder> mapa) {
+            Map<String, Long> copia = new HashMap<>();
+            mapa.forEach((clave, contador) -> {
+                long valor = contador.sum();
+                if (valor != 0) {
+                    copia.put(clave, valor);
+                }
+            });
+            return copia;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package es.tew.logica;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.ReceptorExportacion;
+import es.tew.dto.ComentarioDTO;
+import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Exportación completa de incidencias, con sus comentarios e historial, para auditoría.
+ *
+ * Cada fila se escribe según llega de IncidenciaDAO.exportar, sin listas intermedias,
+ * así que la memoria no depende del tamaño de la tabla. Las incidencias salen en orden
+ * de ID: si la descarga se corta, se reanuda pidiendo desde el último ID recibido + 1.
+ * Las fechas van como "yyyy-MM-dd HH:mm:ss", igual que en la importación.
+ *
+ * Formatos:
+ * <ul>
+ * <li>CSV: cabecera y una fila por incidencia, comentario o cambio de estado, con la
+ * columna TIPO (INCIDENCIA, COMENTARIO, HISTORIAL) y las demás columnas que tengan
+ * sentido para ese tipo. FECHA es la de creación, la del comentario o la del cambio;
+ * DNI es el del solicitante, el autor o quien hizo el cambio; TEXTO es la descripción o
+ * el texto del comentario.</li>
+ * <li>JSON: una incidencia por línea (JSON Lines), con sus comentarios y su historial
+ * anidados. Cada línea es un documento completo, así que una descarga cortada solo
+ * pierde la última.</li>
+ * </ul>
+ */
+@ApplicationScoped
+public class ExportadorIncidencias {
+
+    public enum Formato {
+        CSV("text/csv", "csv"),
+        JSON("application/x-ndjson", "jsonl");
+
+        private final String tipoMime;
+        private final String extension;
+
+        Formato(String tipoMime, String extension) {
+            this.tipoMime = tipoMime;
+            this.extension = extension;
+        }
+
+        public String getTipoMime() {
+            return tipoMime;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Inject
+    private IncidenciaDAO incidenciaDAO;
+
+    public ExportadorIncidencias() {
+    }
+
+    /**
+     * Para usarlo fuera del contenedor (pruebas).
+     */
+    public ExportadorIncidencias(IncidenciaDAO incidenciaDAO) {
+        this.incidenciaDAO = incidenciaDAO;
+    }
+
+    /**
+     * Escribe las incidencias con ID entre desdeId y hastaId (incluidos).
+     * @param destino Donde se escribe; no se cierra ni se vacía al terminar.
+     * @return Número de incidencias exportadas.
+     * @throws IOException Si falla la escritura o la BDD; lo escrito hasta entonces queda incompleto.
+     */
+    public long exportar(Formato formato, long desdeId, long hastaId, Writer destino) throws IOException {
+        long inicio = System.currentTimeMillis();
+        ReceptorExportacion escritor = formato == Formato.CSV ? new EscritorCsv(destino) : new EscritorJson(destino);
+        long exportadas = incidenciaDAO.exportar(desdeId, hastaId, escritor);
+        System.out.println("INFO: Exportadas " + exportadas + " incidencias en " + formato + " (IDs " + desdeId
+                + ".." + hastaId + ") en " + (System.currentTimeMillis() - inicio) + " ms");
+        return exportadas;
+    }
+
+    private static String fecha(Timestamp fecha) {
+        return fecha != null ? fecha.toLocalDateTime().format(FORMATO_FECHA) : null;
+    }
+
+    private static String dni(UsuarioDTO usuario) {
+        return usuario != null ? usuario.getDni() : null;
+    }
+
+    // ******************************************************
+    // CSV
+    // ******************************************************
+
+    private static final class EscritorCsv implements ReceptorExportacion {
+
+        private final Writer salida;
+
+        EscritorCsv(Writer salida) throws IOException {
+            this.salida = salida;
+            salida.write("TIPO,ID_INCIDENCIA,ID,FECHA,DNI,ESTADO_ANTERIOR,ESTADO,CATEGORIA,DNI_TECNICO,TITULO,TEXTO\r\n");
+        }
+
+        @Override
+        public void incidencia(IncidenciaDTO inc) throws IOException {
+            fila("INCIDENCIA", inc.getId(), inc.getId(), fecha(inc.getFechaCreacion()), dni(inc.getSolicitante()),
+                    null, inc.getEstado(), inc.getCategoria(), dni(inc.getTecnico()), inc.getTitulo(),
+                    inc.getDescripcion());
+        }
+
+        @Override
+        public void comentario(ComentarioDTO c) throws IOException {
+            fila("COMENTARIO", c.getIncidencia().getId(), c.getId(), fecha(c.getFecha()), dni(c.getAutor()),
+                    null, null, null, null, null, c.getTexto());
+        }
+
+        @Override
+        public void cambioEstado(HistorialEstadoDTO h) throws IOException {
+            fila("HISTORIAL", h.getIncidencia().getId(), h.getId(), fecha(h.getFechaCambio()), dni(h.getUsuario()),
+                    h.getEstadoAnterior(), h.getEstadoNuevo(), null, null, null, null);
+        }
+
+        @Override
+        public void finIncidencia(IncidenciaDTO inc) {
+            // En CSV cada fila es independiente
+        }
+
+        private void fila(String tipo, Long idIncidencia, Long id, String fecha, String dni, String estadoAnterior,
+                String estado, String categoria, String dniTecnico, String titulo, String texto) throws IOException {
+            salida.write(tipo);
+            salida.write(',');
+            salida.write(String.valueOf(idIncidencia));
+            salida.write(',');
+            salida.write(String.valueOf(id));
+            for (String valor : new String[] { fecha, dni, estadoAnterior, estado, categoria, dniTecnico, titulo, texto }) {
+                salida.write(',');
+                campo(valor);
+            }
+            salida.write("\r\n");
+        }
+
+        /**
+         * Campo entre comillas si lleva separadores, comillas o saltos de línea (RFC 4180).
+         */
+        private void campo(String valor) throws IOException {
+            if (valor == null) {
+                return;
+            }
+            boolean comillas = false;
+            for (int i = 0; i < valor.length() && !comillas; i++) {
+                char c = valor.charAt(i);
+                comillas = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!comillas) {
+                salida.write(valor);
+                return;
+            }
+            salida.write('"');
+            salida.write(valor.replace("\"", "\"\""));
+            salida.write('"');
+        }
+    }
+
+    // ******************************************************
+    // JSON LINES
+    // ******************************************************
+
+    private static final class EscritorJson implements ReceptorExportacion {
+
+        private final Writer salida;
+        private boolean primerComentario;
+        private boolean primerCambio;
+        private boolean historialAbierto;
+
+        EscritorJson(Writer salida) {
+            this.salida = salida;
+        }
+
+        @Override
+        public void incidencia(IncidenciaDTO inc) throws IOException {
+            salida.write("{\"id\":");
+            salida.write(String.valueOf(inc.getId()));
+            propiedad("titulo", inc.getTitulo());
+            propiedad("descripcion", inc.getDescripcion());
+            propiedad("estado", inc.getEstado());
+            propiedad("categoria", inc.getCategoria());
+            propiedad("fechaCreacion", fecha(inc.getFechaCreacion()));
+            usuario("solicitante", inc.getSolicitante());
+            usuario("tecnico", inc.getTecnico());
+            salida.write(",\"comentarios\":[");
+            primerComentario = true;
+            primerCambio = true;
+            historialAbierto = false;
+        }
+
+        @Override
+        public void comentario(ComentarioDTO c) throws IOException {
+            if (!primerComentario) {
+                salida.write(',');
+            }
+            primerComentario = false;
+            salida.write("{\"id\":");
+            salida.write(String.valueOf(c.getId()));
+            propiedad("fecha", fecha(c.getFecha()));
+            propiedad("autor", dni(c.getAutor()));
+            propiedad("texto", c.getTexto());
+            salida.write('}');
+        }
+
+        @Override
+        public void cambioEstado(HistorialEstadoDTO h) throws IOException {
+            abrirHistorial();
+            if (!primerCambio) {
+                salida.write(',');
+            }
+            primerCambio = false;
+            salida.write("{\"id\":");
+            salida.write(String.valueOf(h.getId()));
+            propiedad("fecha", fecha(h.getFechaCambio()));
+            propiedad("usuario", dni(h.getUsuario()));
+            propiedad("estadoAnterior", h.getEstadoAnterior());
+            propiedad("estadoNuevo", h.getEstadoNuevo());
+            salida.write('}');
+        }
+
+        @Override
+        public void finIncidencia(IncidenciaDTO inc) throws IOException {
+            abrirHistorial();
+            salida.write("]}\n");
+        }
+
+        /**
+         * Cierra la lista de comentarios y abre la del historial (los comentarios llegan antes).
+         */
+        private void abrirHistorial() throws IOException {
+            if (!historialAbierto) {
+                salida.write("],\"historial\":[");
+                historialAbierto = true;
+            }
+        }
+
+        private void usuario(String nombre, UsuarioDTO u) throws IOException {
+            salida.write(",\"");
+            salida.write(nombre);
+            salida.write("\":");
+            if (u == null) {
+                salida.write("null");
+                return;
+            }
+            salida.write("{\"dni\":");
+            cadena(u.getDni());
+            propiedad("nombre", u.getNombre());
+            propiedad("apellidos", u.getApellidos());
+            salida.write('}');
+        }
+
+        private void propiedad(String nombre, String valor) throws IOException {
+            salida.write(",\"");
+            salida.write(nombre);
+            salida.write("\":");
+            cadena(valor);
+        }
+
+        private void cadena(String valor) throws IOException {
+            if (valor == null) {
+                salida.write("null");
+                return;
+            }
+            salida.write('"');
+            for (int i = 0; i < valor.length(); i++) {
+                char c = valor.charAt(i);
+                switch (c) {
+                    case '"': salida.write("\\\""); break;
+                    case '\\': salida.write("\\\\"); break;
+                    case '\n': salida.write("\\n"); break;
+                    case '\r': salida.write("\\r"); break;
+                    case '\t': salida.write("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            salida.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            salida.write(c);
+                        }
+                }
+            }
+            salida.write('"');
+        }
+    }
+}
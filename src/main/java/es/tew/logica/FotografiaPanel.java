@@ -0,0 +1,81 @@
+package es.tew.logica;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+import es.tew.dto.IncidenciaDTO;
+
+/**
+ * Todo lo que muestra el panel de estadísticas del administrador, calculado de una vez:
+ * recuentos por estado y por categoría, tiempos de resolución y la incidencia abierta
+ * más antigua. Es inmutable y la comparten todos los administradores hasta que
+ * ServicioIncidencias calcula la siguiente (ver incidencias.panel.refrescoMs).
+ */
+public final class FotografiaPanel implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long generadaMs;
+    private final Map<String, Long> porEstado;
+    private final Map<String, Long> porCategoria;
+    private final HistogramaTiempos.Resumen tiempoGlobal;
+    private final Map<String, HistogramaTiempos.Resumen> tiemposPorCategoria;
+    private final Map<String, HistogramaTiempos.Resumen> tiemposPorTecnico;
+    private final IncidenciaDTO incidenciaMasAntigua;
+
+    FotografiaPanel(Map<String, Long> porEstado, Map<String, Long> porCategoria,
+            HistogramaTiempos.Resumen tiempoGlobal,
+            Map<String, HistogramaTiempos.Resumen> tiemposPorCategoria,
+            Map<String, HistogramaTiempos.Resumen> tiemposPorTecnico,
+            IncidenciaDTO incidenciaMasAntigua) {
+        this.generadaMs = System.currentTimeMillis();
+        this.porEstado = Collections.unmodifiableMap(porEstado);
+        this.porCategoria = Collections.unmodifiableMap(porCategoria);
+        this.tiempoGlobal = tiempoGlobal;
+        this.tiemposPorCategoria = Collections.unmodifiableMap(tiemposPorCategoria);
+        this.tiemposPorTecnico = Collections.unmodifiableMap(tiemposPorTecnico);
+        this.incidenciaMasAntigua = incidenciaMasAntigua;
+    }
+
+    /**
+     * Milisegundos desde que se calculó.
+     */
+    public long getEdadMs() {
+        return System.currentTimeMillis() - generadaMs;
+    }
+
+    public Map<String, Long> getPorEstado() {
+        return porEstado;
+    }
+
+    public Map<String, Long> getPorCategoria() {
+        return porCategoria;
+    }
+
+    /**
+     * Tiempo medio de resolución de las incidencias cerradas, en horas.
+     */
+    public double getTiempoMedioResolucion() {
+        return tiempoGlobal.getMediaHoras();
+    }
+
+    public HistogramaTiempos.Resumen getTiempoGlobal() {
+        return tiempoGlobal;
+    }
+
+    public Map<String, HistogramaTiempos.Resumen> getTiemposPorCategoria() {
+        return tiemposPorCategoria;
+    }
+
+    public Map<String, HistogramaTiempos.Resumen> getTiemposPorTecnico() {
+        return tiemposPorTecnico;
+    }
+
+    /**
+     * Copia de la incidencia no cerrada más antigua, o null si no hay ninguna.
+     */
+    public IncidenciaDTO getIncidenciaMasAntigua() {
+        return incidenciaMasAntigua != null ? new IncidenciaDTO(incidenciaMasAntigua) : null;
+    }
+}
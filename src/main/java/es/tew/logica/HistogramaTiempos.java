@@ -0,0 +1,163 @@
+package es.tew.logica;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de duraciones (en segundos) con cubetas log-lineales: valores exactos
+ * hasta 15 s y, a partir de ahí, 8 cubetas por cada potencia de 2. Así el error relativo
+ * de un percentil es menor del 7% para cualquier duración, con un tamaño fijo de memoria.
+ *
+ * Se puede registrar desde varios hilos sin bloqueo, y dos histogramas se combinan
+ * sumando sus cubetas (por ejemplo, para obtener el global a partir de los de categoría).
+ */
+public class HistogramaTiempos {
+
+    private static final int EXACTOS = 16;
+    private static final int CUBETAS_POR_POTENCIA = 8;
+    // Suficiente para cualquier long positivo
+    private static final int NUM_CUBETAS = EXACTOS + (63 - 4) * CUBETAS_POR_POTENCIA;
+
+    private final AtomicLongArray cubetas = new AtomicLongArray(NUM_CUBETAS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder suma = new LongAdder();
+
+    /**
+     * Registra una duración. Los valores negativos cuentan como 0.
+     */
+    public void registrar(long segundos) {
+        long valor = Math.max(0, segundos);
+        cubetas.incrementAndGet(indice(valor));
+        total.increment();
+        suma.add(valor);
+    }
+
+    /**
+     * Suma a este histograma las observaciones de otro.
+     */
+    public void combinar(HistogramaTiempos otro) {
+        for (int i = 0; i < NUM_CUBETAS; i++) {
+            long n = otro.cubetas.get(i);
+            if (n != 0) {
+                cubetas.addAndGet(i, n);
+            }
+        }
+        total.add(otro.total.sum());
+        suma.add(otro.suma.sum());
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Media exacta en segundos (no depende de las cubetas), o 0 si está vacío.
+     */
+    public double getMedia() {
+        long n = total.sum();
+        return n > 0 ? (double) suma.sum() / n : 0.0;
+    }
+
+    /**
+     * Percentil aproximado en segundos: el punto medio de la cubeta que lo contiene.
+     * @param percentil Valor entre 0 y 100.
+     * @return Duración en segundos, o 0 si el histograma está vacío.
+     */
+    public long percentil(double percentil) {
+        long n = 0;
+        long[] copia = new long[NUM_CUBETAS];
+        for (int i = 0; i < NUM_CUBETAS; i++) {
+            copia[i] = cubetas.get(i);
+            n += copia[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rango = Math.max(1, (long) Math.ceil(percentil / 100.0 * n));
+        long acumulado = 0;
+        for (int i = 0; i < NUM_CUBETAS; i++) {
+            acumulado += copia[i];
+            if (acumulado >= rango) {
+                // Sin sumar los dos límites, que en las últimas cubetas se saldría del long
+                return limiteInferior(i) + (limiteSuperior(i) - limiteInferior(i)) / 2;
+            }
+        }
+        return limiteSuperior(NUM_CUBETAS - 1);
+    }
+
+    /**
+     * Resumen para el panel: número de incidencias, media y percentiles 50/90/99.
+     */
+    public Resumen getResumen() {
+        return new Resumen(getTotal(), getMedia(), percentil(50), percentil(90), percentil(99));
+    }
+
+    // ******************************************************
+    // CUBETAS
+    // ******************************************************
+
+    static int indice(long valor) {
+        if (valor < EXACTOS) {
+            return (int) valor;
+        }
+        // Bit más alto del valor (>= 4) y los 3 bits siguientes eligen la cubeta
+        int exponente = (63 - Long.numberOfLeadingZeros(valor)) - 3;
+        int sub = (int) (valor >>> exponente) - CUBETAS_POR_POTENCIA;
+        return EXACTOS + (exponente - 1) * CUBETAS_POR_POTENCIA + sub;
+    }
+
+    static long limiteInferior(int indice) {
+        if (indice < EXACTOS) {
+            return indice;
+        }
+        int exponente = (indice - EXACTOS) / CUBETAS_POR_POTENCIA + 1;
+        long sub = (indice - EXACTOS) % CUBETAS_POR_POTENCIA + CUBETAS_POR_POTENCIA;
+        return sub << exponente;
+    }
+
+    static long limiteSuperior(int indice) {
+        if (indice < EXACTOS) {
+            return indice;
+        }
+        int exponente = (indice - EXACTOS) / CUBETAS_POR_POTENCIA + 1;
+        long sub = (indice - EXACTOS) % CUBETAS_POR_POTENCIA + CUBETAS_POR_POTENCIA;
+        return ((sub + 1) << exponente) - 1;
+    }
+
+    /**
+     * Foto inmutable de un histograma, con las duraciones en horas.
+     */
+    public static final class Resumen implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final double SEGUNDOS_POR_HORA = 3600.0;
+
+        private final long total;
+        private final double mediaHoras;
+        private final double p50Horas;
+        private final double p90Horas;
+        private final double p99Horas;
+
+        Resumen(long total, double mediaSegundos, long p50, long p90, long p99) {
+            this.total = total;
+            this.mediaHoras = mediaSegundos / SEGUNDOS_POR_HORA;
+            this.p50Horas = p50 / SEGUNDOS_POR_HORA;
+            this.p90Horas = p90 / SEGUNDOS_POR_HORA;
+            this.p99Horas = p99 / SEGUNDOS_POR_HORA;
+        }
+
+        public long getTotal() { return total; }
+        public double getMediaHoras() { return mediaHoras; }
+        public double getP50Horas() { return p50Horas; }
+        public double getP90Horas() { return p90Horas; }
+        public double getP99Horas() { return p99Horas; }
+
+        @Override
+        public String toString() {
+            return String.format("Resumen{total=%d, media=%.1fh, p50=%.1fh, p90=%.1fh, p99=%.1fh}",
+                    total, mediaHoras, p50Horas, p90Horas, p99Horas);
+        }
+    }
+}
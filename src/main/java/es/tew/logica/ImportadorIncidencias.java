@@ -0,0 +1,249 @@
+package es.tew.logica;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.UsuarioDAO;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Importación masiva de incidencias desde un CSV (migraciones desde otro gestor).
+ *
+ * El fichero se lee en streaming y se guarda en lotes con IncidenciaDAO.saveLote, que
+ * inserta las incidencias y su entrada inicial de historial con executeBatch en una sola
+ * transacción por lote. Las filas no válidas se rechazan una a una antes de llegar a la
+ * BDD, para que una fila mala no tire el lote entero.
+ *
+ * Formato: primera línea con los nombres de columna, separados por ',' o ';' (el que
+ * aparezca primero en la cabecera).
+ * Obligatorias: TITULO, DESCRIPCION, CATEGORIA, DNI_SOLICITANTE.
+ * Opcionales: ESTADO (ABIERTA por defecto), FECHA_CREACION ("yyyy-MM-dd HH:mm:ss" o
+ * "yyyy-MM-dd", ahora por defecto) y DNI_TECNICO (si falta y la incidencia no está
+ * cerrada, se asigna el técnico con menos carga, como en crearIncidencia).
+ */
+@ApplicationScoped
+public class ImportadorIncidencias {
+
+    public static final int TAMANO_LOTE_POR_DEFECTO = Integer.getInteger("incidencias.importacion.lote", 1000);
+
+    // Valores admitidos por las restricciones CHECK de la migración V1 (los estados, en IncidenciaDTO.ESTADOS)
+    private static final Set<String> CATEGORIAS =
+            Set.of("Internet", "Telefonía", "Ordenador", "Hardware", "Software", "Red", "Otro");
+    private static final Set<String> ESTADOS = Set.copyOf(IncidenciaDTO.ESTADOS);
+
+    // Longitudes máximas de las columnas
+    private static final int MAX_TITULO = 100;
+    private static final int MAX_DESCRIPCION = 500;
+
+    @Inject
+    private IncidenciaDAO incidenciaDAO;
+    @Inject
+    private UsuarioDAO usuarioDAO;
+    @Inject
+    private EstadisticasIncidencias estadisticas;
+    @Inject
+    private CargaTecnicos cargaTecnicos;
+
+    // Constructor para CDI
+    public ImportadorIncidencias() {
+    }
+
+    /**
+     * Constructor para usar la clase fuera del contenedor (pruebas).
+     */
+    public ImportadorIncidencias(IncidenciaDAO incidenciaDAO, UsuarioDAO usuarioDAO,
+            EstadisticasIncidencias estadisticas, CargaTecnicos cargaTecnicos) {
+        this.incidenciaDAO = incidenciaDAO;
+        this.usuarioDAO = usuarioDAO;
+        this.estadisticas = estadisticas;
+        this.cargaTecnicos = cargaTecnicos;
+    }
+
+    /**
+     * Importa todas las filas del CSV.
+     * @param csv Contenido del fichero; no se cierra.
+     * @param tamanoLote Filas por executeBatch/commit (como mínimo 1).
+     * @return Resumen con filas importadas, rechazadas y rendimiento.
+     */
+    public ResultadoImportacion importar(Reader csv, int tamanoLote) throws IOException {
+        ResultadoImportacion resultado = new ResultadoImportacion();
+        long inicio = System.currentTimeMillis();
+        int tamano = Math.max(1, tamanoLote);
+
+        BufferedReader entrada = csv instanceof BufferedReader ? (BufferedReader) csv : new BufferedReader(csv);
+        // El separador lo fija la cabecera, sin leerla dos veces (mark/reset limitaría su longitud)
+        LectorCsv lector = new LectorCsv(entrada, LectorCsv.AUTOMATICO);
+        List<String> nombres = lector.leer();
+        if (nombres == null) {
+            resultado.terminar(0);
+            return resultado;
+        }
+
+        Map<String, Integer> columnas = cabecera(nombres);
+        for (String obligatoria : List.of("TITULO", "DESCRIPCION", "CATEGORIA", "DNI_SOLICITANTE")) {
+            if (!columnas.containsKey(obligatoria)) {
+                throw new IOException("Falta la columna " + obligatoria + " en la cabecera del CSV.");
+            }
+        }
+
+        // Usuarios conocidos, para validar los DNI sin una consulta por fila
+        Map<String, UsuarioDTO> usuarios = new HashMap<>();
+        for (UsuarioDTO u : usuarioDAO.findAll()) {
+            usuarios.put(u.getDni(), new UsuarioDTO(u.getDni(), u.getNombre(), u.getApellidos(), null, u.getRol()));
+        }
+
+        List<IncidenciaDTO> lote = new ArrayList<>(tamano);
+        List<Long> lineas = new ArrayList<>(tamano);
+        List<String> fila;
+        while ((fila = lector.leer()) != null) {
+            resultado.filaLeida();
+            try {
+                lote.add(convertir(fila, columnas, usuarios));
+                lineas.add(lector.getLinea());
+            } catch (IllegalArgumentException e) {
+                resultado.rechazar(lector.getLinea(), e.getMessage());
+            }
+            if (lote.size() == tamano) {
+                guardarLote(lote, lineas, resultado);
+            }
+        }
+        guardarLote(lote, lineas, resultado);
+
+        resultado.terminar(System.currentTimeMillis() - inicio);
+        System.out.println("INFO: Importación de incidencias terminada: " + resultado);
+        return resultado;
+    }
+
+    private static Map<String, Integer> cabecera(List<String> nombres) {
+        Map<String, Integer> columnas = new HashMap<>();
+        for (int i = 0; i < nombres.size(); i++) {
+            // El BOM de UTF-8 que añaden algunas hojas de cálculo
+            String nombre = nombres.get(i).replace("\uFEFF", "").trim().toUpperCase();
+            columnas.put(nombre, i);
+        }
+        return columnas;
+    }
+
+    /**
+     * Construye la incidencia de una fila, o lanza IllegalArgumentException con el motivo del rechazo.
+     */
+    private static IncidenciaDTO convertir(List<String> fila, Map<String, Integer> columnas,
+            Map<String, UsuarioDTO> usuarios) {
+        IncidenciaDTO inc = new IncidenciaDTO();
+
+        inc.setTitulo(obligatorio(fila, columnas, "TITULO", MAX_TITULO));
+        inc.setDescripcion(obligatorio(fila, columnas, "DESCRIPCION", MAX_DESCRIPCION));
+
+        String categoria = obligatorio(fila, columnas, "CATEGORIA", Integer.MAX_VALUE);
+        if (!CATEGORIAS.contains(categoria)) {
+            throw new IllegalArgumentException("categoría desconocida '" + categoria + "'");
+        }
+        inc.setCategoria(categoria);
+
+        String estado = campo(fila, columnas, "ESTADO");
+        estado = estado.isEmpty() ? "ABIERTA" : estado.toUpperCase();
+        if (!ESTADOS.contains(estado)) {
+            throw new IllegalArgumentException("estado desconocido '" + estado + "'");
+        }
+        inc.setEstado(estado);
+
+        String fecha = campo(fila, columnas, "FECHA_CREACION");
+        if (!fecha.isEmpty()) {
+            try {
+                inc.setFechaCreacion(Timestamp.valueOf(fecha.length() == 10 ? fecha + " 00:00:00" : fecha));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("fecha de creación no válida '" + fecha + "'");
+            }
+        }
+
+        UsuarioDTO solicitante = usuarios.get(obligatorio(fila, columnas, "DNI_SOLICITANTE", Integer.MAX_VALUE));
+        if (solicitante == null) {
+            throw new IllegalArgumentException("el solicitante no existe");
+        }
+        inc.setSolicitante(solicitante);
+
+        String dniTecnico = campo(fila, columnas, "DNI_TECNICO");
+        if (!dniTecnico.isEmpty()) {
+            UsuarioDTO tecnico = usuarios.get(dniTecnico);
+            if (tecnico == null || !"TECNICO".equals(tecnico.getRol())) {
+                throw new IllegalArgumentException("el técnico " + dniTecnico + " no existe");
+            }
+            inc.setTecnico(tecnico);
+        }
+        return inc;
+    }
+
+    private static String campo(List<String> fila, Map<String, Integer> columnas, String nombre) {
+        Integer i = columnas.get(nombre);
+        return i != null && i < fila.size() ? fila.get(i).trim() : "";
+    }
+
+    private static String obligatorio(List<String> fila, Map<String, Integer> columnas, String nombre, int maximo) {
+        String valor = campo(fila, columnas, nombre);
+        if (valor.isEmpty()) {
+            throw new IllegalArgumentException("falta " + nombre);
+        }
+        if (valor.length() > maximo) {
+            throw new IllegalArgumentException(nombre + " supera los " + maximo + " caracteres");
+        }
+        return valor;
+    }
+
+    /**
+     * Asigna técnico a las incidencias abiertas que no lo traen, guarda el lote y actualiza
+     * los contadores en memoria. Si el lote falla, se deshace entero y sus filas se rechazan.
+     */
+    private void guardarLote(List<IncidenciaDTO> lote, List<Long> lineas, ResultadoImportacion resultado) {
+        if (lote.isEmpty()) {
+            return;
+        }
+
+        List<IncidenciaDTO> sinTecnico = new ArrayList<>();
+        List<String> tecnicosDelCsv = new ArrayList<>();
+        for (IncidenciaDTO inc : lote) {
+            if (!IncidenciaDTO.ESTADO_CERRADA.equals(inc.getEstado())) {
+                if (inc.getTecnico() == null) {
+                    sinTecnico.add(inc);
+                } else {
+                    tecnicosDelCsv.add(inc.getTecnico().getDni());
+                }
+            }
+        }
+        List<UsuarioDTO> asignados = cargaTecnicos.asignar(sinTecnico.size());
+        for (int i = 0; i < asignados.size(); i++) {
+            sinTecnico.get(i).setTecnico(asignados.get(i));
+        }
+
+        int guardadas = incidenciaDAO.saveLote(lote);
+        if (guardadas > 0) {
+            resultado.loteGuardado(guardadas);
+            for (IncidenciaDTO inc : lote) {
+                estadisticas.registrarAlta(inc);
+            }
+            // Las asignadas aquí ya se contaron en CargaTecnicos.asignar
+            for (String dni : tecnicosDelCsv) {
+                cargaTecnicos.ocupar(dni);
+            }
+        } else {
+            for (UsuarioDTO tecnico : asignados) {
+                cargaTecnicos.liberar(tecnico.getDni());
+            }
+            for (Long linea : lineas) {
+                resultado.rechazar(linea, "el lote no se pudo guardar en la BDD");
+            }
+        }
+        lote.clear();
+        lineas.clear();
+    }
+}
@@ -0,0 +1,56 @@
+package es.tew.logica;
+
+import java.util.Collections;
+import java.util.List;
+
+import es.tew.dto.ComentarioDTO;
+import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
+
+/**
+ * Todo lo que muestra la página de detalle de una incidencia: la incidencia, sus
+ * comentarios (del más antiguo al más reciente) y su historial (del más reciente al
+ * más antiguo).
+ *
+ * La incidencia es una copia propia de cada llamante, que puede editarla. Las listas son
+ * de solo lectura y sus elementos se comparten entre todos los que ven la incidencia:
+ * no deben modificarse.
+ */
+public final class IncidenciaDetalle {
+
+    private final IncidenciaDTO incidencia;
+    private final List<ComentarioDTO> comentarios;
+    private final List<HistorialEstadoDTO> historial;
+
+    public IncidenciaDetalle(IncidenciaDTO incidencia, List<ComentarioDTO> comentarios, List<HistorialEstadoDTO> historial) {
+        this.incidencia = incidencia;
+        this.comentarios = Collections.unmodifiableList(comentarios);
+        this.historial = Collections.unmodifiableList(historial);
+    }
+
+    // Para copia(): las listas ya son de solo lectura y se comparten tal cual
+    private IncidenciaDetalle(IncidenciaDTO incidencia, IncidenciaDetalle original) {
+        this.incidencia = incidencia;
+        this.comentarios = original.comentarios;
+        this.historial = original.historial;
+    }
+
+    /**
+     * Copia para un nuevo llamante: otra incidencia, las mismas listas.
+     */
+    IncidenciaDetalle copia() {
+        return new IncidenciaDetalle(new IncidenciaDTO(incidencia), this);
+    }
+
+    public IncidenciaDTO getIncidencia() {
+        return incidencia;
+    }
+
+    public List<ComentarioDTO> getComentarios() {
+        return comentarios;
+    }
+
+    public List<HistorialEstadoDTO> getHistorial() {
+        return historial;
+    }
+}
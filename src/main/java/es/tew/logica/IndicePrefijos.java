@@ -0,0 +1,137 @@
+package es.tew.logica;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import es.tew.dto.UsuarioDTO;
+
+/**
+ * Índice de usuarios por prefijo, para el autocompletado.
+ *
+ * Cada usuario se indexa por su DNI, cada palabra de su nombre y de sus apellidos,
+ * sus apellidos completos y su nombre completo ("nombre apellidos"), sin mayúsculas ni
+ * tildes. Las claves se guardan en un array ordenado: una búsqueda es una búsqueda
+ * binaria hasta el primer candidato y un recorrido de los siguientes mientras compartan
+ * el prefijo, así que no depende del número de usuarios. Es inmutable.
+ */
+final class IndicePrefijos {
+
+    private final String[] claves;
+    private final UsuarioDTO[] usuarios; // usuarios[i] corresponde a claves[i]
+    // "nombre apellidos dni" normalizado de cada usuario, para ordenar resultados
+    private final Map<UsuarioDTO, String> ordenPorNombre = new IdentityHashMap<>();
+
+    IndicePrefijos(List<UsuarioDTO> lista) {
+        List<Entrada> entradas = new ArrayList<>(lista.size() * 5);
+        for (UsuarioDTO u : lista) {
+            String nombre = normalizar(u.getNombre());
+            String apellidos = normalizar(u.getApellidos());
+            String completo = (nombre + " " + apellidos).trim();
+            String dni = normalizar(u.getDni());
+            indexar(entradas, dni, u);
+            indexar(entradas, apellidos, u);
+            indexar(entradas, completo, u);
+            // normalizar deja un solo espacio entre palabras
+            for (String palabra : completo.split(" ")) {
+                indexar(entradas, palabra, u);
+            }
+            ordenPorNombre.put(u, completo + " " + dni);
+        }
+        entradas.sort((a, b) -> a.clave.compareTo(b.clave));
+
+        claves = new String[entradas.size()];
+        usuarios = new UsuarioDTO[entradas.size()];
+        for (int i = 0; i < claves.length; i++) {
+            claves[i] = entradas.get(i).clave;
+            usuarios[i] = entradas.get(i).usuario;
+        }
+    }
+
+    private static void indexar(List<Entrada> entradas, String clave, UsuarioDTO usuario) {
+        if (!clave.isEmpty()) {
+            entradas.add(new Entrada(clave, usuario));
+        }
+    }
+
+    /**
+     * Usuarios con alguna clave que empiece por el texto, sin repetir y en orden de clave.
+     * @param texto Lo que ha escrito el usuario (da igual mayúsculas y tildes).
+     * @param maximo Resultados como máximo.
+     */
+    List<UsuarioDTO> buscar(String texto, int maximo) {
+        String prefijo = normalizar(texto);
+        if (prefijo.isEmpty() || maximo < 1) {
+            return List.of();
+        }
+        int i = Arrays.binarySearch(claves, prefijo);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        // El mismo usuario puede aparecer por varias claves
+        Set<UsuarioDTO> vistos = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<UsuarioDTO> resultado = new ArrayList<>();
+        for (; i < claves.length && resultado.size() < maximo && claves[i].startsWith(prefijo); i++) {
+            if (vistos.add(usuarios[i])) {
+                resultado.add(usuarios[i]);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Clave para ordenar por nombre completo un usuario del índice.
+     */
+    String ordenPorNombre(UsuarioDTO usuario) {
+        return ordenPorNombre.get(usuario);
+    }
+
+    /**
+     * Minúsculas, sin tildes ni espacios repetidos.
+     */
+    static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        // La mayoría de nombres y todos los DNI son ASCII: no hace falta descomponerlos
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) >= 0x80) {
+                texto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        StringBuilder sb = new StringBuilder(texto.length());
+        boolean espacio = false;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue; // La tilde de una letra descompuesta
+            }
+            if (Character.isWhitespace(c)) {
+                espacio = sb.length() > 0;
+            } else {
+                if (espacio) {
+                    sb.append(' ');
+                    espacio = false;
+                }
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class Entrada {
+        final String clave;
+        final UsuarioDTO usuario;
+
+        Entrada(String clave, UsuarioDTO usuario) {
+            this.clave = clave;
+            this.usuario = usuario;
+        }
+    }
+}
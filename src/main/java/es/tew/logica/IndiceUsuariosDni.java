@@ -0,0 +1,143 @@
+package es.tew.logica;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.tew.dto.UsuarioDTO;
+
+/**
+ * Índice inmutable de usuarios por DNI con claves int (ver CodigoDni), para las
+ * búsquedas por DNI de DirectorioUsuarios.
+ *
+ * Cada usuario es un registro compacto en arrays paralelos: código del DNI, nombre,
+ * apellidos y rol (un byte). El DNI no se guarda como String: el código lo identifica.
+ * La tabla de búsqueda es un int[] con direccionamiento abierto y sondeo lineal, con
+ * ocupación máxima del 50%, que guarda la posición del registro. Frente a un
+ * HashMap&lt;String, UsuarioDTO&gt; no hay una entrada, un String de clave ni un DTO por
+ * usuario, y una búsqueda no calcula el hashCode del String ni recorre punteros.
+ *
+ * Los DNI que no se pueden codificar (NIE, formatos raros) van a un HashMap aparte.
+ */
+public final class IndiceUsuariosDni {
+
+    private static final int VACIO = -1;
+    private static final String[] ROLES = { "ADMIN", "TECNICO", "USUARIO" };
+
+    // Tabla de búsqueda: posición del registro, o VACIO
+    private final int[] tabla;
+    private final int mascara;
+
+    // Registros
+    private final int[] codigos;
+    private final String[] nombres;
+    private final String[] apellidos;
+    private final byte[] roles; // posición en ROLES, o -1 si es otro (se guarda en otrosRoles)
+    private final Map<Integer, String> otrosRoles = new HashMap<>();
+    private int tamano;
+
+    private final Map<String, UsuarioDTO> noCodificables = new HashMap<>();
+
+    public IndiceUsuariosDni(List<UsuarioDTO> usuarios) {
+        int n = usuarios.size();
+        int capacidad = Integer.highestOneBit(Math.max(2, n) * 2 - 1) << 1;
+        tabla = new int[capacidad];
+        Arrays.fill(tabla, VACIO);
+        mascara = capacidad - 1;
+        codigos = new int[n];
+        nombres = new String[n];
+        apellidos = new String[n];
+        roles = new byte[n];
+
+        for (UsuarioDTO u : usuarios) {
+            int codigo = CodigoDni.codificar(u.getDni());
+            if (codigo == CodigoDni.NO_CODIFICABLE) {
+                noCodificables.put(u.getDni(), new UsuarioDTO(u.getDni(), u.getNombre(), u.getApellidos(), null, u.getRol()));
+            } else {
+                insertar(codigo, u);
+            }
+        }
+    }
+
+    private void insertar(int codigo, UsuarioDTO u) {
+        int slot = mezclar(codigo) & mascara;
+        while (tabla[slot] != VACIO) {
+            if (codigos[tabla[slot]] == codigo) {
+                guardar(tabla[slot], codigo, u); // DNI repetido: gana el último
+                return;
+            }
+            slot = (slot + 1) & mascara;
+        }
+        tabla[slot] = tamano;
+        guardar(tamano++, codigo, u);
+    }
+
+    private void guardar(int registro, int codigo, UsuarioDTO u) {
+        codigos[registro] = codigo;
+        nombres[registro] = u.getNombre();
+        apellidos[registro] = u.getApellidos();
+        int rol = Arrays.asList(ROLES).indexOf(u.getRol());
+        roles[registro] = (byte) rol;
+        if (rol < 0) {
+            otrosRoles.put(registro, u.getRol());
+        } else {
+            otrosRoles.remove(registro);
+        }
+    }
+
+    /**
+     * Mezcla los bits del código (finalizador de MurmurHash3): los códigos de DNI
+     * consecutivos se diferencian solo en los bits bajos.
+     */
+    private static int mezclar(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private int registro(int codigo) {
+        int slot = mezclar(codigo) & mascara;
+        int r;
+        while ((r = tabla[slot]) != VACIO) {
+            if (codigos[r] == codigo) {
+                return r;
+            }
+            slot = (slot + 1) & mascara;
+        }
+        return VACIO;
+    }
+
+    /**
+     * Usuario nuevo (sin contraseña) con los datos del DNI, o null si no está.
+     */
+    public UsuarioDTO buscar(String dni) {
+        int codigo = CodigoDni.codificar(dni);
+        if (codigo == CodigoDni.NO_CODIFICABLE) {
+            UsuarioDTO u = noCodificables.get(dni);
+            return u != null ? new UsuarioDTO(u) : null;
+        }
+        int r = registro(codigo);
+        if (r == VACIO) {
+            return null;
+        }
+        String rol = roles[r] >= 0 ? ROLES[roles[r]] : otrosRoles.get(r);
+        // La codificación no pierde nada: el DNI buscado es el del registro
+        return new UsuarioDTO(dni, nombres[r], apellidos[r], null, rol);
+    }
+
+    public boolean contiene(String dni) {
+        int codigo = CodigoDni.codificar(dni);
+        return codigo == CodigoDni.NO_CODIFICABLE ? noCodificables.containsKey(dni) : registro(codigo) != VACIO;
+    }
+
+    /**
+     * Número de usuarios distintos.
+     */
+    public int getTamano() {
+        return tamano + noCodificables.size();
+    }
+}
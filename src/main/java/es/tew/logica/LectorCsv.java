@@ -0,0 +1,110 @@
+package es.tew.logica;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector de CSV en streaming: devuelve un registro cada vez, sin cargar el fichero.
+ * Admite campos entre comillas dobles con separadores, saltos de línea y comillas
+ * duplicadas ("") dentro. Las líneas vacías se ignoran.
+ */
+class LectorCsv {
+
+    /**
+     * Separador que se decide con el primer ',' o ';' fuera de comillas.
+     */
+    static final char AUTOMATICO = 0;
+
+    private static final int NINGUNO = -2;
+
+    private final Reader entrada;
+    private char separador;
+    private long lineasLeidas = 0;    // Saltos de línea consumidos hasta ahora
+    private long lineaRegistro = 0;   // Línea en la que empezó el último registro
+    private int devuelto = NINGUNO;   // Carácter leído de más
+
+    /**
+     * @param entrada Origen de los datos; conviene que tenga buffer.
+     * @param separador Separador de campos (',' o ';'), o AUTOMATICO para tomar el primero
+     *        que aparezca (normalmente en la cabecera).
+     */
+    LectorCsv(Reader entrada, char separador) {
+        this.entrada = entrada;
+        this.separador = separador;
+    }
+
+    /**
+     * Línea del fichero en la que empezó el último registro leído (desde 1).
+     */
+    long getLinea() {
+        return lineaRegistro;
+    }
+
+    /**
+     * Lee el siguiente registro.
+     * @return Los campos del registro, o null al llegar al final.
+     */
+    List<String> leer() throws IOException {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        boolean vacio = true;
+        lineaRegistro = lineasLeidas + 1;
+
+        int c;
+        while ((c = leerCaracter()) != -1) {
+            if (entreComillas) {
+                if (c == '"') {
+                    int sig = leerCaracter();
+                    if (sig == '"') {
+                        campo.append('"');
+                    } else {
+                        entreComillas = false;
+                        devuelto = sig;
+                    }
+                } else {
+                    campo.append((char) c);
+                }
+            } else if (c == '"' && campo.length() == 0) {
+                entreComillas = true;
+                vacio = false;
+            } else if (c == separador || separador == AUTOMATICO && (c == ',' || c == ';')) {
+                separador = (char) c;
+                campos.add(campo.toString());
+                campo.setLength(0);
+                vacio = false;
+            } else if (c == '\n') {
+                if (!vacio) {
+                    break;
+                }
+                // Línea vacía: el registro empieza en la siguiente
+                lineaRegistro = lineasLeidas + 1;
+            } else if (c != '\r') {
+                campo.append((char) c);
+                vacio = false;
+            }
+        }
+
+        if (vacio) {
+            return null;
+        }
+        campos.add(campo.toString());
+        return campos;
+    }
+
+    private int leerCaracter() throws IOException {
+        int c;
+        if (devuelto != NINGUNO) {
+            c = devuelto;
+            devuelto = NINGUNO;
+            return c;
+        }
+        c = entrada.read();
+        if (c == '\n') {
+            lineasLeidas++;
+        }
+        return c;
+    }
+}
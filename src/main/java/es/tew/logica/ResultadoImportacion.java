@@ -0,0 +1,71 @@
+package es.tew.logica;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva de incidencias: filas leídas, importadas y
+ * rechazadas, tiempo empleado y los primeros errores encontrados.
+ */
+public class ResultadoImportacion implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Para no llenar la memoria con un fichero entero de filas erróneas
+    private static final int MAX_ERRORES = 100;
+
+    private long leidas;
+    private long importadas;
+    private long rechazadas;
+    private long lotes;
+    private long milisegundos;
+    private final List<String> errores = new ArrayList<>();
+
+    void filaLeida() {
+        leidas++;
+    }
+
+    void loteGuardado(int filas) {
+        lotes++;
+        importadas += filas;
+    }
+
+    void rechazar(long linea, String motivo) {
+        rechazadas++;
+        if (errores.size() < MAX_ERRORES) {
+            errores.add("Línea " + linea + ": " + motivo);
+        }
+    }
+
+    void terminar(long milisegundos) {
+        this.milisegundos = milisegundos;
+    }
+
+    public long getLeidas() { return leidas; }
+    public long getImportadas() { return importadas; }
+    public long getRechazadas() { return rechazadas; }
+    public long getLotes() { return lotes; }
+    public long getMilisegundos() { return milisegundos; }
+
+    /**
+     * Primeros errores (como mucho MAX_ERRORES), con su número de línea.
+     */
+    public List<String> getErrores() {
+        return Collections.unmodifiableList(errores);
+    }
+
+    /**
+     * Filas importadas por segundo.
+     */
+    public double getFilasPorSegundo() {
+        return milisegundos > 0 ? importadas * 1000.0 / milisegundos : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResultadoImportacion{leidas=%d, importadas=%d, rechazadas=%d, lotes=%d, %d ms, %.0f filas/s}",
+                leidas, importadas, rechazadas, lotes, milisegundos, getFilasPorSegundo());
+    }
+}
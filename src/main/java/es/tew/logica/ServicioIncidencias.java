@@ -1,21 +1,28 @@
 package es.tew.logica;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.security.SecureRandom;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import es.tew.dao.ComentarioDAO;
-import es.tew.dao.DAOFactory;
+import es.tew.dao.FiltroIncidencias;
 import es.tew.dao.HistorialEstadoDAO;
 import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.PaginaIncidencias;
+import es.tew.dao.UnidadDeTrabajo;
 import es.tew.dao.UsuarioDAO;
 import es.tew.dto.ComentarioDTO;
 import es.tew.dto.HistorialEstadoDTO;
 import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.IncidenciaResumen;
+import es.tew.dto.TiempoResolucionDTO;
 import es.tew.dto.UsuarioDTO;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 /**
  * Servicio de lógica de negocio para la gestión de incidencias.
@@ -24,22 +31,42 @@ import jakarta.enterprise.context.ApplicationScoped;
 @ApplicationScoped
 public class ServicioIncidencias {
 
-    private final IncidenciaDAO incidenciaDAO;
-    private final UsuarioDAO usuarioDAO;
-    private final ComentarioDAO comentarioDAO;
-    private final HistorialEstadoDAO historialEstadoDAO;
+    // DAOs únicos de la aplicación, producidos por DAOProducer
+    @Inject
+    private IncidenciaDAO incidenciaDAO;
+    @Inject
+    private UsuarioDAO usuarioDAO;
+    @Inject
+    private ComentarioDAO comentarioDAO;
+    @Inject
+    private HistorialEstadoDAO historialEstadoDAO;
+
+    @Inject
+    private EstadisticasIncidencias estadisticas;
+    @Inject
+    private TiemposResolucion tiemposResolucion;
+    @Inject
+    private CargaTecnicos cargaTecnicos;
+    @Inject
+    private ImportadorIncidencias importador;
+    @Inject
+    private ExportadorIncidencias exportador;
+    @Inject
+    private DetallesIncidencia detalles;
+    @Inject
+    private DirectorioUsuarios directorio;
 
     // Caracteres para generar contraseñas
     private static final String CARACTERES_PASSWORD = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
     private static final int LONGITUD_PASSWORD = 8;
 
-    public ServicioIncidencias() {
-        DAOFactory factory = DAOFactory.getFactory();
-        this.incidenciaDAO = factory.getIncidenciaDAO();
-        this.usuarioDAO = factory.getUsuarioDAO();
-        this.comentarioDAO = factory.getComentarioDAO();
-        this.historialEstadoDAO = factory.getHistorialEstadoDAO();
-    }
+    // Sugerencias como máximo en los autocompletados de usuarios
+    private static final int MAX_SUGERENCIAS = 15;
+
+    // Vida de la fotografía del panel de estadísticas (ver getPanel)
+    private static final long PANEL_REFRESCO_MS = Long.getLong("incidencias.panel.refrescoMs", 5000L);
+    private final Object cerrojoPanel = new Object();
+    private volatile FotografiaPanel panel;
 
     // --- LÓGICA DE USUARIO ---
 
@@ -47,18 +74,39 @@ public class ServicioIncidencias {
         return usuarioDAO.findByDniAndPassword(dni, password);
     }
     
+    // Las consultas de usuarios se leen de DirectorioUsuarios, sin consultar la BDD
+
+    /**
+     * Técnicos dados de alta, ordenados por DNI (lista de solo lectura).
+     */
     public List<UsuarioDTO> getTecnicos() {
-        List<UsuarioDTO> todos = usuarioDAO.findAll();
-        todos.removeIf(u -> !"TECNICO".equals(u.getRol()));
-        return todos;
+        return directorio.getPorRol("TECNICO");
     }
 
     public UsuarioDTO getUsuarioByDni(String dni) {
-        return usuarioDAO.findByDni(dni);
+        return directorio.buscar(dni);
     }
     
+    /**
+     * Todos los usuarios, ordenados por DNI (lista de solo lectura).
+     */
     public List<UsuarioDTO> getAllUsuarios() {
-        return usuarioDAO.findAll();
+        return directorio.getTodos();
+    }
+
+    /**
+     * Autocompletado de empleados (usuarios y técnicos, sin administradores)
+     * por prefijo de DNI, nombre o apellidos.
+     */
+    public List<UsuarioDTO> buscarEmpleados(String texto) {
+        return directorio.buscarPorPrefijo(texto, MAX_SUGERENCIAS, "USUARIO", "TECNICO");
+    }
+
+    /**
+     * Autocompletado de técnicos por prefijo de DNI, nombre o apellidos.
+     */
+    public List<UsuarioDTO> buscarTecnicos(String texto) {
+        return directorio.buscarPorPrefijo(texto, MAX_SUGERENCIAS, "TECNICO");
     }
     
     /**
@@ -67,11 +115,21 @@ public class ServicioIncidencias {
      * 
      * @param usuario Usuario a dar de alta (sin contraseña)
      * @return La contraseña generada (para mostrarla al admin)
+     * @throws RuntimeException Si no se pudo guardar.
      */
     public String altaUsuario(UsuarioDTO usuario) {
         String passwordGenerada = generarPasswordAleatoria();
         usuario.setPassword(passwordGenerada);
-        usuarioDAO.save(usuario);
+        // En una unidad de trabajo para enterarse de si el INSERT falló
+        try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+            usuarioDAO.save(usuario);
+            uow.confirmar();
+        }
+        directorio.registrar(usuario);
+        if ("TECNICO".equals(usuario.getRol())) {
+            cargaTecnicos.registrarTecnico(new UsuarioDTO(usuario.getDni(), usuario.getNombre(),
+                    usuario.getApellidos(), null, usuario.getRol()));
+        }
         return passwordGenerada;
     }
     
@@ -95,65 +153,53 @@ public class ServicioIncidencias {
     /**
      * Crea una nueva incidencia asignándole automáticamente el técnico
      * con menos incidencias pendientes.
+     * @throws RuntimeException Si no se pudo guardar (no queda nada en la BDD y el técnico
+     *         recupera su hueco).
      */
     public IncidenciaDTO crearIncidencia(IncidenciaDTO incidencia) {
         incidencia.setEstado("ABIERTA");
         
         // FUNCIONALIDAD 3: Asignar automáticamente el técnico con menos incidencias
-        UsuarioDTO tecnicoAsignado = obtenerTecnicoConMenosIncidencias();
+        // (la elección y el aumento de su carga son atómicos, ver CargaTecnicos)
+        UsuarioDTO tecnicoAsignado = cargaTecnicos.asignar();
         if (tecnicoAsignado != null) {
             incidencia.setTecnico(tecnicoAsignado);
         }
         
-        // Guardar la incidencia y capturar el ID generado
-        IncidenciaDTO incidenciaGuardada = incidenciaDAO.save(incidencia);
-        
-        // Registrar en el historial el estado inicial
-        HistorialEstadoDTO historial = new HistorialEstadoDTO();
-        historial.setIncidencia(incidenciaGuardada);
-        historial.setEstadoAnterior(null); // Primera entrada, no hay estado anterior
-        historial.setEstadoNuevo("ABIERTA");
-        historial.setUsuario(incidenciaGuardada.getSolicitante());
-        
-        historialEstadoDAO.save(historial);
-        
-        return incidenciaGuardada;
-    }
-    
-    /**
-     * Encuentra el técnico con menos incidencias abiertas o en proceso.
-     */
-    private UsuarioDTO obtenerTecnicoConMenosIncidencias() {
-        List<UsuarioDTO> tecnicos = getTecnicos();
-        
-        if (tecnicos.isEmpty()) {
-            return null;
+        // Incidencia y entrada inicial del historial, en una sola transacción
+        IncidenciaDTO incidenciaGuardada;
+        boolean guardada = false;
+        try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+            // Guardar la incidencia y capturar el ID generado
+            incidenciaGuardada = incidenciaDAO.save(incidencia);
+            if (incidenciaGuardada.getId() != null) {
+                // Registrar en el historial el estado inicial
+                HistorialEstadoDTO historial = new HistorialEstadoDTO();
+                historial.setIncidencia(incidenciaGuardada);
+                historial.setEstadoAnterior(null); // Primera entrada, no hay estado anterior
+                historial.setEstadoNuevo("ABIERTA");
+                historial.setUsuario(incidenciaGuardada.getSolicitante());
+                historialEstadoDAO.save(historial);
+
+                uow.confirmar();
+                guardada = true;
+            }
+        } finally {
+            if (!guardada) {
+                // No se guardó: se devuelve el hueco al técnico
+                cargaTecnicos.liberar(tecnicoAsignado != null ? tecnicoAsignado.getDni() : null);
+                incidencia.setId(null);
+            }
         }
-        
-        // Contar incidencias por técnico
-        Map<String, Integer> conteoIncidencias = new HashMap<>();
-        
-        for (UsuarioDTO tecnico : tecnicos) {
-            List<IncidenciaDTO> incidenciasTecnico = incidenciaDAO.findByTecnicoDni(tecnico.getDni());
-            // Solo contar las que no están cerradas
-            long incidenciasAbiertas = incidenciasTecnico.stream()
-                .filter(inc -> !"CERRADA".equals(inc.getEstado()))
-                .count();
-            conteoIncidencias.put(tecnico.getDni(), (int) incidenciasAbiertas);
+        if (!guardada) {
+            // El DAO ya ha escrito el motivo en el log
+            throw new RuntimeException("No se pudo guardar la incidencia.");
         }
-        
-        // Encontrar el técnico con menos incidencias
-        String dniTecnicoMenorCarga = tecnicos.stream()
-            .min((t1, t2) -> Integer.compare(
-                conteoIncidencias.getOrDefault(t1.getDni(), 0),
-                conteoIncidencias.getOrDefault(t2.getDni(), 0)
-            ))
-            .map(UsuarioDTO::getDni)
-            .orElse(null);
-        
-        return dniTecnicoMenorCarga != null ? getUsuarioByDni(dniTecnicoMenorCarga) : null;
-    }
 
+        estadisticas.registrarAlta(incidenciaGuardada);
+        return incidenciaGuardada;
+    }
+    
     public void updateIncidencia(IncidenciaDTO incidenciaActualizada, UsuarioDTO usuarioModificador) {
         IncidenciaDTO incidenciaOriginal = incidenciaDAO.findById(incidenciaActualizada.getId());
         
@@ -161,17 +207,57 @@ public class ServicioIncidencias {
             throw new RuntimeException("Incidencia no encontrada para actualizar.");
         }
         
-        // Si cambió el estado, registrarlo en el historial
-        if (!incidenciaOriginal.getEstado().equals(incidenciaActualizada.getEstado())) {
-            HistorialEstadoDTO historial = new HistorialEstadoDTO();
-            historial.setIncidencia(incidenciaActualizada);
-            historial.setEstadoAnterior(incidenciaOriginal.getEstado());
-            historial.setEstadoNuevo(incidenciaActualizada.getEstado());
-            historial.setUsuario(usuarioModificador);
-            historialEstadoDAO.save(historial);
+        // Historial y UPDATE van juntos en una transacción; los contadores en memoria,
+        // solo cuando se ha confirmado
+        HistorialEstadoDTO cambioEstado = null;
+        try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+            // Si cambió el estado, registrarlo en el historial
+            if (!incidenciaOriginal.getEstado().equals(incidenciaActualizada.getEstado())) {
+                cambioEstado = new HistorialEstadoDTO();
+                cambioEstado.setIncidencia(incidenciaActualizada);
+                cambioEstado.setEstadoAnterior(incidenciaOriginal.getEstado());
+                cambioEstado.setEstadoNuevo(incidenciaActualizada.getEstado());
+                cambioEstado.setUsuario(usuarioModificador);
+                historialEstadoDAO.save(cambioEstado);
+            }
+
+            incidenciaDAO.update(incidenciaActualizada);
+            uow.confirmar();
+        }
+        detalles.invalidar(incidenciaActualizada.getId());
+
+        if (cambioEstado != null && "CERRADA".equals(incidenciaActualizada.getEstado())) {
+            registrarCierre(incidenciaOriginal, incidenciaActualizada, cambioEstado);
+        }
+        estadisticas.registrarCambio(incidenciaOriginal, incidenciaActualizada);
+        actualizarCargaTecnicos(incidenciaOriginal, incidenciaActualizada);
+    }
+
+    /**
+     * Refleja en CargaTecnicos un cierre, una reapertura o un cambio de técnico.
+     */
+    private void actualizarCargaTecnicos(IncidenciaDTO antes, IncidenciaDTO despues) {
+        String tecnicoAntes = antes.getTecnico() != null ? antes.getTecnico().getDni() : null;
+        String tecnicoDespues = despues.getTecnico() != null ? despues.getTecnico().getDni() : null;
+        boolean abiertaAntes = !"CERRADA".equals(antes.getEstado());
+        boolean abiertaDespues = !"CERRADA".equals(despues.getEstado());
+
+        if (abiertaAntes && abiertaDespues) {
+            cargaTecnicos.reasignar(tecnicoAntes, tecnicoDespues);
+        } else if (abiertaAntes) {
+            cargaTecnicos.liberar(tecnicoAntes);
+        } else if (abiertaDespues) {
+            cargaTecnicos.ocupar(tecnicoDespues);
         }
-        
-        incidenciaDAO.update(incidenciaActualizada);
+    }
+
+    /**
+     * Añade a los histogramas el tiempo transcurrido desde la creación hasta este cierre.
+     */
+    private void registrarCierre(IncidenciaDTO original, IncidenciaDTO cerrada, HistorialEstadoDTO cierre) {
+        long milis = cierre.getFechaCambio().getTime() - original.getFechaCreacion().getTime();
+        String dniTecnico = cerrada.getTecnico() != null ? cerrada.getTecnico().getDni() : null;
+        tiemposResolucion.registrar(new TiempoResolucionDTO(cerrada.getCategoria(), dniTecnico, milis / 1000));
     }
     
     public List<IncidenciaDTO> getIncidenciasByRol(UsuarioDTO usuario) {
@@ -188,38 +274,83 @@ public class ServicioIncidencias {
                 return null;
         }
     }
-    
+
     /**
-     * FUNCIONALIDAD 9: Obtiene todas las incidencias con filtros opcionales.
+     * Filtro con las incidencias visibles para el usuario según su rol:
+     * el administrador ve todas, el técnico las asignadas y el usuario las suyas.
+     * @return El filtro, o null si el usuario no puede ver ninguna incidencia.
      */
-    public List<IncidenciaDTO> getIncidenciasConFiltros(String dniEmpleado, String estado) {
-        List<IncidenciaDTO> incidencias = incidenciaDAO.findAll();
-        
-        // Aplicar filtro de empleado si se especificó
-        if (dniEmpleado != null && !dniEmpleado.isEmpty()) {
-            incidencias = incidencias.stream()
-                .filter(inc -> inc.getSolicitante().getDni().equals(dniEmpleado))
-                .collect(Collectors.toList());
-        }
-        
-        // Aplicar filtro de estado si se especificó
-        if (estado != null && !estado.isEmpty()) {
-            incidencias = incidencias.stream()
-                .filter(inc -> inc.getEstado().equals(estado))
-                .collect(Collectors.toList());
+    public FiltroIncidencias getFiltroPorRol(UsuarioDTO usuario) {
+        if (usuario == null) return null;
+
+        switch (usuario.getRol()) {
+            case "ADMIN":
+                return new FiltroIncidencias();
+            case "TECNICO":
+                return FiltroIncidencias.porTecnico(usuario.getDni());
+            case "USUARIO":
+                return FiltroIncidencias.porSolicitante(usuario.getDni());
+            default:
+                return null;
         }
-        
-        return incidencias;
+    }
+
+    /**
+     * FUNCIONALIDAD 9: Página de las incidencias que cumplen el filtro,
+     * filtrada, ordenada y paginada en la base de datos. Solo trae las columnas
+     * que muestran los listados (ver IncidenciaResumen).
+     */
+    public List<IncidenciaResumen> getPaginaIncidencias(FiltroIncidencias filtro, PaginaIncidencias pagina) {
+        if (filtro == null) return new ArrayList<>();
+        return incidenciaDAO.findResumenPagina(filtro, pagina);
+    }
+
+    /**
+     * Número total de incidencias que cumplen el filtro.
+     */
+    public long contarIncidencias(FiltroIncidencias filtro) {
+        if (filtro == null) return 0;
+        return incidenciaDAO.count(filtro);
     }
 
     public IncidenciaDTO findIncidenciaById(Long id) {
         return incidenciaDAO.findById(id);
     }
+
+    /**
+     * Incidencia con sus comentarios y su historial, para la página de detalle
+     * (ver DetallesIncidencia).
+     * @return El detalle, o null si la incidencia no existe.
+     */
+    public IncidenciaDetalle getDetalleIncidencia(Long id) {
+        return detalles.obtener(id);
+    }
     
+    /**
+     * Importa incidencias en bloque desde un CSV (ver ImportadorIncidencias para el formato).
+     * @param csv Contenido del fichero; no se cierra.
+     * @param tamanoLote Filas por lote, o 0 para usar ImportadorIncidencias.TAMANO_LOTE_POR_DEFECTO.
+     */
+    public ResultadoImportacion importarIncidencias(Reader csv, int tamanoLote) throws IOException {
+        return importador.importar(csv, tamanoLote > 0 ? tamanoLote : ImportadorIncidencias.TAMANO_LOTE_POR_DEFECTO);
+    }
+
+    /**
+     * Exporta en streaming las incidencias con ID entre desdeId y hastaId, con sus
+     * comentarios e historial (ver ExportadorIncidencias para los formatos).
+     * @param destino Donde se escribe; no se cierra.
+     * @return Número de incidencias exportadas.
+     */
+    public long exportarIncidencias(ExportadorIncidencias.Formato formato, long desdeId, long hastaId,
+            Writer destino) throws IOException {
+        return exportador.exportar(formato, desdeId, hastaId, destino);
+    }
+
     // --- LÓGICA DE COMENTARIOS Y HISTORIAL ---
 
     public void addComentario(ComentarioDTO comentario) {
         comentarioDAO.save(comentario);
+        detalles.invalidar(comentario.getIncidencia().getId());
     }
 
     public List<HistorialEstadoDTO> findHistorialByIncidenciaId(Long idIncidencia) {
@@ -229,85 +360,51 @@ public class ServicioIncidencias {
     public List<ComentarioDTO> findComentariosByIncidenciaId(Long idIncidencia) {
         return comentarioDAO.findByIncidenciaId(idIncidencia);
     }
-    
-    // --- LÓGICA DE ESTADÍSTICAS (FUNCIONALIDAD 12) ---
-    
+
     /**
-     * Obtiene el número de incidencias por estado.
+     * Historial de una incidencia ya cargada, sin volver a consultarla.
      */
-    public Map<String, Long> getIncidenciasPorEstado() {
-        List<IncidenciaDTO> todasIncidencias = incidenciaDAO.findAll();
-        
-        Map<String, Long> estadisticas = new HashMap<>();
-        estadisticas.put("ABIERTA", 0L);
-        estadisticas.put("EN_PROCESO", 0L);
-        estadisticas.put("PENDIENTE_USUARIO", 0L);
-        estadisticas.put("CERRADA", 0L);
-        
-        for (IncidenciaDTO inc : todasIncidencias) {
-            String estado = inc.getEstado();
-            estadisticas.put(estado, estadisticas.getOrDefault(estado, 0L) + 1);
-        }
-        
-        return estadisticas;
+    public List<HistorialEstadoDTO> findHistorialByIncidencia(IncidenciaDTO incidencia) {
+        return historialEstadoDAO.findByIncidencia(incidencia);
     }
-    
+
     /**
-     * Obtiene el número de incidencias por categoría.
+     * Comentarios de una incidencia ya cargada, sin volver a consultarla.
      */
-    public Map<String, Long> getIncidenciasPorCategoria() {
-        List<IncidenciaDTO> todasIncidencias = incidenciaDAO.findAll();
-        
-        Map<String, Long> estadisticas = new HashMap<>();
-        
-        for (IncidenciaDTO inc : todasIncidencias) {
-            String categoria = inc.getCategoria();
-            estadisticas.put(categoria, estadisticas.getOrDefault(categoria, 0L) + 1);
-        }
-        
-        return estadisticas;
+    public List<ComentarioDTO> findComentariosByIncidencia(IncidenciaDTO incidencia) {
+        return comentarioDAO.findByIncidencia(incidencia);
     }
     
+    // --- LÓGICA DE ESTADÍSTICAS (FUNCIONALIDAD 12) ---
+
     /**
-     * Calcula el tiempo medio de resolución de incidencias cerradas (en horas).
+     * Estadísticas del panel del administrador. Se calculan como mucho una vez cada
+     * incidencias.panel.refrescoMs y todos los administradores comparten el resultado:
+     * si varios piden una fotografía caducada a la vez, uno la calcula y los demás la
+     * esperan. Los recuentos y tiempos se leen de memoria; solo la incidencia abierta
+     * más antigua se consulta a la BDD.
      */
-    public double getTiempoMedioResolucion() {
-        List<IncidenciaDTO> incidenciasCerradas = incidenciaDAO.findByEstado("CERRADA");
-        
-        if (incidenciasCerradas.isEmpty()) {
-            return 0.0;
+    public FotografiaPanel getPanel() {
+        FotografiaPanel actual = panel;
+        if (actual != null && actual.getEdadMs() < PANEL_REFRESCO_MS) {
+            return actual;
         }
-        
-        long sumaHoras = 0;
-        int conteo = 0;
-        
-        for (IncidenciaDTO inc : incidenciasCerradas) {
-            // Buscar en el historial cuándo se cerró
-            List<HistorialEstadoDTO> historial = historialEstadoDAO.findByIncidenciaId(inc.getId());
-            
-            for (HistorialEstadoDTO cambio : historial) {
-                if ("CERRADA".equals(cambio.getEstadoNuevo())) {
-                    long diferenciaMilis = cambio.getFechaCambio().getTime() - inc.getFechaCreacion().getTime();
-                    long horas = diferenciaMilis / (1000 * 60 * 60);
-                    sumaHoras += horas;
-                    conteo++;
-                    break;
-                }
+        synchronized (cerrojoPanel) {
+            actual = panel;
+            if (actual == null || actual.getEdadMs() >= PANEL_REFRESCO_MS) {
+                actual = new FotografiaPanel(estadisticas.getPorEstado(), estadisticas.getPorCategoria(),
+                        tiemposResolucion.getGlobal(), tiemposResolucion.getPorCategoria(),
+                        tiemposResolucion.getPorTecnico(), incidenciaDAO.findMasAntiguaAbierta());
+                panel = actual;
             }
+            return actual;
         }
-        
-        return conteo > 0 ? (double) sumaHoras / conteo : 0.0;
     }
-    
+
     /**
-     * Obtiene la incidencia abierta más antigua que no esté cerrada.
+     * Obtiene el número de incidencias asignadas a cada técnico, por DNI.
      */
-    public IncidenciaDTO getIncidenciaMasAntiguaAbierta() {
-        List<IncidenciaDTO> todasIncidencias = incidenciaDAO.findAll();
-        
-        return todasIncidencias.stream()
-            .filter(inc -> !"CERRADA".equals(inc.getEstado()))
-            .min((inc1, inc2) -> inc1.getFechaCreacion().compareTo(inc2.getFechaCreacion()))
-            .orElse(null);
+    public Map<String, Long> getIncidenciasPorTecnico() {
+        return estadisticas.getPorTecnico();
     }
-}
\ No newline at end of file
+}
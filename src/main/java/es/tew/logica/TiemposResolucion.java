@@ -0,0 +1,103 @@
+package es.tew.logica;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dto.TiempoResolucionDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Tiempos de resolución de las incidencias cerradas, en histogramas globales,
+ * por categoría y por técnico.
+ *
+ * Se cargan al arrancar con una única consulta (IncidenciaDAO.findTiemposResolucion) y
+ * ServicioIncidencias registra cada nuevo cierre, así que el panel no recalcula nada
+ * por petición. Una incidencia reabierta y vuelta a cerrar cuenta dos veces hasta la
+ * siguiente reconstrucción, que solo tiene en cuenta su último cierre.
+ */
+@ApplicationScoped
+public class TiemposResolucion {
+
+    @Inject
+    private IncidenciaDAO incidenciaDAO;
+
+    private volatile Histogramas histogramas = new Histogramas();
+
+    /**
+     * Fuerza la carga de los histogramas al desplegar.
+     */
+    void alArrancar(@Observes @Initialized(ApplicationScoped.class) Object contexto) {
+        System.out.println("INFO: Tiempos de resolución cargados: " + getGlobal());
+    }
+
+    @PostConstruct
+    public void reconstruir() {
+        Histogramas nuevos = new Histogramas();
+        for (TiempoResolucionDTO tiempo : incidenciaDAO.findTiemposResolucion()) {
+            nuevos.registrar(tiempo);
+        }
+        histogramas = nuevos;
+    }
+
+    /**
+     * Registra el cierre de una incidencia.
+     */
+    public void registrar(TiempoResolucionDTO tiempo) {
+        histogramas.registrar(tiempo);
+    }
+
+    /**
+     * Resumen de todas las incidencias, combinando los histogramas de cada categoría.
+     */
+    public HistogramaTiempos.Resumen getGlobal() {
+        HistogramaTiempos global = new HistogramaTiempos();
+        histogramas.porCategoria.values().forEach(global::combinar);
+        return global.getResumen();
+    }
+
+    /**
+     * Resumen por categoría, ordenado por nombre de categoría.
+     */
+    public Map<String, HistogramaTiempos.Resumen> getPorCategoria() {
+        return resumenes(histogramas.porCategoria);
+    }
+
+    /**
+     * Resumen por técnico (DNI), ordenado por DNI. Las incidencias sin técnico no aparecen.
+     */
+    public Map<String, HistogramaTiempos.Resumen> getPorTecnico() {
+        return resumenes(histogramas.porTecnico);
+    }
+
+    private static Map<String, HistogramaTiempos.Resumen> resumenes(Map<String, HistogramaTiempos> mapa) {
+        Map<String, HistogramaTiempos.Resumen> resultado = new TreeMap<>();
+        mapa.forEach((clave, histograma) -> resultado.put(clave, histograma.getResumen()));
+        return resultado;
+    }
+
+    /**
+     * Juego completo de histogramas; se sustituye entero al reconstruir.
+     */
+    private static final class Histogramas {
+        final Map<String, HistogramaTiempos> porCategoria = new ConcurrentHashMap<>();
+        final Map<String, HistogramaTiempos> porTecnico = new ConcurrentHashMap<>();
+
+        // CATEGORIA es NOT NULL, así que cada cierre está en exactamente un histograma de categoría
+        void registrar(TiempoResolucionDTO tiempo) {
+            if (tiempo.getCategoria() != null) {
+                porCategoria.computeIfAbsent(tiempo.getCategoria(), k -> new HistogramaTiempos())
+                        .registrar(tiempo.getSegundos());
+            }
+            if (tiempo.getDniTecnico() != null) {
+                porTecnico.computeIfAbsent(tiempo.getDniTecnico(), k -> new HistogramaTiempos())
+                        .registrar(tiempo.getSegundos());
+            }
+        }
+    }
+}
@@ -5,16 +5,22 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import es.tew.dao.FiltroIncidencias;
 import es.tew.dto.IncidenciaDTO;
 import es.tew.dto.UsuarioDTO;
+import es.tew.logica.FotografiaPanel;
+import es.tew.logica.HistogramaTiempos;
 import es.tew.logica.ServicioIncidencias;
 import jakarta.annotation.PostConstruct;
 import jakarta.faces.application.FacesMessage;
+import jakarta.faces.component.UIComponent;
 import jakarta.faces.context.FacesContext;
 import jakarta.faces.view.ViewScoped;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 
+import org.primefaces.component.datatable.DataTable;
+
 /**
  * Controlador para las funcionalidades exclusivas del administrador.
  */
@@ -31,10 +37,11 @@ public class AdminController implements Serializable {
     private SesionController sesionController;
 
     // --- FUNCIONALIDAD 9: Listar todas las incidencias con filtros ---
-    private List<IncidenciaDTO> todasIncidencias;
-    private String filtroEmpleado;
-    private String filtroEstado;
+    private static final String TABLA_TODAS = "formTodas:tablaTodas";
+    private FiltroIncidencias filtro = new FiltroIncidencias();
+    private IncidenciasLazyModel todasIncidencias;
     private List<String> estadosDisponibles = Arrays.asList("", "ABIERTA", "EN_PROCESO", "PENDIENTE_USUARIO", "CERRADA");
+    private List<String> categoriasDisponibles = Arrays.asList("", "Internet", "Telefonía", "Ordenador");
 
     // --- FUNCIONALIDAD 10: Alta de usuarios ---
     private UsuarioDTO nuevoUsuario;
@@ -46,9 +53,7 @@ public class AdminController implements Serializable {
     private List<UsuarioDTO> todosUsuarios;
 
     // --- FUNCIONALIDAD 12: Estadísticas ---
-    private Map<String, Long> estadisticasEstado;
-    private Map<String, Long> estadisticasCategoria;
-    private double tiempoMedioResolucion;
+    private FotografiaPanel panel;
     private IncidenciaDTO incidenciaMasAntigua;
 
     @PostConstruct
@@ -61,9 +66,12 @@ public class AdminController implements Serializable {
     // FUNCIONALIDAD 9: LISTAR TODAS LAS INCIDENCIAS CON FILTROS
     // ========================================
 
-    public List<IncidenciaDTO> getTodasIncidencias() {
+    /**
+     * Modelo perezoso de la tabla: filtra, ordena y pagina en la base de datos.
+     */
+    public IncidenciasLazyModel getTodasIncidencias() {
         if (todasIncidencias == null) {
-            cargarIncidenciasConFiltros();
+            todasIncidencias = new IncidenciasLazyModel(servicioIncidencias, filtro);
         }
         return todasIncidencias;
     }
@@ -73,13 +81,19 @@ public class AdminController implements Serializable {
     }
 
     public void limpiarFiltros() {
-        filtroEmpleado = null;
-        filtroEstado = null;
+        filtro.limpiar();
         cargarIncidenciasConFiltros();
     }
 
     private void cargarIncidenciasConFiltros() {
-        todasIncidencias = servicioIncidencias.getIncidenciasConFiltros(filtroEmpleado, filtroEstado);
+        // El modelo comparte el objeto filtro; basta con descartar el cursor de la página anterior
+        getTodasIncidencias().reiniciar();
+
+        // Con otros criterios se vuelve a la primera página
+        UIComponent tabla = FacesContext.getCurrentInstance().getViewRoot().findComponent(TABLA_TODAS);
+        if (tabla instanceof DataTable) {
+            ((DataTable) tabla).setFirst(0);
+        }
     }
 
     // ========================================
@@ -136,64 +150,65 @@ public class AdminController implements Serializable {
     // ========================================
 
     public void cargarEstadisticas() {
-        estadisticasEstado = servicioIncidencias.getIncidenciasPorEstado();
-        estadisticasCategoria = servicioIncidencias.getIncidenciasPorCategoria();
-        tiempoMedioResolucion = servicioIncidencias.getTiempoMedioResolucion();
-        incidenciaMasAntigua = servicioIncidencias.getIncidenciaMasAntiguaAbierta();
+        // Una sola fotografía para toda la vista, compartida con los demás administradores
+        panel = servicioIncidencias.getPanel();
+        incidenciaMasAntigua = panel.getIncidenciaMasAntigua();
     }
 
-    public Map<String, Long> getEstadisticasEstado() {
-        if (estadisticasEstado == null) {
+    private FotografiaPanel getPanelCargado() {
+        if (panel == null) {
             cargarEstadisticas();
         }
-        return estadisticasEstado;
+        return panel;
+    }
+
+    public Map<String, Long> getEstadisticasEstado() {
+        return getPanelCargado().getPorEstado();
     }
 
     public Map<String, Long> getEstadisticasCategoria() {
-        if (estadisticasCategoria == null) {
-            cargarEstadisticas();
-        }
-        return estadisticasCategoria;
+        return getPanelCargado().getPorCategoria();
     }
 
     public double getTiempoMedioResolucion() {
-        if (estadisticasEstado == null) {
-            cargarEstadisticas();
-        }
-        return tiempoMedioResolucion;
+        return getPanelCargado().getTiempoMedioResolucion();
     }
 
     public IncidenciaDTO getIncidenciaMasAntigua() {
-        if (estadisticasEstado == null) {
-            cargarEstadisticas();
-        }
+        getPanelCargado();
         return incidenciaMasAntigua;
     }
 
-    // ========================================
-    // GETTERS Y SETTERS
-    // ========================================
-
-    public String getFiltroEmpleado() {
-        return filtroEmpleado;
+    /**
+     * Media y percentiles 50/90/99 (en horas) del tiempo de resolución por categoría.
+     */
+    public Map<String, HistogramaTiempos.Resumen> getTiemposPorCategoria() {
+        return getPanelCargado().getTiemposPorCategoria();
     }
 
-    public void setFiltroEmpleado(String filtroEmpleado) {
-        this.filtroEmpleado = filtroEmpleado;
+    /**
+     * Media y percentiles 50/90/99 (en horas) del tiempo de resolución por técnico.
+     */
+    public Map<String, HistogramaTiempos.Resumen> getTiemposPorTecnico() {
+        return getPanelCargado().getTiemposPorTecnico();
     }
 
-    public String getFiltroEstado() {
-        return filtroEstado;
-    }
+    // ========================================
+    // GETTERS Y SETTERS
+    // ========================================
 
-    public void setFiltroEstado(String filtroEstado) {
-        this.filtroEstado = filtroEstado;
+    public FiltroIncidencias getFiltro() {
+        return filtro;
     }
 
     public List<String> getEstadosDisponibles() {
         return estadosDisponibles;
     }
 
+    public List<String> getCategoriasDisponibles() {
+        return categoriasDisponibles;
+    }
+
     public UsuarioDTO getNuevoUsuario() {
         return nuevoUsuario;
     }
@@ -214,10 +229,34 @@ public class AdminController implements Serializable {
         return rolesDisponibles;
     }
 
-    public List<UsuarioDTO> getEmpleadosParaFiltro() {
-        // Devolver solo usuarios normales para el filtro (no incluir admin)
-        List<UsuarioDTO> todos = servicioIncidencias.getAllUsuarios();
-        todos.removeIf(u -> "ADMIN".equals(u.getRol()));
-        return todos;
+    // Autocompletado de los filtros de solicitante y técnico: se envían solo las
+    // sugerencias de lo escrito, no la lista entera de usuarios (sin admin)
+
+    public List<UsuarioDTO> completarEmpleado(String texto) {
+        return servicioIncidencias.buscarEmpleados(texto);
+    }
+
+    public List<UsuarioDTO> completarTecnico(String texto) {
+        return servicioIncidencias.buscarTecnicos(texto);
+    }
+
+    public UsuarioDTO getSolicitanteFiltro() {
+        return usuarioFiltro(filtro.getDniSolicitante());
+    }
+
+    public void setSolicitanteFiltro(UsuarioDTO solicitante) {
+        filtro.setDniSolicitante(solicitante != null ? solicitante.getDni() : null);
+    }
+
+    public UsuarioDTO getTecnicoFiltro() {
+        return usuarioFiltro(filtro.getDniTecnico());
+    }
+
+    public void setTecnicoFiltro(UsuarioDTO tecnico) {
+        filtro.setDniTecnico(tecnico != null ? tecnico.getDni() : null);
+    }
+
+    private UsuarioDTO usuarioFiltro(String dni) {
+        return dni == null || dni.isEmpty() ? null : servicioIncidencias.getUsuarioByDni(dni);
     }
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import es.tew.dto.ComentarioDTO;
 import es.tew.dto.HistorialEstadoDTO;
 import es.tew.dto.IncidenciaDTO;
 import es.tew.dto.UsuarioDTO;
+import es.tew.logica.IncidenciaDetalle;
 import es.tew.logica.ServicioIncidencias;
 import jakarta.annotation.PostConstruct;
 import jakarta.faces.view.ViewScoped;
@@ -31,7 +32,6 @@ public class DetalleController implements Serializable {
     private List<ComentarioDTO> comentarios;
     private List<HistorialEstadoDTO> historial;
     private ComentarioDTO nuevoComentario;
-    private List<UsuarioDTO> tecnicosDisponibles;
     private final List<String> estadosDisponibles = Arrays.asList("EN_PROCESO", "PENDIENTE_USUARIO", "CERRADA");    
     @PostConstruct
     public void init() {
@@ -43,11 +43,12 @@ public class DetalleController implements Serializable {
      */
     public void cargarIncidencia() {
         if (idIncidencia != null) {
-            this.incidencia = servicioIncidencias.findIncidenciaById(idIncidencia);
-            if (this.incidencia != null) {
-                this.comentarios = servicioIncidencias.findComentariosByIncidenciaId(idIncidencia);
-                this.historial = servicioIncidencias.findHistorialByIncidenciaId(idIncidencia);
-                this.tecnicosDisponibles = servicioIncidencias.getTecnicos();
+            // Incidencia, comentarios e historial de una vez (normalmente, de la caché)
+            IncidenciaDetalle detalle = servicioIncidencias.getDetalleIncidencia(idIncidencia);
+            if (detalle != null) {
+                this.incidencia = detalle.getIncidencia();
+                this.comentarios = detalle.getComentarios();
+                this.historial = detalle.getHistorial();
             }
         }
     }
@@ -57,7 +58,7 @@ public class DetalleController implements Serializable {
             nuevoComentario.setAutor(sesionController.getUsuarioActual());
             nuevoComentario.setIncidencia(incidencia);
             servicioIncidencias.addComentario(nuevoComentario);
-            this.comentarios = servicioIncidencias.findComentariosByIncidenciaId(idIncidencia);
+            this.comentarios = servicioIncidencias.getDetalleIncidencia(incidencia.getId()).getComentarios();
             this.nuevoComentario = new ComentarioDTO();
         }
     }
@@ -65,7 +66,7 @@ public class DetalleController implements Serializable {
     public void guardarCambios() {
         if (incidencia != null) {
             servicioIncidencias.updateIncidencia(incidencia, sesionController.getUsuarioActual());
-            this.historial = servicioIncidencias.findHistorialByIncidenciaId(idIncidencia);
+            this.historial = servicioIncidencias.getDetalleIncidencia(incidencia.getId()).getHistorial();
         }
     }
     
@@ -103,8 +104,11 @@ public class DetalleController implements Serializable {
         this.nuevoComentario = nuevoComentario;
     }
 
-    public List<UsuarioDTO> getTecnicosDisponibles() {
-        return tecnicosDisponibles;
+    /**
+     * Sugerencias para reasignar el técnico, por prefijo de DNI, nombre o apellidos.
+     */
+    public List<UsuarioDTO> completarTecnico(String texto) {
+        return servicioIncidencias.buscarTecnicos(texto);
     }
 
     public List<String> getEstadosDisponibles() {
@@ -0,0 +1,97 @@
+package es.tew.web;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import es.tew.logica.ExportadorIncidencias;
+import es.tew.logica.ServicioIncidencias;
+import jakarta.inject.Inject;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Descarga de todas las incidencias, con comentarios e historial, para auditoría.
+ * Solo para administradores (lo comprueba SecurityFilter, como el resto de /admin/).
+ *
+ * Parámetros: formato=csv|json (csv por defecto) y el rango de IDs desde/hasta (ambos
+ * incluidos, toda la tabla por defecto). Para reanudar una descarga cortada se repite
+ * con desde = último ID recibido + 1. La respuesta se escribe según se lee de la BDD,
+ * sin Content-Length, y va comprimida con gzip si el cliente lo admite.
+ */
+@WebServlet(urlPatterns = "/admin/exportar")
+public class ExportacionServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int BUFFER = 64 * 1024;
+
+    @Inject
+    private ServicioIncidencias servicioIncidencias;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+        ExportadorIncidencias.Formato formato;
+        long desde;
+        long hasta;
+        try {
+            String parametro = req.getParameter("formato");
+            formato = parametro == null || parametro.isEmpty()
+                    ? ExportadorIncidencias.Formato.CSV
+                    : ExportadorIncidencias.Formato.valueOf(parametro.toUpperCase());
+            desde = idParametro(req, "desde", 0L);
+            hasta = idParametro(req, "hasta", Long.MAX_VALUE);
+        } catch (IllegalArgumentException e) {
+            res.sendError(HttpServletResponse.SC_BAD_REQUEST, "Parámetros de exportación no válidos: " + e.getMessage());
+            return;
+        }
+
+        String aceptadas = req.getHeader("Accept-Encoding");
+        boolean gzip = aceptadas != null && aceptadas.contains("gzip");
+
+        String fichero = "incidencias" + (desde > 0 || hasta < Long.MAX_VALUE
+                ? "-" + desde + "-" + (hasta < Long.MAX_VALUE ? hasta : "fin") : "") + "." + formato.getExtension();
+        res.setContentType(formato.getTipoMime());
+        res.setCharacterEncoding("UTF-8");
+        res.setHeader("Content-Disposition", "attachment; filename=\"" + fichero + "\"");
+        res.setHeader("Vary", "Accept-Encoding");
+        if (gzip) {
+            res.setHeader("Content-Encoding", "gzip");
+        }
+
+        OutputStream salida = res.getOutputStream();
+        GZIPOutputStream comprimida = gzip ? new GZIPOutputStream(salida, BUFFER) : null;
+        Writer escritor = new BufferedWriter(new OutputStreamWriter(
+                comprimida != null ? comprimida : salida, StandardCharsets.UTF_8), BUFFER);
+        try {
+            servicioIncidencias.exportarIncidencias(formato, desde, hasta, escritor);
+            escritor.flush();
+            if (comprimida != null) {
+                comprimida.finish();
+            }
+        } catch (IOException e) {
+            // La respuesta ya está a medias: se corta para que el cliente no la dé por completa
+            System.err.println("Error en la exportación de incidencias (IDs " + desde + ".." + hasta + "): " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private static long idParametro(HttpServletRequest req, String nombre, long porDefecto) {
+        String valor = req.getParameter(nombre);
+        if (valor == null || valor.isEmpty()) {
+            return porDefecto;
+        }
+        long id = Long.parseLong(valor.trim());
+        if (id < 0) {
+            throw new IllegalArgumentException(nombre + " negativo");
+        }
+        return id;
+    }
+}
@@ -4,11 +4,12 @@ import es.tew.dto.IncidenciaDTO;
 import es.tew.dto.UsuarioDTO;
 import es.tew.logica.ServicioIncidencias;
 
+import jakarta.faces.application.FacesMessage;
+import jakarta.faces.context.FacesContext;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.faces.view.ViewScoped; 
 import java.io.Serializable;
-import java.util.List;
 
 @Named("incidenciasController")
 @ViewScoped
@@ -22,17 +23,21 @@ public class IncidenciasController implements Serializable {
     @Inject
     private ServicioIncidencias servicioIncidencias;
 
-    private List<IncidenciaDTO> listaIncidencias;
+    private IncidenciasLazyModel modeloIncidencias;
     private IncidenciaDTO nuevaIncidencia; 
 
-    public List<IncidenciaDTO> getListaIncidencias() {
-        if (listaIncidencias == null) {
+    /**
+     * Modelo perezoso del listado: la tabla carga de la BDD solo la página visible.
+     */
+    public IncidenciasLazyModel getModeloIncidencias() {
+        if (modeloIncidencias == null) {
             UsuarioDTO usuario = sesionController.getUsuarioActual();
             if (usuario != null) {
-                listaIncidencias = servicioIncidencias.getIncidenciasByRol(usuario);
+                modeloIncidencias = new IncidenciasLazyModel(servicioIncidencias,
+                        servicioIncidencias.getFiltroPorRol(usuario));
             }
         }
-        return listaIncidencias;
+        return modeloIncidencias;
     }
     
     public String initCreacion() {
@@ -44,10 +49,19 @@ public class IncidenciasController implements Serializable {
         // Asignamos el usuario actual como solicitante antes de guardar
         System.out.println("Guardando incidencia para el usuario: " + sesionController.getUsuarioActual().getNombre());
         nuevaIncidencia.setSolicitante(sesionController.getUsuarioActual());
-        servicioIncidencias.crearIncidencia(nuevaIncidencia);
+        try {
+            servicioIncidencias.crearIncidencia(nuevaIncidencia);
+        } catch (RuntimeException e) {
+            // Se queda en el formulario con lo escrito, para poder reintentarlo
+            FacesContext.getCurrentInstance().addMessage(null,
+                new FacesMessage(FacesMessage.SEVERITY_ERROR,
+                    "Error",
+                    "No se pudo crear la incidencia: " + e.getMessage()));
+            return null;
+        }
         
         // Forzamos la recarga de la lista en la siguiente vista
-        listaIncidencias = null; 
+        modeloIncidencias = null; 
         
         // Redirigimos directamente al listado
         return "/listado.xhtml?faces-redirect=true";
@@ -0,0 +1,107 @@
+package es.tew.web;
+
+import java.util.List;
+import java.util.Map;
+
+import org.primefaces.model.FilterMeta;
+import org.primefaces.model.LazyDataModel;
+import org.primefaces.model.SortMeta;
+
+import es.tew.dao.FiltroIncidencias;
+import es.tew.dao.PaginaIncidencias;
+import es.tew.dto.IncidenciaResumen;
+import es.tew.logica.ServicioIncidencias;
+
+/**
+ * Modelo perezoso de las tablas de incidencias: la tabla solo pide a la base de datos
+ * la página visible y el número total de filas que cumplen el filtro, nunca la lista completa.
+ *
+ * Si se avanza a la página siguiente con el orden por defecto, la consulta continúa
+ * desde la última fila mostrada (keyset) en lugar de saltar filas con OFFSET.
+ */
+public class IncidenciasLazyModel extends LazyDataModel<IncidenciaResumen> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ServicioIncidencias servicioIncidencias;
+    private final FiltroIncidencias filtro;
+
+    // Última página cargada, para poder continuar desde su última fila
+    private List<IncidenciaResumen> paginaActual;
+    private int ultimoDesplazamiento = -1;
+    private String ultimoOrden;
+
+    /**
+     * @param servicioIncidencias Servicio de negocio.
+     * @param filtro Criterios de la tabla. Si se modifican, hay que llamar a {@link #reiniciar()}.
+     */
+    public IncidenciasLazyModel(ServicioIncidencias servicioIncidencias, FiltroIncidencias filtro) {
+        this.servicioIncidencias = servicioIncidencias;
+        this.filtro = filtro;
+    }
+
+    /**
+     * Olvida la última página cargada, para que la siguiente carga no continúe
+     * desde un cursor obtenido con otros criterios.
+     */
+    public void reiniciar() {
+        paginaActual = null;
+        ultimoDesplazamiento = -1;
+        ultimoOrden = null;
+    }
+
+    public FiltroIncidencias getFiltro() {
+        return filtro;
+    }
+
+    @Override
+    public int count(Map<String, FilterMeta> filterBy) {
+        return (int) servicioIncidencias.contarIncidencias(filtro);
+    }
+
+    @Override
+    public List<IncidenciaResumen> load(int first, int pageSize, Map<String, SortMeta> sortBy, Map<String, FilterMeta> filterBy) {
+        String campo = null;
+        boolean ascendente = false;
+        if (sortBy != null && !sortBy.isEmpty()) {
+            SortMeta orden = sortBy.values().iterator().next();
+            if (!orden.getOrder().isUnsorted()) {
+                campo = orden.getField();
+                ascendente = orden.getOrder().isAscending();
+            }
+        }
+
+        PaginaIncidencias pagina = new PaginaIncidencias(first, pageSize, campo, ascendente);
+        String claveOrden = pagina.getCampoOrden() + (pagina.isAscendente() ? " ASC" : " DESC");
+
+        // Página inmediatamente posterior a la anterior y con el mismo orden: se sigue por keyset
+        if (paginaActual != null && !paginaActual.isEmpty()
+                && first == ultimoDesplazamiento + paginaActual.size()
+                && claveOrden.equals(ultimoOrden)) {
+            IncidenciaResumen ultima = paginaActual.get(paginaActual.size() - 1);
+            pagina.setCursor(ultima.getFechaCreacion(), ultima.getId());
+        }
+
+        paginaActual = servicioIncidencias.getPaginaIncidencias(filtro, pagina);
+        ultimoDesplazamiento = first;
+        ultimoOrden = claveOrden;
+        return paginaActual;
+    }
+
+    @Override
+    public String getRowKey(IncidenciaResumen incidencia) {
+        return incidencia.getId() != null ? incidencia.getId().toString() : null;
+    }
+
+    @Override
+    public IncidenciaResumen getRowData(String rowKey) {
+        if (paginaActual != null) {
+            for (IncidenciaResumen inc : paginaActual) {
+                if (rowKey.equals(getRowKey(inc))) {
+                    return inc;
+                }
+            }
+        }
+        return null;
+    }
+}
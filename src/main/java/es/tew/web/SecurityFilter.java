@@ -3,6 +3,7 @@ package es.tew.web;
 import java.io.IOException;
 
 import es.tew.dto.UsuarioDTO;
+import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
@@ -12,7 +13,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebFilter(urlPatterns = {"*.xhtml"})
+@WebFilter(urlPatterns = {"*.xhtml", "/admin/*"})
 public class SecurityFilter implements Filter {
     
     @Override
@@ -1,12 +1,12 @@
 package es.tew.web;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.SessionScoped;
+import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import java.io.Serializable;
-import java.security.SecureRandom;
 import java.util.List;
-import es.tew.dao.UsuarioDaoJdbc;
 import es.tew.dto.UsuarioDTO;
+import es.tew.logica.ServicioIncidencias;
 
 @Named
 @SessionScoped
@@ -14,7 +14,8 @@ public class UsuarioController implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private UsuarioDaoJdbc usuarioDAO = new UsuarioDaoJdbc();
+    @Inject
+    private ServicioIncidencias servicioIncidencias;
 
 
     private UsuarioDTO nuevoEmpleado = new UsuarioDTO();
@@ -44,12 +45,9 @@ public void init() {
      */
     public String guardarEmpleado() {
         try {
-            // Generar contraseña aleatoria
-            String contrasenaGenerada = generarContrasena();
-            nuevoEmpleado.setPassword(contrasenaGenerada);
-
-            // Guardar el usuario en la base de datos
-            usuarioDAO.save(nuevoEmpleado);
+            // Guardar el usuario con una contraseña generada (también lo añade al
+            // directorio de usuarios y, si es técnico, al reparto de incidencias)
+            String contrasenaGenerada = servicioIncidencias.altaUsuario(nuevoEmpleado);
 
             // Actualizar la lista de usuarios para reflejar el cambio
             listaUsuarios();
@@ -69,27 +67,11 @@ public void init() {
     }
 
     /**
-     * Genera una contraseña aleatoria de longitud dada.
-     */
-    private String generarContrasena() {
-        String caracteres = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
-        SecureRandom random = new SecureRandom();
-        StringBuilder contrasena = new StringBuilder();
-
-        for (int i = 0; i < 3; i++) {
-            int indice = random.nextInt(caracteres.length());
-            contrasena.append(caracteres.charAt(indice));
-        }
-        return contrasena.toString();
-
-    }
-
-    /**
-     * Recupera todos los usuarios de la base de datos.
+     * Recupera todos los usuarios (del directorio en memoria).
      */
     public List<UsuarioDTO> listaUsuarios() {
         try {
-            listaUsuarios = usuarioDAO.findAll();
+            listaUsuarios = servicioIncidencias.getAllUsuarios();
         } catch (Exception e) {
             e.printStackTrace();
             listaUsuarios = null; // en caso de error, limpiar lista
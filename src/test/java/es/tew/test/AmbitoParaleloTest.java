@@ -0,0 +1,129 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import es.tew.logica.AmbitoParalelo;
+
+/**
+ * Comprueba que las cargas de un AmbitoParalelo se ejecutan a la vez y que un fallo
+ * o el fin del plazo cancelan las que siguen en marcha, sin interrumpir sus hilos.
+ */
+public class AmbitoParaleloTest {
+
+    private final ExecutorService ejecutor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        ejecutor.shutdownNow();
+    }
+
+    @Test
+    public void ejecutaLasCargasALaVez() {
+        // Cada carga espera a la otra: en secuencia no terminarían nunca
+        CountDownLatch ambas = new CountDownLatch(2);
+        try (AmbitoParalelo ambito = new AmbitoParalelo(ejecutor, 5000)) {
+            Supplier<String> a = ambito.lanzar(() -> {
+                ambas.countDown();
+                ambas.await();
+                return "a";
+            });
+            Supplier<Integer> b = ambito.lanzar(() -> {
+                ambas.countDown();
+                ambas.await();
+                return 2;
+            });
+            ambito.esperar();
+            assertEquals("a", a.get());
+            assertEquals(Integer.valueOf(2), b.get());
+        }
+    }
+
+    @Test
+    public void unFalloCancelaLasDemasSinInterrumpirlas() throws InterruptedException {
+        CountDownLatch empezada = new CountDownLatch(1);
+        CountDownLatch detenida = new CountDownLatch(1);
+        AtomicBoolean interrumpida = new AtomicBoolean();
+        try (AmbitoParalelo ambito = new AmbitoParalelo(ejecutor, 5000)) {
+            ambito.lanzar(() -> {
+                empezada.countDown();
+                long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (!AmbitoParalelo.cancelada() && System.nanoTime() < limite) {
+                    Thread.onSpinWait();
+                }
+                interrumpida.set(Thread.currentThread().isInterrupted());
+                detenida.countDown();
+                return null;
+            });
+            // Falla cuando la otra ya está en marcha (si no, se cancelaría sin llegar a ejecutarse)
+            ambito.lanzar(() -> {
+                empezada.await();
+                throw new IllegalStateException("sin conexión");
+            });
+            ambito.esperar();
+            fail("Debería haber fallado");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(detenida.await(1, TimeUnit.SECONDS));
+        assertFalse(interrumpida.get());
+    }
+
+    @Test
+    public void lasCargasSinEmpezarNoSeEjecutanTrasCancelar() throws InterruptedException {
+        ExecutorService unHilo = Executors.newSingleThreadExecutor();
+        AtomicBoolean ejecutada = new AtomicBoolean();
+        try (AmbitoParalelo ambito = new AmbitoParalelo(unHilo, 100)) {
+            // Ocupa el único hilo hasta que se cancela al agotar el plazo
+            ambito.lanzar(() -> {
+                while (!AmbitoParalelo.cancelada()) {
+                    Thread.onSpinWait();
+                }
+                return null;
+            });
+            // En cola detrás de la anterior
+            ambito.lanzar(() -> {
+                ejecutada.set(true);
+                return null;
+            });
+            ambito.esperar();
+            fail("Debería haber agotado el plazo");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        } finally {
+            unHilo.shutdown();
+        }
+        assertTrue(unHilo.awaitTermination(1, TimeUnit.SECONDS));
+        assertFalse(ejecutada.get());
+        assertFalse(AmbitoParalelo.cancelada());
+    }
+
+    @Test
+    public void respetaElPlazo() {
+        long inicio = System.nanoTime();
+        try (AmbitoParalelo ambito = new AmbitoParalelo(ejecutor, 100)) {
+            ambito.lanzar(() -> {
+                Thread.sleep(10000);
+                return null;
+            });
+            ambito.esperar();
+            fail("Debería haber agotado el plazo");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(System.nanoTime() - inicio < TimeUnit.SECONDS.toNanos(2));
+    }
+}
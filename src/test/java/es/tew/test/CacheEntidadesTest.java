@@ -0,0 +1,93 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import es.tew.dao.CacheEntidades;
+import es.tew.dto.UsuarioDTO;
+
+/**
+ * Comprueba el desalojo, la caducidad y el aislamiento de copias de CacheEntidades,
+ * sin BDD: la carga es una función que cuenta sus llamadas.
+ */
+public class CacheEntidadesTest {
+
+    private final AtomicInteger cargas = new AtomicInteger();
+
+    private UsuarioDTO cargar(String dni) {
+        cargas.incrementAndGet();
+        return new UsuarioDTO(dni, "Nombre " + dni, "Apellidos", null, "USUARIO");
+    }
+
+    private static CacheEntidades<String, UsuarioDTO> cache(int maximo, long ttlMs) {
+        return new CacheEntidades<>("prueba", maximo, ttlMs,
+                u -> new UsuarioDTO(u.getDni(), u.getNombre(), u.getApellidos(), u.getPassword(), u.getRol()));
+    }
+
+    @Test
+    public void losAciertosDevuelvenCopiasQueNoAlteranLaCache() {
+        CacheEntidades<String, UsuarioDTO> cache = cache(10, 60000);
+
+        UsuarioDTO primera = cache.obtener("1A", this::cargar);
+        primera.setNombre("Modificado");
+        UsuarioDTO segunda = cache.obtener("1A", this::cargar);
+
+        assertEquals(1, cargas.get());
+        assertNotSame(primera, segunda);
+        assertEquals("Nombre 1A", segunda.getNombre());
+        assertEquals(1, cache.getStats().getAciertos());
+        assertEquals(1, cache.getStats().getFallos());
+    }
+
+    @Test
+    public void seDesalojaLaUsadaHaceMasTiempo() {
+        CacheEntidades<String, UsuarioDTO> cache = cache(2, 60000);
+
+        cache.obtener("1A", this::cargar);
+        cache.obtener("2B", this::cargar);
+        cache.obtener("1A", this::cargar);   // 2B pasa a ser la menos reciente
+        cache.obtener("3C", this::cargar);   // desaloja 2B
+
+        cargas.set(0);
+        cache.obtener("1A", this::cargar);
+        cache.obtener("3C", this::cargar);
+        assertEquals(0, cargas.get());
+        cache.obtener("2B", this::cargar);
+        assertEquals(1, cargas.get());
+        assertEquals(2, cache.getStats().getDesalojadas());
+    }
+
+    @Test
+    public void lasEntradasCaducanYSeInvalidan() throws InterruptedException {
+        CacheEntidades<String, UsuarioDTO> cache = cache(10, 50);
+
+        cache.obtener("1A", this::cargar);
+        Thread.sleep(80);
+        cache.obtener("1A", this::cargar);
+        assertEquals(2, cargas.get());
+        assertEquals(1, cache.getStats().getCaducadas());
+
+        cache.invalidar("1A");
+        cache.obtener("1A", this::cargar);
+        assertEquals(3, cargas.get());
+    }
+
+    @Test
+    public void noSeGuardaLoCargadoDuranteUnaInvalidacion() {
+        CacheEntidades<String, UsuarioDTO> cache = cache(10, 60000);
+
+        // Otra escritura invalida la clave mientras se está leyendo el valor anterior
+        cache.obtener("1A", dni -> {
+            cache.invalidar(dni);
+            return cargar(dni);
+        });
+        cache.obtener("1A", this::cargar);
+
+        assertEquals(2, cargas.get());
+        assertEquals(1, cache.getStats().getTamano());
+    }
+}
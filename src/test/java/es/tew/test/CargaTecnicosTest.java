@@ -0,0 +1,102 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.tew.dao.DAOFactory;
+import es.tew.logica.CargaTecnicos;
+
+/**
+ * Prueba de concurrencia de la asignación automática de técnicos: muchos hilos
+ * asignando a la vez deben repartir las incidencias igual que si lo hicieran de uno en uno.
+ */
+public class CargaTecnicosTest {
+
+    private static final int HILOS = 16;
+    private static final int ASIGNACIONES_POR_HILO = 500;
+
+    private CargaTecnicos carga;
+
+    @Before
+    public void setUp() {
+        DAOFactory factory = DAOFactory.getFactory();
+        carga = new CargaTecnicos(factory.getUsuarioDAO(), factory.getIncidenciaDAO());
+        carga.reconstruir();
+    }
+
+    private static int suma(Map<String, Integer> cargas) {
+        return cargas.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Lanza todas las tareas a la vez y espera a que terminen.
+     */
+    private static void enParalelo(int hilos, Runnable tarea) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(hilos);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> futuros = new ArrayList<>();
+        try {
+            for (int i = 0; i < hilos; i++) {
+                futuros.add(pool.submit(() -> {
+                    salida.await();
+                    tarea.run();
+                    return null;
+                }));
+            }
+            salida.countDown();
+            for (Future<?> futuro : futuros) {
+                futuro.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lasAsignacionesConcurrentesQuedanEquilibradas() throws Exception {
+        Map<String, Integer> inicial = carga.getCargas();
+        assertTrue("No hay técnicos en la BDD de prueba", inicial.size() > 1);
+
+        enParalelo(HILOS, () -> {
+            for (int i = 0; i < ASIGNACIONES_POR_HILO; i++) {
+                assertNotNull(carga.asignar());
+            }
+        });
+
+        Map<String, Integer> cargas = carga.getCargas();
+        // Ninguna asignación se pierde ni se cuenta dos veces
+        assertEquals(suma(inicial) + HILOS * ASIGNACIONES_POR_HILO, suma(cargas));
+        // Con tantas asignaciones, las diferencias iniciales desaparecen
+        int max = Collections.max(cargas.values());
+        int min = Collections.min(cargas.values());
+        assertTrue("Reparto desequilibrado: " + cargas, max - min <= 1);
+    }
+
+    @Test
+    public void asignarYLiberarALaVezMantieneLosTotales() throws Exception {
+        Map<String, Integer> inicial = carga.getCargas();
+
+        // Cada hilo asigna y cierra la misma cantidad, así que el total no cambia
+        enParalelo(HILOS, () -> {
+            for (int i = 0; i < ASIGNACIONES_POR_HILO; i++) {
+                String dni = carga.asignar().getDni();
+                carga.liberar(dni);
+            }
+        });
+
+        assertEquals(inicial, carga.getCargas());
+    }
+}
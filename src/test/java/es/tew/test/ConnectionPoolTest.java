@@ -0,0 +1,381 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import es.tew.dao.ConnectionPool;
+
+/**
+ * Comprueba el pool de conexiones contra una BDD en memoria propia, independiente de la
+ * de DAOFactory: espera acotada, tamaño máximo, sustitución de conexiones muertas, aviso
+ * de fugas y caché de sentencias preparadas de cada conexión.
+ */
+public class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:hsqldb:mem:pooltest";
+    private static final String SQL_A = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_USERS WHERE USER_NAME = ?";
+    private static final String SQL_B = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_USERS WHERE ADMIN = ?";
+
+    private ConnectionPool pool;
+
+    private static ConnectionPool crear(int max, long timeoutMs, long validacionMs, long fugaMs, boolean trazas)
+            throws SQLException {
+        return crear(max, timeoutMs, validacionMs, fugaMs, trazas, 16);
+    }
+
+    private static ConnectionPool crear(int max, long timeoutMs, long validacionMs, long fugaMs, boolean trazas,
+            int sentencias) throws SQLException {
+        ConnectionPool p = new ConnectionPool(URL, "SA", "", 1, max, timeoutMs, validacionMs, fugaMs, trazas, sentencias);
+        p.start();
+        return p;
+    }
+
+    /**
+     * Un solo préstamo a la vez sobre una sola conexión, para que la caché sea siempre la misma.
+     */
+    private static ConnectionPool crearConCache(int sentencias) throws SQLException {
+        return crear(1, 1000, 30000, 60000, false, sentencias);
+    }
+
+    private static long contar(PreparedStatement ps, Object parametro) throws SQLException {
+        ps.setObject(1, parametro);
+        try (ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private static int uno(Connection con) throws SQLException {
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery("VALUES 1")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void sinConexionesLibresEsperaYFallaTrasElPlazo() throws SQLException {
+        pool = crear(2, 200, 30000, 60000, false);
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+
+        long inicio = System.currentTimeMillis();
+        try {
+            pool.getConnection();
+            fail("Debería agotar la espera");
+        } catch (SQLTimeoutException e) {
+            assertTrue(System.currentTimeMillis() - inicio >= 150);
+        }
+        assertEquals(1, pool.getStats().getTimeouts());
+
+        // Al devolver una, el siguiente préstamo se atiende
+        a.close();
+        try (Connection c = pool.getConnection()) {
+            assertEquals(1, uno(c));
+        }
+        b.close();
+        assertEquals(0, pool.getStats().getActive());
+    }
+
+    @Test
+    public void nuncaHayMasConexionesQueElMaximo() throws Exception {
+        pool = crear(3, 5000, 30000, 60000, false);
+        AtomicInteger aLaVez = new AtomicInteger();
+        AtomicInteger maximo = new AtomicInteger();
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService hilos = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tareas.add(hilos.submit(() -> {
+                    salida.await();
+                    for (int k = 0; k < 20; k++) {
+                        try (Connection con = pool.getConnection()) {
+                            maximo.accumulateAndGet(aLaVez.incrementAndGet(), Math::max);
+                            uno(con);
+                            Thread.sleep(1);
+                            aLaVez.decrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            salida.countDown();
+            for (Future<?> tarea : tareas) {
+                tarea.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+
+        assertTrue("A la vez: " + maximo.get(), maximo.get() <= 3);
+        assertTrue(pool.getStats().getTotal() <= 3);
+        assertEquals(160, pool.getStats().getBorrows());
+        assertEquals(0, pool.getStats().getTimeouts());
+    }
+
+    @Test
+    public void unaConexionMuertaSeSustituyeAlPrestarla() throws SQLException {
+        // Validación en cada préstamo
+        pool = crear(2, 1000, 0, 60000, false);
+        Connection fisica;
+        try (Connection con = pool.getConnection()) {
+            fisica = con.unwrap(Connection.class);
+        }
+        // Se cae mientras está libre en el pool
+        fisica.close();
+
+        try (Connection con = pool.getConnection()) {
+            assertFalse(con.unwrap(Connection.class) == fisica);
+            assertEquals(1, uno(con));
+        }
+        assertEquals(1, pool.getStats().getDiscarded());
+    }
+
+    @Test
+    public void unaConexionMuertaAlDevolverlaSeDescarta() throws SQLException {
+        pool = crear(2, 1000, 30000, 60000, false);
+        Connection con = pool.getConnection();
+        con.setAutoCommit(false);
+        con.unwrap(Connection.class).close();
+        con.close();
+
+        assertEquals(1, pool.getStats().getDiscarded());
+        try (Connection otra = pool.getConnection()) {
+            assertEquals(1, uno(otra));
+        }
+    }
+
+    @Test
+    public void avisaDeLasFugasYSoloGuardaLaTrazaSiSePide() throws Exception {
+        assertTrue(avisoDeFuga(false).contains("leakStackTraces=true"));
+        assertTrue(avisoDeFuga(true).contains("Origen del préstamo de la conexión"));
+    }
+
+    /**
+     * Presta una conexión sin devolverla hasta que el pool avisa de la fuga.
+     * @return Lo que el pool escribe en System.err.
+     */
+    private String avisoDeFuga(boolean trazas) throws Exception {
+        ByteArrayOutputStream capturado = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(capturado, true, StandardCharsets.UTF_8));
+        try {
+            pool = crear(2, 1000, 30000, 100, trazas);
+            try (Connection olvidada = pool.getConnection()) {
+                // El mantenimiento pasa como mucho cada segundo
+                long limite = System.currentTimeMillis() + 5000;
+                while (pool.getStats().getLeaks() == 0 && System.currentTimeMillis() < limite) {
+                    Thread.sleep(50);
+                }
+                assertEquals(1, pool.getStats().getLeaks());
+            }
+            pool.close();
+            pool = null;
+        } finally {
+            System.setErr(err);
+        }
+        String salida = capturado.toString(StandardCharsets.UTF_8);
+        assertTrue(salida, salida.contains("posible fuga de conexión"));
+        assertEquals(trazas, salida.contains("Origen del préstamo de la conexión"));
+        return salida;
+    }
+
+    // ******************************************************
+    // CACHÉ DE SENTENCIAS
+    // ******************************************************
+
+    @Test
+    public void elMismoSqlReutilizaLaSentenciaFisica() throws SQLException {
+        pool = crearConCache(4);
+        PreparedStatement primera;
+        try (Connection con = pool.getConnection(); PreparedStatement ps = con.prepareStatement(SQL_A)) {
+            assertEquals(1, contar(ps, "SA"));
+            primera = ps.unwrap(PreparedStatement.class);
+        }
+        try (Connection con = pool.getConnection(); PreparedStatement ps = con.prepareStatement(SQL_A)) {
+            assertSame(primera, ps.unwrap(PreparedStatement.class));
+            assertEquals(1, contar(ps, "SA"));
+        }
+        assertEquals(1, pool.getStats().getStatementCacheHits());
+        assertEquals(1, pool.getStats().getStatementCacheMisses());
+    }
+
+    @Test
+    public void expulsarUnaSentenciaEnUsoNoLaCierraHastaDevolverla() throws SQLException {
+        pool = crearConCache(1);
+        try (Connection con = pool.getConnection()) {
+            PreparedStatement a = con.prepareStatement(SQL_A);
+            PreparedStatement fisicaA = a.unwrap(PreparedStatement.class);
+
+            // B ocupa el único hueco de la caché y expulsa a A, que sigue prestada
+            try (PreparedStatement b = con.prepareStatement(SQL_B)) {
+                assertEquals(1, contar(b, true));
+            }
+            assertFalse(fisicaA.isClosed());
+            assertEquals(1, contar(a, "SA"));
+
+            // Al devolverla ya no vuelve a la caché: se cierra
+            a.close();
+            assertTrue(fisicaA.isClosed());
+
+            try (PreparedStatement otraA = con.prepareStatement(SQL_A)) {
+                assertNotSame(fisicaA, otraA.unwrap(PreparedStatement.class));
+                assertEquals(1, contar(otraA, "SA"));
+            }
+        }
+    }
+
+    @Test
+    public void unaSentenciaSinCerrarVuelveALaCacheAlDevolverLaConexion() throws SQLException {
+        pool = crearConCache(4);
+        PreparedStatement olvidada;
+        PreparedStatement fisica;
+        try (Connection con = pool.getConnection()) {
+            olvidada = con.prepareStatement(SQL_A);
+            fisica = olvidada.unwrap(PreparedStatement.class);
+            olvidada.setString(1, "SA");
+            // Se devuelve la conexión sin cerrar la sentencia
+        }
+        assertTrue(olvidada.isClosed());
+        assertFalse(fisica.isClosed());
+
+        try (Connection con = pool.getConnection(); PreparedStatement ps = con.prepareStatement(SQL_A)) {
+            // Sale de la caché, sin el parámetro del préstamo anterior
+            assertSame(fisica, ps.unwrap(PreparedStatement.class));
+            assertEquals(1, pool.getStats().getStatementCacheHits());
+            ps.setString(1, "NADIE");
+
+            // El proxy olvidado ya no llega a la sentencia que usa este préstamo
+            try {
+                olvidada.setString(1, "SA");
+                fail("Se ha usado una sentencia de un préstamo ya devuelto");
+            } catch (SQLException e) {
+                // Esperado
+            }
+            olvidada.close();
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                assertEquals(0, rs.getLong(1));
+            }
+        }
+        try (Connection con = pool.getConnection(); PreparedStatement ps = con.prepareStatement(SQL_A)) {
+            assertSame(fisica, ps.unwrap(PreparedStatement.class));
+            assertEquals(2, pool.getStats().getStatementCacheHits());
+        }
+    }
+
+    @Test
+    public void elMismoSqlDosVecesEnUnPrestamoDaSentenciasDistintas() throws SQLException {
+        pool = crearConCache(4);
+        PreparedStatement cacheada;
+        try (Connection con = pool.getConnection();
+             PreparedStatement primera = con.prepareStatement(SQL_A);
+             PreparedStatement segunda = con.prepareStatement(SQL_A)) {
+            cacheada = primera.unwrap(PreparedStatement.class);
+            PreparedStatement sinCache = segunda.unwrap(PreparedStatement.class);
+            assertNotSame(cacheada, sinCache);
+
+            // Cada una con su parámetro, sin pisarse
+            primera.setString(1, "SA");
+            segunda.setString(1, "NADIE");
+            try (ResultSet r1 = primera.executeQuery(); ResultSet r2 = segunda.executeQuery()) {
+                r1.next();
+                r2.next();
+                assertEquals(1, r1.getLong(1));
+                assertEquals(0, r2.getLong(1));
+            }
+
+            segunda.close();
+            assertTrue("La sentencia sin caché se cierra de verdad", sinCache.isClosed());
+        }
+        assertFalse("La de la caché sigue abierta para el siguiente préstamo", cacheada.isClosed());
+        try (Connection con = pool.getConnection(); PreparedStatement ps = con.prepareStatement(SQL_A)) {
+            assertSame(cacheada, ps.unwrap(PreparedStatement.class));
+        }
+    }
+
+    @Test
+    public void alVolverALaCacheSeBorranLosParametros() throws SQLException {
+        pool = crearConCache(4);
+        try (Connection con = pool.getConnection(); PreparedStatement ps = con.prepareStatement(SQL_A)) {
+            ps.setString(1, "SA");
+        }
+        try (Connection con = pool.getConnection(); PreparedStatement ps = con.prepareStatement(SQL_A)) {
+            assertEquals(1, pool.getStats().getStatementCacheHits());
+            try {
+                ps.executeQuery().close();
+                fail("El parámetro del préstamo anterior no debería seguir puesto");
+            } catch (SQLException e) {
+                // Parámetro sin valor
+            }
+            assertEquals(1, contar(ps, "SA"));
+        }
+    }
+
+    @Test
+    public void unaSentenciaConUnLoteSinEnviarNoVuelveALaCache() throws SQLException {
+        pool = crearConCache(4);
+        try (Connection con = pool.getConnection(); Statement st = con.createStatement()) {
+            st.execute("CREATE TABLE LOTE_POOL (ID INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, V INTEGER)");
+        }
+        String insert = "INSERT INTO LOTE_POOL (V) VALUES (?)";
+        PreparedStatement fisica;
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = con.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
+            // Un lote que se abandona antes del executeBatch (un error a mitad del bucle)
+            ps.setInt(1, 1);
+            ps.addBatch();
+            fisica = ps.unwrap(PreparedStatement.class);
+        }
+        assertTrue(fisica.isClosed());
+
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = con.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, 2);
+            assertEquals(1, ps.executeUpdate());
+            // Un lote enviado sí deja la sentencia reutilizable
+            ps.setInt(1, 3);
+            ps.addBatch();
+            ps.executeBatch();
+            fisica = ps.unwrap(PreparedStatement.class);
+        }
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = con.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
+            assertSame(fisica, ps.unwrap(PreparedStatement.class));
+            ps.setInt(1, 4);
+            assertEquals(1, ps.executeUpdate());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import es.tew.dao.ComentarioDAO;
+import es.tew.dao.DAOFactory;
+import es.tew.dao.FiltroIncidencias;
+import es.tew.dao.HistorialEstadoDAO;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dto.ComentarioDTO;
+import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
+
+/**
+ * Comprueba los stream de los DAO: que devuelven lo mismo que los buscadores y que
+ * ninguna forma de terminarlos (recorrido entero, recorrido parcial con close, excepción
+ * a medias) deja conexiones prestadas. Cada caso se repite más veces que conexiones
+ * tiene el pool: con una sola fuga, las últimas vueltas se quedarían sin conexión.
+ */
+public class CursorJdbcTest {
+
+    private static final String SOLICITANTE = "10001001A";
+
+    private static IncidenciaDAO incidenciaDAO;
+    private static ComentarioDAO comentarioDAO;
+    private static HistorialEstadoDAO historialEstadoDAO;
+    private static int vueltas;
+
+    @BeforeClass
+    public static void setUp() {
+        DAOFactory factoria = DAOFactory.getFactory();
+        incidenciaDAO = factoria.getIncidenciaDAO();
+        comentarioDAO = factoria.getComentarioDAO();
+        historialEstadoDAO = factoria.getHistorialEstadoDAO();
+        DAOFactory.start();
+        vueltas = 2 * DAOFactory.getPoolStats().getMax() + 1;
+    }
+
+    @Test
+    public void streamIgualQueCountYEnOrdenDeCreacion() {
+        FiltroIncidencias filtro = FiltroIncidencias.porSolicitante(SOLICITANTE);
+        List<IncidenciaDTO> incidencias;
+        try (Stream<IncidenciaDTO> stream = incidenciaDAO.stream(filtro)) {
+            incidencias = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(incidenciaDAO.count(filtro), incidencias.size());
+        for (int i = 1; i < incidencias.size(); i++) {
+            IncidenciaDTO anterior = incidencias.get(i - 1);
+            IncidenciaDTO actual = incidencias.get(i);
+            assertEquals(SOLICITANTE, actual.getSolicitante().getDni());
+            assertTrue(anterior.getFechaCreacion().compareTo(actual.getFechaCreacion()) < 0
+                    || anterior.getFechaCreacion().equals(actual.getFechaCreacion())
+                            && anterior.getId() < actual.getId());
+        }
+    }
+
+    @Test
+    public void comentariosEHistorialAgrupadosPorIncidencia() {
+        FiltroIncidencias filtro = FiltroIncidencias.porSolicitante(SOLICITANTE);
+        long comentariosEsperados = 0;
+        long historialEsperado = 0;
+        try (Stream<IncidenciaDTO> stream = incidenciaDAO.stream(filtro)) {
+            for (IncidenciaDTO inc : (Iterable<IncidenciaDTO>) stream::iterator) {
+                comentariosEsperados += comentarioDAO.findByIncidencia(inc).size();
+                historialEsperado += historialEstadoDAO.findByIncidencia(inc).size();
+            }
+        }
+
+        List<ComentarioDTO> comentarios;
+        try (Stream<ComentarioDTO> stream = comentarioDAO.stream(filtro)) {
+            comentarios = stream.collect(Collectors.toList());
+        }
+        List<HistorialEstadoDTO> historial;
+        try (Stream<HistorialEstadoDTO> stream = historialEstadoDAO.stream(filtro)) {
+            historial = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(comentariosEsperados, comentarios.size());
+        assertEquals(historialEsperado, historial.size());
+        for (int i = 1; i < historial.size(); i++) {
+            assertTrue(historial.get(i - 1).getIncidencia().getId() <= historial.get(i).getIncidencia().getId());
+        }
+    }
+
+    @Test
+    public void recorridoEnteroSinCloseDevuelveLaConexion() {
+        for (int i = 0; i < vueltas; i++) {
+            // Sin try-with-resources a propósito: al leer la última fila se cierra solo
+            assertTrue(incidenciaDAO.stream(new FiltroIncidencias()).mapToLong(IncidenciaDTO::getId).count() > 0);
+            historialEstadoDAO.stream(new FiltroIncidencias()).forEach(h -> { });
+        }
+        assertSinConexionesPrestadas();
+    }
+
+    @Test
+    public void recorridoParcialConCloseDevuelveLaConexion() {
+        for (int i = 0; i < vueltas; i++) {
+            try (Stream<IncidenciaDTO> stream = incidenciaDAO.stream(new FiltroIncidencias())) {
+                assertTrue(stream.findFirst().isPresent());
+            }
+        }
+        assertSinConexionesPrestadas();
+    }
+
+    @Test
+    public void excepcionAMediasDevuelveLaConexion() {
+        for (int i = 0; i < vueltas; i++) {
+            try (Stream<IncidenciaDTO> stream = incidenciaDAO.stream(new FiltroIncidencias())) {
+                stream.forEach(inc -> {
+                    throw new IllegalStateException("corte");
+                });
+                fail("El forEach debería haber lanzado la excepción");
+            } catch (IllegalStateException e) {
+                assertEquals("corte", e.getMessage());
+            }
+        }
+        assertSinConexionesPrestadas();
+    }
+
+    /**
+     * Las pruebas no dejan nada en préstamo; el escritor del historial puede tener una
+     * conexión un momento, así que se espera un poco antes de dar por buena una fuga.
+     */
+    private static void assertSinConexionesPrestadas() {
+        long limite = System.currentTimeMillis() + 2000;
+        while (DAOFactory.getPoolStats().getActive() > 0 && System.currentTimeMillis() < limite) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertEquals("Conexiones prestadas: " + DAOFactory.getPoolStats(), 0, DAOFactory.getPoolStats().getActive());
+    }
+}
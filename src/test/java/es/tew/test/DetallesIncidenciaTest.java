@@ -0,0 +1,224 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.tew.dao.ComentarioDAO;
+import es.tew.dao.DAOFactory;
+import es.tew.dao.HistorialEstadoDAO;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.UsuarioDAO;
+import es.tew.dao.ConnectionPool;
+import es.tew.dto.ComentarioDTO;
+import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+import es.tew.logica.CargaTecnicos;
+import es.tew.logica.DetallesIncidencia;
+import es.tew.logica.EstadisticasIncidencias;
+import es.tew.logica.IncidenciaDetalle;
+import es.tew.logica.ServicioIncidencias;
+
+/**
+ * Caché de detalles de incidencia: se sirve de la caché hasta que ServicioIncidencias la
+ * invalida (updateIncidencia, addComentario) y cada llamante recibe su propia copia.
+ * Cargar un detalle cuesta las mismas consultas tenga los comentarios que tenga.
+ */
+public class DetallesIncidenciaTest {
+
+    private static final UsuarioDTO SOLICITANTE = new UsuarioDTO("10001001A", null, null, null, "USUARIO");
+
+    private IncidenciaDAO incidenciaDAO;
+    private ComentarioDAO comentarioDAO;
+    private HistorialEstadoDAO historialDAO;
+    private DetallesIncidencia detalles;
+    private ServicioIncidencias servicio;
+    private IncidenciaDTO incidencia;
+
+    @Before
+    public void setUp() throws Exception {
+        DAOFactory factoria = DAOFactory.getFactory();
+        incidenciaDAO = factoria.getIncidenciaDAO();
+        comentarioDAO = factoria.getComentarioDAO();
+        historialDAO = factoria.getHistorialEstadoDAO();
+        UsuarioDAO usuarioDAO = factoria.getUsuarioDAO();
+
+        // Con caché aunque la configuración de las pruebas la desactive: es lo que se prueba
+        detalles = new DetallesIncidencia(incidenciaDAO, comentarioDAO, historialDAO, true);
+        detalles.init();
+
+        EstadisticasIncidencias estadisticas = new EstadisticasIncidencias(incidenciaDAO);
+        estadisticas.reconstruir();
+        CargaTecnicos cargaTecnicos = new CargaTecnicos(usuarioDAO, incidenciaDAO);
+        cargaTecnicos.reconstruir();
+
+        // Sin contenedor: solo lo que usan updateIncidencia y addComentario
+        servicio = new ServicioIncidencias();
+        inyectar("incidenciaDAO", incidenciaDAO);
+        inyectar("comentarioDAO", comentarioDAO);
+        inyectar("historialEstadoDAO", historialDAO);
+        inyectar("estadisticas", estadisticas);
+        inyectar("cargaTecnicos", cargaTecnicos);
+        inyectar("detalles", detalles);
+
+        IncidenciaDTO inc = new IncidenciaDTO();
+        inc.setTitulo("Detalle");
+        inc.setDescripcion("Generada por DetallesIncidenciaTest");
+        inc.setCategoria("Otro");
+        inc.setEstado("ABIERTA");
+        inc.setSolicitante(SOLICITANTE);
+        incidencia = incidenciaDAO.save(inc);
+    }
+
+    @After
+    public void tearDown() {
+        detalles.detener();
+    }
+
+    private void inyectar(String campo, Object valor) throws ReflectiveOperationException {
+        Field f = ServicioIncidencias.class.getDeclaredField(campo);
+        f.setAccessible(true);
+        f.set(servicio, valor);
+    }
+
+    @Test
+    public void updateIncidenciaInvalidaElDetalle() {
+        IncidenciaDetalle antes = detalles.obtener(incidencia.getId());
+        assertEquals("ABIERTA", antes.getIncidencia().getEstado());
+        int historial = antes.getHistorial().size();
+
+        // Un cambio que no pasa por el servicio no se ve: el detalle sale de la caché
+        IncidenciaDTO cambiada = new IncidenciaDTO(incidencia);
+        cambiada.setTitulo("Cambiada por detrás");
+        incidenciaDAO.update(cambiada);
+        assertEquals("Detalle", detalles.obtener(incidencia.getId()).getIncidencia().getTitulo());
+
+        cambiada = new IncidenciaDTO(incidencia);
+        cambiada.setTitulo("Cambiada por el servicio");
+        cambiada.setEstado("EN_PROCESO");
+        servicio.updateIncidencia(cambiada, SOLICITANTE);
+
+        IncidenciaDetalle despues = detalles.obtener(incidencia.getId());
+        assertEquals("Cambiada por el servicio", despues.getIncidencia().getTitulo());
+        assertEquals("EN_PROCESO", despues.getIncidencia().getEstado());
+        assertEquals(historial + 1, despues.getHistorial().size());
+    }
+
+    @Test
+    public void addComentarioInvalidaElDetalle() {
+        int comentarios = detalles.obtener(incidencia.getId()).getComentarios().size();
+
+        ComentarioDTO comentario = new ComentarioDTO();
+        comentario.setIncidencia(incidencia);
+        comentario.setAutor(SOLICITANTE);
+        comentario.setTexto("Sigue sin funcionar");
+        servicio.addComentario(comentario);
+
+        IncidenciaDetalle despues = detalles.obtener(incidencia.getId());
+        assertEquals(comentarios + 1, despues.getComentarios().size());
+        assertEquals("Sigue sin funcionar", despues.getComentarios().get(comentarios).getTexto());
+    }
+
+    /**
+     * Incidencia nueva con el número dado de comentarios y de cambios de estado.
+     */
+    private IncidenciaDTO conFilas(int filas) {
+        IncidenciaDTO inc = new IncidenciaDTO(incidencia);
+        inc.setId(null);
+        inc.setFechaCreacion(null);
+        incidenciaDAO.save(inc);
+        List<HistorialEstadoDTO> historial = new ArrayList<>();
+        for (int i = 0; i < filas; i++) {
+            ComentarioDTO comentario = new ComentarioDTO();
+            comentario.setIncidencia(inc);
+            comentario.setAutor(SOLICITANTE);
+            comentario.setTexto("Comentario " + i);
+            comentarioDAO.save(comentario);
+
+            HistorialEstadoDTO h = new HistorialEstadoDTO();
+            h.setIncidencia(inc);
+            h.setFechaCambio(new Timestamp(System.currentTimeMillis()));
+            h.setEstadoAnterior("ABIERTA");
+            h.setEstadoNuevo("EN_PROCESO");
+            h.setUsuario(SOLICITANTE);
+            historial.add(h);
+        }
+        historialDAO.saveLote(historial);
+        return inc;
+    }
+
+    @Test
+    public void cargarUnDetalleCuestaLoMismoConMuchasFilas() {
+        // Sin caché: se mide la carga, no el acierto
+        DetallesIncidencia sinCache = new DetallesIncidencia(incidenciaDAO, comentarioDAO, historialDAO, false);
+        sinCache.init();
+        try {
+            IncidenciaDTO pocas = conFilas(1);
+            IncidenciaDTO muchas = conFilas(40);
+
+            long[] conPocas = medir(() -> assertEquals(1, sinCache.obtener(pocas.getId()).getComentarios().size()));
+            long[] conMuchas = medir(() -> {
+                IncidenciaDetalle detalle = sinCache.obtener(muchas.getId());
+                assertEquals(40, detalle.getComentarios().size());
+                assertEquals(40, detalle.getHistorial().size());
+                assertEquals("Usuario1", detalle.getComentarios().get(39).getAutor().getNombre());
+            });
+
+            // Incidencia, comentarios e historial: una consulta y un préstamo de cada
+            assertEquals("sentencias", conPocas[0], conMuchas[0]);
+            assertEquals("préstamos", conPocas[1], conMuchas[1]);
+            assertEquals(3, conMuchas[0]);
+        } finally {
+            sinCache.detener();
+        }
+    }
+
+    /**
+     * Ejecuta la acción y devuelve cuántas sentencias se han preparado y cuántas conexiones
+     * se han pedido al pool durante ella.
+     */
+    private static long[] medir(Runnable accion) {
+        ConnectionPool.Stats antes = DAOFactory.getPoolStats();
+        accion.run();
+        ConnectionPool.Stats despues = DAOFactory.getPoolStats();
+        return new long[] { despues.getStatements() - antes.getStatements(), despues.getBorrows() - antes.getBorrows() };
+    }
+
+    @Test
+    public void cadaLlamanteRecibeSuPropiaCopia() {
+        IncidenciaDetalle a = detalles.obtener(incidencia.getId());
+        IncidenciaDetalle b = detalles.obtener(incidencia.getId());
+
+        assertNotSame(a, b);
+        assertNotSame(a.getIncidencia(), b.getIncidencia());
+        // Las listas son de solo lectura y se comparten entre las copias
+        assertSame(a.getHistorial(), b.getHistorial());
+        assertSame(a.getComentarios(), b.getComentarios());
+
+        // Editar la incidencia recibida (como hace el formulario) no cambia la de nadie más
+        a.getIncidencia().setTitulo("Editada en el formulario");
+        a.getIncidencia().setSolicitante(new UsuarioDTO("00000000T", null, null, null, "USUARIO"));
+        assertEquals("Detalle", b.getIncidencia().getTitulo());
+        IncidenciaDetalle c = detalles.obtener(incidencia.getId());
+        assertEquals("Detalle", c.getIncidencia().getTitulo());
+        assertEquals(SOLICITANTE.getDni(), c.getIncidencia().getSolicitante().getDni());
+
+        try {
+            a.getComentarios().add(new ComentarioDTO());
+            fail("Las listas del detalle deberían ser de solo lectura");
+        } catch (UnsupportedOperationException e) {
+            // Esperado
+        }
+    }
+}
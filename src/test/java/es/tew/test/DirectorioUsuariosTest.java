@@ -0,0 +1,82 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.tew.dao.DAOFactory;
+import es.tew.dto.UsuarioDTO;
+import es.tew.logica.DirectorioUsuarios;
+
+/**
+ * Comprueba que el directorio de usuarios responde igual que la BDD sin consultarla
+ * y que refleja las altas y bajas sin recargar.
+ */
+public class DirectorioUsuariosTest {
+
+    private DirectorioUsuarios directorio;
+
+    @Before
+    public void setUp() {
+        directorio = new DirectorioUsuarios(DAOFactory.getFactory().getUsuarioDAO());
+        directorio.recargar();
+    }
+
+    private static long consultas() {
+        return DAOFactory.getPoolStats().getStatements();
+    }
+
+    @Test
+    public void coincideConLaBddSinConsultarla() {
+        List<UsuarioDTO> tecnicosBdd = DAOFactory.getFactory().getUsuarioDAO().findByRol("TECNICO");
+
+        long antes = consultas();
+        List<UsuarioDTO> tecnicos = directorio.getPorRol("TECNICO");
+        UsuarioDTO tecnico = directorio.buscar("10000001S");
+        assertEquals(0, consultas() - antes);
+
+        assertEquals(tecnicosBdd.size(), tecnicos.size());
+        assertTrue(tecnicos.containsAll(tecnicosBdd));
+        assertEquals("Tecnico1", tecnico.getNombre());
+        assertNull("El directorio no guarda contraseñas", tecnico.getPassword());
+        assertNotSame(tecnico, directorio.buscar("10000001S"));
+    }
+
+    @Test
+    public void reflejaAltasYBajas() {
+        UsuarioDTO nuevo = new UsuarioDTO("99999999R", "Nuevo", "Tecnico", "secreto", "TECNICO");
+        int tecnicos = directorio.getPorRol("TECNICO").size();
+
+        directorio.registrar(nuevo);
+        assertEquals(tecnicos + 1, directorio.getPorRol("TECNICO").size());
+        assertEquals("Nuevo", directorio.buscar("99999999R").getNombre());
+
+        directorio.eliminar("99999999R");
+        assertEquals(tecnicos, directorio.getPorRol("TECNICO").size());
+        assertNull(directorio.buscar("99999999R"));
+    }
+
+    @Test
+    public void buscaPorPrefijoSinTildesYSoloEnLosRoles() {
+        directorio.registrar(new UsuarioDTO("99999998W", "Íñigo", "Zúñiga Ruiz", null, "USUARIO"));
+        directorio.registrar(new UsuarioDTO("99999997T", "Inés", "Zubiri", null, "TECNICO"));
+        directorio.registrar(new UsuarioDTO("99999996E", "Isabel", "Zubizarreta", null, "ADMIN"));
+
+        List<UsuarioDTO> empleados = directorio.buscarPorPrefijo("ZU", 10, "USUARIO", "TECNICO");
+        assertEquals(2, empleados.size());
+        assertEquals("99999997T", empleados.get(0).getDni()); // "ines zubiri" < "inigo zuniga ruiz"
+        assertEquals("99999998W", empleados.get(1).getDni());
+
+        assertEquals(1, directorio.buscarPorPrefijo("inigo zun", 10, "USUARIO").size());
+        assertEquals(1, directorio.buscarPorPrefijo("zuniga r", 10, "USUARIO").size());
+        assertEquals(1, directorio.buscarPorPrefijo("9999999", 10, "TECNICO").size());
+        assertTrue(directorio.buscarPorPrefijo("zubiz", 10, "USUARIO", "TECNICO").isEmpty());
+        assertEquals(1, directorio.buscarPorPrefijo("s", 1, "USUARIO", "TECNICO").size());
+    }
+}
@@ -0,0 +1,148 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import es.tew.dao.DAOFactory;
+import es.tew.dao.EscritorHistorial;
+import es.tew.dao.HistorialEstadoDAO;
+import es.tew.dao.HistorialEstadoDaoAsincrono;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.UnidadDeTrabajo;
+import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+
+/**
+ * Durabilidad de la escritura diferida del historial: todo lo que el escritor acepta
+ * (o rechaza para que lo guarde el llamante) tiene que estar en la BDD tras cerrarlo,
+ * aunque se cierre con la cola llena.
+ */
+public class EscritorHistorialTest {
+
+    private static final int HILOS = 8;
+    private static final int ENTRADAS_POR_HILO = 2000;
+
+    private static HistorialEstadoDAO historialDAO;
+    private static IncidenciaDAO incidenciaDAO;
+
+    @BeforeClass
+    public static void setUp() {
+        historialDAO = DAOFactory.getFactory().getHistorialEstadoDAO();
+        incidenciaDAO = DAOFactory.getFactory().getIncidenciaDAO();
+    }
+
+    /**
+     * Incidencia nueva, para contar solo las entradas de historial de cada prueba.
+     */
+    private static IncidenciaDTO nuevaIncidencia() {
+        IncidenciaDTO inc = new IncidenciaDTO();
+        inc.setTitulo("Historial diferido");
+        inc.setDescripcion("Generada por EscritorHistorialTest");
+        inc.setCategoria("Otro");
+        inc.setEstado("ABIERTA");
+        inc.setSolicitante(new UsuarioDTO("10001001A", null, null, null, "USUARIO"));
+        return incidenciaDAO.save(inc);
+    }
+
+    private static HistorialEstadoDTO entrada(IncidenciaDTO incidencia) {
+        HistorialEstadoDTO h = new HistorialEstadoDTO();
+        h.setIncidencia(incidencia);
+        h.setEstadoAnterior("ABIERTA");
+        h.setEstadoNuevo("EN_PROCESO");
+        return h;
+    }
+
+    @Test
+    public void alCerrarSeEscribeTodoLoPendiente() throws Exception {
+        IncidenciaDTO incidencia = nuevaIncidencia();
+        // Cola pequeña e intervalo largo: al cerrar casi todo sigue en la cola
+        EscritorHistorial escritor = new EscritorHistorial(historialDAO, 500, 50, 60000);
+
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> futuros = new ArrayList<>();
+        for (int i = 0; i < HILOS; i++) {
+            futuros.add(pool.submit(() -> {
+                salida.await();
+                for (int j = 0; j < ENTRADAS_POR_HILO; j++) {
+                    HistorialEstadoDTO h = entrada(incidencia);
+                    if (!escritor.encolar(h)) {
+                        // Presión: el llamante guarda la entrada él mismo
+                        historialDAO.save(h);
+                    }
+                }
+                return null;
+            }));
+        }
+        salida.countDown();
+        for (Future<?> futuro : futuros) {
+            futuro.get();
+        }
+        pool.shutdown();
+
+        assertTrue("No se vació la cola al cerrar", escritor.cerrar(30000));
+
+        EscritorHistorial.Stats stats = escritor.getStats();
+        assertEquals(0, stats.getProfundidad());
+        assertEquals(0, stats.getPerdidas());
+        assertEquals(stats.getEncoladas(), stats.getEscritas());
+        assertEquals(HILOS * ENTRADAS_POR_HILO, stats.getEscritas() + stats.getRechazadas());
+        assertTrue(stats.getLoteMaximo() <= 50);
+        assertEquals(HILOS * ENTRADAS_POR_HILO, historialDAO.findByIncidencia(incidencia).size());
+    }
+
+    @Test
+    public void trasCerrarNoSeAceptanEntradas() {
+        IncidenciaDTO incidencia = nuevaIncidencia();
+        EscritorHistorial escritor = new EscritorHistorial(historialDAO, 100, 10, 60000);
+        assertTrue(escritor.encolar(entrada(incidencia)));
+        assertTrue(escritor.cerrar(30000));
+
+        assertFalse(escritor.encolar(entrada(incidencia)));
+        assertEquals(1, historialDAO.findByIncidencia(incidencia).size());
+    }
+
+    @Test
+    public void esperarPendientesHaceVisibleLoEncolado() {
+        IncidenciaDTO incidencia = nuevaIncidencia();
+        EscritorHistorial escritor = new EscritorHistorial(historialDAO, 100, 10, 60000);
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(escritor.encolar(entrada(incidencia)));
+            }
+            assertTrue(escritor.esperarPendientes(5000));
+            assertEquals(3, historialDAO.findByIncidencia(incidencia).size());
+        } finally {
+            escritor.cerrar(30000);
+        }
+    }
+
+    @Test
+    public void enUnaTransaccionLoQueRechazaElEscritorSeGuardaIgualmente() {
+        IncidenciaDTO incidencia = nuevaIncidencia();
+        EscritorHistorial escritor = new EscritorHistorial(historialDAO, 100, 10, 60000);
+        assertTrue(escritor.cerrar(30000));
+        HistorialEstadoDAO asincrono = new HistorialEstadoDaoAsincrono(historialDAO, escritor);
+
+        // El escritor cerrado rechaza la entrada y el DAO la guarda él mismo tras el commit
+        try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+            asincrono.save(entrada(incidencia));
+            uow.confirmar();
+        }
+
+        assertEquals(1, escritor.getStats().getRechazadas());
+        assertEquals(1, historialDAO.findByIncidencia(incidencia).size());
+    }
+}
@@ -0,0 +1,114 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.tew.dao.DAOFactory;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+import es.tew.logica.EstadisticasIncidencias;
+
+/**
+ * Contadores incrementales de EstadisticasIncidencias: cada alta, cambio y cierre mueve
+ * solo los contadores que le tocan y el resultado coincide con los GROUP BY de la BDD;
+ * reconciliar() detecta y corrige una desviación.
+ */
+public class EstadisticasIncidenciasTest {
+
+    private static final UsuarioDTO SOLICITANTE = new UsuarioDTO("10001001A", null, null, null, "USUARIO");
+    private static final UsuarioDTO TECNICO = new UsuarioDTO("10000001S", null, null, null, "TECNICO");
+
+    private IncidenciaDAO incidenciaDAO;
+    private EstadisticasIncidencias estadisticas;
+
+    @Before
+    public void setUp() {
+        incidenciaDAO = DAOFactory.getFactory().getIncidenciaDAO();
+        estadisticas = new EstadisticasIncidencias(incidenciaDAO);
+        estadisticas.reconstruir();
+    }
+
+    private static IncidenciaDTO copia(IncidenciaDTO inc) {
+        IncidenciaDTO copia = new IncidenciaDTO();
+        copia.setId(inc.getId());
+        copia.setTitulo(inc.getTitulo());
+        copia.setDescripcion(inc.getDescripcion());
+        copia.setEstado(inc.getEstado());
+        copia.setCategoria(inc.getCategoria());
+        copia.setSolicitante(inc.getSolicitante());
+        copia.setTecnico(inc.getTecnico());
+        return copia;
+    }
+
+    /**
+     * Aplica el cambio en la BDD y en los contadores, como ServicioIncidencias.
+     */
+    private IncidenciaDTO cambiar(IncidenciaDTO antes, String estado, UsuarioDTO tecnico) {
+        IncidenciaDTO despues = copia(antes);
+        despues.setEstado(estado);
+        despues.setTecnico(tecnico);
+        incidenciaDAO.update(despues);
+        estadisticas.registrarCambio(antes, despues);
+        return despues;
+    }
+
+    private static long valor(Map<String, Long> contadores, String clave) {
+        return contadores.getOrDefault(clave, 0L);
+    }
+
+    @Test
+    public void altaCambioYCierreMuevenSoloSusContadores() {
+        Map<String, Long> estados = estadisticas.getPorEstado();
+        Map<String, Long> categorias = estadisticas.getPorCategoria();
+        Map<String, Long> tecnicos = estadisticas.getPorTecnico();
+
+        IncidenciaDTO inc = new IncidenciaDTO();
+        inc.setTitulo("Estadísticas");
+        inc.setDescripcion("Generada por EstadisticasIncidenciasTest");
+        inc.setCategoria("Red");
+        inc.setEstado("ABIERTA");
+        inc.setSolicitante(SOLICITANTE);
+        inc = incidenciaDAO.save(inc);
+        estadisticas.registrarAlta(inc);
+
+        assertEquals(valor(estados, "ABIERTA") + 1, valor(estadisticas.getPorEstado(), "ABIERTA"));
+        assertEquals(valor(categorias, "Red") + 1, valor(estadisticas.getPorCategoria(), "Red"));
+        assertEquals(tecnicos, estadisticas.getPorTecnico());
+        assertTrue(estadisticas.reconciliar());
+
+        inc = cambiar(inc, "EN_PROCESO", TECNICO);
+        assertEquals(valor(estados, "ABIERTA"), valor(estadisticas.getPorEstado(), "ABIERTA"));
+        assertEquals(valor(estados, "EN_PROCESO") + 1, valor(estadisticas.getPorEstado(), "EN_PROCESO"));
+        assertEquals(valor(tecnicos, TECNICO.getDni()) + 1, valor(estadisticas.getPorTecnico(), TECNICO.getDni()));
+        assertTrue(estadisticas.reconciliar());
+
+        cambiar(inc, "CERRADA", TECNICO);
+        assertEquals(valor(estados, "EN_PROCESO"), valor(estadisticas.getPorEstado(), "EN_PROCESO"));
+        assertEquals(valor(estados, "CERRADA") + 1, valor(estadisticas.getPorEstado(), "CERRADA"));
+        assertEquals(valor(categorias, "Red") + 1, valor(estadisticas.getPorCategoria(), "Red"));
+        assertTrue(estadisticas.reconciliar());
+    }
+
+    @Test
+    public void reconciliarCorrigeLaDesviacion() {
+        Map<String, Long> estados = estadisticas.getPorEstado();
+
+        // Un alta que no llegó a la BDD (por ejemplo, contada antes de un rollback)
+        IncidenciaDTO fantasma = new IncidenciaDTO();
+        fantasma.setEstado("PENDIENTE_USUARIO");
+        fantasma.setCategoria("Otro");
+        estadisticas.registrarAlta(fantasma);
+        assertEquals(valor(estados, "PENDIENTE_USUARIO") + 1, valor(estadisticas.getPorEstado(), "PENDIENTE_USUARIO"));
+
+        assertFalse(estadisticas.reconciliar());
+        assertEquals(estados, estadisticas.getPorEstado());
+        assertTrue(estadisticas.reconciliar());
+    }
+}
@@ -0,0 +1,89 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import es.tew.dao.DAOFactory;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dto.ComentarioDTO;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+import es.tew.logica.ExportadorIncidencias;
+import es.tew.logica.ExportadorIncidencias.Formato;
+
+/**
+ * Comprueba que la exportación saca todas las incidencias con sus comentarios e
+ * historial, que escapa bien los textos y que dos rangos seguidos dan lo mismo que
+ * la exportación entera (la reanudación por ID).
+ */
+public class ExportadorIncidenciasTest {
+
+    private static IncidenciaDAO incidenciaDAO;
+    private static ExportadorIncidencias exportador;
+    private static IncidenciaDTO conComentario;
+
+    @BeforeClass
+    public static void setUp() {
+        incidenciaDAO = DAOFactory.getFactory().getIncidenciaDAO();
+        exportador = new ExportadorIncidencias(incidenciaDAO);
+
+        // saveLote guarda también la entrada inicial del historial
+        UsuarioDTO solicitante = new UsuarioDTO("10001001A", null, null, null, "USUARIO");
+        conComentario = new IncidenciaDTO();
+        conComentario.setTitulo("Incidencia para exportar");
+        conComentario.setDescripcion("Generada por ExportadorIncidenciasTest");
+        conComentario.setCategoria("Otro");
+        conComentario.setEstado("ABIERTA");
+        conComentario.setSolicitante(solicitante);
+        incidenciaDAO.saveLote(List.of(conComentario));
+
+        ComentarioDTO c = new ComentarioDTO();
+        c.setTexto("Dice \"no va\", y\nsigue sin ir");
+        c.setAutor(solicitante);
+        c.setIncidencia(conComentario);
+        DAOFactory.getFactory().getComentarioDAO().save(c);
+    }
+
+    private static String exportar(Formato formato, long desde, long hasta) throws IOException {
+        StringWriter salida = new StringWriter();
+        exportador.exportar(formato, desde, hasta, salida);
+        return salida.toString();
+    }
+
+    @Test
+    public void jsonUnaLineaPorIncidencia() throws IOException {
+        List<IncidenciaDTO> todas = incidenciaDAO.findAll();
+        String[] lineas = exportar(Formato.JSON, 0, Long.MAX_VALUE).split("\n");
+
+        assertEquals(todas.size(), lineas.length);
+        String linea = null;
+        for (String l : lineas) {
+            if (l.startsWith("{\"id\":" + conComentario.getId() + ",")) {
+                linea = l;
+            }
+        }
+        assertTrue(linea.contains("\"texto\":\"Dice \\\"no va\\\", y\\nsigue sin ir\""));
+        assertTrue(linea.contains("\"historial\":[{"));
+        assertTrue(linea.endsWith("]}"));
+    }
+
+    @Test
+    public void csvPorRangosIgualQueEntero() throws IOException {
+        String entero = exportar(Formato.CSV, 0, Long.MAX_VALUE);
+        long corte = conComentario.getId();
+        String primero = exportar(Formato.CSV, 0, corte);
+        String segundo = exportar(Formato.CSV, corte + 1, Long.MAX_VALUE);
+
+        String cabecera = entero.substring(0, entero.indexOf("\r\n") + 2);
+        assertEquals(entero, primero + segundo.substring(cabecera.length()));
+        assertTrue(primero.contains(",\"Dice \"\"no va\"\", y\nsigue sin ir\"\r\n"));
+        assertTrue(primero.contains("\r\nHISTORIAL," + corte + ","));
+    }
+}
@@ -0,0 +1,200 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import es.tew.dao.DAOFactory;
+import es.tew.dao.FiltroIncidencias;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.PaginaIncidencias;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+
+/**
+ * Criterios de FiltroIncidencias en findPagina y count: cada uno por separado y todos a la
+ * vez se comparan con el mismo filtro aplicado en memoria sobre findAll. También el día
+ * completo de fechaHasta y los comodines de LIKE en el texto libre.
+ */
+public class FiltroIncidenciasTest {
+
+    private static final String[] SOLICITANTES = { "10001001A", "10001002G" };
+    private static final String[] CATEGORIAS = { "Red", "Software", "Otro", "Hardware" };
+
+    private static IncidenciaDAO incidenciaDAO;
+    // Distingue las incidencias de esta clase
+    private static String marca;
+
+    @BeforeClass
+    public static void setUp() {
+        incidenciaDAO = DAOFactory.getFactory().getIncidenciaDAO();
+        marca = "filtro" + System.nanoTime();
+
+        List<IncidenciaDTO> lote = new ArrayList<>();
+        // Combinaciones de solicitante, técnico, estado y categoría en días distintos
+        for (int i = 0; i < 24; i++) {
+            IncidenciaDTO inc = incidencia(marca + " variada " + i,
+                    Timestamp.valueOf("2018-05-" + (10 + i % 5) + " 12:00:00"));
+            inc.setSolicitante(new UsuarioDTO(SOLICITANTES[i % 2], null, null, null, "USUARIO"));
+            inc.setTecnico(i % 3 == 0 ? null : new UsuarioDTO("10000001S", null, null, null, "TECNICO"));
+            inc.setEstado(IncidenciaDTO.ESTADOS.get(i % IncidenciaDTO.ESTADOS.size()));
+            inc.setCategoria(CATEGORIAS[i % CATEGORIAS.length]);
+            lote.add(inc);
+        }
+        // Justo antes, al principio, al final y justo después del 15 de junio
+        lote.add(incidencia(marca + " dia antes", Timestamp.valueOf("2018-06-14 23:59:59.999")));
+        lote.add(incidencia(marca + " dia inicio", Timestamp.valueOf("2018-06-15 00:00:00")));
+        lote.add(incidencia(marca + " dia fin", Timestamp.valueOf("2018-06-15 23:59:59.999")));
+        lote.add(incidencia(marca + " dia despues", Timestamp.valueOf("2018-06-16 00:00:00")));
+        // Cada comodín junto a una fila que solo coincidiría si no se escapara
+        for (String titulo : new String[] { "%a", "Xa", "_b", "Yb", "\\c", "c" }) {
+            lote.add(incidencia(marca + titulo, Timestamp.valueOf("2018-07-01 12:00:00")));
+        }
+        assertEquals(lote.size(), incidenciaDAO.saveLote(lote));
+    }
+
+    private static IncidenciaDTO incidencia(String titulo, Timestamp fecha) {
+        IncidenciaDTO inc = new IncidenciaDTO();
+        inc.setTitulo(titulo);
+        inc.setDescripcion("Generada por FiltroIncidenciasTest");
+        inc.setCategoria("Otro");
+        inc.setEstado("CERRADA");
+        inc.setSolicitante(new UsuarioDTO(SOLICITANTES[0], null, null, null, "USUARIO"));
+        inc.setFechaCreacion(fecha);
+        return inc;
+    }
+
+    /**
+     * Comprueba que findPagina devuelve exactamente las incidencias que cumplen la condición
+     * (en una sola página con sitio de sobra) y que count coincide con ellas.
+     * @return Títulos de las incidencias encontradas.
+     */
+    private static Set<String> comprobar(FiltroIncidencias filtro, Predicate<IncidenciaDTO> condicion) {
+        Set<Long> esperadas = incidenciaDAO.findAll().stream()
+                .filter(condicion)
+                .map(IncidenciaDTO::getId)
+                .collect(Collectors.toCollection(TreeSet::new));
+        assertFalse("El filtro no tiene ninguna incidencia con la que probarse", esperadas.isEmpty());
+
+        List<IncidenciaDTO> pagina = incidenciaDAO.findPagina(filtro,
+                new PaginaIncidencias(0, esperadas.size() + 10, null, false));
+
+        assertEquals(esperadas, pagina.stream().map(IncidenciaDTO::getId)
+                .collect(Collectors.toCollection(TreeSet::new)));
+        assertEquals(pagina.size(), incidenciaDAO.count(filtro));
+        return pagina.stream().map(IncidenciaDTO::getTitulo).collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private static String dni(UsuarioDTO usuario) {
+        return usuario != null ? usuario.getDni() : null;
+    }
+
+    private static FiltroIncidencias porTexto(String texto) {
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        filtro.setTexto(texto);
+        return filtro;
+    }
+
+    @Test
+    public void sinCriteriosDevuelveTodas() {
+        comprobar(new FiltroIncidencias(), inc -> true);
+    }
+
+    @Test
+    public void porSolicitante() {
+        comprobar(FiltroIncidencias.porSolicitante("10001002G"), inc -> "10001002G".equals(dni(inc.getSolicitante())));
+    }
+
+    @Test
+    public void porTecnico() {
+        comprobar(FiltroIncidencias.porTecnico("10000001S"), inc -> "10000001S".equals(dni(inc.getTecnico())));
+    }
+
+    @Test
+    public void porEstado() {
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        filtro.setEstado("EN_PROCESO");
+        comprobar(filtro, inc -> "EN_PROCESO".equals(inc.getEstado()));
+    }
+
+    @Test
+    public void porCategoria() {
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        filtro.setCategoria("Software");
+        comprobar(filtro, inc -> "Software".equals(inc.getCategoria()));
+    }
+
+    @Test
+    public void porFechaDesde() {
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        // A media tarde: cuenta desde el comienzo del día
+        filtro.setFechaDesde(Timestamp.valueOf("2018-06-15 17:45:00"));
+        comprobar(filtro, inc -> !inc.getFechaCreacion().before(Timestamp.valueOf("2018-06-15 00:00:00")));
+    }
+
+    @Test
+    public void porFechaHasta() {
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        filtro.setFechaHasta(Timestamp.valueOf("2018-06-15 08:00:00"));
+        comprobar(filtro, inc -> inc.getFechaCreacion().before(Timestamp.valueOf("2018-06-16 00:00:00")));
+    }
+
+    @Test
+    public void porTexto() {
+        // Sin distinguir mayúsculas, en el título o en la descripción
+        comprobar(porTexto("  GENERADA POR FILTROINCIDENCIASTEST "),
+                inc -> inc.getDescripcion().toLowerCase().contains("generada por filtroincidenciastest"));
+        comprobar(porTexto(marca.toUpperCase() + " VARIADA 1"),
+                inc -> inc.getTitulo().startsWith(marca + " variada 1"));
+    }
+
+    @Test
+    public void todosLosCriteriosALaVez() {
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        filtro.setDniSolicitante("10001001A");
+        filtro.setDniTecnico("10000001S");
+        filtro.setEstado("EN_PROCESO");
+        filtro.setCategoria("Otro");
+        filtro.setFechaDesde(Timestamp.valueOf("2018-05-11 00:00:00"));
+        filtro.setFechaHasta(Timestamp.valueOf("2018-05-13 00:00:00"));
+        filtro.setTexto(marca);
+
+        Set<String> titulos = comprobar(filtro, inc -> "10001001A".equals(dni(inc.getSolicitante()))
+                && "10000001S".equals(dni(inc.getTecnico()))
+                && "EN_PROCESO".equals(inc.getEstado())
+                && "Otro".equals(inc.getCategoria())
+                && !inc.getFechaCreacion().before(Timestamp.valueOf("2018-05-11 00:00:00"))
+                && inc.getFechaCreacion().before(Timestamp.valueOf("2018-05-14 00:00:00"))
+                && inc.getTitulo().contains(marca));
+        // i = 2 (12 de mayo); i = 14 cumple todo salvo la fecha
+        assertEquals(Set.of(marca + " variada 2"), titulos);
+    }
+
+    @Test
+    public void fechaHastaIncluyeElDiaCompleto() {
+        FiltroIncidencias filtro = porTexto(marca + " dia");
+        filtro.setFechaDesde(Timestamp.valueOf("2018-06-15 12:00:00"));
+        filtro.setFechaHasta(Timestamp.valueOf("2018-06-15 12:00:00"));
+
+        Set<String> titulos = comprobar(filtro, inc -> inc.getTitulo().startsWith(marca + " dia")
+                && inc.getFechaCreacion().toString().startsWith("2018-06-15"));
+        assertEquals(Set.of(marca + " dia inicio", marca + " dia fin"), titulos);
+    }
+
+    @Test
+    public void losComodinesDelTextoSeBuscanLiteralmente() {
+        assertEquals(Set.of(marca + "%a"), comprobar(porTexto(marca + "%a"), inc -> inc.getTitulo().equals(marca + "%a")));
+        assertEquals(Set.of(marca + "_b"), comprobar(porTexto(marca + "_b"), inc -> inc.getTitulo().equals(marca + "_b")));
+        assertEquals(Set.of(marca + "\\c"), comprobar(porTexto(marca + "\\c"), inc -> inc.getTitulo().equals(marca + "\\c")));
+    }
+}
@@ -0,0 +1,105 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import es.tew.logica.HistogramaTiempos;
+
+/**
+ * Precisión de los percentiles de HistogramaTiempos frente a los exactos de una muestra
+ * ordenada, y combinación de histogramas.
+ */
+public class HistogramaTiemposTest {
+
+    private static final int MUESTRAS = 100_000;
+    private static final double[] PERCENTILES = { 1, 10, 25, 50, 75, 90, 99, 99.9 };
+    // Lo que promete la clase (la cota teórica es 1/16)
+    private static final double ERROR_MAXIMO = 0.07;
+
+    /**
+     * Duraciones de 1 segundo a 60 días, repartidas por igual en escala logarítmica
+     * (como los tiempos de resolución: muchas rápidas y una cola larga).
+     */
+    private static long[] muestra(long semilla) {
+        Random random = new Random(semilla);
+        double maximo = Math.log(60 * 24 * 3600.0);
+        long[] valores = new long[MUESTRAS];
+        for (int i = 0; i < MUESTRAS; i++) {
+            valores[i] = Math.round(Math.exp(random.nextDouble() * maximo));
+        }
+        return valores;
+    }
+
+    /**
+     * Percentil exacto por rango (el mismo criterio que el histograma).
+     */
+    private static long exacto(long[] ordenados, double percentil) {
+        int rango = (int) Math.max(1, Math.ceil(percentil / 100.0 * ordenados.length));
+        return ordenados[rango - 1];
+    }
+
+    @Test
+    public void elErrorRelativoDeLosPercentilesEsMenorDel7PorCiento() {
+        long[] valores = muestra(42);
+        HistogramaTiempos histograma = new HistogramaTiempos();
+        for (long v : valores) {
+            histograma.registrar(v);
+        }
+        long[] ordenados = valores.clone();
+        Arrays.sort(ordenados);
+
+        for (double p : PERCENTILES) {
+            long real = exacto(ordenados, p);
+            long aproximado = histograma.percentil(p);
+            double error = Math.abs(aproximado - real) / (double) real;
+            assertTrue("p" + p + ": " + aproximado + " frente a " + real, error < ERROR_MAXIMO);
+        }
+        assertEquals(Arrays.stream(valores).average().getAsDouble(), histograma.getMedia(), 1e-6);
+    }
+
+    @Test
+    public void combinarEsComoRegistrarlosTodosEnUno() {
+        long[] a = muestra(1);
+        long[] b = muestra(2);
+        HistogramaTiempos primero = new HistogramaTiempos();
+        HistogramaTiempos segundo = new HistogramaTiempos();
+        HistogramaTiempos todos = new HistogramaTiempos();
+        for (long v : a) {
+            primero.registrar(v);
+            todos.registrar(v);
+        }
+        for (long v : b) {
+            segundo.registrar(v * 10);
+            todos.registrar(v * 10);
+        }
+
+        primero.combinar(segundo);
+
+        assertEquals(todos.getTotal(), primero.getTotal());
+        assertEquals(todos.getMedia(), primero.getMedia(), 1e-9);
+        for (double p : PERCENTILES) {
+            assertEquals("p" + p, todos.percentil(p), primero.percentil(p));
+        }
+        // El otro no cambia
+        assertEquals(MUESTRAS, segundo.getTotal());
+    }
+
+    @Test
+    public void losValoresExtremosNoDesbordan() {
+        HistogramaTiempos histograma = new HistogramaTiempos();
+        assertEquals(0, histograma.percentil(50));
+
+        histograma.registrar(-5);
+        histograma.registrar(Long.MAX_VALUE);
+
+        assertEquals(0, histograma.percentil(50));
+        long maximo = histograma.percentil(100);
+        assertTrue(String.valueOf(maximo), maximo > 0);
+        assertTrue(String.valueOf(maximo), Math.abs(maximo - (double) Long.MAX_VALUE) / Long.MAX_VALUE < ERROR_MAXIMO);
+    }
+}
@@ -0,0 +1,154 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.tew.dao.DAOFactory;
+import es.tew.dao.FiltroIncidencias;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.UsuarioDAO;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+import es.tew.logica.CargaTecnicos;
+import es.tew.logica.EstadisticasIncidencias;
+import es.tew.logica.ImportadorIncidencias;
+import es.tew.logica.ResultadoImportacion;
+
+/**
+ * Importación de incidencias desde CSV: campos entre comillas, números de línea de las
+ * filas rechazadas y lotes que fallan en la BDD.
+ */
+public class ImportadorIncidenciasTest {
+
+    private static final String SOLICITANTE = "10001001A";
+    private static final String CABECERA = "TITULO,DESCRIPCION,CATEGORIA,DNI_SOLICITANTE,ESTADO\n";
+
+    private IncidenciaDAO incidenciaDAO;
+    private UsuarioDAO usuarioDAO;
+    private CargaTecnicos cargaTecnicos;
+    private ImportadorIncidencias importador;
+    // Distingue las incidencias de cada prueba
+    private String marca;
+
+    @Before
+    public void setUp() {
+        DAOFactory factoria = DAOFactory.getFactory();
+        incidenciaDAO = factoria.getIncidenciaDAO();
+        usuarioDAO = factoria.getUsuarioDAO();
+        cargaTecnicos = new CargaTecnicos(usuarioDAO, incidenciaDAO);
+        cargaTecnicos.reconstruir();
+        importador = crear(usuarioDAO);
+        marca = "Importada " + System.nanoTime();
+    }
+
+    private ImportadorIncidencias crear(UsuarioDAO usuarios) {
+        EstadisticasIncidencias estadisticas = new EstadisticasIncidencias(incidenciaDAO);
+        estadisticas.reconstruir();
+        return new ImportadorIncidencias(incidenciaDAO, usuarios, estadisticas, cargaTecnicos);
+    }
+
+    private List<IncidenciaDTO> importadas() {
+        try (Stream<IncidenciaDTO> stream = incidenciaDAO.stream(FiltroIncidencias.porSolicitante(SOLICITANTE))) {
+            return stream.filter(inc -> inc.getTitulo().startsWith(marca)).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void camposEntreComillasConSeparadoresComillasYSaltosDeLinea() throws Exception {
+        String csv = CABECERA
+                + "\"" + marca + ", con coma\",\"Dice \"\"no va\"\"\nsegunda línea\",Otro," + SOLICITANTE + ",CERRADA\n";
+
+        ResultadoImportacion resultado = importador.importar(new StringReader(csv), 10);
+
+        assertEquals(resultado.getErrores().toString(), 1, resultado.getImportadas());
+        List<IncidenciaDTO> importadas = importadas();
+        assertEquals(1, importadas.size());
+        assertEquals(marca + ", con coma", importadas.get(0).getTitulo());
+        assertEquals("Dice \"no va\"\nsegunda línea", importadas.get(0).getDescripcion());
+    }
+
+    @Test
+    public void lasFilasRechazadasLlevanSuNumeroDeLinea() throws Exception {
+        String csv = CABECERA                                                            // 1
+                + marca + " 1,Válida,Otro," + SOLICITANTE + ",CERRADA\n"                 // 2
+                + marca + " 2,Mala,Cocina," + SOLICITANTE + ",CERRADA\n"                 // 3
+                + marca + " 3,\"Dos\nlíneas\",Otro," + SOLICITANTE + ",CERRADA\n"        // 4-5
+                + marca + " 4,Sin solicitante,Otro,,CERRADA\n"                           // 6
+                + "\n"                                                                   // 7
+                + marca + " 5,Mal estado,Otro," + SOLICITANTE + ",PERDIDA\n";            // 8
+
+        ResultadoImportacion resultado = importador.importar(new StringReader(csv), 10);
+
+        assertEquals(5, resultado.getLeidas());
+        assertEquals(2, resultado.getImportadas());
+        assertEquals(3, resultado.getRechazadas());
+        assertEquals(List.of(
+                "Línea 3: categoría desconocida 'Cocina'",
+                "Línea 6: falta DNI_SOLICITANTE",
+                "Línea 8: estado desconocido 'PERDIDA'"), resultado.getErrores());
+        assertEquals(2, importadas().size());
+    }
+
+    @Test
+    public void unaCabeceraLargaYConPuntoYComaSeLeeEntera() throws Exception {
+        // Más larga que cualquier buffer de lectura, con BOM y una columna que no se usa
+        String csv = "\uFEFFTITULO;DESCRIPCION;CATEGORIA;DNI_SOLICITANTE;ESTADO;" + "X".repeat(100_000) + "\n"
+                + marca + ";Con punto y coma;Otro;" + SOLICITANTE + ";CERRADA;ignorada\n";
+
+        ResultadoImportacion resultado = importador.importar(new StringReader(csv), 10);
+
+        assertEquals(resultado.getErrores().toString(), 1, resultado.getImportadas());
+        assertEquals(1, importadas().size());
+    }
+
+    @Test
+    public void unLoteQueFallaSeDeshaceYLiberaLosTecnicosReservados() throws Exception {
+        // Un técnico que el importador da por bueno pero no está en la BDD: la clave ajena
+        // falla al guardar el lote, después de reservar técnico para las filas que no lo traen
+        UsuarioDTO fantasma = new UsuarioDTO("99999999Z", "Fantasma", "Fantasma", null, "TECNICO");
+        UsuarioDAO conFantasma = (UsuarioDAO) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { UsuarioDAO.class }, (proxy, method, args) -> {
+                    try {
+                        Object resultado = method.invoke(usuarioDAO, args);
+                        if (method.getName().equals("findAll")) {
+                            List<UsuarioDTO> usuarios = new ArrayList<>();
+                            for (Object usuario : (List<?>) resultado) {
+                                usuarios.add((UsuarioDTO) usuario);
+                            }
+                            usuarios.add(fantasma);
+                            return usuarios;
+                        }
+                        return resultado;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        ImportadorIncidencias importador = crear(conFantasma);
+        Map<String, Integer> cargasAntes = cargaTecnicos.getCargas();
+
+        String csv = "TITULO,DESCRIPCION,CATEGORIA,DNI_SOLICITANTE,DNI_TECNICO\n"
+                + marca + " 1,Sin técnico,Otro," + SOLICITANTE + ",\n"
+                + marca + " 2,Sin técnico,Otro," + SOLICITANTE + ",\n"
+                + marca + " 3,Técnico fantasma,Otro," + SOLICITANTE + ",99999999Z\n";
+
+        ResultadoImportacion resultado = importador.importar(new StringReader(csv), 10);
+
+        assertEquals(0, resultado.getImportadas());
+        assertEquals(3, resultado.getRechazadas());
+        assertTrue(resultado.getErrores().toString(), resultado.getErrores().get(0).startsWith("Línea 2: "));
+        assertEquals(0, importadas().size());
+        assertEquals(cargasAntes, cargaTecnicos.getCargas());
+    }
+}
@@ -0,0 +1,254 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import es.tew.dao.DAOFactory;
+import es.tew.dao.FiltroIncidencias;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.PaginaIncidencias;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.IncidenciaResumen;
+import es.tew.dto.UsuarioDTO;
+
+/**
+ * Comprueba que los buscadores de IncidenciaDAO resuelven solicitante y técnico
+ * en la misma consulta (sin el patrón N+1 de una búsqueda de usuario por fila).
+ * Se ejecuta contra la BDD HSQLDB en memoria con los datos de la migración V1.
+ */
+public class IncidenciaDaoJdbcTest {
+
+    private static final int INCIDENCIAS_EXTRA = 50;
+
+    private static IncidenciaDAO incidenciaDAO;
+
+    @BeforeClass
+    public static void setUp() {
+        incidenciaDAO = DAOFactory.getFactory().getIncidenciaDAO();
+
+        UsuarioDTO solicitante = new UsuarioDTO("10001001A", null, null, null, "USUARIO");
+        UsuarioDTO tecnico = new UsuarioDTO("10000001S", null, null, null, "TECNICO");
+        for (int i = 0; i < INCIDENCIAS_EXTRA; i++) {
+            IncidenciaDTO inc = new IncidenciaDTO();
+            inc.setTitulo("Incidencia de prueba " + i);
+            inc.setDescripcion("Generada por IncidenciaDaoJdbcTest");
+            inc.setCategoria("Otro");
+            inc.setEstado("ABIERTA");
+            inc.setSolicitante(solicitante);
+            inc.setTecnico(i % 2 == 0 ? tecnico : null);
+            incidenciaDAO.save(inc);
+        }
+    }
+
+    /**
+     * Ejecuta la acción y devuelve cuántas sentencias se han preparado durante ella.
+     */
+    private static long contarConsultas(Runnable accion) {
+        long antes = DAOFactory.getPoolStats().getStatements();
+        accion.run();
+        return DAOFactory.getPoolStats().getStatements() - antes;
+    }
+
+    /**
+     * Busca una incidencia del script por su título, sin depender del valor inicial de la identidad.
+     */
+    private static Long idPorTitulo(String titulo) {
+        return incidenciaDAO.findAll().stream()
+                .filter(inc -> titulo.equals(inc.getTitulo()))
+                .map(IncidenciaDTO::getId)
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No existe la incidencia '" + titulo + "'"));
+    }
+
+    @Test
+    public void findAllEjecutaUnaSolaConsulta() {
+        List<?>[] resultado = new List<?>[1];
+        long consultas = contarConsultas(() -> resultado[0] = incidenciaDAO.findAll());
+
+        assertTrue(resultado[0].size() >= INCIDENCIAS_EXTRA);
+        assertEquals("findAll no debe consultar los usuarios fila a fila", 1, consultas);
+    }
+
+    @Test
+    public void findByTecnicoDniEjecutaUnaSolaConsulta() {
+        assertEquals(1, contarConsultas(() -> incidenciaDAO.findByTecnicoDni("10000001S")));
+        assertEquals(1, contarConsultas(() -> incidenciaDAO.findBySolicitanteDni("10001001A")));
+        assertEquals(1, contarConsultas(() -> incidenciaDAO.findByEstado("ABIERTA")));
+    }
+
+    @Test
+    public void findByIdConstruyeSolicitanteYTecnicoDesdeElJoin() {
+        // Incidencia del script con solicitante 10001002G y técnico 10000001S
+        Long id = idPorTitulo("El ordenador no arranca");
+        IncidenciaDTO[] resultado = new IncidenciaDTO[1];
+        long consultas = contarConsultas(() -> resultado[0] = incidenciaDAO.findById(id));
+
+        assertEquals(1, consultas);
+        IncidenciaDTO inc = resultado[0];
+        assertNotNull(inc);
+        assertEquals("10001002G", inc.getSolicitante().getDni());
+        assertEquals("Usuario2", inc.getSolicitante().getNombre());
+        assertEquals("Martinez", inc.getSolicitante().getApellidos());
+        assertEquals("10000001S", inc.getTecnico().getDni());
+        assertEquals("Tecnico1", inc.getTecnico().getNombre());
+        assertEquals("TECNICO", inc.getTecnico().getRol());
+    }
+
+    @Test
+    public void incidenciaSinTecnicoNoTieneTecnico() {
+        // Incidencia del script sin técnico asignado
+        IncidenciaDTO inc = incidenciaDAO.findById(idPorTitulo("Fallo de Red en Planta 3"));
+        assertNotNull(inc.getSolicitante());
+        assertNull(inc.getTecnico());
+    }
+
+    @Test
+    public void findMasAntiguaAbiertaCoincideConRecorrerTodas() {
+        IncidenciaDTO esperada = incidenciaDAO.findAll().stream()
+                .filter(inc -> !"CERRADA".equals(inc.getEstado()))
+                .min((a, b) -> a.getFechaCreacion().compareTo(b.getFechaCreacion()))
+                .orElse(null);
+
+        IncidenciaDTO[] resultado = new IncidenciaDTO[1];
+        assertEquals(1, contarConsultas(() -> resultado[0] = incidenciaDAO.findMasAntiguaAbierta()));
+        // Puede haber varias con la misma fecha: basta con que sea una de ellas
+        assertEquals(esperada.getFechaCreacion(), resultado[0].getFechaCreacion());
+        assertNotEquals("CERRADA", resultado[0].getEstado());
+        assertNotNull(resultado[0].getSolicitante().getNombre());
+    }
+
+    @Test
+    public void findResumenPaginaCoincideConFindPagina() {
+        // Ordenada por técnico: la mitad de las extra no tienen, y el orden usa el LEFT JOIN
+        FiltroIncidencias filtro = FiltroIncidencias.porSolicitante("10001001A");
+        List<IncidenciaDTO> completas = incidenciaDAO.findPagina(filtro, new PaginaIncidencias(0, 20, "tecnico.apellidos", true));
+        List<?>[] resultado = new List<?>[1];
+        long consultas = contarConsultas(() -> resultado[0] = incidenciaDAO.findResumenPagina(filtro,
+                new PaginaIncidencias(0, 20, "apellidosTecnico", true)));
+
+        assertEquals(1, consultas);
+        assertEquals(completas.size(), resultado[0].size());
+        for (int i = 0; i < completas.size(); i++) {
+            IncidenciaDTO completa = completas.get(i);
+            IncidenciaResumen resumen = (IncidenciaResumen) resultado[0].get(i);
+            assertEquals(completa.getId(), resumen.getId());
+            assertEquals(completa.getTitulo(), resumen.getTitulo());
+            assertEquals(completa.getFechaCreacion(), resumen.getFechaCreacion());
+            assertEquals(completa.getSolicitante().getNombre(), resumen.getNombreSolicitante());
+            assertEquals(completa.getSolicitante().getApellidos(), resumen.getApellidosSolicitante());
+            assertEquals(completa.getTecnico() != null ? completa.getTecnico().getNombre() : null, resumen.getNombreTecnico());
+        }
+    }
+
+    /**
+     * Recorre todas las páginas de findPagina y devuelve los IDs en orden. Con cursor, cada
+     * página continúa desde la última fila de la anterior; sin él, salta filas con OFFSET.
+     */
+    private static List<Long> recorrer(FiltroIncidencias filtro, String campo, boolean ascendente,
+            boolean conCursor) {
+        List<Long> ids = new ArrayList<>();
+        IncidenciaDTO ultima = null;
+        List<IncidenciaDTO> pagina;
+        do {
+            PaginaIncidencias peticion = new PaginaIncidencias(ids.size(), 7, campo, ascendente);
+            if (conCursor && ultima != null) {
+                peticion.setCursor(ultima.getFechaCreacion(), ultima.getId());
+                assertTrue(peticion.tieneCursor());
+            }
+            pagina = incidenciaDAO.findPagina(filtro, peticion);
+            for (IncidenciaDTO inc : pagina) {
+                ids.add(inc.getId());
+            }
+            if (!pagina.isEmpty()) {
+                ultima = pagina.get(pagina.size() - 1);
+            }
+        } while (pagina.size() == 7);
+        return ids;
+    }
+
+    @Test
+    public void elCursorRecorreLasMismasFilasQueOffsetConFechasRepetidas() {
+        // Tres fechas con ocho incidencias cada una: los saltos de página caen dentro de
+        // los grupos, donde solo el ID decide qué fila va después del cursor
+        String marca = "Keyset " + System.nanoTime();
+        List<IncidenciaDTO> lote = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            IncidenciaDTO inc = new IncidenciaDTO();
+            inc.setTitulo(marca + " " + i);
+            inc.setDescripcion("Generada por IncidenciaDaoJdbcTest");
+            inc.setCategoria("Otro");
+            inc.setEstado("CERRADA");
+            inc.setSolicitante(new UsuarioDTO("10001001A", null, null, null, "USUARIO"));
+            inc.setFechaCreacion(Timestamp.valueOf("2020-01-0" + (1 + i % 3) + " 10:00:00"));
+            lote.add(inc);
+        }
+        assertEquals(24, incidenciaDAO.saveLote(lote));
+
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        filtro.setTexto(marca);
+        // null: orden por defecto (fecha descendente)
+        for (String campo : new String[] { null, PaginaIncidencias.ORDEN_FECHA_CREACION }) {
+            for (boolean ascendente : new boolean[] { true, false }) {
+                List<Long> porOffset = recorrer(filtro, campo, ascendente, false);
+                List<Long> porCursor = recorrer(filtro, campo, ascendente, true);
+
+                assertEquals(24, porOffset.size());
+                assertEquals(24, new HashSet<>(porOffset).size());
+                assertEquals(campo + " " + ascendente, porOffset, porCursor);
+            }
+        }
+    }
+
+    @Test
+    public void elCursorSinFiltroAbreElWhere() {
+        // Sin criterios, la condición del cursor va tras WHERE en lugar de tras AND
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        for (boolean ascendente : new boolean[] { true, false }) {
+            List<IncidenciaDTO> dos = incidenciaDAO.findPagina(filtro,
+                    new PaginaIncidencias(0, 14, PaginaIncidencias.ORDEN_FECHA_CREACION, ascendente));
+            IncidenciaDTO ultima = dos.get(6);
+            PaginaIncidencias siguiente = new PaginaIncidencias(7, 7, PaginaIncidencias.ORDEN_FECHA_CREACION, ascendente);
+            siguiente.setCursor(ultima.getFechaCreacion(), ultima.getId());
+
+            List<IncidenciaDTO> pagina = incidenciaDAO.findPagina(filtro, siguiente);
+
+            List<Long> esperados = new ArrayList<>();
+            for (IncidenciaDTO inc : dos.subList(7, 14)) {
+                esperados.add(inc.getId());
+            }
+            List<Long> obtenidos = new ArrayList<>();
+            for (IncidenciaDTO inc : pagina) {
+                obtenidos.add(inc.getId());
+            }
+            assertEquals(esperados, obtenidos);
+        }
+    }
+
+    @Test
+    public void losEstadosDelDtoSonLosDelCheckDeLaTabla() {
+        UsuarioDTO solicitante = new UsuarioDTO("10001001A", null, null, null, "USUARIO");
+        for (String estado : IncidenciaDTO.ESTADOS) {
+            IncidenciaDTO inc = new IncidenciaDTO();
+            inc.setTitulo("Estado " + estado);
+            inc.setDescripcion("Generada por IncidenciaDaoJdbcTest");
+            inc.setCategoria("Otro");
+            inc.setEstado(estado);
+            inc.setSolicitante(solicitante);
+            // Si el CHECK no lo admite, save no asigna ID
+            assertNotNull("El CHECK no admite " + estado, incidenciaDAO.save(inc).getId());
+            assertEquals(estado, incidenciaDAO.findById(inc.getId()).getEstado());
+        }
+        assertTrue(IncidenciaDTO.ESTADOS.contains(IncidenciaDTO.ESTADO_CERRADA));
+    }
+}
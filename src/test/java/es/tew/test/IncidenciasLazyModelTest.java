@@ -0,0 +1,159 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.primefaces.model.SortMeta;
+import org.primefaces.model.SortOrder;
+
+import es.tew.dao.DAOFactory;
+import es.tew.dao.FiltroIncidencias;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.PaginaIncidencias;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.IncidenciaResumen;
+import es.tew.dto.UsuarioDTO;
+import es.tew.logica.ServicioIncidencias;
+import es.tew.web.IncidenciasLazyModel;
+
+/**
+ * Paso del cursor entre páginas en IncidenciasLazyModel: al avanzar a la página siguiente
+ * con el orden por fecha se continúa desde la última fila mostrada, y al cambiar el orden
+ * o saltar a otra página se vuelve a OFFSET.
+ */
+public class IncidenciasLazyModelTest {
+
+    private static final int TAMANO = 5;
+
+    // Páginas que el modelo ha pedido al DAO, en orden
+    private final List<PaginaIncidencias> pedidas = new ArrayList<>();
+    private IncidenciaDAO incidenciaDAO;
+    private IncidenciasLazyModel modelo;
+    private FiltroIncidencias filtro;
+
+    @Before
+    public void setUp() throws Exception {
+        incidenciaDAO = DAOFactory.getFactory().getIncidenciaDAO();
+        IncidenciaDAO espia = (IncidenciaDAO) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { IncidenciaDAO.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("findResumenPagina")) {
+                        pedidas.add((PaginaIncidencias) args[1]);
+                    }
+                    try {
+                        return method.invoke(incidenciaDAO, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        ServicioIncidencias servicio = new ServicioIncidencias();
+        Field f = ServicioIncidencias.class.getDeclaredField("incidenciaDAO");
+        f.setAccessible(true);
+        f.set(servicio, espia);
+
+        // Doce incidencias con dos fechas: el corte entre páginas cae dentro de un grupo
+        String marca = "Modelo perezoso " + System.nanoTime();
+        List<IncidenciaDTO> lote = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            IncidenciaDTO inc = new IncidenciaDTO();
+            inc.setTitulo(marca + " " + i);
+            inc.setDescripcion("Generada por IncidenciasLazyModelTest");
+            inc.setCategoria("Otro");
+            inc.setEstado("CERRADA");
+            inc.setSolicitante(new UsuarioDTO("10001001A", null, null, null, "USUARIO"));
+            inc.setFechaCreacion(Timestamp.valueOf("2021-03-0" + (1 + i % 2) + " 09:30:00"));
+            lote.add(inc);
+        }
+        assertEquals(12, incidenciaDAO.saveLote(lote));
+
+        filtro = new FiltroIncidencias();
+        filtro.setTexto(marca);
+        modelo = new IncidenciasLazyModel(servicio, filtro);
+    }
+
+    private static Map<String, SortMeta> orden(String campo, SortOrder sentido) {
+        return Map.of(campo, SortMeta.builder().field(campo).order(sentido).build());
+    }
+
+    private static List<Long> ids(List<?> filas) {
+        List<Long> ids = new ArrayList<>();
+        for (Object fila : filas) {
+            ids.add(fila instanceof IncidenciaDTO ? ((IncidenciaDTO) fila).getId() : ((IncidenciaResumen) fila).getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void laPaginaSiguienteContinuaDesdeLaUltimaFila() {
+        for (SortOrder sentido : new SortOrder[] { SortOrder.ASCENDING, SortOrder.DESCENDING }) {
+            Map<String, SortMeta> orden = orden(PaginaIncidencias.ORDEN_FECHA_CREACION, sentido);
+            modelo.reiniciar();
+            pedidas.clear();
+
+            List<IncidenciaResumen> recorridas = new ArrayList<>();
+            List<IncidenciaResumen> ultimas = new ArrayList<>();
+            List<IncidenciaResumen> pagina = modelo.load(0, TAMANO, orden, Map.of());
+            while (!pagina.isEmpty()) {
+                recorridas.addAll(pagina);
+                ultimas.add(pagina.get(pagina.size() - 1));
+                pagina = modelo.load(recorridas.size(), TAMANO, orden, Map.of());
+            }
+
+            // La primera página va por OFFSET; cada una de las siguientes lleva la última fila de la anterior
+            assertFalse(pedidas.get(0).tieneCursor());
+            assertEquals(ultimas.size() + 1, pedidas.size());
+            for (int i = 1; i < pedidas.size(); i++) {
+                IncidenciaResumen anterior = ultimas.get(i - 1);
+                assertTrue(pedidas.get(i).tieneCursor());
+                assertEquals(anterior.getFechaCreacion(), pedidas.get(i).getCursorFecha());
+                assertEquals(anterior.getId(), pedidas.get(i).getCursorId());
+            }
+
+            // Las mismas filas, en el mismo orden, que leyendo todo de una vez
+            List<IncidenciaDTO> todas = incidenciaDAO.findPagina(filtro, new PaginaIncidencias(0, 100,
+                    PaginaIncidencias.ORDEN_FECHA_CREACION, sentido == SortOrder.ASCENDING));
+            assertEquals(12, todas.size());
+            assertEquals(ids(todas), ids(recorridas));
+        }
+    }
+
+    @Test
+    public void cambiarElOrdenOSaltarDePaginaVuelveAOffset() {
+        Map<String, SortMeta> descendente = orden(PaginaIncidencias.ORDEN_FECHA_CREACION, SortOrder.DESCENDING);
+        Map<String, SortMeta> ascendente = orden(PaginaIncidencias.ORDEN_FECHA_CREACION, SortOrder.ASCENDING);
+
+        modelo.load(0, TAMANO, descendente, Map.of());
+        // Misma posición que continuaría, pero en el otro sentido: el cursor no sirve
+        List<IncidenciaResumen> pagina = modelo.load(TAMANO, TAMANO, ascendente, Map.of());
+        assertNull(pedidas.get(1).getCursorFecha());
+        List<IncidenciaDTO> esperada = incidenciaDAO.findPagina(filtro,
+                new PaginaIncidencias(TAMANO, TAMANO, PaginaIncidencias.ORDEN_FECHA_CREACION, true));
+        assertEquals(ids(esperada), ids(pagina));
+
+        // Otra columna de orden
+        modelo.load(2 * TAMANO, TAMANO, orden("titulo", SortOrder.ASCENDING), Map.of());
+        assertFalse(pedidas.get(2).tieneCursor());
+
+        // Mismo orden, pero saltando una página
+        modelo.load(0, TAMANO, descendente, Map.of());
+        modelo.load(2 * TAMANO, TAMANO, descendente, Map.of());
+        assertNull(pedidas.get(4).getCursorFecha());
+
+        // Tras reiniciar (cambio de filtro) tampoco se reutiliza el cursor
+        modelo.load(0, TAMANO, descendente, Map.of());
+        modelo.reiniciar();
+        modelo.load(TAMANO, TAMANO, descendente, Map.of());
+        assertNull(pedidas.get(6).getCursorFecha());
+    }
+}
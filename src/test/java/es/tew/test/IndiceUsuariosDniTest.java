@@ -0,0 +1,65 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import es.tew.dto.UsuarioDTO;
+import es.tew.logica.CodigoDni;
+import es.tew.logica.IndiceUsuariosDni;
+
+/**
+ * Comprueba la codificación de DNI en int y el índice de usuarios que la usa,
+ * incluidos los DNI con la letra mal y los que no se pueden codificar.
+ */
+public class IndiceUsuariosDniTest {
+
+    @Test
+    public void laCodificacionNoPierdeNada() {
+        for (String dni : List.of("00000000A", "10001006H", "12345678Z", "99999999Z", "99999999A")) {
+            int codigo = CodigoDni.codificar(dni);
+            assertTrue(codigo != CodigoDni.NO_CODIFICABLE);
+            assertEquals(dni, CodigoDni.decodificar(codigo));
+        }
+        assertTrue(CodigoDni.codificar("00000001A") != CodigoDni.codificar("00000000B"));
+        assertEquals(CodigoDni.NO_CODIFICABLE, CodigoDni.codificar("X1234567L"));
+        assertEquals(CodigoDni.NO_CODIFICABLE, CodigoDni.codificar("1234567Z"));
+        assertEquals(CodigoDni.NO_CODIFICABLE, CodigoDni.codificar("12345678z"));
+
+        assertTrue(CodigoDni.letraCorrecta("12345678Z"));
+        assertFalse(CodigoDni.letraCorrecta("10001006H")); // Le corresponde la P
+    }
+
+    @Test
+    public void encuentraTodosLosUsuarios() {
+        List<UsuarioDTO> usuarios = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            usuarios.add(new UsuarioDTO(String.format("%08d%c", i * 7919, 'A' + i % 26),
+                    "Nombre" + i, "Apellidos" + i, "secreto", i % 3 == 0 ? "TECNICO" : "USUARIO"));
+        }
+        usuarios.add(new UsuarioDTO("X1234567L", "Extranjero", "Nie", null, "USUARIO"));
+        usuarios.add(new UsuarioDTO("10001006H", "Usuario6", "Sanchez", null, "OTRO"));
+
+        IndiceUsuariosDni indice = new IndiceUsuariosDni(usuarios);
+
+        assertEquals(usuarios.size(), indice.getTamano());
+        for (UsuarioDTO u : usuarios) {
+            UsuarioDTO encontrado = indice.buscar(u.getDni());
+            assertEquals(u.getDni(), encontrado.getDni());
+            assertEquals(u.getNombre(), encontrado.getNombre());
+            assertEquals(u.getApellidos(), encontrado.getApellidos());
+            assertEquals(u.getRol(), encontrado.getRol());
+            assertNull(encontrado.getPassword());
+        }
+        assertNull(indice.buscar("00000001A"));
+        assertNull(indice.buscar("Y0000000Z"));
+        assertNull(indice.buscar(null));
+        assertFalse(indice.contiene("99999999Z"));
+    }
+}
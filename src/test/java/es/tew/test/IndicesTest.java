@@ -0,0 +1,175 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import es.tew.dao.ComentarioDaoJdbc;
+import es.tew.dao.DAOFactory;
+import es.tew.dao.FiltroIncidencias;
+import es.tew.dao.HistorialEstadoDaoJdbc;
+import es.tew.dao.IncidenciaDaoJdbc;
+import es.tew.dao.PaginaIncidencias;
+import es.tew.dao.UsuarioDaoJdbc;
+
+/**
+ * Comprueba con EXPLAIN PLAN que ninguna sentencia con WHERE de los DAO JDBC recorre
+ * una tabla completa. Revisa todas las constantes SQL_* de los *DaoJdbc y las variantes
+ * de la consulta paginada de incidencias, sobre una BDD con muchas filas.
+ * Las sentencias sin WHERE (findAll, INSERT) recorren la tabla por definición y se omiten.
+ */
+public class IndicesTest {
+
+    private static final int INCIDENCIAS_EXTRA = 20000;
+
+    private static final Class<?>[] DAOS = {
+        UsuarioDaoJdbc.class, IncidenciaDaoJdbc.class, ComentarioDaoJdbc.class, HistorialEstadoDaoJdbc.class
+    };
+
+    @BeforeClass
+    public static void setUp() throws SQLException {
+        String[] solicitantes = { "10001001A", "10001002G", "10001003M" };
+        String[] tecnicos = { "10000001S", "10000002Q", "10000003V", null };
+        String[] estados = { "ABIERTA", "EN_PROCESO", "PENDIENTE_USUARIO", "CERRADA" };
+        String[] categorias = { "Internet", "Telefonía", "Ordenador" };
+        long ahora = System.currentTimeMillis();
+
+        try (Connection con = DAOFactory.getConnection();
+             PreparedStatement ps = con.prepareStatement(
+                     "INSERT INTO INCIDENCIA (TITULO, DESCRIPCION, ESTADO, CATEGORIA, FECHA_CREACION, DNI_SOLICITANTE, DNI_TECNICO) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < INCIDENCIAS_EXTRA; i++) {
+                ps.setString(1, "Carga " + i);
+                ps.setString(2, "Generada por IndicesTest");
+                ps.setString(3, estados[i % estados.length]);
+                ps.setString(4, categorias[i % categorias.length]);
+                ps.setTimestamp(5, new Timestamp(ahora - i * 60000L));
+                ps.setString(6, solicitantes[i % solicitantes.length]);
+                ps.setString(7, tecnicos[i % tecnicos.length]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        // Un comentario y una entrada de historial por incidencia
+        try (Connection con = DAOFactory.getConnection();
+             Statement st = con.createStatement()) {
+            st.executeUpdate("INSERT INTO COMENTARIO (ID_INCIDENCIA, DNI_AUTOR, TEXTO) "
+                    + "SELECT ID, DNI_SOLICITANTE, 'Comentario de carga' FROM INCIDENCIA");
+            st.executeUpdate("INSERT INTO HISTORIAL_ESTADO (ID_INCIDENCIA, ESTADO_NUEVO, DNI_USUARIO) "
+                    + "SELECT ID, ESTADO, DNI_SOLICITANTE FROM INCIDENCIA");
+        }
+    }
+
+    /**
+     * Todas las constantes SQL_* de los DAO JDBC, indexadas por Clase.CONSTANTE.
+     */
+    private static Map<String, String> sentenciasDeLosDaos() throws IllegalAccessException {
+        Map<String, String> sentencias = new LinkedHashMap<>();
+        for (Class<?> dao : DAOS) {
+            for (Field campo : dao.getDeclaredFields()) {
+                if (Modifier.isStatic(campo.getModifiers()) && campo.getType() == String.class
+                        && campo.getName().startsWith("SQL_")) {
+                    campo.setAccessible(true);
+                    sentencias.put(dao.getSimpleName() + "." + campo.getName(), (String) campo.get(null));
+                }
+            }
+        }
+        return sentencias;
+    }
+
+    /**
+     * Plan de ejecución de la sentencia, tal y como lo devuelve HSQLDB.
+     */
+    private static String plan(Connection con, String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("EXPLAIN PLAN FOR " + sql)) {
+            while (rs.next()) {
+                plan.append(rs.getString(1)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
+    private static void comprobarSinRecorridoCompleto(Map<String, String> sentencias) throws SQLException {
+        List<String> errores = new ArrayList<>();
+        try (Connection con = DAOFactory.getConnection()) {
+            for (Map.Entry<String, String> sentencia : sentencias.entrySet()) {
+                String sql = sentencia.getValue();
+                if (!sql.toUpperCase().contains(" WHERE ")) {
+                    continue;
+                }
+                String plan = plan(con, sql);
+                if (plan.contains("access=FULL SCAN")) {
+                    errores.add(sentencia.getKey() + ": " + sql + "\n" + plan);
+                }
+            }
+        }
+        if (!errores.isEmpty()) {
+            fail("Sentencias que recorren una tabla completa:\n" + String.join("\n", errores));
+        }
+    }
+
+    @Test
+    public void lasSentenciasDeLosDaosUsanIndices() throws Exception {
+        Map<String, String> sentencias = sentenciasDeLosDaos();
+        assertTrue("No se encontraron constantes SQL_* en los DAO", sentencias.size() > 10);
+        comprobarSinRecorridoCompleto(sentencias);
+    }
+
+    @Test
+    public void laPaginacionConFiltrosUsaIndices() throws Exception {
+        Method sqlPagina = IncidenciaDaoJdbc.class.getDeclaredMethod("sqlPagina",
+                FiltroIncidencias.class, PaginaIncidencias.class, List.class);
+        Method sqlCount = IncidenciaDaoJdbc.class.getDeclaredMethod("sqlCount",
+                FiltroIncidencias.class, List.class);
+        sqlPagina.setAccessible(true);
+        sqlCount.setAccessible(true);
+
+        // Un filtro por cada criterio indexable (el texto libre solo acompaña a otro criterio)
+        Map<String, FiltroIncidencias> filtros = new LinkedHashMap<>();
+        filtros.put("solicitante", FiltroIncidencias.porSolicitante("10001001A"));
+        filtros.put("tecnico", FiltroIncidencias.porTecnico("10000001S"));
+        FiltroIncidencias estado = new FiltroIncidencias();
+        estado.setEstado("ABIERTA");
+        estado.setTexto("red");
+        filtros.put("estado+texto", estado);
+        FiltroIncidencias categoria = new FiltroIncidencias();
+        categoria.setCategoria("Internet");
+        filtros.put("categoria", categoria);
+        FiltroIncidencias fechas = new FiltroIncidencias();
+        fechas.setFechaDesde(new Date(System.currentTimeMillis() - 86400000L));
+        fechas.setFechaHasta(new Date());
+        filtros.put("fechas", fechas);
+
+        PaginaIncidencias siguiente = new PaginaIncidencias(10, 10, null, false);
+        siguiente.setCursor(new Timestamp(System.currentTimeMillis()), 1000L);
+
+        Map<String, String> sentencias = new LinkedHashMap<>();
+        sentencias.put("keyset", (String) sqlPagina.invoke(null, new FiltroIncidencias(), siguiente, new ArrayList<>()));
+        for (Map.Entry<String, FiltroIncidencias> filtro : filtros.entrySet()) {
+            sentencias.put("pagina " + filtro.getKey(), (String) sqlPagina.invoke(null,
+                    filtro.getValue(), new PaginaIncidencias(20, 10, "titulo", true), new ArrayList<>()));
+            sentencias.put("count " + filtro.getKey(), (String) sqlCount.invoke(null,
+                    filtro.getValue(), new ArrayList<>()));
+        }
+        comprobarSinRecorridoCompleto(sentencias);
+    }
+}
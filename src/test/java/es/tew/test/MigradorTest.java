@@ -0,0 +1,93 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.tew.dao.Migrador;
+
+/**
+ * Comprueba las migraciones contra una BDD en memoria propia de cada prueba (no la de
+ * DAOFactory): que una segunda ejecución no aplica nada, que un checksum distinto detiene
+ * el arranque y que una migración que falla no queda anotada.
+ */
+public class MigradorTest {
+
+    private static int contador;
+
+    private Connection con;
+
+    @Before
+    public void setUp() throws SQLException {
+        con = DriverManager.getConnection("jdbc:hsqldb:mem:migradortest" + (++contador) + ";sql.syntax_ora=true",
+                "SA", "");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute("SHUTDOWN");
+        }
+        con.close();
+    }
+
+    private int versionesAnotadas() throws SQLException {
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM SCHEMA_VERSION")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void unaSegundaEjecucionNoAplicaNada() throws Exception {
+        int aplicadas = Migrador.migrar(con);
+        assertTrue(aplicadas > 0);
+        assertEquals(aplicadas, versionesAnotadas());
+
+        assertEquals(0, Migrador.migrar(con));
+        assertEquals(aplicadas, versionesAnotadas());
+    }
+
+    @Test
+    public void unChecksumDistintoDetieneElArranque() throws Exception {
+        Migrador.migrar(con);
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate("UPDATE SCHEMA_VERSION SET CHECKSUM = 'otro' WHERE VERSION = 1");
+        }
+
+        try {
+            Migrador.migrar(con);
+            fail("Se ha arrancado con una migración modificada");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("V1__"));
+            assertTrue(e.getMessage(), e.getMessage().contains("ha cambiado"));
+        }
+    }
+
+    @Test
+    public void unaMigracionQueFallaNoSeAnota() throws Exception {
+        // La cuarta sentencia de V1 crea esta tabla: falla a mitad del script
+        try (Statement st = con.createStatement()) {
+            st.execute("CREATE TABLE HISTORIAL_ESTADO (ID INTEGER)");
+        }
+
+        try {
+            Migrador.migrar(con);
+            fail("Se ha aplicado una migración que falla");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("sentencia 4 de V1__"));
+        }
+        assertEquals(0, versionesAnotadas());
+    }
+}
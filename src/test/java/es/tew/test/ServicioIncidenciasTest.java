@@ -0,0 +1,104 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.tew.dao.DAOFactory;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.UsuarioDAO;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+import es.tew.logica.CargaTecnicos;
+import es.tew.logica.EstadisticasIncidencias;
+import es.tew.logica.ServicioIncidencias;
+
+/**
+ * Alta de incidencias en ServicioIncidencias: si la transacción no se confirma, el alta
+ * falla con una excepción (no devuelve una incidencia sin guardar) y el técnico que se le
+ * había asignado recupera su hueco.
+ */
+public class ServicioIncidenciasTest {
+
+    private static final UsuarioDTO SOLICITANTE = new UsuarioDTO("10001001A", null, null, null, "USUARIO");
+
+    private IncidenciaDAO incidenciaDAO;
+    private CargaTecnicos cargaTecnicos;
+    private EstadisticasIncidencias estadisticas;
+    private ServicioIncidencias servicio;
+
+    @Before
+    public void setUp() throws Exception {
+        DAOFactory factoria = DAOFactory.getFactory();
+        incidenciaDAO = factoria.getIncidenciaDAO();
+        UsuarioDAO usuarioDAO = factoria.getUsuarioDAO();
+        cargaTecnicos = new CargaTecnicos(usuarioDAO, incidenciaDAO);
+        cargaTecnicos.reconstruir();
+        estadisticas = new EstadisticasIncidencias(incidenciaDAO);
+        estadisticas.reconstruir();
+
+        // Sin contenedor: solo lo que usa crearIncidencia
+        servicio = new ServicioIncidencias();
+        inyectar("incidenciaDAO", incidenciaDAO);
+        inyectar("historialEstadoDAO", factoria.getHistorialEstadoDAO());
+        inyectar("estadisticas", estadisticas);
+        inyectar("cargaTecnicos", cargaTecnicos);
+    }
+
+    private void inyectar(String campo, Object valor) throws ReflectiveOperationException {
+        Field f = ServicioIncidencias.class.getDeclaredField(campo);
+        f.setAccessible(true);
+        f.set(servicio, valor);
+    }
+
+    private static IncidenciaDTO nueva(String categoria) {
+        IncidenciaDTO inc = new IncidenciaDTO();
+        inc.setTitulo("Alta desde el servicio");
+        inc.setDescripcion("Generada por ServicioIncidenciasTest");
+        inc.setCategoria(categoria);
+        inc.setSolicitante(SOLICITANTE);
+        return inc;
+    }
+
+    private static int suma(Map<String, Integer> cargas) {
+        return cargas.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Test
+    public void crearIncidenciaGuardaYOcupaUnTecnico() {
+        int carga = suma(cargaTecnicos.getCargas());
+
+        IncidenciaDTO creada = servicio.crearIncidencia(nueva("Red"));
+
+        assertNotNull(creada.getId());
+        assertNotNull(creada.getTecnico());
+        assertEquals("ABIERTA", incidenciaDAO.findById(creada.getId()).getEstado());
+        assertEquals(carga + 1, suma(cargaTecnicos.getCargas()));
+    }
+
+    @Test
+    public void unAltaQueNoSeGuardaFallaYLiberaElTecnico() {
+        Map<String, Integer> cargas = cargaTecnicos.getCargas();
+        Map<String, Long> estados = estadisticas.getPorEstado();
+        // El CHECK de la tabla no admite la categoría: el DAO no llega a asignar ID
+        IncidenciaDTO inc = nueva("Cocina");
+
+        try {
+            servicio.crearIncidencia(inc);
+            fail("Se ha dado por creada una incidencia que no se ha guardado");
+        } catch (RuntimeException e) {
+            // Esperado
+        }
+
+        assertNull(inc.getId());
+        assertEquals(cargas, cargaTecnicos.getCargas());
+        assertEquals(estados, estadisticas.getPorEstado());
+    }
+}
@@ -0,0 +1,216 @@
+package es.tew.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import es.tew.dao.DAOFactory;
+import es.tew.dao.EscritorHistorial;
+import es.tew.dao.FiltroIncidencias;
+import es.tew.dao.HistorialEstadoDAO;
+import es.tew.dao.HistorialEstadoDaoAsincrono;
+import es.tew.dao.IncidenciaDAO;
+import es.tew.dao.UnidadDeTrabajo;
+import es.tew.dto.HistorialEstadoDTO;
+import es.tew.dto.IncidenciaDTO;
+import es.tew.dto.UsuarioDTO;
+
+/**
+ * Comprueba la transacción de UnidadDeTrabajo a través de los DAO: qué se deshace (cierre
+ * sin confirmar, error de un DAO, unidad anidada sin confirmar, lote que falla), cómo se
+ * agrupan las escrituras encoladas y que las acciones tras confirmar no se ejecutan si se deshace.
+ */
+public class UnidadDeTrabajoTest {
+
+    private static IncidenciaDAO incidenciaDAO;
+    private static HistorialEstadoDAO historialDAO;
+
+    @BeforeClass
+    public static void setUp() {
+        incidenciaDAO = DAOFactory.getFactory().getIncidenciaDAO();
+        historialDAO = DAOFactory.getFactory().getHistorialEstadoDAO();
+    }
+
+    private static IncidenciaDTO incidencia(String estado) {
+        IncidenciaDTO inc = new IncidenciaDTO();
+        inc.setTitulo("Unidad de trabajo");
+        inc.setDescripcion("Generada por UnidadDeTrabajoTest");
+        inc.setCategoria("Otro");
+        inc.setEstado(estado);
+        inc.setSolicitante(new UsuarioDTO("10001001A", null, null, null, "USUARIO"));
+        return inc;
+    }
+
+    private static HistorialEstadoDTO entrada(IncidenciaDTO incidencia) {
+        HistorialEstadoDTO h = new HistorialEstadoDTO();
+        h.setIncidencia(incidencia);
+        h.setEstadoAnterior("ABIERTA");
+        h.setEstadoNuevo("EN_PROCESO");
+        return h;
+    }
+
+    /**
+     * Ejecuta la acción y devuelve cuántas sentencias se han preparado durante ella.
+     */
+    private static long contarSentencias(Runnable accion) {
+        long antes = DAOFactory.getPoolStats().getStatements();
+        accion.run();
+        return DAOFactory.getPoolStats().getStatements() - antes;
+    }
+
+    @Test
+    public void cerrarSinConfirmarDeshaceTodo() {
+        IncidenciaDTO guardada;
+        try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+            guardada = incidenciaDAO.save(incidencia("ABIERTA"));
+            historialDAO.save(entrada(guardada));
+            // Dentro de la unidad se ve lo escrito
+            assertNotNull(incidenciaDAO.findById(guardada.getId()));
+        }
+
+        assertNull(incidenciaDAO.findById(guardada.getId()));
+        assertEquals(0, historialDAO.findByIncidenciaId(guardada.getId()).size());
+    }
+
+    @Test
+    public void unErrorDeUnDaoImpideConfirmar() {
+        IncidenciaDTO guardada;
+        try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+            guardada = incidenciaDAO.save(incidencia("ABIERTA"));
+            // El DAO captura la violación del CHECK del estado y se lo anota a la unidad
+            incidenciaDAO.save(incidencia("NO_EXISTE"));
+            try {
+                uow.confirmar();
+                fail("Se ha confirmado una transacción con un error");
+            } catch (RuntimeException e) {
+                // Esperado
+            }
+        }
+
+        assertNull(incidenciaDAO.findById(guardada.getId()));
+    }
+
+    @Test
+    public void unaUnidadAnidadaSinConfirmarDejaLaExteriorSoloParaDeshacer() {
+        IncidenciaDTO guardada;
+        try (UnidadDeTrabajo exterior = UnidadDeTrabajo.iniciar()) {
+            guardada = incidenciaDAO.save(incidencia("ABIERTA"));
+            try (UnidadDeTrabajo interior = UnidadDeTrabajo.iniciar()) {
+                historialDAO.save(entrada(guardada));
+                // Se cierra sin confirmar
+            }
+            try {
+                exterior.confirmar();
+                fail("Se ha confirmado una transacción marcada para deshacer");
+            } catch (RuntimeException e) {
+                // Esperado
+            }
+        }
+
+        assertNull(incidenciaDAO.findById(guardada.getId()));
+    }
+
+    @Test
+    public void unLoteQueFallaDentroDeLaUnidadSoloDeshaceElLote() {
+        IncidenciaDTO antes;
+        List<IncidenciaDTO> bueno = List.of(incidencia("ABIERTA"), incidencia("CERRADA"));
+        // La segunda fila viola el CHECK del estado después de insertar la primera
+        List<IncidenciaDTO> malo = List.of(incidencia("ABIERTA"), incidencia("NO_EXISTE"));
+        String marca = "Lote fallido " + System.nanoTime();
+        for (IncidenciaDTO inc : malo) {
+            inc.setTitulo(marca);
+        }
+        try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+            antes = incidenciaDAO.save(incidencia("ABIERTA"));
+            assertEquals(0, incidenciaDAO.saveLote(malo));
+            assertEquals(2, incidenciaDAO.saveLote(bueno));
+            uow.confirmar();
+        }
+
+        assertNotNull(incidenciaDAO.findById(antes.getId()));
+        for (IncidenciaDTO inc : bueno) {
+            assertNotNull(incidenciaDAO.findById(inc.getId()));
+            assertEquals(1, historialDAO.findByIncidenciaId(inc.getId()).size());
+        }
+        for (IncidenciaDTO inc : malo) {
+            assertNull(inc.getId());
+        }
+        FiltroIncidencias filtro = new FiltroIncidencias();
+        filtro.setTexto(marca);
+        assertEquals(0, incidenciaDAO.count(filtro));
+    }
+
+    @Test
+    public void unLoteDentroDeUnaUnidadSinConfirmarSeDeshace() {
+        List<IncidenciaDTO> lote = List.of(incidencia("ABIERTA"), incidencia("ABIERTA"));
+        try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+            assertEquals(2, incidenciaDAO.saveLote(lote));
+            // El lote no confirma por su cuenta la transacción de la unidad
+        }
+
+        for (IncidenciaDTO inc : lote) {
+            assertNull(incidenciaDAO.findById(inc.getId()));
+        }
+    }
+
+    @Test
+    public void lasEscriturasEncoladasSeAgrupanPorSentencia() {
+        IncidenciaDTO inc = incidenciaDAO.save(incidencia("ABIERTA"));
+
+        // Cinco inserciones seguidas de historial: un solo executeBatch
+        long sentencias = contarSentencias(() -> {
+            try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+                for (int i = 0; i < 5; i++) {
+                    historialDAO.save(entrada(inc));
+                }
+                uow.confirmar();
+            }
+        });
+        assertEquals(1, sentencias);
+
+        // Historial, UPDATE, historial, historial: tres rachas
+        sentencias = contarSentencias(() -> {
+            try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+                historialDAO.save(entrada(inc));
+                inc.setEstado("EN_PROCESO");
+                incidenciaDAO.update(inc);
+                historialDAO.save(entrada(inc));
+                historialDAO.save(entrada(inc));
+                uow.confirmar();
+            }
+        });
+        assertEquals(3, sentencias);
+
+        assertEquals(8, historialDAO.findByIncidenciaId(inc.getId()).size());
+        assertEquals("EN_PROCESO", incidenciaDAO.findById(inc.getId()).getEstado());
+    }
+
+    @Test
+    public void lasAccionesTrasConfirmarNoSeEjecutanAlDeshacer() {
+        IncidenciaDTO inc = incidenciaDAO.save(incidencia("ABIERTA"));
+        // El DAO diferido entrega la entrada al escritor en una acción tras confirmar
+        EscritorHistorial escritor = new EscritorHistorial(historialDAO, 100, 10, 60000);
+        HistorialEstadoDAO diferido = new HistorialEstadoDaoAsincrono(historialDAO, escritor);
+        try {
+            try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+                diferido.save(entrada(inc));
+            }
+            assertEquals(0, escritor.getStats().getEncoladas());
+
+            try (UnidadDeTrabajo uow = UnidadDeTrabajo.iniciar()) {
+                diferido.save(entrada(inc));
+                uow.confirmar();
+            }
+            assertEquals(1, escritor.getStats().getEncoladas());
+        } finally {
+            escritor.cerrar(30000);
+        }
+        assertEquals(1, historialDAO.findByIncidenciaId(inc.getId()).size());
+    }
+}